@@ -0,0 +1,111 @@
+package com.github.rtoshiro.view.video.benchmark;
+
+import android.media.MediaPlayer;
+import android.view.Surface;
+import android.view.View;
+
+import com.github.rtoshiro.view.video.FullscreenVideoView;
+import com.github.rtoshiro.view.video.PlayerEngine;
+import com.github.rtoshiro.view.video.RenderTarget;
+
+import java.io.IOException;
+
+/**
+ * FullscreenVideoView on a {@link FakePlayerEngine}: the benchmarks run the control paths of
+ * the view itself. Android classes come from the mockable android.jar, whose methods return
+ * default values, so layout and drawing cost nothing.
+ */
+public class BenchmarkVideoView extends FullscreenVideoView {
+
+    /**
+     * Surface available on demand, with nothing to render to
+     */
+    public static class FakeRenderTarget extends RenderTarget {
+        private final View view = new View(null);
+        private boolean available;
+
+        @Override
+        public View getView() {
+            return view;
+        }
+
+        @Override
+        public boolean isSurfaceAvailable() {
+            return available;
+        }
+
+        @Override
+        public void attachPlayer(MediaPlayer mp) {
+        }
+
+        @Override
+        public void detachPlayer(MediaPlayer mp) {
+        }
+
+        @Override
+        public Surface getSurface() {
+            return null;
+        }
+
+        public void setAvailable() {
+            available = true;
+            notifyAvailable();
+        }
+    }
+
+    // Assigned while the super constructor runs: no initializers
+    private VirtualClock clock;
+    private FakePlayerEngine engine;
+    private FakeRenderTarget target;
+    private int createdEngines;
+
+    public BenchmarkVideoView() {
+        super(null);
+    }
+
+    @Override
+    protected PlayerEngine createPlayerEngine() {
+        if (clock == null)
+            clock = new VirtualClock();
+        engine = new FakePlayerEngine(clock);
+        createdEngines++;
+        return engine;
+    }
+
+    @Override
+    protected RenderTarget createRenderTarget() {
+        target = new FakeRenderTarget();
+        return target;
+    }
+
+    public VirtualClock getClock() {
+        return clock;
+    }
+
+    /**
+     * @return the engine of the current source
+     */
+    public FakePlayerEngine getEngine() {
+        return engine;
+    }
+
+    public FakeRenderTarget getTarget() {
+        return target;
+    }
+
+    public int getCreatedEngineCount() {
+        return createdEngines;
+    }
+
+    /**
+     * Opens a source, makes the surface available and runs the clock until it is PREPARED
+     */
+    public void openAndPrepare(String source) throws IOException {
+        setVideoPath(source);
+        if (!target.isSurfaceAvailable())
+            target.setAvailable();
+        while (getCurrentState() == State.PREPARING && clock.runNext()) {
+            // runs until prepared or failed
+        }
+    }
+}
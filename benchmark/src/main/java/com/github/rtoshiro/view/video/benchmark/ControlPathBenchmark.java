@@ -0,0 +1,98 @@
+package com.github.rtoshiro.view.video.benchmark;
+
+import com.github.rtoshiro.view.video.PlaybackMetrics;
+import com.github.rtoshiro.view.video.TimeFormatter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Control paths of {@link BenchmarkVideoView} on a virtual clock: progress ticks, seek storms
+ * and start/pause cycles, through the public methods of the view. Time is virtual and Android
+ * calls are stubbed, so results measure the library code only.
+ *
+ * Run with ./gradlew :benchmark:jmh
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ControlPathBenchmark {
+
+    /**
+     * Operations per benchmark call
+     */
+    @Param({"100", "1000"})
+    public int operations;
+
+    private BenchmarkVideoView view;
+    private final TimeFormatter elapsed = new TimeFormatter();
+    private int seed;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        view = new BenchmarkVideoView();
+        view.getEngine().setMediaDuration(Integer.MAX_VALUE / 2);
+        view.getEngine().setSeekDelay(20);
+        view.openAndPrepare("fake://video");
+        view.start();
+    }
+
+    /**
+     * What the SeekBar counter does every frame: read the position and format it
+     */
+    @Benchmark
+    public int progressTicks() {
+        int changed = 0;
+        for (int i = 0; i < operations; i++) {
+            view.getClock().advance(16);
+            if (elapsed.update(view.getCurrentPosition()))
+                changed++;
+        }
+        return changed;
+    }
+
+    /**
+     * A SeekBar drag: a seek per millisecond, while each seek takes 20ms.
+     * Returns the seeks that reached the engine.
+     */
+    @Benchmark
+    public int seekStorm() {
+        FakePlayerEngine engine = view.getEngine();
+        int before = engine.getSeekCount();
+        int duration = view.getDuration();
+        for (int i = 0; i < operations; i++) {
+            seed = seed * 1103515245 + 12345;
+            view.seekTo((seed >>> 1) % duration, false);
+            view.getClock().advance(1);
+        }
+        view.getClock().advance(100);
+        return engine.getSeekCount() - before;
+    }
+
+    @Benchmark
+    public long stateTransitions() {
+        for (int i = 0; i < operations; i++) {
+            view.pause();
+            view.start();
+        }
+        return view.getEngine().getStartCount();
+    }
+
+    /**
+     * Metrics snapshot, as read by telemetry
+     */
+    @Benchmark
+    public PlaybackMetrics.Snapshot metricsSnapshot() {
+        return view.getPlaybackMetrics().snapshot(view.getClock().now());
+    }
+}
@@ -0,0 +1,309 @@
+package com.github.rtoshiro.view.video.benchmark;
+
+import com.github.rtoshiro.view.video.PlayerEngine;
+import com.github.rtoshiro.view.video.RenderTarget;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Deterministic {@link PlayerEngine} driven by a {@link VirtualClock}.
+ * Preparing and seeking take scripted delays, playback advances with the clock,
+ * and scripted stalls report BUFFERING_START/END at given positions.
+ * Events are delivered from the clock, like MediaPlayer delivers them from its looper.
+ */
+public class FakePlayerEngine implements PlayerEngine {
+
+    private final VirtualClock clock;
+    private Listener listener;
+
+    private long prepareDelay = 200;
+    private long seekDelay = 50;
+    private int mediaDuration = 60000;
+    private int videoWidth = 1280, videoHeight = 720;
+    private boolean failPrepare;
+    private final ArrayList<int[]> stalls = new ArrayList<int[]>(); // {position, duration}
+
+    private String source;
+    private boolean prepared;
+    private boolean playing;
+    private boolean stalled;
+    private boolean looping;
+    private int position;
+    private long positionTime;
+    private int nextStall;
+    // Invalidate events scheduled before a pause or seek (playback) and before stop() or reset() (source)
+    private int playGeneration;
+    private int sourceGeneration;
+
+    private RenderTarget display;
+    private int startCount, pauseCount, seekCount;
+
+    public FakePlayerEngine(VirtualClock clock) {
+        this.clock = clock;
+    }
+
+    public void setPrepareDelay(long prepareDelay) {
+        this.prepareDelay = prepareDelay;
+    }
+
+    public void setSeekDelay(long seekDelay) {
+        this.seekDelay = seekDelay;
+    }
+
+    public void setMediaDuration(int mediaDuration) {
+        this.mediaDuration = mediaDuration;
+    }
+
+    /**
+     * prepareAsync() reports ERROR_IO instead of onPrepared()
+     */
+    public void setFailPrepare(boolean failPrepare) {
+        this.failPrepare = failPrepare;
+    }
+
+    /**
+     * Playback stalls for stallMs when it reaches this position. Stalls must be added in position order.
+     */
+    public void addStall(int position, int stallMs) {
+        stalls.add(new int[]{position, stallMs});
+    }
+
+    public int getStartCount() {
+        return startCount;
+    }
+
+    public int getPauseCount() {
+        return pauseCount;
+    }
+
+    /**
+     * @return number of seekTo() calls received, after coalescing by the caller
+     */
+    public int getSeekCount() {
+        return seekCount;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void setDataSource(String source) throws IOException {
+        if (source == null)
+            throw new IOException("no source");
+        this.source = source;
+    }
+
+    @Override
+    public void prepareAsync() {
+        final int g = sourceGeneration;
+        clock.schedule(prepareDelay, new Runnable() {
+            @Override
+            public void run() {
+                if (g != sourceGeneration || listener == null)
+                    return;
+                if (failPrepare) {
+                    listener.onError(FakePlayerEngine.this, ERROR_UNKNOWN, ERROR_IO);
+                    return;
+                }
+                prepared = true;
+                listener.onVideoSizeChanged(FakePlayerEngine.this, videoWidth, videoHeight);
+                listener.onPrepared(FakePlayerEngine.this);
+                listener.onBufferingUpdate(FakePlayerEngine.this, 100);
+            }
+        });
+    }
+
+    @Override
+    public void start() {
+        startCount++;
+        if (playing)
+            return;
+        boolean first = position == 0 && startCount == 1;
+        playing = true;
+        positionTime = clock.now();
+        scheduleNextEvent();
+        if (first && listener != null)
+            listener.onInfo(this, INFO_VIDEO_RENDERING_START, 0);
+    }
+
+    @Override
+    public void pause() {
+        pauseCount++;
+        freeze();
+        playing = false;
+    }
+
+    @Override
+    public void stop() {
+        freeze();
+        sourceGeneration++;
+        playing = false;
+        prepared = false;
+    }
+
+    @Override
+    public void seekTo(final int msec, boolean exact) {
+        seekCount++;
+        freeze();
+        final int g = sourceGeneration;
+        clock.schedule(seekDelay, new Runnable() {
+            @Override
+            public void run() {
+                if (g != sourceGeneration)
+                    return;
+                freeze();
+                position = Math.max(0, Math.min(msec, mediaDuration));
+                positionTime = clock.now();
+                nextStall = firstStallAfter(position);
+                if (playing)
+                    scheduleNextEvent();
+                if (listener != null)
+                    listener.onSeekComplete(FakePlayerEngine.this);
+            }
+        });
+    }
+
+    @Override
+    public void reset() {
+        playGeneration++;
+        sourceGeneration++;
+        prepared = false;
+        playing = false;
+        stalled = false;
+        position = 0;
+        nextStall = 0;
+        source = null;
+    }
+
+    @Override
+    public void release() {
+        reset();
+    }
+
+    @Override
+    public void setLooping(boolean looping) {
+        this.looping = looping;
+    }
+
+    @Override
+    public void setVolume(float leftVolume, float rightVolume) {
+    }
+
+    @Override
+    public void setDisplay(RenderTarget target) {
+        display = target;
+    }
+
+    public RenderTarget getDisplay() {
+        return display;
+    }
+
+    @Override
+    public int getVideoWidth() {
+        return prepared ? videoWidth : 0;
+    }
+
+    @Override
+    public int getVideoHeight() {
+        return prepared ? videoHeight : 0;
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        if (!playing || stalled)
+            return position;
+        return (int) Math.min(mediaDuration, position + (clock.now() - positionTime));
+    }
+
+    @Override
+    public int getDuration() {
+        return prepared ? mediaDuration : -1;
+    }
+
+    @Override
+    public boolean isPlaying() {
+        return playing;
+    }
+
+    /**
+     * Stores the current position and drops scheduled playback events
+     */
+    private void freeze() {
+        position = getCurrentPosition();
+        positionTime = clock.now();
+        playGeneration++;
+        if (stalled) {
+            stalled = false;
+            if (listener != null)
+                listener.onInfo(this, INFO_BUFFERING_END, 0);
+        }
+    }
+
+    private int firstStallAfter(int position) {
+        int i = 0;
+        while (i < stalls.size() && stalls.get(i)[0] < position)
+            i++;
+        return i;
+    }
+
+    /**
+     * Schedules the next stall or the end of the media, whichever comes first
+     */
+    private void scheduleNextEvent() {
+        final int g = playGeneration;
+        if (nextStall < stalls.size() && stalls.get(nextStall)[0] < mediaDuration) {
+            final int[] stall = stalls.get(nextStall);
+            clock.schedule(Math.max(0, stall[0] - position), new Runnable() {
+                @Override
+                public void run() {
+                    if (g != playGeneration)
+                        return;
+                    position = stall[0];
+                    stalled = true;
+                    nextStall++;
+                    if (listener != null)
+                        listener.onInfo(FakePlayerEngine.this, INFO_BUFFERING_START, 0);
+                    clock.schedule(stall[1], new Runnable() {
+                        @Override
+                        public void run() {
+                            if (g != playGeneration)
+                                return;
+                            stalled = false;
+                            positionTime = clock.now();
+                            if (listener != null)
+                                listener.onInfo(FakePlayerEngine.this, INFO_BUFFERING_END, 0);
+                            scheduleNextEvent();
+                        }
+                    });
+                }
+            });
+            return;
+        }
+
+        clock.schedule(Math.max(0, mediaDuration - position), new Runnable() {
+            @Override
+            public void run() {
+                if (g != playGeneration)
+                    return;
+                if (looping) {
+                    position = 0;
+                    positionTime = clock.now();
+                    nextStall = 0;
+                    scheduleNextEvent();
+                } else {
+                    position = mediaDuration;
+                    playing = false;
+                }
+                if (listener != null)
+                    listener.onCompletion(FakePlayerEngine.this);
+            }
+        });
+    }
+}
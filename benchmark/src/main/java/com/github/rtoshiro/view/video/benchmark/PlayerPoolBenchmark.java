@@ -0,0 +1,142 @@
+package com.github.rtoshiro.view.video.benchmark;
+
+import com.github.rtoshiro.view.video.PlayerPool;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A list scrolling through a {@link PlayerPool}, with players that cost as much to create,
+ * reset and release as the {@link Costs} params say. A MediaPlayer sets up and tears down a
+ * native player in the media server on each of these; the defaults are orders of magnitude,
+ * not measurements: pass the costs measured on your devices, e.g. -p createUs=3000.
+ * With costs of 0, only the pool bookkeeping (lock, idle list, counters) is measured.
+ *
+ * Run with ./gradlew :benchmark:jmh -Pjmh="PlayerPoolBenchmark"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PlayerPoolBenchmark {
+
+    /**
+     * Time taken by each player call, in microseconds
+     */
+    @State(Scope.Benchmark)
+    public static class Costs {
+        @Param({"1000"})
+        public int createUs;
+
+        @Param({"100"})
+        public int resetUs;
+
+        @Param({"500"})
+        public int releaseUs;
+    }
+
+    static class FakePlayer {
+        boolean released;
+    }
+
+    /**
+     * Blocks the calling thread like a binder call into the media server: the thread waits
+     * without using the CPU, so other threads run meanwhile. Parking may overshoot by the
+     * timer slack of the OS.
+     */
+    static void block(int micros) {
+        long end = System.nanoTime() + micros * 1000L;
+        for (long left = micros * 1000L; left > 0; left = end - System.nanoTime())
+            LockSupport.parkNanos(left);
+    }
+
+    static class FakePlayerPool extends PlayerPool<FakePlayer> {
+        private final Costs costs;
+
+        FakePlayerPool(int maxIdle, Costs costs) {
+            super(maxIdle);
+            this.costs = costs;
+        }
+
+        @Override
+        protected FakePlayer createPlayer() {
+            block(costs.createUs);
+            return new FakePlayer();
+        }
+
+        @Override
+        protected boolean resetPlayer(FakePlayer player) {
+            block(costs.resetUs);
+            return true;
+        }
+
+        @Override
+        protected void releasePlayer(FakePlayer player) {
+            block(costs.releaseUs);
+            player.released = true;
+        }
+    }
+
+    /**
+     * A pool shared by every benchmark thread, as views of one list share theirs
+     */
+    @State(Scope.Benchmark)
+    public static class SharedPool {
+        FakePlayerPool pool;
+
+        @Setup(Level.Trial)
+        public void setUp(Costs costs) {
+            pool = new FakePlayerPool(4, costs);
+        }
+    }
+
+    /**
+     * Idle players kept by the pool. 0 creates a player on every acquire().
+     */
+    @Param({"0", "3"})
+    public int maxIdle;
+
+    private FakePlayerPool pool;
+    private final FakePlayer[] visible = new FakePlayer[3];
+    private int item;
+
+    @Setup(Level.Iteration)
+    public void setUp(Costs costs) {
+        pool = new FakePlayerPool(maxIdle, costs);
+        for (int i = 0; i < visible.length; i++)
+            visible[i] = pool.acquire();
+    }
+
+    /**
+     * A list scrolled by one item: the view leaving the screen recycles its player,
+     * the one entering acquires a player. Without idle players, each step releases one
+     * player and creates another.
+     */
+    @Benchmark
+    public FakePlayer scroll() {
+        int slot = item++ % visible.length;
+        pool.recycle(visible[slot]);
+        return visible[slot] = pool.acquire();
+    }
+
+    /**
+     * acquire() and recycle() on a pool shared by 4 threads
+     */
+    @Benchmark
+    @Threads(4)
+    public FakePlayer sharedAcquireRecycle(SharedPool shared) {
+        FakePlayer player = shared.pool.acquire();
+        shared.pool.recycle(player);
+        return player;
+    }
+}
@@ -0,0 +1,99 @@
+package com.github.rtoshiro.view.video.benchmark;
+
+import com.github.rtoshiro.view.video.PlaybackController;
+
+import java.util.PriorityQueue;
+
+/**
+ * Deterministic time source: time only moves through {@link #advance(long)} or
+ * {@link #runNext()}, and scheduled actions run in time order, then in the order
+ * they were scheduled.
+ */
+public class VirtualClock implements PlaybackController.Clock {
+
+    private static class Event implements Comparable<Event> {
+        final long time;
+        final long sequence;
+        final Runnable action;
+
+        Event(long time, long sequence, Runnable action) {
+            this.time = time;
+            this.sequence = sequence;
+            this.action = action;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            if (time != other.time)
+                return time < other.time ? -1 : 1;
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+
+    private final PriorityQueue<Event> events = new PriorityQueue<Event>();
+    private long now;
+    private long sequence;
+
+    @Override
+    public long now() {
+        return now;
+    }
+
+    /**
+     * Runs the action after this delay. A delay of 0 runs it on the next advance or runNext().
+     */
+    public void schedule(long delay, Runnable action) {
+        if (delay < 0)
+            throw new IllegalArgumentException("delay must be >= 0");
+        events.add(new Event(now + delay, sequence++, action));
+    }
+
+    /**
+     * Moves time forward, running every action due on the way at its own time
+     */
+    public void advance(long msec) {
+        long target = now + msec;
+        while (!events.isEmpty() && events.peek().time <= target)
+            run(events.poll());
+        now = target;
+    }
+
+    /**
+     * Jumps to the next scheduled action and runs it
+     *
+     * @return false if nothing is scheduled
+     */
+    public boolean runNext() {
+        Event event = events.poll();
+        if (event == null)
+            return false;
+        run(event);
+        return true;
+    }
+
+    /**
+     * Runs scheduled actions, including the ones they schedule, until none is left
+     *
+     * @param maxActions guard against actions that keep scheduling others
+     * @return number of actions run
+     */
+    public int runUntilIdle(int maxActions) {
+        int count = 0;
+        while (count < maxActions && runNext())
+            count++;
+        return count;
+    }
+
+    public int getPendingCount() {
+        return events.size();
+    }
+
+    public void clear() {
+        events.clear();
+    }
+
+    private void run(Event event) {
+        now = Math.max(now, event.time);
+        event.action.run();
+    }
+}
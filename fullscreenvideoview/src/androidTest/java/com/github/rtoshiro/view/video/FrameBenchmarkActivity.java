@@ -0,0 +1,17 @@
+package com.github.rtoshiro.view.video;
+
+import android.app.Activity;
+import android.os.Bundle;
+import android.view.WindowManager;
+
+/**
+ * Hosts the view measured by {@link RenderBackendFrameBenchmark}
+ */
+public class FrameBenchmarkActivity extends Activity {
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
+    }
+}
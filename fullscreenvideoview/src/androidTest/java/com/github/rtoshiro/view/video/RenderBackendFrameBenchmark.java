@@ -0,0 +1,239 @@
+package com.github.rtoshiro.view.video;
+
+import android.animation.ObjectAnimator;
+import android.animation.ValueAnimator;
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.SurfaceTexture;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.test.ActivityInstrumentationTestCase2;
+import android.test.InstrumentationTestRunner;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.ViewGroup;
+
+import com.github.rtoshiro.view.video.FullscreenVideoView.RenderBackend;
+import com.github.rtoshiro.view.video.FullscreenVideoView.State;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Frames dropped while a video plays in a view that slides back and forth, on the SurfaceView
+ * and TextureView backends. Runs on a device (API 18+) with a clip readable by the test app:
+ *
+ * adb shell am instrument -w -e class com.github.rtoshiro.view.video.RenderBackendFrameBenchmark
+ *     -e video http://host/clip.mp4 -e fps 30 com.github.rtoshiro.test/android.test.InstrumentationTestRunner
+ *
+ * Results are logged and sent as instrumentation status:
+ * - missedVsyncs: display frames missed by the UI thread (Choreographer), on both backends
+ * - videoFramesDropped: frames expected from the clip frame rate minus the frames the
+ *   TextureView received. A SurfaceView is composed by the system, which does not report
+ *   them to the app: -1.
+ *
+ * Without -e video, the tests log a warning and measure nothing.
+ */
+public class RenderBackendFrameBenchmark extends ActivityInstrumentationTestCase2<FrameBenchmarkActivity> {
+
+    private final static String TAG = "RenderBackendFrameBenchmark";
+
+    private final static long TIMEOUT_MS = 20000;
+    private final static long WARM_UP_MS = 1000;
+    private final static long MEASURE_MS = 10000;
+    private final static float DEFAULT_FPS = 30;
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    static class CountingTextureTarget extends TextureViewRenderTarget {
+        // UI thread
+        int frames;
+
+        CountingTextureTarget(Context context) {
+            super(context);
+        }
+
+        @Override
+        public void onSurfaceTextureUpdated(SurfaceTexture st) {
+            frames++;
+            super.onSurfaceTextureUpdated(st);
+        }
+    }
+
+    static class CountingVideoView extends FullscreenVideoView {
+        // Assigned while the super constructor runs: no initializers
+        CountingTextureTarget textureTarget;
+
+        CountingVideoView(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected RenderTarget createRenderTarget() {
+            if (renderBackend == RenderBackend.TEXTURE_VIEW) {
+                textureTarget = new CountingTextureTarget(getContext());
+                return textureTarget;
+            }
+            return super.createRenderTarget();
+        }
+
+        /**
+         * @return frames received by the TextureView, or -1 on the SurfaceView backend
+         */
+        int getTextureFrames() {
+            return renderBackend == RenderBackend.TEXTURE_VIEW && textureTarget != null ? textureTarget.frames : -1;
+        }
+    }
+
+    /**
+     * Counts the vsyncs the UI thread missed between two frames
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    static class VsyncCounter implements Choreographer.FrameCallback {
+        private final long intervalNs;
+        private long lastFrameNs;
+        private boolean running;
+        int frames, missed;
+
+        VsyncCounter(float refreshRate) {
+            this.intervalNs = (long) (1000000000L / refreshRate);
+        }
+
+        void start() {
+            running = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        void stop() {
+            running = false;
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (!running)
+                return;
+            if (lastFrameNs != 0) {
+                long skipped = Math.round((double) (frameTimeNanos - lastFrameNs) / intervalNs) - 1;
+                if (skipped > 0)
+                    missed += skipped;
+            }
+            lastFrameNs = frameTimeNanos;
+            frames++;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    // Written on the UI thread, read after runTestOnUiThread() returns
+    private CountingVideoView view;
+    private ObjectAnimator animator;
+    private VsyncCounter counter;
+    private int startPosition, endPosition;
+    private int startFrames, endFrames;
+
+    public RenderBackendFrameBenchmark() {
+        super(FrameBenchmarkActivity.class);
+    }
+
+    public void testSurfaceView() throws Throwable {
+        measure(RenderBackend.SURFACE_VIEW);
+    }
+
+    public void testTextureView() throws Throwable {
+        measure(RenderBackend.TEXTURE_VIEW);
+    }
+
+    private String getArgument(String key) {
+        if (!(getInstrumentation() instanceof InstrumentationTestRunner) || Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2)
+            return null;
+        Bundle arguments = ((InstrumentationTestRunner) getInstrumentation()).getArguments();
+        return arguments != null ? arguments.getString(key) : null;
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void measure(final RenderBackend backend) throws Throwable {
+        final String source = getArgument("video");
+        if (source == null) {
+            Log.w(TAG, backend + " not measured: needs API 18+ and -e video <uri>");
+            return;
+        }
+        String fpsArgument = getArgument("fps");
+        float fps = fpsArgument != null ? Float.parseFloat(fpsArgument) : DEFAULT_FPS;
+
+        final FrameBenchmarkActivity activity = getActivity();
+        final CountDownLatch prepared = new CountDownLatch(1);
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                view = new CountingVideoView(activity);
+                view.setRenderBackend(backend);
+                view.addOnStateChangedListener(new PlaybackStateMachine.Listener() {
+                    @Override
+                    public void onStateChanged(State from, State to) {
+                        if (to == State.PREPARED)
+                            prepared.countDown();
+                    }
+                });
+                activity.setContentView(view, new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+                try {
+                    view.setVideoURI(Uri.parse(source));
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        assertTrue(backend + ": not prepared", prepared.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                view.start();
+                // A list scroll or fullscreen transition moves the view while it plays
+                animator = ObjectAnimator.ofFloat(view, "translationX", 0, view.getWidth() / 4);
+                animator.setDuration(1000);
+                animator.setRepeatCount(ValueAnimator.INFINITE);
+                animator.setRepeatMode(ValueAnimator.REVERSE);
+                animator.start();
+            }
+        });
+        Thread.sleep(WARM_UP_MS);
+
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                counter = new VsyncCounter(activity.getWindowManager().getDefaultDisplay().getRefreshRate());
+                counter.start();
+                startPosition = view.getCurrentPosition();
+                startFrames = view.getTextureFrames();
+            }
+        });
+        Thread.sleep(MEASURE_MS);
+
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                counter.stop();
+                endPosition = view.getCurrentPosition();
+                endFrames = view.getTextureFrames();
+                animator.cancel();
+                view.releasePlayer();
+            }
+        });
+
+        int playedMs = endPosition - startPosition;
+        int expectedFrames = Math.round(playedMs * fps / 1000);
+        int droppedFrames = endFrames >= 0 ? Math.max(0, expectedFrames - (endFrames - startFrames)) : -1;
+
+        Bundle results = new Bundle();
+        results.putString("backend", backend.name());
+        results.putInt("playedMs", playedMs);
+        results.putInt("vsyncs", counter.frames + counter.missed);
+        results.putInt("missedVsyncs", counter.missed);
+        results.putInt("videoFramesExpected", expectedFrames);
+        results.putInt("videoFramesDropped", droppedFrames);
+        getInstrumentation().sendStatus(0, results);
+        Log.i(TAG, backend + ": played " + playedMs + "ms, missed vsyncs " + counter.missed + "/" + (counter.frames + counter.missed) +
+                ", video frames dropped " + droppedFrames + "/" + expectedFrames);
+
+        assertTrue(backend + ": playback did not advance", playedMs > 0);
+    }
+}
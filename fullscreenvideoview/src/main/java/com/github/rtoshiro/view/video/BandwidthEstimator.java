@@ -0,0 +1,74 @@
+package com.github.rtoshiro.view.video;
+
+/**
+ * Throughput measured over the last transfers (a sliding window of samples): total bits
+ * divided by total transfer time, so long transfers weigh more than short ones.
+ * Samples smaller than minSampleBytes (playlists, cache hits) are ignored.
+ *
+ * Has no Android dependencies. Thread safe.
+ */
+public class BandwidthEstimator {
+
+    private final long[] bytes;
+    private final long[] nanos;
+    private final long minSampleBytes;
+    private int count, next;
+    private long totalBytes, totalNanos;
+
+    /**
+     * Keeps the last 8 samples of at least 32KB
+     */
+    public BandwidthEstimator() {
+        this(8, 32 * 1024);
+    }
+
+    /**
+     * @param windowSize     number of samples kept
+     * @param minSampleBytes smaller transfers are ignored, as their time is mostly latency
+     */
+    public BandwidthEstimator(int windowSize, long minSampleBytes) {
+        if (windowSize < 1)
+            throw new IllegalArgumentException("windowSize must be >= 1");
+        this.bytes = new long[windowSize];
+        this.nanos = new long[windowSize];
+        this.minSampleBytes = minSampleBytes;
+    }
+
+    /**
+     * @param byteCount     bytes transferred
+     * @param durationNanos time spent on the transfer, from the request to the last byte
+     */
+    public synchronized void addSample(long byteCount, long durationNanos) {
+        if (byteCount < minSampleBytes || durationNanos <= 0)
+            return;
+
+        if (count == bytes.length) {
+            totalBytes -= bytes[next];
+            totalNanos -= nanos[next];
+        } else
+            count++;
+        bytes[next] = byteCount;
+        nanos[next] = durationNanos;
+        totalBytes += byteCount;
+        totalNanos += durationNanos;
+        next = (next + 1) % bytes.length;
+    }
+
+    /**
+     * @return estimated bits per second, or -1 before the first sample
+     */
+    public synchronized long getEstimate() {
+        if (count == 0)
+            return -1;
+        return (long) (totalBytes * 8 * 1e9 / totalNanos);
+    }
+
+    public synchronized int getSampleCount() {
+        return count;
+    }
+
+    public synchronized void clear() {
+        count = next = 0;
+        totalBytes = totalNanos = 0;
+    }
+}
@@ -0,0 +1,63 @@
+package com.github.rtoshiro.view.video;
+
+/**
+ * Chooses the variant of the next segment from the measured bandwidth.
+ * Switches up to the highest variant using at most upFraction of the bandwidth, and
+ * switches down only when the current one needs more than downFraction of it; between
+ * the two the current variant is kept, so a noisy estimate does not flip variants.
+ *
+ * Has no Android dependencies.
+ */
+public class BitrateSelector {
+
+    protected final float upFraction;
+    protected final float downFraction;
+
+    /**
+     * Up to 75% of the bandwidth, down above 90%
+     */
+    public BitrateSelector() {
+        this(0.75f, 0.9f);
+    }
+
+    /**
+     * @param upFraction   part of the bandwidth a higher variant may use
+     * @param downFraction part of the bandwidth above which the current variant is left
+     */
+    public BitrateSelector(float upFraction, float downFraction) {
+        if (upFraction <= 0 || downFraction < upFraction)
+            throw new IllegalArgumentException("needs 0 < upFraction <= downFraction");
+        this.upFraction = upFraction;
+        this.downFraction = downFraction;
+    }
+
+    /**
+     * @param bandwidths   variant bandwidths in bits per second, ascending
+     * @param count        number of variants to consider (a cap excludes the highest ones)
+     * @param estimate     measured bits per second, or -1 if unknown
+     * @param currentIndex index of the current variant, or -1 before the first segment
+     * @return index of the variant for the next segment
+     */
+    public int select(int[] bandwidths, int count, long estimate, int currentIndex) {
+        if (count <= 0)
+            return -1;
+        if (currentIndex >= count)
+            currentIndex = count - 1;
+        if (estimate < 0)
+            return currentIndex >= 0 ? currentIndex : 0;
+
+        int target = 0;
+        for (int i = count - 1; i > 0; i--) {
+            if (bandwidths[i] <= estimate * upFraction) {
+                target = i;
+                break;
+            }
+        }
+
+        if (currentIndex < 0 || target > currentIndex)
+            return target;
+        if (target < currentIndex && bandwidths[currentIndex] > estimate * downFraction)
+            return target;
+        return currentIndex;
+    }
+}
@@ -0,0 +1,99 @@
+package com.github.rtoshiro.view.video;
+
+/**
+ * Buffering thresholds of {@link MediaCodecEngine}: how much media must be buffered ahead of
+ * the playback position before playback starts, when it stalls and when it resumes, and how far
+ * ahead samples are read. MediaPlayer has its own fixed policy; this one can trade a shorter
+ * time to first frame for a higher stall risk.
+ *
+ * Has no Android dependencies. Immutable.
+ */
+public class BufferingPolicy {
+
+    /**
+     * Starts after 1s of media, stalls under 100ms, resumes after 2s, reads up to 30s ahead
+     */
+    public static final BufferingPolicy DEFAULT = new BufferingPolicy(1000, 100, 2000, 30000);
+
+    /**
+     * Starts as soon as 250ms are buffered, resumes after 1s
+     */
+    public static final BufferingPolicy LOW_LATENCY = new BufferingPolicy(250, 100, 1000, 30000);
+
+    private final int startBufferMs;
+    private final int stallThresholdMs;
+    private final int rebufferMs;
+    private final int maxBufferMs;
+
+    /**
+     * @param startBufferMs    media buffered ahead before the first frame is rendered and playback starts
+     * @param stallThresholdMs playback stalls when less than this is buffered ahead
+     * @param rebufferMs       media buffered ahead before playback resumes after a stall
+     * @param maxBufferMs      samples are not read further than this ahead of the playback position
+     */
+    public BufferingPolicy(int startBufferMs, int stallThresholdMs, int rebufferMs, int maxBufferMs) {
+        if (startBufferMs < 0 || stallThresholdMs < 0)
+            throw new IllegalArgumentException("thresholds must be >= 0");
+        if (rebufferMs < stallThresholdMs)
+            throw new IllegalArgumentException("rebufferMs must be >= stallThresholdMs");
+        if (maxBufferMs < Math.max(startBufferMs, rebufferMs))
+            throw new IllegalArgumentException("maxBufferMs must be >= startBufferMs and rebufferMs");
+        this.startBufferMs = startBufferMs;
+        this.stallThresholdMs = stallThresholdMs;
+        this.rebufferMs = rebufferMs;
+        this.maxBufferMs = maxBufferMs;
+    }
+
+    public int getStartBufferMs() {
+        return startBufferMs;
+    }
+
+    public int getStallThresholdMs() {
+        return stallThresholdMs;
+    }
+
+    public int getRebufferMs() {
+        return rebufferMs;
+    }
+
+    public int getMaxBufferMs() {
+        return maxBufferMs;
+    }
+
+    /**
+     * @param bufferedMs  media buffered ahead of the playback position, or -1 if unknown (local files)
+     * @param endOfStream true if everything up to the end is buffered
+     * @return true if playback can start
+     */
+    public boolean canStart(long bufferedMs, boolean endOfStream) {
+        return endOfStream || bufferedMs < 0 || bufferedMs >= startBufferMs;
+    }
+
+    /**
+     * @return true if playing should stall to buffer
+     */
+    public boolean shouldStall(long bufferedMs, boolean endOfStream) {
+        return !endOfStream && bufferedMs >= 0 && bufferedMs < stallThresholdMs;
+    }
+
+    /**
+     * @return true if a stalled playback can resume
+     */
+    public boolean canResume(long bufferedMs, boolean endOfStream) {
+        return endOfStream || bufferedMs < 0 || bufferedMs >= rebufferMs;
+    }
+
+    /**
+     * @param queuedAheadMs time between the playback position and the last sample given to the decoder
+     * @return true if the next sample should be read now
+     */
+    public boolean shouldRead(long queuedAheadMs) {
+        return queuedAheadMs < maxBufferMs;
+    }
+
+    @Override
+    public String toString() {
+        return "BufferingPolicy{start=" + startBufferMs + "ms, stall<" + stallThresholdMs +
+                "ms, rebuffer=" + rebufferMs + "ms, max=" + maxBufferMs + "ms}";
+    }
+}
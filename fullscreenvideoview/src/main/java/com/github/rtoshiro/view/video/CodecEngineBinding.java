@@ -0,0 +1,195 @@
+package com.github.rtoshiro.view.video;
+
+import android.os.Build;
+import android.view.Surface;
+
+import com.github.rtoshiro.view.video.FullscreenVideoView.DecoderBackend;
+import com.github.rtoshiro.view.video.FullscreenVideoView.State;
+
+import java.io.IOException;
+
+/**
+ * The {@link MediaCodecEngine} of a {@link FullscreenVideoView}, used instead of its player engine
+ * with {@link DecoderBackend#MEDIA_CODEC}. The engine is kept across sources so its decoder can
+ * be reused; it is active while the playback controller of the view uses it.
+ * Its events are forwarded to the engine callbacks of the view.
+ * Main thread only.
+ */
+public class CodecEngineBinding {
+
+    protected final FullscreenVideoView videoView;
+    protected DecoderBackend backend = DecoderBackend.MEDIA_PLAYER;
+    protected BufferingPolicy bufferingPolicy = BufferingPolicy.DEFAULT;
+    protected MediaCodecEngine engine;
+    protected final PlayerEngine.Listener listener = new EngineListener();
+
+    public CodecEngineBinding(FullscreenVideoView videoView) {
+        this.videoView = videoView;
+    }
+
+    /**
+     * @param backend MEDIA_PLAYER (default) or MEDIA_CODEC, used from the next source
+     */
+    public void setBackend(DecoderBackend backend) {
+        this.backend = backend;
+    }
+
+    public DecoderBackend getBackend() {
+        return backend;
+    }
+
+    public void setBufferingPolicy(BufferingPolicy policy) {
+        if (policy == null)
+            throw new IllegalArgumentException("policy must not be null");
+        this.bufferingPolicy = policy;
+    }
+
+    public BufferingPolicy getBufferingPolicy() {
+        return bufferingPolicy;
+    }
+
+    /**
+     * @return true if the next source is opened on the codec engine
+     */
+    public boolean isEnabled() {
+        return backend == DecoderBackend.MEDIA_CODEC && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN;
+    }
+
+    /**
+     * @return true if playback commands go to the codec engine
+     */
+    public boolean isActive() {
+        return engine != null && videoView.controller.getEngine() == engine;
+    }
+
+    /**
+     * @return the engine, kept while it exists even if not active, or null
+     */
+    public MediaCodecEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Opens the source on the engine, which takes the surface from the player engine,
+     * and moves the view to PREPARING
+     *
+     * @param source path or url, already through the proxy if any
+     */
+    public void open(String source) throws IOException {
+        if (engine == null) {
+            if (videoView.surfaceIsReady)
+                videoView.playerEngine.setDisplay(null);
+            engine = new MediaCodecEngine(videoView.getContext());
+            engine.setKeepCodec(true);
+            engine.setListener(listener);
+            if (videoView.surfaceIsReady)
+                engine.setSurface(videoView.renderTarget.getSurface());
+        }
+        engine.setBufferingPolicy(bufferingPolicy);
+        engine.setLooping(videoView.looping);
+        engine.setDataSource(source);
+
+        videoView.controller.setEngine(engine);
+        videoView.stateMachine.moveTo(State.INITIALIZED);
+        videoView.startPreparing();
+        engine.prepareAsync();
+    }
+
+    /**
+     * Resets the active engine, keeping its decoder for the next source,
+     * and gives the playback commands back to the player engine
+     */
+    public void reset() {
+        if (!isActive())
+            return;
+        engine.reset();
+        videoView.controller.setEngine(videoView.playerEngine);
+    }
+
+    /**
+     * Releases the engine, if any, and gives the surface back to the player engine
+     */
+    public void close() {
+        if (engine == null)
+            return;
+        release();
+        if (videoView.surfaceIsReady && videoView.playerEngine != null)
+            videoView.playerEngine.setDisplay(videoView.renderTarget);
+    }
+
+    /**
+     * Releases the engine, if any, leaving the surface alone
+     */
+    public void release() {
+        if (engine == null)
+            return;
+        engine.release();
+        engine = null;
+        videoView.controller.setEngine(videoView.playerEngine);
+    }
+
+    /**
+     * @return false if there is no engine, the player engine then owns the surface
+     */
+    public boolean setSurface(Surface surface) {
+        if (engine == null)
+            return false;
+        if (surface == null && engine.isPlaying())
+            engine.pause();
+        engine.setSurface(surface);
+        return true;
+    }
+
+    public void setLooping(boolean looping) {
+        if (engine != null)
+            engine.setLooping(looping);
+    }
+
+    /**
+     * Forwards the engine events to the view. Events of a previous source,
+     * delivered after reset(), are dropped.
+     */
+    protected class EngineListener implements PlayerEngine.Listener {
+        @Override
+        public void onPrepared(PlayerEngine engine) {
+            if (isActive())
+                videoView.onPrepared(engine);
+        }
+
+        @Override
+        public void onSeekComplete(PlayerEngine engine) {
+            if (isActive())
+                videoView.onSeekComplete(engine);
+        }
+
+        @Override
+        public void onCompletion(PlayerEngine engine) {
+            if (isActive())
+                videoView.onCompletion(engine);
+        }
+
+        @Override
+        public void onBufferingUpdate(PlayerEngine engine, int percent) {
+            if (isActive())
+                videoView.onBufferingUpdate(engine, percent);
+        }
+
+        @Override
+        public void onInfo(PlayerEngine engine, int what, int extra) {
+            if (isActive())
+                videoView.onInfo(engine, what, extra);
+        }
+
+        @Override
+        public void onError(PlayerEngine engine, int what, int extra) {
+            if (isActive())
+                videoView.onError(engine, what, extra);
+        }
+
+        @Override
+        public void onVideoSizeChanged(PlayerEngine engine, int width, int height) {
+            if (isActive())
+                videoView.onVideoSizeChanged(engine, width, height);
+        }
+    }
+}
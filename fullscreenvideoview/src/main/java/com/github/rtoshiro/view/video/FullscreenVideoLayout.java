@@ -2,8 +2,8 @@ package com.github.rtoshiro.view.video;
 
 import android.content.Context;
 import android.graphics.drawable.Drawable;
-import android.media.MediaPlayer;
-import android.os.Handler;
+import android.os.Build;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -17,13 +17,28 @@ import android.widget.TextView;
 
 import com.github.rtoshiro.R;
 
-public class FullscreenVideoLayout extends FullscreenVideoView implements View.OnClickListener, SeekBar.OnSeekBarChangeListener, MediaPlayer.OnPreparedListener, View.OnTouchListener {
+public class FullscreenVideoLayout extends FullscreenVideoView implements View.OnClickListener, SeekBar.OnSeekBarChangeListener, View.OnTouchListener {
 
     /**
      * Log cat TAG name
      */
     private final static String TAG = "FullscreenVideoLayout";
 
+    /**
+     * One SeekBar step per second (default)
+     */
+    public final static int PROGRESS_RESOLUTION_SECOND = 1000;
+
+    /**
+     * One SeekBar step per pixel of the bar
+     */
+    public final static int PROGRESS_RESOLUTION_PIXEL = 0;
+
+    /**
+     * Updates the SeekBar on every frame where its progress changes, while visible
+     */
+    public final static int PROGRESS_UPDATE_FRAME = 0;
+
     // Control views
     protected View videoControlsView;
     protected SeekBar seekBar;
@@ -33,26 +48,52 @@ public class FullscreenVideoLayout extends FullscreenVideoView implements View.O
 
     protected OnTouchListener touchListener;
 
-    // Counter
-    protected static final Handler TIME_THREAD = new Handler();
-    protected Runnable updateTimeRunnable = new Runnable() {
+    // Seeks while the SeekBar is dragged
+    protected boolean scrubPreview;
+
+    // Milliseconds per SeekBar step (requested and currently applied) and SeekBar update interval
+    protected int progressResolution = PROGRESS_RESOLUTION_SECOND;
+    protected int progressStep = PROGRESS_RESOLUTION_SECOND;
+    protected int progressUpdateInterval = 1000;
+
+    // Throttles secondary progress updates from OnBufferingUpdateListener
+    protected final static int BUFFER_UPDATE_INTERVAL = 500;
+    protected long lastBufferUpdate;
+    protected boolean bufferUpdatePending;
+    protected final Runnable bufferUpdateRunnable = new Runnable() {
+        @Override
         public void run() {
-            int elapsed = getCurrentPosition();
-            if (elapsed > 0) {
-                elapsed = elapsed / 1000;
-                seekBar.setProgress(elapsed);
+            bufferUpdatePending = false;
+            lastBufferUpdate = SystemClock.uptimeMillis();
+            seekBar.setSecondaryProgress(getBufferedPosition() / progressStep);
+        }
+    };
 
-                long s = elapsed % 60;
-                long m = (elapsed / 60) % 60;
-                long h = (elapsed / (60 * 60)) % 24;
+    // Reused by the counter, so each tick does not allocate Strings
+    protected final TimeFormatter elapsedFormatter = new TimeFormatter();
+    protected final TimeFormatter totalFormatter = new TimeFormatter();
+
+    // Counter
+    protected boolean counterRequested;
+    protected boolean attachedToWindow;
+    protected ProgressScheduler.Client counterClient = new ProgressScheduler.Client() {
+        @Override
+        public long onProgressTick() {
+            if (!isCounterActive())
+                return -1;
 
-                if (h > 0)
-                    textElapsed.setText(String.format("%d:%02d:%02d", h, m, s));
-                else
-                    textElapsed.setText(String.format("%02d:%02d", m, s));
+            int elapsed = getCurrentPosition();
+            if (elapsed > 0) {
+                seekBar.setProgress(elapsed / progressStep);
+                updateElapsedText(elapsed);
             }
 
-            TIME_THREAD.postDelayed(this, 500);
+            // Wakes up again exactly when the displayed second changes,
+            // or when the SeekBar moves one step (but not before progressUpdateInterval)
+            elapsed = Math.max(0, elapsed);
+            int textDelay = 1000 - elapsed % 1000;
+            int progressDelay = Math.max(progressUpdateInterval, progressStep - elapsed % progressStep);
+            return Math.min(textDelay, progressDelay);
         }
     };
 
@@ -95,16 +136,166 @@ public class FullscreenVideoLayout extends FullscreenVideoView implements View.O
         this.imgfullscreen.setOnClickListener(this);
         this.seekBar.setOnSeekBarChangeListener(this);
 
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            this.seekBar.addOnLayoutChangeListener(new OnLayoutChangeListener() {
+                @Override
+                public void onLayoutChange(View v, int left, int top, int right, int bottom, int oldLeft, int oldTop, int oldRight, int oldBottom) {
+                    // Per pixel resolution follows the SeekBar width
+                    if (progressResolution == PROGRESS_RESOLUTION_PIXEL && right - left != oldRight - oldLeft)
+                        updateProgressScale();
+                }
+            });
+        }
+
         // Start controls invisible. Make it visible when it is prepared
         this.videoControlsView.setVisibility(View.INVISIBLE);
     }
 
     protected void startCounter() {
-        TIME_THREAD.postDelayed(updateTimeRunnable, 500);
+        counterRequested = true;
+        updateCounter();
     }
 
     protected void stopCounter() {
-        TIME_THREAD.removeCallbacks(updateTimeRunnable);
+        counterRequested = false;
+        updateCounter();
+    }
+
+    /**
+     * The counter only runs while it is requested and someone can see it:
+     * view attached, window and view shown and controls VISIBLE.
+     */
+    protected boolean isCounterActive() {
+        return counterRequested &&
+                attachedToWindow &&
+                getWindowVisibility() == View.VISIBLE &&
+                isShown() &&
+                videoControlsView != null &&
+                videoControlsView.getVisibility() == View.VISIBLE &&
+                getCurrentState() == State.STARTED;
+    }
+
+    /**
+     * Registers or unregisters counterClient in the shared {@link ProgressScheduler}
+     * according to {@link #isCounterActive()}
+     */
+    protected void updateCounter() {
+        ProgressScheduler scheduler = ProgressScheduler.getInstance();
+        if (isCounterActive()) {
+            if (!scheduler.isScheduled(counterClient))
+                scheduler.schedule(counterClient, 0);
+        } else {
+            scheduler.cancel(counterClient);
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        attachedToWindow = true;
+        updateCounter();
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        updateCounter();
+    }
+
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        updateCounter();
+    }
+
+    /**
+     * Sets how many milliseconds one SeekBar step represents.
+     * The default of one second makes short clips jump and seeks snap to whole seconds.
+     *
+     * @param msec milliseconds per step, or {@link #PROGRESS_RESOLUTION_PIXEL} for one step per pixel of the bar
+     */
+    public void setProgressResolution(int msec) {
+        if (msec < 0)
+            throw new IllegalArgumentException("resolution must be >= 0");
+        this.progressResolution = msec;
+        updateProgressScale();
+    }
+
+    public int getProgressResolution() {
+        return progressResolution;
+    }
+
+    /**
+     * Sets the minimum interval between SeekBar updates while playing.
+     * The elapsed time label is updated once per second regardless of this value.
+     *
+     * @param msec interval in milliseconds, or {@link #PROGRESS_UPDATE_FRAME} to follow the display refresh
+     */
+    public void setProgressUpdateInterval(int msec) {
+        if (msec < 0)
+            throw new IllegalArgumentException("interval must be >= 0");
+        this.progressUpdateInterval = msec;
+
+        ProgressScheduler scheduler = ProgressScheduler.getInstance();
+        if (scheduler.isScheduled(counterClient))
+            scheduler.schedule(counterClient, 0);
+    }
+
+    public int getProgressUpdateInterval() {
+        return progressUpdateInterval;
+    }
+
+    /**
+     * Applies {@link #progressResolution} to the SeekBar, if the duration is known
+     */
+    protected void updateProgressScale() {
+        if (isInPlaybackState()) {
+            int total = getDuration();
+            if (total > 0)
+                updateProgressScale(total);
+        }
+    }
+
+    protected void updateProgressScale(int total) {
+        int step = progressResolution;
+        if (step == PROGRESS_RESOLUTION_PIXEL) {
+            int track = seekBar.getWidth() - seekBar.getPaddingLeft() - seekBar.getPaddingRight();
+            step = track > 0 ? Math.max(1, (total + track - 1) / track) : PROGRESS_RESOLUTION_SECOND;
+        }
+
+        int position = seekBar.getProgress() * progressStep;
+        progressStep = step;
+        seekBar.setMax(total / step);
+        seekBar.setProgress(position / step);
+        seekBar.setSecondaryProgress(getBufferedPosition() / step);
+    }
+
+    /**
+     * Shows the buffered amount as SeekBar secondary progress,
+     * at most once every {@link #BUFFER_UPDATE_INTERVAL} ms
+     */
+    @Override
+    protected void onBufferedChanged(int percent) {
+        if (bufferUpdatePending)
+            return;
+
+        long wait = lastBufferUpdate + BUFFER_UPDATE_INTERVAL - SystemClock.uptimeMillis();
+        if (wait <= 0) {
+            bufferUpdateRunnable.run();
+        } else {
+            bufferUpdatePending = true;
+            postDelayed(bufferUpdateRunnable, wait);
+        }
+    }
+
+    /**
+     * Updates textElapsed only when the displayed second has changed.
+     *
+     * @param msec elapsed time in milliseconds
+     */
+    protected void updateElapsedText(int msec) {
+        if (elapsedFormatter.update(msec))
+            textElapsed.setText(elapsedFormatter.chars(), 0, elapsedFormatter.length());
     }
 
     @Override
@@ -115,10 +306,14 @@ public class FullscreenVideoLayout extends FullscreenVideoView implements View.O
     @Override
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
+        attachedToWindow = false;
+        removeCallbacks(bufferUpdateRunnable);
+        bufferUpdatePending = false;
         if (getCurrentState() == State.END) {
             Log.d(TAG, "onDetachedFromWindow END");
             stopCounter();
-        }
+        } else
+            updateCounter();
     }
 
     @Override
@@ -127,39 +322,48 @@ public class FullscreenVideoLayout extends FullscreenVideoView implements View.O
         super.tryToPrepare();
 
         if (getCurrentState() == State.PREPARED) {
-            int total = getDuration();
-            if (total > 0) {
-                total = total / 1000;
-                seekBar.setMax(total);
-                seekBar.setProgress(0);
-
-                long s = total % 60;
-                long m = (total / 60) % 60;
-                long h = (total / (60 * 60)) % 24;
-                if (h > 0) {
-                    textElapsed.setText("00:00:00");
-                    textTotal.setText(String.format("%d:%02d:%02d", h, m, s));
-                } else {
-                    textElapsed.setText("00:00");
-                    textTotal.setText(String.format("%02d:%02d", m, s));
-                }
-            }
-
+            updateDurationViews();
             videoControlsView.setVisibility(View.VISIBLE);
         }
     }
 
+    @Override
+    protected void onCurrentMediaChanged() {
+        super.onCurrentMediaChanged();
+        updateDurationViews();
+    }
+
+    /**
+     * Resets the SeekBar and the time labels for the duration of the current media
+     */
+    protected void updateDurationViews() {
+        int total = getDuration();
+        if (total > 0) {
+            updateProgressScale(total);
+            seekBar.setProgress(0);
+
+            elapsedFormatter.invalidate();
+            if (total >= 60 * 60 * 1000)
+                textElapsed.setText("00:00:00");
+            else
+                textElapsed.setText("00:00");
+
+            if (totalFormatter.update(total))
+                textTotal.setText(totalFormatter.chars(), 0, totalFormatter.length());
+        }
+    }
+
     @Override
     public void start() throws IllegalStateException {
-        if (!isPlaying()) {
-            startCounter();
+        if (!isPlaybackRequested()) {
             super.start();
+            startCounter();
         }
     }
 
     @Override
     public void pause() throws IllegalStateException {
-        if (isPlaying()) {
+        if (isPlaybackRequested()) {
             stopCounter();
             super.pause();
         }
@@ -171,6 +375,12 @@ public class FullscreenVideoLayout extends FullscreenVideoView implements View.O
         stopCounter();
     }
 
+    @Override
+    public void releasePlayer() {
+        super.releasePlayer();
+        stopCounter();
+    }
+
     @Override
     public void stop() throws IllegalStateException {
         super.stop();
@@ -180,11 +390,13 @@ public class FullscreenVideoLayout extends FullscreenVideoView implements View.O
     public void hideControls() {
         if (videoControlsView != null)
             videoControlsView.setVisibility(View.INVISIBLE);
+        updateCounter();
     }
 
     public void showControls() {
         if (videoControlsView != null)
             videoControlsView.setVisibility(View.VISIBLE);
+        updateCounter();
     }
 
     @Override
@@ -207,7 +419,8 @@ public class FullscreenVideoLayout extends FullscreenVideoView implements View.O
     public void onClick(View v) {
         if (v.getId() == R.id.vcv_img_play) {
             Drawable drawable;
-            if (isPlaying()) {
+            // During a seek, isPlaying() is false even if playback resumes after it
+            if (isPlaybackRequested()) {
                 drawable = context.getResources().getDrawable(R.drawable.fvl_selector_play);
                 pause();
             } else {
@@ -222,17 +435,38 @@ public class FullscreenVideoLayout extends FullscreenVideoView implements View.O
 
     @Override
     public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
-
+        if (fromUser && isScrubbing()) {
+            // Fast, inexact seeks while dragging. Collapsed by the seek scheduler.
+            seekTo(progress * progressStep, false);
+            updateElapsedText(progress * progressStep);
+        }
     }
 
     @Override
     public void onStartTrackingTouch(SeekBar seekBar) {
         stopCounter();
+        if (scrubPreview)
+            beginScrubbing();
     }
 
     @Override
     public void onStopTrackingTouch(SeekBar seekBar) {
-        int progress = seekBar.getProgress() * 1000;
+        int progress = seekBar.getProgress() * progressStep;
         seekTo(progress);
+        endScrubbing();
+    }
+
+    /**
+     * Shows the video under the finger while the SeekBar is dragged.
+     * Seeks are sent to the closest sync frame during the drag and to the exact position on release.
+     *
+     * @param enabled true to seek while dragging, false to seek only on release (default)
+     */
+    public void setScrubPreviewEnabled(boolean enabled) {
+        this.scrubPreview = enabled;
+    }
+
+    public boolean isScrubPreviewEnabled() {
+        return scrubPreview;
     }
 }
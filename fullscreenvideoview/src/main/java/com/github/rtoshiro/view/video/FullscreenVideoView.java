@@ -4,24 +4,29 @@ package com.github.rtoshiro.view.video;
 import android.app.Activity;
 import android.content.Context;
 import android.content.pm.ActivityInfo;
+import android.content.res.TypedArray;
 import android.graphics.Color;
-import android.media.AudioManager;
 import android.media.MediaPlayer;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.Log;
-import android.view.SurfaceHolder;
-import android.view.SurfaceView;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.ViewParent;
 import android.widget.ProgressBar;
 import android.widget.RelativeLayout;
 
+import com.github.rtoshiro.R;
+
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
 
 /**
  * Acts like a {@link android.widget.VideoView} with fullscreen funcionality
@@ -30,7 +35,7 @@ import java.io.IOException;
  * @version 2015.0527
  * @since 1.7
  */
-public class FullscreenVideoView extends RelativeLayout implements SurfaceHolder.Callback, MediaPlayer.OnPreparedListener, MediaPlayer.OnErrorListener, MediaPlayer.OnSeekCompleteListener, MediaPlayer.OnCompletionListener {
+public class FullscreenVideoView extends RelativeLayout implements RenderTarget.Callback, PlayerEngine.Listener {
 
     /**
      * Debug Tag for use logging debug output to LogCat
@@ -40,13 +45,14 @@ public class FullscreenVideoView extends RelativeLayout implements SurfaceHolder
     protected Context context;
     protected Activity activity;
 
-    protected MediaPlayer mediaPlayer;
-    protected SurfaceHolder surfaceHolder;
-    protected SurfaceView surfaceView;
+    // Every player call goes through it: see createPlayerEngine()
+    protected PlayerEngine playerEngine;
+    protected RenderTarget renderTarget;
+    protected RenderBackend renderBackend = RenderBackend.SURFACE_VIEW;
     protected boolean videoIsReady, surfaceIsReady;
     protected boolean detachedByFullscreen;
-    protected State currentState;
-    protected State lastState; // Tells onSeekCompletion what to do
+    // Current state and the state to restore after seekTo()
+    protected final PlaybackStateMachine stateMachine = new PlaybackStateMachine();
 
     protected View loadingView;
 
@@ -55,11 +61,179 @@ public class FullscreenVideoView extends RelativeLayout implements SurfaceHolder
     protected boolean isFullscreen;
     protected int initialConfigOrientation;
     protected int initialMovieWidth, initialMovieHeight;
+    protected FullscreenMode fullscreenMode = FullscreenMode.REPARENT;
+    protected VideoScaler.ScaleMode scaleMode = VideoScaler.ScaleMode.FIT;
+    protected float fixedAspectRatio = 16f / 9f;
+
+    // Coalesces resize requests into one resize() per frame
+    protected final ResizeTracker resizeTracker = new ResizeTracker();
+    protected final Runnable resizeRunnable = new Runnable() {
+        @Override
+        public void run() {
+            resizeTracker.onScheduledResize();
+            resize();
+        }
+    };
+    protected int inPlaceWidth, inPlaceHeight, inPlaceSystemUiVisibility;
+    protected final ArrayList<View> hiddenSiblings = new ArrayList<View>();
+
+    // Reports the layout pass that follows a fullscreen() toggle to playbackMetrics
+    protected final Runnable fullscreenLaidOutRunnable = new Runnable() {
+        @Override
+        public void run() {
+            playbackMetrics.onFullscreenLaidOut(SystemClock.elapsedRealtime());
+        }
+    };
 
+    // Listeners set with setOn...Listener(). Each one is also registered in the matching registry below.
     protected MediaPlayer.OnErrorListener errorListener;
     protected MediaPlayer.OnPreparedListener preparedListener;
     protected MediaPlayer.OnSeekCompleteListener seekCompleteListener;
     protected MediaPlayer.OnCompletionListener completionListener;
+    protected MediaPlayer.OnBufferingUpdateListener bufferingUpdateListener;
+    protected MediaPlayer.OnInfoListener infoListener;
+    protected MediaPlayer.OnVideoSizeChangedListener videoSizeChangedListener;
+    protected PlaybackStateMachine.Listener stateChangedListener;
+
+    // Every observer of this view: set with setOn...Listener() or added with addOn...Listener()
+    protected final ListenerRegistry<MediaPlayer.OnPreparedListener> preparedListeners = new ListenerRegistry<MediaPlayer.OnPreparedListener>();
+    protected final ListenerRegistry<MediaPlayer.OnErrorListener> errorListeners = new ListenerRegistry<MediaPlayer.OnErrorListener>();
+    protected final ListenerRegistry<MediaPlayer.OnSeekCompleteListener> seekCompleteListeners = new ListenerRegistry<MediaPlayer.OnSeekCompleteListener>();
+    protected final ListenerRegistry<MediaPlayer.OnCompletionListener> completionListeners = new ListenerRegistry<MediaPlayer.OnCompletionListener>();
+    protected final ListenerRegistry<MediaPlayer.OnBufferingUpdateListener> bufferingUpdateListeners = new ListenerRegistry<MediaPlayer.OnBufferingUpdateListener>();
+    protected final ListenerRegistry<MediaPlayer.OnInfoListener> infoListeners = new ListenerRegistry<MediaPlayer.OnInfoListener>();
+    protected final ListenerRegistry<MediaPlayer.OnVideoSizeChangedListener> videoSizeChangedListeners = new ListenerRegistry<MediaPlayer.OnVideoSizeChangedListener>();
+    protected final ListenerRegistry<PlaybackStateMachine.Listener> stateChangedListeners = new ListenerRegistry<PlaybackStateMachine.Listener>();
+
+    // Applied to every player engine this view creates or adopts
+    protected boolean looping;
+    protected float leftVolume = -1, rightVolume = -1;
+
+    // Lazy initialization: player engine, render target and loading view are created on first use
+    protected static boolean defaultLazyInit;
+    protected boolean lazyInit;
+
+    // Optional MediaPlayer recycling
+    protected static MediaPlayerPool defaultMediaPlayerPool;
+    protected MediaPlayerPool mediaPlayerPool;
+
+    // Optional source of already prepared players
+    protected MediaPlayerPreloader preloader;
+    protected boolean preloaded;
+
+    // Optional queue: the next item is prepared on a second player while the current one plays
+    protected final PlaylistHandOff playlist = new PlaylistHandOff(this);
+
+    // Last percentage reported by OnBufferingUpdateListener
+    protected volatile int bufferPercentage;
+
+    // Startup, seek, stall and error counters
+    protected final PlaybackMetrics playbackMetrics = new PlaybackMetrics();
+
+    // Start, pause, stop and seeks (one in flight at a time, intermediate targets collapsed),
+    // sent to playerEngine or to the codec engine
+    protected final PlaybackController controller = new PlaybackController(stateMachine, playbackMetrics, new PlaybackController.Clock() {
+        @Override
+        public long now() {
+            return SystemClock.elapsedRealtime();
+        }
+    });
+
+    // MediaCodec decoder, used instead of playerEngine with DecoderBackend.MEDIA_CODEC
+    protected final CodecEngineBinding codecBinding = new CodecEngineBinding(this);
+
+    // Optional thread for MediaPlayer commands, given to each MediaPlayerEngine. Callbacks still arrive on the main thread.
+    protected static PlayerThread defaultPlayerThread;
+    protected PlayerThread playerThread;
+    protected final static Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Source given to setVideoPath()/setVideoURI(), saved with the instance state
+    protected PlaylistQueue.Item currentSource;
+
+    // Position to seek to once prepared (restored instance state), -1 for none
+    protected int resumePosition = -1;
+    protected boolean resumePlaying;
+    protected static ResumePositionStore defaultResumePositionStore;
+    protected ResumePositionStore resumePositionStore;
+    protected final Runnable resumeStartRunnable = new Runnable() {
+        @Override
+        public void run() {
+            State state = stateMachine.getState();
+            if (state == State.PREPARED || state == State.PAUSED)
+                start();
+        }
+    };
+
+    // Optional disk cache for http(s) sources, and the prefetcher told which sources are played
+    protected static HttpCacheProxy defaultHttpCacheProxy;
+    protected static VideoPrefetcher defaultPrefetcher;
+
+    // Poster shown above the render target until the first frame is rendered
+    protected static PosterLoader defaultPosterLoader;
+    protected final PosterOverlay poster = new PosterOverlay(this);
+
+    // Routes sources through the proxy, or an HlsSession of it that switches variants by segment
+    protected final SourceRouter sourceRouter = new SourceRouter(new HlsSession.Listener() {
+        @Override
+        public void onVariantChanged(final HlsSession session, final HlsMasterPlaylist.Variant variant) {
+            runOnMainThread(new Runnable() {
+                @Override
+                public void run() {
+                    if (session == sourceRouter.getSession())
+                        onRenditionChanged(variant);
+                }
+            });
+        }
+    });
+
+    /**
+     * How fullscreen() makes the view fill the screen
+     */
+    public enum FullscreenMode
+    {
+        /**
+         * Moves the view to the root view. The surface is destroyed and playback is paused during the toggle.
+         */
+        REPARENT,
+        /**
+         * Expands the view inside its parent. The surface and the decoder keep running.
+         */
+        IN_PLACE
+    }
+
+    /**
+     * The view used to render the video
+     */
+    public enum RenderBackend
+    {
+        /**
+         * {@link SurfaceViewRenderTarget}
+         */
+        SURFACE_VIEW,
+        /**
+         * {@link TextureViewRenderTarget}, falls back to SURFACE_VIEW before API 14
+         */
+        TEXTURE_VIEW
+    }
+
+    /**
+     * The decoder used for the sources set after setDecoderBackend()
+     */
+    public enum DecoderBackend
+    {
+        /**
+         * android.media.MediaPlayer
+         */
+        MEDIA_PLAYER,
+        /**
+         * {@link MediaCodecEngine}: starts as soon as the {@link BufferingPolicy} allows, keeps
+         * its decoder between sources. Falls back to MEDIA_PLAYER before API 16.
+         * Video only: audio is not played and setVolume() is ignored. There is no MediaPlayer,
+         * so the MediaPlayer listeners are not called: use the state listeners and
+         * {@link FullscreenVideoView#getPlaybackMetrics()}.
+         */
+        MEDIA_CODEC
+    }
 
     /**
      States of MediaPlayer
@@ -83,6 +257,7 @@ public class FullscreenVideoView extends RelativeLayout implements SurfaceHolder
         super(context);
         this.context = context;
 
+        initAttributes(null);
         init();
     }
 
@@ -90,6 +265,7 @@ public class FullscreenVideoView extends RelativeLayout implements SurfaceHolder
         super(context, attrs);
         this.context = context;
 
+        initAttributes(attrs);
         init();
     }
 
@@ -97,9 +273,24 @@ public class FullscreenVideoView extends RelativeLayout implements SurfaceHolder
         super(context, attrs, defStyleAttr);
         this.context = context;
 
+        initAttributes(attrs);
         init();
     }
 
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+
+        // Detached before: lazy views go back to IDLE and create the player on first use,
+        // pooled views take a player back from the pool
+        if (playerEngine == null && (lazyInit || mediaPlayerPool != null) && stateMachine.moveTo(State.END, State.IDLE)) {
+            if (!lazyInit) {
+                Log.d(TAG, "onAttachedToWindow - acquiring pooled MediaPlayer");
+                setPlayerEngine(createPlayerEngine());
+            }
+        }
+    }
+
     @Override
     protected void onDetachedFromWindow() {
         Log.d(TAG, "onDetachedFromWindow - detachedByFullscreen: " + detachedByFullscreen);
@@ -107,225 +298,1112 @@ public class FullscreenVideoView extends RelativeLayout implements SurfaceHolder
         super.onDetachedFromWindow();
 
         if (!detachedByFullscreen) {
-            if (mediaPlayer != null) {
-                mediaPlayer.setOnPreparedListener(null);
-
-                if (mediaPlayer.isPlaying())
-                    mediaPlayer.stop();
-                mediaPlayer.release();
-                mediaPlayer = null;
+            flushResumePosition();
+            removeCallbacks(resumeStartRunnable);
+            if (playerEngine != null) {
+                playerEngine.setListener(null);
+
+                playlist.release();
+                if (keepPlayerWarm())
+                    sourceRouter.forgetSession(); // still read by the kept player
+                else
+                    disposePlayer(playerEngine);
+                playerEngine = null;
             }
+            sourceRouter.close();
+            codecBinding.release();
+            if (renderTarget != null)
+                renderTarget.releaseSurface();
+            playbackMetrics.onPlaybackStopped(SystemClock.elapsedRealtime());
             videoIsReady = false;
             surfaceIsReady = false;
-            currentState = State.END;
+            cancelSeeks();
+            stateMachine.moveTo(State.END);
+            currentSource = null;
+            hidePoster();
         }
 
         detachedByFullscreen = false;
     }
 
+    /**
+     * When the activity is recreated for a configuration change, gives the prepared player
+     * to the {@link #preloader}, so the new view adopts it in setVideoPath()/setVideoURI()
+     * with the same source instead of preparing again.
+     *
+     * @return true if the preloader took the player
+     */
+    protected boolean keepPlayerWarm() {
+        Activity a = activity != null ? activity : (context instanceof Activity ? (Activity) context : null);
+        if (preloader == null || currentSource == null || a == null || !isInPlaybackState() || codecBinding.isActive() ||
+                !(playerEngine instanceof MediaPlayerEngine) ||
+                Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB || !a.isChangingConfigurations())
+            return false;
+
+        if (surfaceIsReady)
+            playerEngine.setDisplay(null);
+        if (!preloader.keep(currentSource.getSource(), ((MediaPlayerEngine) playerEngine).getMediaPlayer()))
+            return false;
+
+        Log.d(TAG, "keeping player of " + currentSource + " for the recreated view");
+        if (stateMachine.getState() == State.STARTED)
+            playerEngine.pause();
+        return true;
+    }
+
     @Override
-    synchronized public void surfaceCreated(SurfaceHolder holder) {
-        Log.d(TAG, "surfaceCreated called = " + currentState);
+    protected Parcelable onSaveInstanceState() {
+        SavedState ss = new SavedState(super.onSaveInstanceState());
+        if (currentSource != null) {
+            ss.source = currentSource.getSource();
+            ss.uri = currentSource.isUri();
+            State state = stateMachine.getState();
+            if (state == State.PLAYBACKCOMPLETED) {
+                ss.position = -1;
+            } else if (isInPlaybackState()) {
+                ss.position = getCurrentPosition();
+                ss.playing = state == State.STARTED;
+            } else {
+                // Not prepared yet: keep what was restored before
+                ss.position = resumePosition;
+                ss.playing = resumePlaying;
+            }
+        }
+        return ss;
+    }
 
-        mediaPlayer.setDisplay(surfaceHolder);
+    /**
+     * Restores the source and position. If no source was set yet, the saved one is opened;
+     * if the same source was set, it is resumed once prepared.
+     */
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof SavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+
+        SavedState ss = (SavedState) state;
+        super.onRestoreInstanceState(ss.getSuperState());
+        if (ss.source == null)
+            return;
+
+        if (currentSource != null && !currentSource.getSource().equals(ss.source))
+            return;
+
+        resumePosition = ss.position;
+        resumePlaying = ss.playing;
+
+        if (currentSource == null && stateMachine.getState() == State.IDLE) {
+            try {
+                if (ss.uri)
+                    setVideoURI(Uri.parse(ss.source));
+                else
+                    setVideoPath(ss.source);
+            } catch (IOException e) {
+                Log.e(TAG, "Could not restore " + ss.source, e);
+                resumePosition = -1;
+                resumePlaying = false;
+            }
+        } else if (stateMachine.getState() == State.PREPARED) {
+            applyResumePosition();
+        }
+    }
+
+    /**
+     * Seeks to the restored position, or to the one saved in {@link #resumePositionStore}.
+     * Called once the video is PREPARED.
+     */
+    protected void applyResumePosition() {
+        int position = resumePosition;
+        boolean playing = resumePlaying;
+        resumePosition = -1;
+        resumePlaying = false;
+
+        if (position < 0 && resumePositionStore != null && currentSource != null)
+            position = resumePositionStore.get(currentSource.getSource());
+
+        if (position > 0 && position < getDuration()) {
+            Log.d(TAG, "resuming at " + position + "ms");
+            seekTo(position);
+        }
+        // Posted, like the playlist autostart, so subclasses see PREPARED first
+        if (playing)
+            post(resumeStartRunnable);
+    }
+
+    /**
+     * Saves the current position in {@link #resumePositionStore}, if any.
+     * The store writes it to disk later, on its own thread.
+     */
+    protected void saveResumePosition() {
+        if (resumePositionStore == null || currentSource == null)
+            return;
+
+        State state = stateMachine.getState();
+        if (state == State.PLAYBACKCOMPLETED) {
+            resumePositionStore.remove(currentSource.getSource());
+        } else if (isInPlaybackState()) {
+            // Live streams have no position to come back to
+            if (isLiveStream())
+                return;
+            int position = getCurrentPosition();
+            if (position > 0)
+                resumePositionStore.put(currentSource.getSource(), position);
+        }
+    }
+
+    /**
+     * Saves the current position and has the store write it now, in the background
+     */
+    protected void flushResumePosition() {
+        saveResumePosition();
+        if (resumePositionStore != null)
+            resumePositionStore.flush();
+    }
+
+    /**
+     * Sets the position to seek to, and whether to start, once the current or next source is PREPARED.
+     * Replaces the position restored from the instance state.
+     *
+     * @param msec position, or -1 to use {@link #resumePositionStore}
+     * @param play true to start playing once prepared
+     */
+    public void setResumePosition(int msec, boolean play) {
+        resumePosition = msec;
+        resumePlaying = play;
+        if (!play)
+            removeCallbacks(resumeStartRunnable);
+    }
+
+    /**
+     * Gives the MediaPlayer back (to the pool, if any) and goes back to IDLE, freeing its decoder.
+     * The next setVideoPath()/setVideoURI() acquires a new player.
+     * Used to keep only a few decoders alive among many views, e.g. in a list.
+     */
+    public void releasePlayer() {
+        if (playerEngine == null)
+            return;
+
+        flushResumePosition();
+        cancelSeeks();
+        playlist.release();
+        playlist.cancelAutoStart();
+        removeCallbacks(resumeStartRunnable);
+
+        if (surfaceIsReady)
+            playerEngine.setDisplay(null);
+        disposePlayer(playerEngine);
+        playerEngine = null;
+        codecBinding.release();
+        sourceRouter.close();
+
+        playbackMetrics.onPlaybackStopped(SystemClock.elapsedRealtime());
+        videoIsReady = false;
+        currentSource = null;
+        stopLoading();
+        hidePoster();
+        stateMachine.moveTo(State.IDLE);
+    }
+
+    /**
+     * Sets the store used by every FullscreenVideoView created after this call
+     *
+     * @param store the store, or null
+     */
+    public static void setDefaultResumePositionStore(ResumePositionStore store) {
+        defaultResumePositionStore = store;
+    }
+
+    public static ResumePositionStore getDefaultResumePositionStore() {
+        return defaultResumePositionStore;
+    }
+
+    /**
+     * Positions are saved there when the video is paused or the view detached, and
+     * used when the same source is prepared again. Completed videos are removed.
+     *
+     * @param store the store, or null
+     */
+    public void setResumePositionStore(ResumePositionStore store) {
+        this.resumePositionStore = store;
+    }
+
+    public ResumePositionStore getResumePositionStore() {
+        return resumePositionStore;
+    }
+
+    /**
+     * Source and position kept by onSaveInstanceState(). The view needs an id.
+     */
+    protected static class SavedState extends BaseSavedState {
+        String source;
+        boolean uri;
+        int position = -1;
+        boolean playing;
+
+        SavedState(Parcelable superState) {
+            super(superState);
+        }
+
+        private SavedState(Parcel in) {
+            super(in);
+            source = in.readString();
+            uri = in.readInt() != 0;
+            position = in.readInt();
+            playing = in.readInt() != 0;
+        }
+
+        @Override
+        public void writeToParcel(Parcel out, int flags) {
+            super.writeToParcel(out, flags);
+            out.writeString(source);
+            out.writeInt(uri ? 1 : 0);
+            out.writeInt(position);
+            out.writeInt(playing ? 1 : 0);
+        }
+
+        public static final Parcelable.Creator<SavedState> CREATOR = new Parcelable.Creator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(Parcel in) {
+                return new SavedState(in);
+            }
+
+            @Override
+            public SavedState[] newArray(int size) {
+                return new SavedState[size];
+            }
+        };
+    }
+
+    @Override
+    synchronized public void onRenderSurfaceAvailable(RenderTarget target) {
+        Log.d(TAG, "onRenderSurfaceAvailable called = " + stateMachine.getState());
+
+        // The surface has a single producer: the codec engine while it exists, or the player engine
+        if (!codecBinding.setSurface(target.getSurface()) && playerEngine != null)
+            playerEngine.setDisplay(target);
+
+        playbackMetrics.onFullscreenSurfaceReady(SystemClock.elapsedRealtime());
 
         // If is not prepared yet - tryToPrepare()
         if (!surfaceIsReady)
         {
             surfaceIsReady = true;
-            if (currentState != State.PREPARED &&
-                    currentState != State.PAUSED &&
-                    currentState != State.STARTED &&
-                    currentState != State.PLAYBACKCOMPLETED)
+            State state = stateMachine.getState();
+            if (state != State.PREPARED &&
+                    state != State.PAUSED &&
+                    state != State.STARTED &&
+                    state != State.PLAYBACKCOMPLETED)
                 tryToPrepare();
         }
     }
 
+    /**
+     * First frame of the source on the TextureView backend, also before API 17
+     */
     @Override
-    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
-        Log.d(TAG, "surfaceChanged called");
+    public void onRenderFirstFrame(RenderTarget target) {
+        playbackMetrics.onFirstFrame(SystemClock.elapsedRealtime());
     }
 
     @Override
-    public void surfaceDestroyed(SurfaceHolder holder) {
-        Log.d(TAG, "surfaceDestroyed called");
-        if (mediaPlayer != null && mediaPlayer.isPlaying())
-            mediaPlayer.pause();
+    public void onRenderSurfaceDestroyed(RenderTarget target) {
+        Log.d(TAG, "onRenderSurfaceDestroyed called");
+        if (!codecBinding.setSurface(null) && playerEngine != null && stateMachine.getState() == State.STARTED)
+            playerEngine.pause();
 
         surfaceIsReady = false;
     }
 
     @Override
-    synchronized public void onPrepared(MediaPlayer mp) {
+    synchronized public void onPrepared(PlayerEngine engine) {
         Log.d(TAG, "onPrepared called");
+        playbackMetrics.onPrepared(SystemClock.elapsedRealtime());
         videoIsReady = true;
         tryToPrepare();
 
-        if (this.preparedListener != null)
-            this.preparedListener.onPrepared(mp);
+        dispatchPrepared(mediaPlayerOf(engine));
     }
 
     /**
-     * Restore the last State before seekTo()
+     * Restore the last State before seekTo(), once every pending seek has completed
      *
-     * @param mp the MediaPlayer that issued the seek operation
+     * @param engine the engine that issued the seek operation
      */
     @Override
-    public void onSeekComplete(MediaPlayer mp) {
+    public void onSeekComplete(PlayerEngine engine) {
         Log.d(TAG, "onSeekComplete");
 
+        // Sends the latest collapsed target, if any, before releasing this seek
+        if (controller.onSeekComplete())
+            dispatchSeekComplete(mediaPlayerOf(engine));
+    }
+
+    /**
+     * Drops running, pending and scrub seeks
+     */
+    protected void cancelSeeks() {
+        controller.cancelSeeks();
+    }
+
+    /**
+     * Restores the state saved by the first of a series of seeks.
+     * Goes through start(), so subclasses see the resume.
+     *
+     * @param resumeState the state before the first of these seeks
+     */
+    protected void finishSeek(State resumeState) {
         stopLoading();
-        switch (lastState)
-        {
-            case STARTED:
-            {
-                start();
-                break;
-            }
-            case PAUSED:
-            {
-                pause();
-                break;
-            }
-            case PLAYBACKCOMPLETED:
-            {
-                currentState = State.PLAYBACKCOMPLETED;
-                break;
-            }
-            case PREPARED:
-            {
-                currentState = State.PREPARED;
-                break;
-            }
+        if (resumeState == State.STARTED && stateMachine.getState() == State.PAUSED)
+            start();
+    }
+
+    @Override
+    public void onCompletion(PlayerEngine engine) {
+        if (!looping && resumePositionStore != null && currentSource != null)
+            resumePositionStore.remove(currentSource.getSource());
+
+        // Playlist: continues with the next item instead of completing
+        if (!looping && playlist.onCompletion()) {
+            playbackMetrics.onCompletion();
+            return;
         }
 
-        if (this.seekCompleteListener != null)
-            this.seekCompleteListener.onSeekComplete(mp);
+        controller.onCompletion(looping);
+
+        dispatchCompletion(mediaPlayerOf(engine));
     }
 
+
+    /**
+     * Handles resolution changes in the middle of the stream (adaptive streaming)
+     */
     @Override
-    public void onCompletion(MediaPlayer mp) {
-        if (!this.mediaPlayer.isLooping())
-            this.currentState = State.PLAYBACKCOMPLETED;
-        else
-            this.currentState = State.STARTED;
+    public void onVideoSizeChanged(PlayerEngine engine, int width, int height) {
+        if (videoIsReady && width > 0 && height > 0 &&
+                (width != initialMovieWidth || height != initialMovieHeight)) {
+            Log.d(TAG, "onVideoSizeChanged " + width + "x" + height);
+            initialMovieWidth = width;
+            initialMovieHeight = height;
+            requestResize();
+        }
+
+        dispatchVideoSizeChanged(mediaPlayerOf(engine), width, height);
+    }
+
+    /**
+     * Keeps the buffered percentage, then forwards it to the buffering listeners
+     */
+    @Override
+    public void onBufferingUpdate(PlayerEngine engine, int percent) {
+        if (percent != bufferPercentage) {
+            bufferPercentage = percent;
+            onBufferedChanged(percent);
+        }
+
+        dispatchBufferingUpdate(mediaPlayerOf(engine), percent);
+    }
 
-        if (this.completionListener != null)
-            this.completionListener.onCompletion(mp);
+    /**
+     * Called when the buffered percentage changes. Subclasses can show it.
+     *
+     * @param percent percentage of the content buffered, 0-100
+     */
+    protected void onBufferedChanged(int percent) {
     }
 
+    /**
+     * Feeds {@link #playbackMetrics} with first frame and buffering events
+     */
+    @Override
+    public void onInfo(PlayerEngine engine, int what, int extra) {
+        long now = SystemClock.elapsedRealtime();
+        switch (what)
+        {
+            case PlayerEngine.INFO_VIDEO_RENDERING_START:
+                playbackMetrics.onFirstFrame(now);
+                hidePoster();
+                break;
+            case PlayerEngine.INFO_BUFFERING_START:
+                playbackMetrics.onStallStarted(now);
+                break;
+            case PlayerEngine.INFO_BUFFERING_END:
+                playbackMetrics.onStallEnded(now);
+                break;
+        }
+
+        dispatchInfo(mediaPlayerOf(engine), what, extra);
+    }
 
     @Override
-    public boolean onError(MediaPlayer mp, int what, int extra) {
+    public void onError(PlayerEngine engine, int what, int extra) {
         Log.d(TAG, "onError called");
 
         stopLoading();
-        this.currentState = State.ERROR;
+        cancelSeeks();
+        stateMachine.moveTo(State.ERROR);
+        playbackMetrics.onPlaybackStopped(SystemClock.elapsedRealtime());
+        playbackMetrics.onError(what, extra);
 
-        if (this.errorListener != null)
-            return this.errorListener.onError(mp, what, extra);
-        return false;
+        dispatchError(mediaPlayerOf(engine), what, extra);
+    }
+
+    /**
+     * @return the MediaPlayer of engine, passed to the MediaPlayer listeners, or null if it has none
+     */
+    protected static MediaPlayer mediaPlayerOf(PlayerEngine engine) {
+        return engine instanceof MediaPlayerEngine ? ((MediaPlayerEngine) engine).getMediaPlayer() : null;
+    }
+
+    /**
+     * Reads XML attributes. Called by constructors before init()
+     *
+     * @param attrs the attributes of the XML tag, or null
+     */
+    protected void initAttributes(AttributeSet attrs) {
+        this.lazyInit = defaultLazyInit;
+
+        if (attrs != null) {
+            TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.FullscreenVideoView);
+            try {
+                this.lazyInit = a.getBoolean(R.styleable.FullscreenVideoView_fvv_lazyInit, this.lazyInit);
+                this.renderBackend = RenderBackend.values()[a.getInt(R.styleable.FullscreenVideoView_fvv_renderBackend, this.renderBackend.ordinal())];
+                this.scaleMode = VideoScaler.ScaleMode.values()[a.getInt(R.styleable.FullscreenVideoView_fvv_scaleMode, this.scaleMode.ordinal())];
+                this.fixedAspectRatio = a.getFloat(R.styleable.FullscreenVideoView_fvv_fixedAspectRatio, this.fixedAspectRatio);
+                this.fullscreenMode = FullscreenMode.values()[a.getInt(R.styleable.FullscreenVideoView_fvv_fullscreenMode, this.fullscreenMode.ordinal())];
+            } finally {
+                a.recycle();
+            }
+        }
     }
 
     /**
      * Initializes the UI
      */
     protected void init() {
-        this.currentState = State.IDLE;
+        controller.setHost(new PlaybackController.Host() {
+            @Override
+            public void onSeekStarted(boolean scrubbing) {
+                // Live scrubbing does not flash the loading view
+                if (!scrubbing)
+                    startLoading();
+            }
+
+            @Override
+            public void onSeeksFinished(State resumeState) {
+                finishSeek(resumeState);
+            }
+        });
+        stateMachine.setListener(new PlaybackStateMachine.Listener() {
+            @Override
+            public void onStateChanged(State from, State to) {
+                dispatchStateChanged(from, to);
+            }
+        });
         this.isFullscreen = false;
         this.initialConfigOrientation = -1;
         this.setBackgroundColor(Color.BLACK);
 
-        this.mediaPlayer = new MediaPlayer();
-
-        this.surfaceView = new SurfaceView(context);
-        RelativeLayout.LayoutParams layoutParams = new RelativeLayout.LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT);
-        layoutParams.addRule(CENTER_IN_PARENT);
-        this.surfaceView.setLayoutParams(layoutParams);
-        addView(this.surfaceView);
-
-        this.surfaceHolder = this.surfaceView.getHolder();
-        //noinspection deprecation
-        this.surfaceHolder.setType(SurfaceHolder.SURFACE_TYPE_PUSH_BUFFERS);
-        this.surfaceHolder.addCallback(this);
-
-        this.loadingView = new ProgressBar(context);
-        layoutParams = new RelativeLayout.LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT);
-        layoutParams.addRule(CENTER_IN_PARENT);
-        this.loadingView.setLayoutParams(layoutParams);
-        addView(this.loadingView);
+        this.mediaPlayerPool = defaultMediaPlayerPool;
+        setPlayerThread(defaultPlayerThread);
+        this.resumePositionStore = defaultResumePositionStore;
+        sourceRouter.setProxy(defaultHttpCacheProxy);
+        sourceRouter.setPrefetcher(defaultPrefetcher);
+        poster.setLoader(defaultPosterLoader);
+        poster.setScaleMode(scaleMode);
+        if (!lazyInit)
+            initPlayer();
 
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
             this.addOnLayoutChangeListener(new OnLayoutChangeListener() {
                 @Override
                 public void onLayoutChange(View v, int left, int top, int right, int bottom, int oldLeft, int oldTop, int oldRight, int oldBottom) {
-                    Log.i(TAG, "onLayoutChange");
-
-                    Handler handler = new Handler(Looper.getMainLooper());
-                    handler.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            resize();
-                        }
-                    });
+                    requestResize();
                 }
             });
         }
     }
 
     /**
-     * Calls prepare() method of MediaPlayer
+     * Schedules a resize() for the next frame.
+     * Several calls before that frame result in a single resize().
+     */
+    public void requestResize() {
+        if (!resizeTracker.request())
+            return;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+            postOnAnimation(resizeRunnable);
+        else
+            post(resizeRunnable);
+    }
+
+    /**
+     * Creates the heavyweight objects: player engine, render target and loading view.
+     * Called by init(), or by the first setVideoPath()/setVideoURI() when lazyInit is set.
+     * Objects that already exist are kept.
+     */
+    protected void initPlayer() {
+        if (this.renderTarget == null)
+            addRenderTarget(createRenderTarget());
+
+        if (this.loadingView == null) {
+            this.loadingView = new ProgressBar(context);
+            RelativeLayout.LayoutParams layoutParams = new RelativeLayout.LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT);
+            layoutParams.addRule(CENTER_IN_PARENT);
+            this.loadingView.setLayoutParams(layoutParams);
+            // Above the render target and the poster
+            addView(this.loadingView, poster.getImageView() != null ? indexOfChild(poster.getImageView()) + 1 : 1);
+        }
+
+        if (this.playerEngine == null)
+            setPlayerEngine(createPlayerEngine());
+    }
+
+    /**
+     * Creates the render target for {@link #renderBackend}
+     */
+    protected RenderTarget createRenderTarget() {
+        if (renderBackend == RenderBackend.TEXTURE_VIEW && Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+            return new TextureViewRenderTarget(context);
+        return new SurfaceViewRenderTarget(context);
+    }
+
+    /**
+     * Adds the render target view as the first child, below every other view
+     */
+    protected void addRenderTarget(RenderTarget target) {
+        this.renderTarget = target;
+        View view = target.getView();
+        RelativeLayout.LayoutParams layoutParams = new RelativeLayout.LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT);
+        layoutParams.addRule(CENTER_IN_PARENT);
+        view.setLayoutParams(layoutParams);
+        addView(view, 0);
+        target.setCallback(this);
+    }
+
+    /**
+     * Sets the view used to render the video. Also available as XML attribute app:fvv_renderBackend.
+     * If the render target already exists, it is replaced and the video is shown again
+     * as soon as the new surface is available.
+     */
+    public void setRenderBackend(RenderBackend renderBackend) {
+        if (this.renderBackend == renderBackend)
+            return;
+
+        this.renderBackend = renderBackend;
+        if (this.renderTarget != null) {
+            RenderTarget old = this.renderTarget;
+            old.setCallback(null);
+            if (playerEngine != null)
+                playerEngine.setDisplay(null);
+            removeView(old.getView());
+            old.releaseSurface();
+
+            surfaceIsReady = false;
+            addRenderTarget(createRenderTarget());
+            resizeTracker.invalidate();
+            resize();
+        }
+    }
+
+    public RenderBackend getRenderBackend() {
+        return renderBackend;
+    }
+
+    public RenderTarget getRenderTarget() {
+        return renderTarget;
+    }
+
+    /**
+     * Applies listener, looping and volume set on this view to the current player engine
+     */
+    protected void applyPlayerSettings() {
+        codecBinding.setLooping(looping);
+
+        playerEngine.setListener(this);
+        playerEngine.setLooping(looping);
+        if (leftVolume >= 0 && rightVolume >= 0)
+            playerEngine.setVolume(leftVolume, rightVolume);
+    }
+
+    /**
+     * Makes engine the current player engine, with the settings of this view and the surface
+     * if it is available. Commands go to it unless the codec engine is active.
+     */
+    protected void setPlayerEngine(PlayerEngine engine) {
+        boolean codecActive = codecBinding.isActive();
+        playerEngine = engine;
+        if (!codecActive)
+            controller.setEngine(engine);
+        applyPlayerSettings();
+        // The codec engine keeps the surface while it exists
+        if (surfaceIsReady && codecBinding.getEngine() == null)
+            engine.setDisplay(renderTarget);
+    }
+
+    /**
+     * Creates the engine of the next player: a {@link MediaPlayerEngine} on a new or pooled
+     * MediaPlayer, running its commands on {@link #playerThread}. Subclasses can return another
+     * {@link PlayerEngine}, e.g. a fake one to test or benchmark the view without MediaPlayer.
+     */
+    protected PlayerEngine createPlayerEngine() {
+        return createMediaPlayerEngine(obtainMediaPlayer());
+    }
+
+    /**
+     * Wraps a player of this view, or one adopted from {@link #preloader}
+     */
+    protected MediaPlayerEngine createMediaPlayerEngine(MediaPlayer mp) {
+        MediaPlayerEngine engine = new MediaPlayerEngine(context, mp);
+        engine.setPool(mediaPlayerPool);
+        engine.setPlayerThread(playerThread);
+        return engine;
+    }
+
+    /**
+     * Sets the player thread used by every FullscreenVideoView created after this call
+     *
+     * @param thread the thread (e.g. {@link PlayerThread#getShared()}), or null to call MediaPlayer directly
+     */
+    public static void setDefaultPlayerThread(PlayerThread thread) {
+        defaultPlayerThread = thread;
+    }
+
+    /**
+     * Runs start(), pause(), stop(), reset(), seekTo(), setDataSource(), prepareAsync() and
+     * release() of the MediaPlayer on this thread, in call order, so the calling thread never
+     * blocks on them. State changes are still applied right away, and callbacks still arrive
+     * on the main thread. Errors of setDataSource() and of the other commands are reported
+     * through OnErrorListener, and the commands queued after a failure are skipped.
+     * Applies to the players created after this call: should be set before the first source.
+     *
+     * @param thread the thread, or null to call MediaPlayer on the caller thread (default)
+     * @see MediaPlayerEngine#setPlayerThread(Executor)
+     */
+    public void setPlayerThread(PlayerThread thread) {
+        this.playerThread = thread;
+    }
+
+    public PlayerThread getPlayerThread() {
+        return playerThread;
+    }
+
+    /**
+     * Checks if the player engine is available. Used by every public method.
+     *
+     * @return true if the engine exists, false if it was not created yet (lazy initialization)
+     * @throws RuntimeException if the engine has already been released
+     */
+    protected boolean checkPlayer() {
+        if (playerEngine != null)
+            return true;
+        if (stateMachine.getState() == State.IDLE)
+            return false;
+        throw new RuntimeException("Media Player is not initialized");
+    }
+
+    /**
+     * Sets the lazy initialization mode for every FullscreenVideoView created after this call.
+     * Also available as XML attribute app:fvv_lazyInit.
+     *
+     * @param lazyInit true to create MediaPlayer and SurfaceView on first setVideoPath()/setVideoURI()
+     */
+    public static void setDefaultLazyInit(boolean lazyInit) {
+        defaultLazyInit = lazyInit;
+    }
+
+    public boolean isLazyInit() {
+        return lazyInit;
+    }
+
+    /**
+     * Creates a new MediaPlayer, or takes one from {@link #mediaPlayerPool} if it is set
+     */
+    protected MediaPlayer obtainMediaPlayer() {
+        if (mediaPlayerPool != null)
+            return mediaPlayerPool.acquire();
+        return new MediaPlayer();
+    }
+
+    /**
+     * Releases an engine that is not used anymore. A {@link MediaPlayerEngine} gives its
+     * player back to {@link #mediaPlayerPool}, if any.
+     */
+    protected void disposePlayer(PlayerEngine engine) {
+        engine.setListener(null);
+        if (engine instanceof MediaPlayerEngine)
+            ((MediaPlayerEngine) engine).setPool(mediaPlayerPool);
+        engine.release();
+    }
+
+    /**
+     * Sets the pool used by every FullscreenVideoView created after this call.
+     * Pooled views acquire a MediaPlayer when attached and reset() and return
+     * it to the pool when detached, instead of releasing it.
+     *
+     * @param pool the pool, or null to disable pooling for new views
+     */
+    public static void setDefaultMediaPlayerPool(MediaPlayerPool pool) {
+        defaultMediaPlayerPool = pool;
+    }
+
+    public static MediaPlayerPool getDefaultMediaPlayerPool() {
+        return defaultMediaPlayerPool;
+    }
+
+    /**
+     * Sets the pool used by this view.
+     * If the current player has not been used yet (IDLE), it is replaced by a pooled one.
+     *
+     * @param pool the pool, or null to disable pooling for this view
+     */
+    public void setMediaPlayerPool(MediaPlayerPool pool) {
+        if (this.mediaPlayerPool == pool)
+            return;
+
+        if (playerEngine != null && stateMachine.getState() == State.IDLE) {
+            if (surfaceIsReady)
+                playerEngine.setDisplay(null);
+            disposePlayer(playerEngine);
+            this.mediaPlayerPool = pool;
+            setPlayerEngine(createPlayerEngine());
+        } else
+            this.mediaPlayerPool = pool;
+    }
+
+    public MediaPlayerPool getMediaPlayerPool() {
+        return mediaPlayerPool;
+    }
+
+    /**
+     * Calls prepareAsync() of the player engine
      */
     protected void prepare() throws IllegalStateException {
+        startPreparing();
+        playerEngine.prepareAsync();
+    }
+
+    /**
+     * Resets what this view knows of the source and moves to PREPARING state
+     */
+    protected void startPreparing() {
         startLoading();
 
         this.videoIsReady = false;
         this.initialMovieHeight = -1;
         this.initialMovieWidth = -1;
+        this.bufferPercentage = 0;
+        playbackMetrics.onPrepareStarted(SystemClock.elapsedRealtime(), preloaded);
+        if (renderTarget != null)
+            renderTarget.expectFirstFrame();
+        // Seeks sent before are not completed anymore
+        controller.onEngineReset();
+
+        stateMachine.moveTo(State.PREPARING);
+    }
 
-        this.mediaPlayer.setOnPreparedListener(this);
-        this.mediaPlayer.setOnErrorListener(this);
-        this.mediaPlayer.setOnSeekCompleteListener(this);
-        this.mediaPlayer.setOnCompletionListener(this);
-        this.mediaPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
+    /**
+     * Uses the player preloaded for this source, if {@link #preloader} has one.
+     * The current (unused) player is given back and the preloaded one goes
+     * straight to PREPARING or PREPARED, without calling prepareAsync() again.
+     *
+     * @param key uri.toString() or the path of the source
+     * @return true if a preloaded player was adopted
+     */
+    protected boolean adoptPreloadedPlayer(String key) {
+        if (preloader == null)
+            return false;
 
-        this.currentState = State.PREPARING;
-        this.mediaPlayer.prepareAsync();
+        MediaPlayerPreloader.Entry entry = preloader.take(key);
+        if (entry == null)
+            return false;
+
+        Log.d(TAG, "adopting preloaded player - prepared: " + entry.isPrepared());
+
+        if (playerEngine != null) {
+            if (surfaceIsReady)
+                playerEngine.setDisplay(null);
+            disposePlayer(playerEngine);
+        }
+
+        // Its prepared and error listeners move from the entry to the engine
+        MediaPlayerEngine engine = createMediaPlayerEngine(entry.getMediaPlayer());
+        setPlayerEngine(engine);
+
+        preloaded = true;
+        stateMachine.moveTo(State.INITIALIZED);
+        startPreparing();
+
+        // Reported by the engine, which reads the player values first
+        if (entry.isPrepared())
+            engine.onPrepared(entry.getMediaPlayer());
+        return true;
+    }
+
+    /**
+     * Players preloaded by this preloader are used by setVideoURI()/setVideoPath()
+     * when the source matches.
+     *
+     * @param preloader the preloader, or null
+     */
+    public void setPreloader(MediaPlayerPreloader preloader) {
+        this.preloader = preloader;
+    }
+
+    public MediaPlayerPreloader getPreloader() {
+        return preloader;
+    }
+
+    /**
+     * Sets the proxy used by every FullscreenVideoView created after this call
+     *
+     * @param proxy a started proxy, or null
+     */
+    public static void setDefaultHttpCacheProxy(HttpCacheProxy proxy) {
+        defaultHttpCacheProxy = proxy;
+    }
+
+    /**
+     * http(s) sources set after this call are read through the proxy and its disk cache.
+     *
+     * @param proxy a started proxy, or null to read sources directly
+     */
+    public void setHttpCacheProxy(HttpCacheProxy proxy) {
+        sourceRouter.setProxy(proxy);
+    }
+
+    public HttpCacheProxy getHttpCacheProxy() {
+        return sourceRouter.getProxy();
+    }
+
+    /**
+     * Sets the prefetcher used by every FullscreenVideoView created after this call
+     *
+     * @param prefetcher a prefetcher of the default proxy, or null
+     */
+    public static void setDefaultPrefetcher(VideoPrefetcher prefetcher) {
+        defaultPrefetcher = prefetcher;
+    }
+
+    /**
+     * Sources prefetched into the cache of the {@link #getHttpCacheProxy() proxy} start from disk.
+     * The prefetcher is told which sources are played, so it stops downloading them and counts its hits.
+     *
+     * @param prefetcher a prefetcher of the same proxy, or null
+     */
+    public void setPrefetcher(VideoPrefetcher prefetcher) {
+        sourceRouter.setPrefetcher(prefetcher);
+    }
+
+    public VideoPrefetcher getPrefetcher() {
+        return sourceRouter.getPrefetcher();
+    }
+
+    /**
+     * Sets the poster loader used by every FullscreenVideoView created after this call
+     *
+     * @param loader the loader, or null for no posters
+     */
+    public static void setDefaultPosterLoader(PosterLoader loader) {
+        defaultPosterLoader = loader;
+    }
+
+    public static PosterLoader getDefaultPosterLoader() {
+        return defaultPosterLoader;
+    }
+
+    /**
+     * With a loader, setVideoPath()/setVideoURI() show a poster frame of the source until
+     * the first video frame is rendered, instead of a black view.
+     *
+     * @param loader the loader, usually shared by all views, or null for no posters
+     */
+    public void setPosterLoader(PosterLoader loader) {
+        poster.setLoader(loader);
+    }
+
+    public PosterLoader getPosterLoader() {
+        return poster.getLoader();
+    }
+
+    /**
+     * Image shown as poster instead of a frame of the video, from the next poster on
+     *
+     * @param imageUrl http(s) url, content uri or file path, or null to extract a frame
+     */
+    public void setPosterImageUrl(String imageUrl) {
+        poster.setImageUrl(imageUrl);
+    }
+
+    public String getPosterImageUrl() {
+        return poster.getImageUrl();
+    }
+
+    /**
+     * Shows the poster of a source: at once if it is in the memory cache, otherwise when loaded.
+     * Called by setVideoPath()/setVideoURI(); call it for views that do not play yet, e.g. in a list.
+     * Hidden on the first rendered frame, reset() and releasePlayer().
+     *
+     * @param source the video path or uri
+     */
+    public void showPoster(String source) {
+        poster.show(source);
+    }
+
+    /**
+     * Hides the poster and cancels its loading
+     */
+    public void hidePoster() {
+        poster.hide();
+    }
+
+    /**
+     * @return true if a poster is shown
+     */
+    public boolean isPosterShown() {
+        return poster.isShown();
+    }
+
+    /**
+     * HLS sources (.m3u8) set after this call go through an {@link HlsSession} of the
+     * {@link #getHttpCacheProxy() proxy}, which picks the variant of each segment from the measured
+     * bandwidth. Without a proxy, MediaPlayer plays them itself.
+     *
+     * @param adaptiveStreaming true to switch variants by segment
+     */
+    public void setAdaptiveStreaming(boolean adaptiveStreaming) {
+        sourceRouter.setAdaptiveStreaming(adaptiveStreaming);
+    }
+
+    public boolean isAdaptiveStreaming() {
+        return sourceRouter.isAdaptiveStreaming();
+    }
+
+    /**
+     * @return the session of the current HLS source, or null. Gives the variants and can fix one.
+     */
+    public HlsSession getHlsSession() {
+        return sourceRouter.getSession();
+    }
+
+    /**
+     * @return the variant playing (or about to), or null if the source is not adaptive
+     */
+    public HlsMasterPlaylist.Variant getCurrentRendition() {
+        HlsSession session = sourceRouter.getSession();
+        return session != null ? session.getCurrentVariant() : null;
+    }
+
+    /**
+     * Called on the main thread when the next segments come from another variant.
+     * Subclasses can show the quality.
+     *
+     * @param variant the new variant
+     */
+    protected void onRenditionChanged(HlsMasterPlaylist.Variant variant) {
+        Log.d(TAG, "rendition " + variant);
+    }
+
+    /**
+     * @return true if the source is a live stream: a live HLS session, or no duration
+     */
+    public boolean isLiveStream() {
+        HlsSession session = sourceRouter.getSession();
+        if (session != null && session.isLive())
+            return true;
+        return isInPlaybackState() && getDuration() == -1;
+    }
+
+    /**
+     * Goes back to the live edge. MediaPlayer can not seek in live streams, so the source is
+     * opened again: live playlists start near their end. Keeps playing if it was.
+     *
+     * @return false if the source is not live
+     */
+    public boolean seekToLiveEdge() {
+        PlaylistQueue.Item source = currentSource;
+        if (source == null || !isLiveStream())
+            return false;
+
+        boolean play = stateMachine.getState() == State.STARTED;
+        reset();
+        setResumePosition(-1, play);
+        try {
+            if (source.isUri())
+                setVideoURI(Uri.parse(source.getSource()));
+            else
+                setVideoPath(source.getSource());
+        } catch (IOException e) {
+            Log.e(TAG, "Could not reopen " + source, e);
+            onError(playerEngine, PlayerEngine.ERROR_UNKNOWN, PlayerEngine.ERROR_IO);
+            return false;
+        }
+        return true;
     }
 
     /**
      * Try to call state PREPARED
-     * Only if SurfaceView is already created and MediaPlayer is prepared
+     * Only if the render surface is already created and MediaPlayer is prepared
      * Video is loaded and is ok to play.
      */
     protected void tryToPrepare() {
         if (this.surfaceIsReady && this.videoIsReady) {
-            if (this.mediaPlayer != null)
+            PlayerEngine engine = controller.getEngine();
+            if (engine != null)
             {
-                this.initialMovieWidth = this.mediaPlayer.getVideoWidth();
-                this.initialMovieHeight = this.mediaPlayer.getVideoHeight();
+                this.initialMovieWidth = engine.getVideoWidth();
+                this.initialMovieHeight = engine.getVideoHeight();
             }
 
+            playbackMetrics.onReady(SystemClock.elapsedRealtime());
+
             resize();
             stopLoading();
-            currentState = State.PREPARED;
+            // No MEDIA_INFO_VIDEO_RENDERING_START before API 17
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR1)
+                hidePoster();
+            stateMachine.moveTo(State.PREPARED);
+            applyResumePosition();
+
+            playlist.onPrepared();
         }
     }
 
+    /**
+     * Called when the player is replaced by the one of the next playlist item, without preparing.
+     * Subclasses showing duration or position should refresh them.
+     */
+    protected void onCurrentMediaChanged() {
+    }
+
     protected void startLoading() {
-        this.loadingView.setVisibility(View.VISIBLE);
+        if (this.loadingView != null)
+            this.loadingView.setVisibility(View.VISIBLE);
     }
 
     protected void stopLoading() {
-        this.loadingView.setVisibility(View.GONE);
+        if (this.loadingView != null)
+            this.loadingView.setVisibility(View.GONE);
+    }
+
+    /**
+     * Get the current {@link FullscreenVideoView.State}.
+     * @return
+     */
+    public State getCurrentState() {
+        return stateMachine.getState();
     }
 
     /**
-     * Get the current {@link FullscreenVideoView.State}.
-     * @return
+     * Listens to every state change of this view, on the thread that caused it
+     * (the main thread for user calls and MediaPlayer callbacks)
+     *
+     * @param l the listener, or null
      */
-    synchronized public State getCurrentState() {
-        return currentState;
+    public void setOnStateChangedListener(PlaybackStateMachine.Listener l) {
+        stateChangedListener = replaceListener(stateChangedListeners, stateChangedListener, l);
     }
 
     public void setActivity(Activity activity) {
@@ -333,49 +1411,94 @@ public class FullscreenVideoView extends RelativeLayout implements SurfaceHolder
         this.initialConfigOrientation = activity.getRequestedOrientation();
     }
 
+    /**
+     * Sizes the video inside the parent according to {@link #scaleMode}.
+     * Does nothing if neither the parent, the view nor the video size changed since the last call.
+     */
     public void resize() {
-        if (initialMovieHeight == -1 || initialMovieWidth == -1)
+        if (initialMovieHeight == -1 || initialMovieWidth == -1 || renderTarget == null)
+            return;
+
+        if (!(getParent() instanceof View))
             return;
 
         View currentParent = (View) getParent();
+        if (resizeTracker.update(scaleMode, fixedAspectRatio, initialMovieWidth, initialMovieHeight,
+                currentParent.getWidth(), currentParent.getHeight(), getWidth(), getHeight()))
+            renderTarget.applyContentSize(resizeTracker.getWidth(), resizeTracker.getHeight());
+    }
 
-        float videoProportion = (float) initialMovieWidth / (float) initialMovieHeight;
+    /**
+     * Sets how the video fills the view. Also available as XML attribute app:fvv_scaleMode.
+     * On the TextureView backend, changing it only updates the texture transform.
+     */
+    public void setScaleMode(VideoScaler.ScaleMode scaleMode) {
+        if (this.scaleMode == scaleMode)
+            return;
 
-        int screenWidth = currentParent.getWidth();
-        int screenHeight = currentParent.getHeight();
-        float screenProportion = (float) screenWidth / (float) screenHeight;
+        this.scaleMode = scaleMode;
+        poster.setScaleMode(scaleMode);
+        resizeTracker.invalidate();
+        resize();
+    }
 
-        int newWidth, newHeight;
-        if (videoProportion > screenProportion) {
-            newWidth = screenWidth;
-            newHeight = (int) ((float) screenWidth / videoProportion);
-        } else {
-            newWidth = (int) (videoProportion * (float) screenHeight);
-            newHeight = screenHeight;
-        }
+    public VideoScaler.ScaleMode getScaleMode() {
+        return scaleMode;
+    }
+
+    /**
+     * Sets the aspect ratio (width / height) used by {@link VideoScaler.ScaleMode#FIXED_RATIO}.
+     * Also available as XML attribute app:fvv_fixedAspectRatio.
+     */
+    public void setFixedAspectRatio(float fixedAspectRatio) {
+        if (this.fixedAspectRatio == fixedAspectRatio)
+            return;
 
-        ViewGroup.LayoutParams lp = surfaceView.getLayoutParams();
-        if (lp.width != newWidth || lp.height != newHeight) {
-            lp.width = newWidth;
-            lp.height = newHeight;
-            surfaceView.setLayoutParams(lp);
+        this.fixedAspectRatio = fixedAspectRatio;
+        if (scaleMode == VideoScaler.ScaleMode.FIXED_RATIO) {
+            resizeTracker.invalidate();
+            resize();
         }
     }
 
+    public float getFixedAspectRatio() {
+        return fixedAspectRatio;
+    }
+
     /**
      * Toggles view to fullscreen mode
-     * It saves currentState and calls pause() method.
+     * In {@link FullscreenMode#REPARENT} mode, it saves currentState and calls pause() method.
      * When fullscreen is finished, it calls the saved currentState before pause()
      * In practice, it only affects STARTED state.
      * If currenteState was STARTED when fullscreen() is called, it calls start() method
      * after fullscreen() has ended.
+     * In {@link FullscreenMode#IN_PLACE} mode, playback is not interrupted.
      */
     public void fullscreen() throws IllegalStateException {
-        if (mediaPlayer == null) throw new RuntimeException("Media Player is not initialized");
+        // IN_PLACE and render targets that survive reparenting keep the surface
+        boolean surfaceRecreated = fullscreenMode != FullscreenMode.IN_PLACE
+                && renderTarget != null && !renderTarget.keepsSurfaceWhenDetached();
+        playbackMetrics.onFullscreenToggleStarted(SystemClock.elapsedRealtime(), surfaceRecreated);
+
+        if (fullscreenMode == FullscreenMode.IN_PLACE)
+            fullscreenInPlace();
+        else
+            fullscreenReparent();
+
+        post(fullscreenLaidOutRunnable);
+    }
+
+    /**
+     * Moves this view to the root view (and back).
+     * The surface is destroyed and recreated unless the render target keeps it while detached.
+     */
+    protected void fullscreenReparent() {
+        // A render target that survives reparenting does not need to pause the player
+        boolean keepsSurface = renderTarget != null && renderTarget.keepsSurfaceWhenDetached();
+        boolean wasPlaying = !keepsSurface && checkPlayer() && isPlaying();
 
         detachedByFullscreen = true;
 
-        boolean wasPlaying = mediaPlayer.isPlaying();
         if (wasPlaying)
             pause();
 
@@ -419,18 +1542,95 @@ public class FullscreenVideoView extends RelativeLayout implements SurfaceHolder
 
         resize();
 
-        if (wasPlaying && mediaPlayer != null)
+        if (wasPlaying && playerEngine != null)
             start();
     }
 
+    /**
+     * Expands this view to fill its parent (and back), hiding the other children of the parent.
+     * The view is not detached, so the surface and the decoder keep running.
+     * For a real fullscreen, the parent should fill the window.
+     */
+    protected void fullscreenInPlace() {
+        ViewParent viewParent = getParent();
+        if (!(viewParent instanceof ViewGroup)) {
+            Log.e(TAG, "Parent View is not a ViewGroup");
+            return;
+        }
+
+        ViewGroup parent = (ViewGroup) viewParent;
+        ViewGroup.LayoutParams lp = getLayoutParams();
+
+        if (!isFullscreen) {
+            isFullscreen = true;
+
+            if (activity != null)
+                activity.setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_UNSPECIFIED);
+
+            inPlaceWidth = lp.width;
+            inPlaceHeight = lp.height;
+            lp.width = LayoutParams.MATCH_PARENT;
+            lp.height = LayoutParams.MATCH_PARENT;
+
+            hiddenSiblings.clear();
+            for (int i = 0; i < parent.getChildCount(); i++) {
+                View child = parent.getChildAt(i);
+                if (child != this && child.getVisibility() == View.VISIBLE) {
+                    child.setVisibility(View.GONE);
+                    hiddenSiblings.add(child);
+                }
+            }
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                inPlaceSystemUiVisibility = getSystemUiVisibility();
+                setSystemUiVisibility(inPlaceSystemUiVisibility |
+                        View.SYSTEM_UI_FLAG_FULLSCREEN |
+                        View.SYSTEM_UI_FLAG_HIDE_NAVIGATION);
+            }
+        } else {
+            isFullscreen = false;
+
+            if (activity != null)
+                activity.setRequestedOrientation(initialConfigOrientation);
+
+            lp.width = inPlaceWidth;
+            lp.height = inPlaceHeight;
+
+            for (View child : hiddenSiblings)
+                child.setVisibility(View.VISIBLE);
+            hiddenSiblings.clear();
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+                setSystemUiVisibility(inPlaceSystemUiVisibility);
+        }
+
+        setLayoutParams(lp);
+    }
+
+    /**
+     * Sets how fullscreen() works. Also available as XML attribute app:fvv_fullscreenMode.
+     * It should not be changed while in fullscreen.
+     */
+    public void setFullscreenMode(FullscreenMode fullscreenMode) {
+        this.fullscreenMode = fullscreenMode;
+    }
+
+    public FullscreenMode getFullscreenMode() {
+        return fullscreenMode;
+    }
+
+    public boolean isFullscreen() {
+        return isFullscreen;
+    }
+
     /**
      * {@link MediaPlayer} method (getCurrentPosition)
      * http://developer.android.com/reference/android/media/MediaPlayer.html#getCurrentPosition%28%29
      */
     public int getCurrentPosition() {
-        if (mediaPlayer != null)
-            return mediaPlayer.getCurrentPosition();
-        else throw new RuntimeException("Media Player is not initialized");
+        if (checkPlayer())
+            return controller.getEngine().getCurrentPosition();
+        return 0;
     }
 
     /**
@@ -438,9 +1638,9 @@ public class FullscreenVideoView extends RelativeLayout implements SurfaceHolder
      * http://developer.android.com/reference/android/media/MediaPlayer.html#getDuration%28%29
      */
     public int getDuration() {
-        if (mediaPlayer != null)
-            return mediaPlayer.getDuration();
-        else throw new RuntimeException("Media Player is not initialized");
+        if (checkPlayer())
+            return controller.getEngine().getDuration();
+        return -1;
     }
 
     /**
@@ -448,9 +1648,9 @@ public class FullscreenVideoView extends RelativeLayout implements SurfaceHolder
      * http://developer.android.com/reference/android/media/MediaPlayer.html#getVideoHeight%28%29
      */
     public int getVideoHeight() {
-        if (mediaPlayer != null)
-            return mediaPlayer.getVideoHeight();
-        else throw new RuntimeException("Media Player is not initialized");
+        if (checkPlayer())
+            return controller.getEngine().getVideoHeight();
+        return 0;
     }
 
     /**
@@ -458,19 +1658,20 @@ public class FullscreenVideoView extends RelativeLayout implements SurfaceHolder
      * http://developer.android.com/reference/android/media/MediaPlayer.html#getVideoWidth%28%29
      */
     public int getVideoWidth() {
-        if (mediaPlayer != null)
-            return mediaPlayer.getVideoWidth();
-        else throw new RuntimeException("Media Player is not initialized");
+        if (checkPlayer())
+            return controller.getEngine().getVideoWidth();
+        return 0;
     }
 
     /**
      * {@link MediaPlayer} method (isLooping)
      * http://developer.android.com/reference/android/media/MediaPlayer.html#isLooping%28%29
+     * <p>
+     * The value set with {@link #setLooping(boolean)}: with a player thread it may not be
+     * applied to the player yet, and reading it back would block on the player.
      */
     public boolean isLooping() {
-        if (mediaPlayer != null)
-            return mediaPlayer.isLooping();
-        else throw new RuntimeException("Media Player is not initialized");
+        return looping;
     }
 
     /**
@@ -478,9 +1679,17 @@ public class FullscreenVideoView extends RelativeLayout implements SurfaceHolder
      * http://developer.android.com/reference/android/media/MediaPlayer.html#isLooping%28%29
      */
     public boolean isPlaying() throws IllegalStateException {
-        if (mediaPlayer != null)
-            return mediaPlayer.isPlaying();
-        else throw new RuntimeException("Media Player is not initialized");
+        if (!checkPlayer())
+            return false;
+        return controller.getEngine().isPlaying();
+    }
+
+    /**
+     * @return true if playing, or if playback resumes once the running seeks complete.
+     * Play/pause toggles should use this: isPlaying() is false while a seek holds playback.
+     */
+    public boolean isPlaybackRequested() {
+        return checkPlayer() && controller.isPlaybackRequested();
     }
 
     /**
@@ -488,11 +1697,13 @@ public class FullscreenVideoView extends RelativeLayout implements SurfaceHolder
      * http://developer.android.com/reference/android/media/MediaPlayer.html#pause%28%29
      */
     public void pause() throws IllegalStateException {
-        if (mediaPlayer != null) {
-            currentState = State.PAUSED;
-            mediaPlayer.pause();
+        if (checkPlayer()) {
+            // A pause during a seek wins over the state saved by seekTo()
+            if (!controller.pause())
+                Log.d(TAG, "pause() ignored in state " + stateMachine.getState());
+            saveResumePosition();
         }
-        else throw new RuntimeException("Media Player is not initialized");
+        else throw new IllegalStateException("FullscreenVideoView Invalid State: " + stateMachine.getState());
     }
 
     /**
@@ -500,11 +1711,23 @@ public class FullscreenVideoView extends RelativeLayout implements SurfaceHolder
      * http://developer.android.com/reference/android/media/MediaPlayer.html#reset%28%29
      */
     public void reset() {
-        if (mediaPlayer != null) {
-            currentState = State.IDLE;
-            mediaPlayer.reset();
+        if (checkPlayer()) {
+            cancelSeeks();
+            playlist.release();
+            playlist.cancelAutoStart();
+            saveResumePosition();
+            currentSource = null;
+            resumePosition = -1;
+            resumePlaying = false;
+            removeCallbacks(resumeStartRunnable);
+            hidePoster();
+            stateMachine.moveTo(State.IDLE);
+            codecBinding.reset();
+            sourceRouter.close();
+            playerEngine.reset();
+            playbackMetrics.onPlaybackStopped(SystemClock.elapsedRealtime());
+            applyPlayerSettings();
         }
-        else throw new RuntimeException("Media Player is not initialized");
     }
 
     /**
@@ -512,11 +1735,11 @@ public class FullscreenVideoView extends RelativeLayout implements SurfaceHolder
      * http://developer.android.com/reference/android/media/MediaPlayer.html#start%28%29
      */
     public void start() throws IllegalStateException {
-        if (mediaPlayer != null) {
-            currentState = State.STARTED;
-            mediaPlayer.start();
+        if (checkPlayer()) {
+            if (!controller.start())
+                Log.d(TAG, "start() ignored in state " + stateMachine.getState());
         }
-        else throw new RuntimeException("Media Player is not initialized");
+        else throw new IllegalStateException("FullscreenVideoView Invalid State: " + stateMachine.getState());
     }
 
     /**
@@ -524,118 +1747,568 @@ public class FullscreenVideoView extends RelativeLayout implements SurfaceHolder
      * http://developer.android.com/reference/android/media/MediaPlayer.html#stop%28%29
      */
     public void stop() throws IllegalStateException {
-        if (mediaPlayer != null) {
-            currentState = State.STOPPED;
-            mediaPlayer.stop();
+        if (checkPlayer()) {
+            if (!controller.stop())
+                Log.d(TAG, "stop() ignored in state " + stateMachine.getState());
         }
-        else throw new RuntimeException("Media Player is not initialized");
+        else throw new IllegalStateException("FullscreenVideoView Invalid State: " + stateMachine.getState());
     }
 
     /**
      * {@link MediaPlayer} method (seekTo)
      * http://developer.android.com/reference/android/media/MediaPlayer.html#stop%28%29
      *
-     * It calls pause() method before calling MediaPlayer.seekTo()
+     * It pauses playback before calling MediaPlayer.seekTo(). When every pending seek
+     * has completed, the state before the first one is restored.
+     * Ignored in states where MediaPlayer does not accept seeks.
      *
      * @param msec the offset in milliseconds from the start to seek to
      * @throws IllegalStateException if the internal player engine has not been initialized
      */
     public void seekTo(int msec) throws IllegalStateException{
-        if (mediaPlayer != null) {
-            // No live streaming
-            if (mediaPlayer.getDuration() > -1 && msec <= mediaPlayer.getDuration())
-            {
-                lastState = currentState;
-                pause();
-                mediaPlayer.seekTo(msec);
+        seekTo(msec, true);
+    }
 
-                startLoading();
-            }
+    /**
+     * Seeks through the {@link PlaybackController}: only one seek runs at a time and, while it runs,
+     * only the latest target is kept.
+     *
+     * @param msec  the offset in milliseconds from the start to seek to
+     * @param exact true for the exact position, false for the closest sync frame, which is faster.
+     *              Both are the same before API 26, where MediaPlayer has a single seek mode.
+     * @throws IllegalStateException if the internal player engine has not been initialized
+     */
+    public void seekTo(int msec, boolean exact) throws IllegalStateException {
+        if (checkPlayer()) {
+            if (!controller.seekTo(msec, exact))
+                Log.d(TAG, "seekTo(" + msec + ") ignored in state " + stateMachine.getState());
         }
-        else throw new RuntimeException("Media Player is not initialized");
+        else throw new IllegalStateException("FullscreenVideoView Invalid State: " + stateMachine.getState());
+    }
+
+    /**
+     * Starts a scrub: playback pauses and is not resumed by the seeks issued until
+     * {@link #endScrubbing()}, which restores the state from before this call.
+     * Used by {@link FullscreenVideoLayout} while the SeekBar is dragged.
+     */
+    public void beginScrubbing() {
+        if (checkPlayer())
+            controller.beginScrubbing();
+    }
+
+    /**
+     * Ends a scrub started by {@link #beginScrubbing()}. Call seekTo() with the final
+     * position before, so playback resumes once it is reached.
+     */
+    public void endScrubbing() {
+        controller.endScrubbing();
+    }
+
+    public boolean isScrubbing() {
+        return controller.isScrubbing();
     }
 
     public void setOnCompletionListener(MediaPlayer.OnCompletionListener l) {
-        if (mediaPlayer != null)
-            this.completionListener = l;
-        else throw new RuntimeException("Media Player is not initialized");
+        checkPlayer();
+        this.completionListener = replaceListener(completionListeners, completionListener, l);
     }
 
     public void setOnErrorListener(MediaPlayer.OnErrorListener l) {
-        if (mediaPlayer != null)
-            errorListener = l;
-        else throw new RuntimeException("Media Player is not initialized");
+        checkPlayer();
+        this.errorListener = replaceListener(errorListeners, errorListener, l);
     }
 
     public void setOnBufferingUpdateListener(MediaPlayer.OnBufferingUpdateListener l) {
-        if (mediaPlayer != null)
-            mediaPlayer.setOnBufferingUpdateListener(l);
-        else throw new RuntimeException("Media Player is not initialized");
+        checkPlayer();
+        this.bufferingUpdateListener = replaceListener(bufferingUpdateListeners, bufferingUpdateListener, l);
+    }
+
+    /**
+     * VideoView method (getBufferPercentage)
+     *
+     * @return percentage of the content buffered, as last reported by MediaPlayer (0-100)
+     */
+    public int getBufferPercentage() {
+        return bufferPercentage;
+    }
+
+    /**
+     * @return position in milliseconds up to which the content is buffered, or 0 if the duration is unknown
+     */
+    public int getBufferedPosition() {
+        int duration = isInPlaybackState() ? getDuration() : -1;
+        return duration > 0 ? (int) ((long) duration * bufferPercentage / 100) : 0;
+    }
+
+    /**
+     * @return true in the states where position, duration and seeks are valid:
+     * PREPARED, STARTED, PAUSED and PLAYBACKCOMPLETED
+     */
+    public boolean isInPlaybackState() {
+        return controller.isInPlaybackState();
     }
 
     public void setOnInfoListener(MediaPlayer.OnInfoListener l) {
-        if (mediaPlayer != null)
-            mediaPlayer.setOnInfoListener(l);
-        else throw new RuntimeException("Media Player is not initialized");
+        checkPlayer();
+        this.infoListener = replaceListener(infoListeners, infoListener, l);
+    }
+
+    /**
+     * Startup time, seek latency, buffering stalls and errors of this view.
+     * Use {@link PlaybackMetrics#snapshot(long)} with SystemClock.elapsedRealtime()
+     * or {@link PlaybackMetrics#setListener(PlaybackMetrics.Listener)}.
+     */
+    public PlaybackMetrics getPlaybackMetrics() {
+        return playbackMetrics;
     }
 
     public void setOnSeekCompleteListener(MediaPlayer.OnSeekCompleteListener l) {
-        if (mediaPlayer != null)
-            this.seekCompleteListener = l;
-        else throw new RuntimeException("Media Player is not initialized");
+        checkPlayer();
+        this.seekCompleteListener = replaceListener(seekCompleteListeners, seekCompleteListener, l);
     }
 
     public void setOnVideoSizeChangedListener(MediaPlayer.OnVideoSizeChangedListener l) {
-        if (mediaPlayer != null)
-            mediaPlayer.setOnVideoSizeChangedListener(l);
-        else throw new RuntimeException("Media Player is not initialized");
+        checkPlayer();
+        this.videoSizeChangedListener = replaceListener(videoSizeChangedListeners, videoSizeChangedListener, l);
     }
 
     public void setOnPreparedListener(MediaPlayer.OnPreparedListener l) {
-        if (mediaPlayer != null)
-            this.preparedListener = l;
-        else throw new RuntimeException("Media Player is not initialized");
+        checkPlayer();
+        this.preparedListener = replaceListener(preparedListeners, preparedListener, l);
+    }
+
+    /**
+     * Replaces the listener previously set with a setOn...Listener() method, keeping the added ones
+     *
+     * @return the new listener
+     */
+    protected static <T> T replaceListener(ListenerRegistry<T> registry, T old, T l) {
+        if (old != null)
+            registry.remove(old);
+        if (l != null)
+            registry.add(l);
+        return l;
+    }
+
+    /**
+     * Adds a listener, called with the one set by setOnPreparedListener() and the other added ones.
+     * The other addOn...Listener() methods work the same way.
+     */
+    public void addOnPreparedListener(MediaPlayer.OnPreparedListener l) {
+        preparedListeners.add(l);
+    }
+
+    /**
+     * Adds a listener called through the given executor, e.g. for analytics off the main thread.
+     * Return values of listeners called through an executor (onError, onInfo) are ignored.
+     */
+    public void addOnPreparedListener(MediaPlayer.OnPreparedListener l, Executor executor) {
+        preparedListeners.add(l, executor);
+    }
+
+    public void removeOnPreparedListener(MediaPlayer.OnPreparedListener l) {
+        preparedListeners.remove(l);
+    }
+
+    public void addOnErrorListener(MediaPlayer.OnErrorListener l) {
+        errorListeners.add(l);
+    }
+
+    public void addOnErrorListener(MediaPlayer.OnErrorListener l, Executor executor) {
+        errorListeners.add(l, executor);
+    }
+
+    public void removeOnErrorListener(MediaPlayer.OnErrorListener l) {
+        errorListeners.remove(l);
+    }
+
+    public void addOnSeekCompleteListener(MediaPlayer.OnSeekCompleteListener l) {
+        seekCompleteListeners.add(l);
+    }
+
+    public void addOnSeekCompleteListener(MediaPlayer.OnSeekCompleteListener l, Executor executor) {
+        seekCompleteListeners.add(l, executor);
+    }
+
+    public void removeOnSeekCompleteListener(MediaPlayer.OnSeekCompleteListener l) {
+        seekCompleteListeners.remove(l);
+    }
+
+    public void addOnCompletionListener(MediaPlayer.OnCompletionListener l) {
+        completionListeners.add(l);
+    }
+
+    public void addOnCompletionListener(MediaPlayer.OnCompletionListener l, Executor executor) {
+        completionListeners.add(l, executor);
+    }
+
+    public void removeOnCompletionListener(MediaPlayer.OnCompletionListener l) {
+        completionListeners.remove(l);
+    }
+
+    public void addOnBufferingUpdateListener(MediaPlayer.OnBufferingUpdateListener l) {
+        bufferingUpdateListeners.add(l);
+    }
+
+    public void addOnBufferingUpdateListener(MediaPlayer.OnBufferingUpdateListener l, Executor executor) {
+        bufferingUpdateListeners.add(l, executor);
+    }
+
+    public void removeOnBufferingUpdateListener(MediaPlayer.OnBufferingUpdateListener l) {
+        bufferingUpdateListeners.remove(l);
+    }
+
+    public void addOnInfoListener(MediaPlayer.OnInfoListener l) {
+        infoListeners.add(l);
+    }
+
+    public void addOnInfoListener(MediaPlayer.OnInfoListener l, Executor executor) {
+        infoListeners.add(l, executor);
+    }
+
+    public void removeOnInfoListener(MediaPlayer.OnInfoListener l) {
+        infoListeners.remove(l);
+    }
+
+    public void addOnVideoSizeChangedListener(MediaPlayer.OnVideoSizeChangedListener l) {
+        videoSizeChangedListeners.add(l);
+    }
+
+    public void addOnVideoSizeChangedListener(MediaPlayer.OnVideoSizeChangedListener l, Executor executor) {
+        videoSizeChangedListeners.add(l, executor);
+    }
+
+    public void removeOnVideoSizeChangedListener(MediaPlayer.OnVideoSizeChangedListener l) {
+        videoSizeChangedListeners.remove(l);
+    }
+
+    public void addOnStateChangedListener(PlaybackStateMachine.Listener l) {
+        stateChangedListeners.add(l);
+    }
+
+    public void addOnStateChangedListener(PlaybackStateMachine.Listener l, Executor executor) {
+        stateChangedListeners.add(l, executor);
+    }
+
+    public void removeOnStateChangedListener(PlaybackStateMachine.Listener l) {
+        stateChangedListeners.remove(l);
+    }
+
+    // Dispatch iterates over the registry arrays without allocating,
+    // except for listeners registered with an executor.
+    // The MediaPlayer listeners are skipped when there is no MediaPlayer (MEDIA_CODEC backend).
+
+    protected void dispatchPrepared(final MediaPlayer mp) {
+        if (mp == null)
+            return;
+        for (final ListenerRegistry.Registration<MediaPlayer.OnPreparedListener> r : preparedListeners.get()) {
+            if (r.executor == null)
+                r.listener.onPrepared(mp);
+            else
+                r.executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        r.listener.onPrepared(mp);
+                    }
+                });
+        }
+    }
+
+    protected boolean dispatchError(final MediaPlayer mp, final int what, final int extra) {
+        if (mp == null)
+            return false;
+        boolean handled = false;
+        for (final ListenerRegistry.Registration<MediaPlayer.OnErrorListener> r : errorListeners.get()) {
+            if (r.executor == null)
+                handled |= r.listener.onError(mp, what, extra);
+            else
+                r.executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        r.listener.onError(mp, what, extra);
+                    }
+                });
+        }
+        return handled;
+    }
+
+    protected void dispatchSeekComplete(final MediaPlayer mp) {
+        if (mp == null)
+            return;
+        for (final ListenerRegistry.Registration<MediaPlayer.OnSeekCompleteListener> r : seekCompleteListeners.get()) {
+            if (r.executor == null)
+                r.listener.onSeekComplete(mp);
+            else
+                r.executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        r.listener.onSeekComplete(mp);
+                    }
+                });
+        }
+    }
+
+    protected void dispatchCompletion(final MediaPlayer mp) {
+        if (mp == null)
+            return;
+        for (final ListenerRegistry.Registration<MediaPlayer.OnCompletionListener> r : completionListeners.get()) {
+            if (r.executor == null)
+                r.listener.onCompletion(mp);
+            else
+                r.executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        r.listener.onCompletion(mp);
+                    }
+                });
+        }
+    }
+
+    protected void dispatchBufferingUpdate(final MediaPlayer mp, final int percent) {
+        if (mp == null)
+            return;
+        for (final ListenerRegistry.Registration<MediaPlayer.OnBufferingUpdateListener> r : bufferingUpdateListeners.get()) {
+            if (r.executor == null)
+                r.listener.onBufferingUpdate(mp, percent);
+            else
+                r.executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        r.listener.onBufferingUpdate(mp, percent);
+                    }
+                });
+        }
+    }
+
+    protected boolean dispatchInfo(final MediaPlayer mp, final int what, final int extra) {
+        if (mp == null)
+            return false;
+        boolean handled = false;
+        for (final ListenerRegistry.Registration<MediaPlayer.OnInfoListener> r : infoListeners.get()) {
+            if (r.executor == null)
+                handled |= r.listener.onInfo(mp, what, extra);
+            else
+                r.executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        r.listener.onInfo(mp, what, extra);
+                    }
+                });
+        }
+        return handled;
+    }
+
+    protected void dispatchVideoSizeChanged(final MediaPlayer mp, final int width, final int height) {
+        if (mp == null)
+            return;
+        for (final ListenerRegistry.Registration<MediaPlayer.OnVideoSizeChangedListener> r : videoSizeChangedListeners.get()) {
+            if (r.executor == null)
+                r.listener.onVideoSizeChanged(mp, width, height);
+            else
+                r.executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        r.listener.onVideoSizeChanged(mp, width, height);
+                    }
+                });
+        }
+    }
+
+    protected void dispatchStateChanged(final State from, final State to) {
+        for (final ListenerRegistry.Registration<PlaybackStateMachine.Listener> r : stateChangedListeners.get()) {
+            if (r.executor == null)
+                r.listener.onStateChanged(from, to);
+            else
+                r.executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        r.listener.onStateChanged(from, to);
+                    }
+                });
+        }
     }
 
     public void setLooping(boolean looping) {
-        if (mediaPlayer != null)
-            mediaPlayer.setLooping(looping);
-        else throw new RuntimeException("Media Player is not initialized");
+        if (checkPlayer()) {
+            // A looping player never reaches the next one
+            if (looping && playlist.isLinked())
+                playlist.unlink();
+        }
+        this.looping = looping;
+        if (playerEngine != null)
+            applyPlayerSettings();
+    }
+
+    /**
+     * Plays the items of this queue one after the other. The current item is opened now
+     * (call start() when prepared, as with setVideoPath()). While it plays, the next item
+     * is prepared on a second player, which takes over on completion without a new prepare.
+     *
+     * @param queue the queue, or null to stop following a queue
+     * @see PlaylistHandOff
+     */
+    public void setPlaylist(PlaylistQueue queue) {
+        playlist.setQueue(queue);
+    }
+
+    public PlaylistQueue getPlaylist() {
+        return playlist.getQueue();
+    }
+
+    /**
+     * Plays the next item of the playlist
+     *
+     * @return false if there is no next item
+     */
+    public boolean skipToNext() {
+        return playlist.skipToNext();
+    }
+
+    /**
+     * Plays the previous item of the playlist. It is prepared from scratch.
+     *
+     * @return false if there is no previous item
+     */
+    public boolean skipToPrevious() {
+        return playlist.skipToPrevious();
+    }
+
+    /**
+     * Replaces the current player engine by the prepared one of the next playlist item, on the same surface
+     *
+     * @param startedByPlatform true if setNextMediaPlayer() has already started it
+     */
+    protected void swapPlayer(PlayerEngine next, PlaylistQueue.Item item, boolean startedByPlatform) {
+        PlayerEngine old = playerEngine;
+        if (surfaceIsReady)
+            old.setDisplay(null);
+
+        currentSource = item;
+        hidePoster();
+        setPlayerEngine(next);
+
+        disposePlayer(old);
+
+        // Completions of the seeks sent to the old player are ignored
+        controller.onEngineReset();
+        bufferPercentage = 0;
+        initialMovieWidth = next.getVideoWidth();
+        initialMovieHeight = next.getVideoHeight();
+        requestResize();
+        Log.d(TAG, "playlist hand off - started by platform: " + startedByPlatform);
+
+        // Prepared ahead: a preloaded start, measured from the hand off
+        playbackMetrics.onPrepareStarted(SystemClock.elapsedRealtime(), true);
+        renderTarget.expectFirstFrame();
+
+        if (startedByPlatform) {
+            stateMachine.moveTo(State.STARTED);
+            playbackMetrics.onPlaybackStarted(SystemClock.elapsedRealtime());
+        } else
+            start();
+
+        onCurrentMediaChanged();
     }
 
     public void setVolume(float leftVolume, float rightVolume) {
-        if (mediaPlayer != null)
-            mediaPlayer.setVolume(leftVolume, rightVolume);
-        else throw new RuntimeException("Media Player is not initialized");
+        this.leftVolume = leftVolume;
+        this.rightVolume = rightVolume;
+        if (checkPlayer())
+            applyPlayerSettings();
     }
 
     /**
      * VideoView method (setVideoPath)
      */
     public void setVideoPath(String path) throws IOException, IllegalStateException, SecurityException, IllegalArgumentException, RuntimeException {
-        if (mediaPlayer != null) {
-            if (currentState != State.IDLE)
-                throw new IllegalStateException("FullscreenVideoView Invalid State: " + currentState);
+        if (!checkPlayer())
+            initPlayer();
+
+        if (stateMachine.getState() != State.IDLE)
+            throw new IllegalStateException("FullscreenVideoView Invalid State: " + stateMachine.getState());
+
+        preloaded = false;
+        currentSource = PlaylistQueue.Item.fromPath(path);
+        showPoster(path);
+        if (codecBinding.isEnabled()) {
+            codecBinding.open(sourceRouter.getCacheUrl(path));
+            return;
+        }
+        codecBinding.close();
+
+        if (adoptPreloadedPlayer(path))
+            return;
 
-            mediaPlayer.setDataSource(path);
+        playerEngine.setDataSource(sourceRouter.open(path));
 
-            currentState = State.INITIALIZED;
-            prepare();
-        } else throw new RuntimeException("Media Player is not initialized");
+        stateMachine.moveTo(State.INITIALIZED);
+        prepare();
     }
 
     /**
      * VideoView method (setVideoURI)
      */
     public void setVideoURI(Uri uri) throws IOException, IllegalStateException, SecurityException, IllegalArgumentException, RuntimeException {
-        if (mediaPlayer != null) {
-            if (currentState != State.IDLE)
-                throw new IllegalStateException("FullscreenVideoView Invalid State: " + currentState);
+        if (!checkPlayer())
+            initPlayer();
+
+        if (stateMachine.getState() != State.IDLE)
+            throw new IllegalStateException("FullscreenVideoView Invalid State: " + stateMachine.getState());
+
+        preloaded = false;
+        currentSource = PlaylistQueue.Item.fromUri(uri.toString());
+        showPoster(uri.toString());
+        if (codecBinding.isEnabled()) {
+            codecBinding.open(sourceRouter.getCacheUrl(uri.toString()));
+            return;
+        }
+        codecBinding.close();
+
+        if (adoptPreloadedPlayer(uri.toString()))
+            return;
+
+        // Through the proxy, or the uri itself: MediaPlayerEngine opens uris with the context
+        playerEngine.setDataSource(sourceRouter.open(uri.toString()));
+
+        stateMachine.moveTo(State.INITIALIZED);
+        prepare();
+    }
 
-            mediaPlayer.setDataSource(context, uri);
+    /**
+     * Sources set after this call are decoded with this backend.
+     * MEDIA_CODEC plays no audio and does not call the MediaPlayer listeners: see {@link DecoderBackend#MEDIA_CODEC}.
+     *
+     * @param decoderBackend MEDIA_PLAYER (default) or MEDIA_CODEC
+     */
+    public void setDecoderBackend(DecoderBackend decoderBackend) {
+        codecBinding.setBackend(decoderBackend);
+    }
+
+    public DecoderBackend getDecoderBackend() {
+        return codecBinding.getBackend();
+    }
+
+    /**
+     * Buffering thresholds of the MEDIA_CODEC backend, used from the next source.
+     * MediaPlayer ignores them.
+     *
+     * @param policy e.g. {@link BufferingPolicy#LOW_LATENCY}
+     */
+    public void setBufferingPolicy(BufferingPolicy policy) {
+        codecBinding.setBufferingPolicy(policy);
+    }
+
+    public BufferingPolicy getBufferingPolicy() {
+        return codecBinding.getBufferingPolicy();
+    }
 
-            currentState = State.INITIALIZED;
-            prepare();
-        } else throw new RuntimeException("Media Player is not initialized");
+    /**
+     * Runs now if called from the main thread, otherwise posts to it
+     */
+    protected void runOnMainThread(Runnable r) {
+        if (Looper.myLooper() == Looper.getMainLooper())
+            r.run();
+        else
+            mainHandler.post(r);
     }
 }
@@ -0,0 +1,216 @@
+package com.github.rtoshiro.view.video;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The variants of an HLS master playlist (#EXT-X-STREAM-INF), sorted by bandwidth.
+ * Parsed from text, so it has no Android dependencies.
+ */
+public class HlsMasterPlaylist {
+
+    /**
+     * One rendition of the stream
+     */
+    public static class Variant {
+        protected final String url;
+        protected final int bandwidth;
+        protected final int width, height;
+        protected final String codecs;
+
+        public Variant(String url, int bandwidth, int width, int height, String codecs) {
+            this.url = url;
+            this.bandwidth = bandwidth;
+            this.width = width;
+            this.height = height;
+            this.codecs = codecs;
+        }
+
+        /**
+         * @return absolute url of the media playlist
+         */
+        public String getUrl() {
+            return url;
+        }
+
+        /**
+         * @return peak bits per second (BANDWIDTH)
+         */
+        public int getBandwidth() {
+            return bandwidth;
+        }
+
+        /**
+         * @return width from RESOLUTION, 0 if unknown
+         */
+        public int getWidth() {
+            return width;
+        }
+
+        /**
+         * @return height from RESOLUTION, 0 if unknown
+         */
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * @return CODECS, or null
+         */
+        public String getCodecs() {
+            return codecs;
+        }
+
+        @Override
+        public String toString() {
+            return bandwidth + "bps " + width + "x" + height;
+        }
+    }
+
+    protected final List<Variant> variants;
+    protected final boolean alternateMedia;
+
+    public HlsMasterPlaylist(List<Variant> variants, boolean alternateMedia) {
+        ArrayList<Variant> sorted = new ArrayList<Variant>(variants);
+        Collections.sort(sorted, new Comparator<Variant>() {
+            @Override
+            public int compare(Variant a, Variant b) {
+                return a.bandwidth < b.bandwidth ? -1 : (a.bandwidth == b.bandwidth ? 0 : 1);
+            }
+        });
+        this.variants = Collections.unmodifiableList(sorted);
+        this.alternateMedia = alternateMedia;
+    }
+
+    /**
+     * @return the variants, lowest bandwidth first
+     */
+    public List<Variant> getVariants() {
+        return variants;
+    }
+
+    /**
+     * @return true if some renditions are in separate playlists (#EXT-X-MEDIA with URI, e.g. demuxed audio)
+     */
+    public boolean hasAlternateMedia() {
+        return alternateMedia;
+    }
+
+    /**
+     * @return true if the text is a master playlist, false for a media playlist
+     */
+    public static boolean isMaster(String text) {
+        return text.contains("#EXT-X-STREAM-INF");
+    }
+
+    /**
+     * @param text    playlist content
+     * @param baseUrl url the playlist was loaded from, to resolve relative uris
+     * @throws IOException if it is not an HLS playlist or has no variant
+     */
+    public static HlsMasterPlaylist parse(String text, String baseUrl) throws IOException {
+        String[] lines = text.split("\r?\n");
+        if (lines.length == 0 || !lines[0].trim().startsWith("#EXTM3U"))
+            throw new IOException("not an HLS playlist: " + baseUrl);
+
+        ArrayList<Variant> variants = new ArrayList<Variant>();
+        boolean alternateMedia = false;
+        Map<String, String> streamInf = null;
+        for (int i = 1; i < lines.length; i++) {
+            String line = lines[i].trim();
+            if (line.length() == 0)
+                continue;
+
+            if (line.startsWith("#EXT-X-STREAM-INF:")) {
+                streamInf = parseAttributes(line.substring(line.indexOf(':') + 1));
+            } else if (line.startsWith("#EXT-X-MEDIA:")) {
+                if (parseAttributes(line.substring(line.indexOf(':') + 1)).containsKey("URI"))
+                    alternateMedia = true;
+            } else if (!line.startsWith("#") && streamInf != null) {
+                variants.add(toVariant(streamInf, resolve(baseUrl, line)));
+                streamInf = null;
+            }
+        }
+
+        if (variants.isEmpty())
+            throw new IOException("no variant in " + baseUrl);
+        return new HlsMasterPlaylist(variants, alternateMedia);
+    }
+
+    private static Variant toVariant(Map<String, String> attributes, String url) throws IOException {
+        int bandwidth = parseInt(attributes.get("BANDWIDTH"));
+        if (bandwidth <= 0)
+            throw new IOException("variant without BANDWIDTH: " + url);
+
+        int width = 0, height = 0;
+        String resolution = attributes.get("RESOLUTION");
+        if (resolution != null) {
+            int x = resolution.indexOf('x');
+            if (x > 0) {
+                width = Math.max(0, parseInt(resolution.substring(0, x)));
+                height = Math.max(0, parseInt(resolution.substring(x + 1)));
+            }
+        }
+        return new Variant(url, bandwidth, width, height, attributes.get("CODECS"));
+    }
+
+    /**
+     * Parses an attribute list: NAME=value,NAME="quoted, value". Quotes are removed.
+     */
+    static Map<String, String> parseAttributes(String list) {
+        HashMap<String, String> attributes = new HashMap<String, String>();
+        int i = 0, n = list.length();
+        while (i < n) {
+            int eq = list.indexOf('=', i);
+            if (eq < 0)
+                break;
+            String name = list.substring(i, eq).trim();
+
+            int start = eq + 1, end;
+            String value;
+            if (start < n && list.charAt(start) == '"') {
+                end = list.indexOf('"', start + 1);
+                if (end < 0)
+                    end = n;
+                value = list.substring(start + 1, end);
+                end = list.indexOf(',', end);
+            } else {
+                end = list.indexOf(',', start);
+                value = list.substring(start, end < 0 ? n : end).trim();
+            }
+            attributes.put(name, value);
+            if (end < 0)
+                break;
+            i = end + 1;
+        }
+        return attributes;
+    }
+
+    /**
+     * @return uri resolved against baseUrl
+     */
+    static String resolve(String baseUrl, String uri) throws IOException {
+        try {
+            return new URL(new URL(baseUrl), uri).toString();
+        } catch (MalformedURLException e) {
+            throw new IOException("invalid uri " + uri + " in " + baseUrl);
+        }
+    }
+
+    private static int parseInt(String value) {
+        if (value == null)
+            return -1;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
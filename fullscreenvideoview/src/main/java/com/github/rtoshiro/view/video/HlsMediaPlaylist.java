@@ -0,0 +1,179 @@
+package com.github.rtoshiro.view.video;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The segments of an HLS media playlist, numbered by media sequence.
+ * Parsed from text, so it has no Android dependencies.
+ */
+public class HlsMediaPlaylist {
+
+    public static class Segment {
+        protected final long sequence;
+        protected final double duration;
+        protected final String url;
+        protected final boolean discontinuity;
+
+        public Segment(long sequence, double duration, String url, boolean discontinuity) {
+            this.sequence = sequence;
+            this.duration = duration;
+            this.url = url;
+            this.discontinuity = discontinuity;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * @return duration in seconds (#EXTINF)
+         */
+        public double getDuration() {
+            return duration;
+        }
+
+        /**
+         * @return absolute url
+         */
+        public String getUrl() {
+            return url;
+        }
+
+        /**
+         * @return true if preceded by #EXT-X-DISCONTINUITY
+         */
+        public boolean isDiscontinuity() {
+            return discontinuity;
+        }
+    }
+
+    protected final int targetDuration;
+    protected final long mediaSequence;
+    protected final boolean ended;
+    protected final boolean supported;
+    protected final List<Segment> segments;
+
+    public HlsMediaPlaylist(int targetDuration, long mediaSequence, boolean ended, boolean supported, List<Segment> segments) {
+        this.targetDuration = targetDuration;
+        this.mediaSequence = mediaSequence;
+        this.ended = ended;
+        this.supported = supported;
+        this.segments = Collections.unmodifiableList(new ArrayList<Segment>(segments));
+    }
+
+    /**
+     * @return #EXT-X-TARGETDURATION in seconds
+     */
+    public int getTargetDuration() {
+        return targetDuration;
+    }
+
+    /**
+     * @return sequence number of the first segment
+     */
+    public long getMediaSequence() {
+        return mediaSequence;
+    }
+
+    /**
+     * @return true if the playlist has #EXT-X-ENDLIST, false for live streams
+     */
+    public boolean isEnded() {
+        return ended;
+    }
+
+    /**
+     * @return false if segments are encrypted, byte ranges or fragmented mp4 (#EXT-X-KEY, #EXT-X-BYTERANGE, #EXT-X-MAP),
+     * which segment by segment switching does not handle
+     */
+    public boolean isSupported() {
+        return supported;
+    }
+
+    public List<Segment> getSegments() {
+        return segments;
+    }
+
+    /**
+     * @return the segment with this media sequence number, or null
+     */
+    public Segment getSegment(long sequence) {
+        int index = (int) (sequence - mediaSequence);
+        if (index < 0 || index >= segments.size())
+            return null;
+        return segments.get(index);
+    }
+
+    /**
+     * @return sequence number after the last segment
+     */
+    public long getEndSequence() {
+        return mediaSequence + segments.size();
+    }
+
+    /**
+     * @param text    playlist content
+     * @param baseUrl url the playlist was loaded from, to resolve relative uris
+     * @throws IOException if it is not an HLS media playlist
+     */
+    public static HlsMediaPlaylist parse(String text, String baseUrl) throws IOException {
+        String[] lines = text.split("\r?\n");
+        if (lines.length == 0 || !lines[0].trim().startsWith("#EXTM3U"))
+            throw new IOException("not an HLS playlist: " + baseUrl);
+
+        int targetDuration = -1;
+        long mediaSequence = 0;
+        boolean ended = false;
+        boolean supported = true;
+        ArrayList<Segment> segments = new ArrayList<Segment>();
+
+        double duration = -1;
+        boolean discontinuity = false;
+        for (int i = 1; i < lines.length; i++) {
+            String line = lines[i].trim();
+            if (line.length() == 0)
+                continue;
+
+            if (line.startsWith("#EXTINF:")) {
+                int comma = line.indexOf(',');
+                duration = parseDouble(line.substring(8, comma < 0 ? line.length() : comma));
+            } else if (line.startsWith("#EXT-X-TARGETDURATION:")) {
+                targetDuration = (int) parseDouble(line.substring(line.indexOf(':') + 1));
+            } else if (line.startsWith("#EXT-X-MEDIA-SEQUENCE:")) {
+                mediaSequence = (long) parseDouble(line.substring(line.indexOf(':') + 1));
+            } else if (line.startsWith("#EXT-X-ENDLIST")) {
+                ended = true;
+            } else if (line.startsWith("#EXT-X-DISCONTINUITY") && !line.startsWith("#EXT-X-DISCONTINUITY-SEQUENCE")) {
+                discontinuity = true;
+            } else if (line.startsWith("#EXT-X-KEY:")) {
+                String method = HlsMasterPlaylist.parseAttributes(line.substring(11)).get("METHOD");
+                if (method != null && !method.equals("NONE"))
+                    supported = false;
+            } else if (line.startsWith("#EXT-X-BYTERANGE") || line.startsWith("#EXT-X-MAP")) {
+                supported = false;
+            } else if (!line.startsWith("#")) {
+                if (duration < 0)
+                    throw new IOException("segment without #EXTINF in " + baseUrl);
+                segments.add(new Segment(mediaSequence + segments.size(), duration,
+                        HlsMasterPlaylist.resolve(baseUrl, line), discontinuity));
+                duration = -1;
+                discontinuity = false;
+            }
+        }
+
+        if (targetDuration < 0)
+            throw new IOException("no #EXT-X-TARGETDURATION in " + baseUrl);
+        return new HlsMediaPlaylist(targetDuration, mediaSequence, ended, supported, segments);
+    }
+
+    private static double parseDouble(String value) throws IOException {
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("invalid number: " + value);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.github.rtoshiro.view.video;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Adaptive playback of one HLS stream through {@link HttpCacheProxy}.
+ * MediaPlayer reads a single media playlist whose segments point back to the proxy;
+ * the variant of each segment is chosen when MediaPlayer requests it, from the
+ * bandwidth measured on the previous segments. So the quality follows the connection
+ * between segments, instead of staying on the variant MediaPlayer picked at start.
+ *
+ * Variants must have aligned media sequence numbers, and each segment must start with a
+ * key frame, as HLS requires for switching. Streams this can not switch (demuxed audio,
+ * encryption, byte ranges, fragmented mp4) are redirected to the original url.
+ *
+ * Has no Android dependencies; playlists are read through a {@link Loader}.
+ */
+public class HlsSession {
+
+    /**
+     * Reads a playlist
+     */
+    public interface Loader {
+        String load(String url) throws IOException;
+    }
+
+    public interface Listener {
+        /**
+         * Called on a proxy thread, before the first segment of the new variant is sent
+         *
+         * @param variant the variant of the next segments
+         */
+        void onVariantChanged(HlsSession session, HlsMasterPlaylist.Variant variant);
+    }
+
+    protected final String masterUrl;
+    protected final String playlistUrl;
+    protected final Loader loader;
+    protected final BandwidthEstimator estimator;
+    protected final BitrateSelector selector = new BitrateSelector();
+    protected volatile Listener listener;
+
+    // Guarded by this
+    protected HlsMasterPlaylist master;
+    protected HlsMediaPlaylist[] playlists;
+    protected long[] playlistLoadTimes;
+    protected int[] bandwidths;
+    protected int currentIndex = -1;
+    protected int fixedIndex = -1;
+    protected int maxBandwidth = Integer.MAX_VALUE;
+    protected boolean live;
+    protected boolean switchable;
+
+    /**
+     * @param masterUrl   url of the master (or media) playlist
+     * @param playlistUrl url MediaPlayer reads instead, served by the proxy
+     * @param loader      reads playlists
+     * @param estimator   bandwidth measured on segments, can be shared between sessions
+     */
+    public HlsSession(String masterUrl, String playlistUrl, Loader loader, BandwidthEstimator estimator) {
+        this.masterUrl = masterUrl;
+        this.playlistUrl = playlistUrl;
+        this.loader = loader;
+        this.estimator = estimator;
+    }
+
+    /**
+     * @return true if the url looks like an HLS playlist (.m3u8)
+     */
+    public static boolean isHlsUrl(String url) {
+        String path = url.toLowerCase(Locale.US);
+        int query = path.indexOf('?');
+        if (query >= 0)
+            path = path.substring(0, query);
+        return path.endsWith(".m3u8") || path.endsWith(".m3u");
+    }
+
+    public String getMasterUrl() {
+        return masterUrl;
+    }
+
+    /**
+     * @return the url to give to MediaPlayer
+     */
+    public String getPlaylistUrl() {
+        return playlistUrl;
+    }
+
+    public BandwidthEstimator getBandwidthEstimator() {
+        return estimator;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return the variants, lowest bandwidth first, or an empty list before MediaPlayer read the playlist
+     */
+    public synchronized List<HlsMasterPlaylist.Variant> getVariants() {
+        if (master == null)
+            return new ArrayList<HlsMasterPlaylist.Variant>();
+        return master.getVariants();
+    }
+
+    /**
+     * @return the variant of the last segment sent, or null
+     */
+    public synchronized HlsMasterPlaylist.Variant getCurrentVariant() {
+        if (master == null || currentIndex < 0)
+            return null;
+        return master.getVariants().get(currentIndex);
+    }
+
+    /**
+     * @return true if the stream is live (no #EXT-X-ENDLIST). False until the playlist is read.
+     */
+    public synchronized boolean isLive() {
+        return live;
+    }
+
+    /**
+     * Plays a single variant from the next segment on
+     *
+     * @param index index in {@link #getVariants()}, or -1 to follow the bandwidth
+     */
+    public synchronized void setFixedVariant(int index) {
+        this.fixedIndex = index;
+    }
+
+    /**
+     * Excludes variants above this bandwidth (e.g. larger than the screen). The lowest one is always allowed.
+     *
+     * @param maxBandwidth bits per second, Integer.MAX_VALUE for no cap
+     */
+    public synchronized void setMaxBandwidth(int maxBandwidth) {
+        this.maxBandwidth = maxBandwidth;
+    }
+
+    /**
+     * @return the media playlist served to MediaPlayer, or null if this stream can not be switched by segment
+     */
+    public synchronized String getMediaPlaylist() throws IOException {
+        if (master == null)
+            switchable = loadMaster();
+        if (!switchable)
+            return null;
+
+        // The timeline of the current variant; segments are chosen when requested
+        HlsMediaPlaylist reference = loadPlaylist(currentIndex >= 0 ? currentIndex : chooseVariant(), false);
+        if (!reference.isSupported())
+            return null;
+        live = !reference.isEnded();
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("#EXTM3U\n#EXT-X-VERSION:3\n");
+        sb.append("#EXT-X-TARGETDURATION:").append(reference.getTargetDuration()).append('\n');
+        sb.append("#EXT-X-MEDIA-SEQUENCE:").append(reference.getMediaSequence()).append('\n');
+        for (HlsMediaPlaylist.Segment segment : reference.getSegments()) {
+            if (segment.isDiscontinuity())
+                sb.append("#EXT-X-DISCONTINUITY\n");
+            sb.append(String.format(Locale.US, "#EXTINF:%.3f,\n", segment.getDuration()));
+            // Relative to the playlist url, served by the proxy
+            sb.append(segment.getSequence()).append(".ts\n");
+        }
+        if (reference.isEnded())
+            sb.append("#EXT-X-ENDLIST\n");
+        return sb.toString();
+    }
+
+    /**
+     * Chooses the variant for this segment and returns where to download it
+     *
+     * @param sequence media sequence number
+     * @return the segment url, or null if no variant has it
+     */
+    public String getSegmentUrl(long sequence) throws IOException {
+        HlsMasterPlaylist.Variant changed = null;
+        String url;
+        synchronized (this) {
+            if (master == null)
+                return null;
+
+            int index = chooseVariant();
+            HlsMediaPlaylist.Segment segment = findSegment(index, sequence);
+            if (segment == null && currentIndex >= 0 && index != currentIndex) {
+                // Not in the new variant (yet): stays on the current one
+                index = currentIndex;
+                segment = findSegment(index, sequence);
+            }
+            if (segment == null)
+                return null;
+
+            if (index != currentIndex) {
+                currentIndex = index;
+                changed = master.getVariants().get(index);
+            }
+            url = segment.getUrl();
+        }
+
+        Listener l = listener;
+        if (changed != null && l != null)
+            l.onVariantChanged(this, changed);
+        return url;
+    }
+
+    /**
+     * @return false if the variants have renditions in other playlists
+     */
+    private boolean loadMaster() throws IOException {
+        String text = loader.load(masterUrl);
+        HlsMediaPlaylist single = null;
+        if (HlsMasterPlaylist.isMaster(text)) {
+            master = HlsMasterPlaylist.parse(text, masterUrl);
+        } else {
+            // A media playlist: a single variant, nothing to switch but still measured
+            single = HlsMediaPlaylist.parse(text, masterUrl);
+            ArrayList<HlsMasterPlaylist.Variant> variants = new ArrayList<HlsMasterPlaylist.Variant>();
+            variants.add(new HlsMasterPlaylist.Variant(masterUrl, 0, 0, 0, null));
+            master = new HlsMasterPlaylist(variants, false);
+        }
+
+        List<HlsMasterPlaylist.Variant> variants = master.getVariants();
+        playlists = new HlsMediaPlaylist[variants.size()];
+        playlistLoadTimes = new long[variants.size()];
+        bandwidths = new int[variants.size()];
+        for (int i = 0; i < bandwidths.length; i++)
+            bandwidths[i] = variants.get(i).getBandwidth();
+        if (single != null) {
+            playlists[0] = single;
+            playlistLoadTimes[0] = System.nanoTime();
+        }
+        return !master.hasAlternateMedia();
+    }
+
+    /**
+     * @return the variant for the next segment: the fixed one, or the selector choice
+     */
+    private int chooseVariant() {
+        if (fixedIndex >= 0 && fixedIndex < bandwidths.length)
+            return fixedIndex;
+
+        int count = 1;
+        while (count < bandwidths.length && bandwidths[count] <= maxBandwidth)
+            count++;
+        return selector.select(bandwidths, count, estimator.getEstimate(), currentIndex);
+    }
+
+    /**
+     * Loads the media playlist of a variant, again if it is live and older than half a target duration
+     */
+    private HlsMediaPlaylist loadPlaylist(int index, boolean refresh) throws IOException {
+        HlsMediaPlaylist playlist = playlists[index];
+        long now = System.nanoTime();
+        if (playlist != null && (playlist.isEnded() || (!refresh &&
+                now - playlistLoadTimes[index] < playlist.getTargetDuration() * 500000000L)))
+            return playlist;
+
+        String url = master.getVariants().get(index).getUrl();
+        playlist = HlsMediaPlaylist.parse(loader.load(url), url);
+        playlists[index] = playlist;
+        playlistLoadTimes[index] = now;
+        return playlist;
+    }
+
+    private HlsMediaPlaylist.Segment findSegment(int index, long sequence) throws IOException {
+        HlsMediaPlaylist playlist;
+        try {
+            playlist = loadPlaylist(index, false);
+        } catch (IOException e) {
+            if (index == currentIndex)
+                throw e;
+            return null;
+        }
+        if (!playlist.isSupported())
+            return null;
+
+        HlsMediaPlaylist.Segment segment = playlist.getSegment(sequence);
+        // Live: a segment after the end may have been added since
+        if (segment == null && !playlist.isEnded() && sequence >= playlist.getEndSequence())
+            segment = loadPlaylist(index, true).getSegment(sequence);
+        return segment;
+    }
+}
@@ -0,0 +1,733 @@
+package com.github.rtoshiro.view.video;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Loopback HTTP server that serves progressive http(s) videos through a {@link VideoCache}.
+ * MediaPlayer reads {@link #getProxyUrl(String)} instead of the original url: cached
+ * ranges are sent straight from disk, gaps are downloaded from the origin and stored.
+ * Replays, loops and back navigation do not download the same bytes again.
+ *
+ * HLS streams are served through an {@link HlsSession} instead (see {@link #openHlsSession(String)}),
+ * which switches variants between segments from the bandwidth measured on segment downloads.
+ *
+ * Proxy urls start with a random token of this instance: other apps on the device can reach
+ * the loopback port, but not use it to download arbitrary urls.
+ *
+ * It has no Android dependencies, so it can be tested on any JVM.
+ */
+public class HttpCacheProxy {
+
+    private final static String PATH = "/video";
+    private final static String HLS_PATH = "/hls/";
+    private final static String HLS_PLAYLIST = "index.m3u8";
+    private final static int MAX_HLS_SESSIONS = 8;
+    private final static int MAX_PLAYLIST_SIZE = 1024 * 1024;
+    private final static int BUFFER_SIZE = 64 * 1024;
+    private final static int TIMEOUT = 15000;
+
+    protected final VideoCache cache;
+    // Path prefix of every proxy url, requests without it are rejected
+    protected final String token = newToken();
+    // Shared by the HLS sessions, so a new stream starts at the quality the last one reached
+    protected final BandwidthEstimator bandwidthEstimator = new BandwidthEstimator();
+    protected final HlsSession.Loader playlistLoader = new HlsSession.Loader() {
+        @Override
+        public String load(String url) throws IOException {
+            return loadPlaylist(url);
+        }
+    };
+    // Access ordered, the least recently used session is dropped above MAX_HLS_SESSIONS
+    private final LinkedHashMap<String, HlsSession> hlsSessions = new LinkedHashMap<String, HlsSession>(16, 0.75f, true);
+    private int lastSessionId;
+    private ServerSocketChannel serverChannel;
+    private Thread acceptThread;
+    private ExecutorService executor;
+    private int port = -1;
+
+    public HttpCacheProxy(VideoCache cache) {
+        this.cache = cache;
+    }
+
+    public VideoCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Starts listening on a random loopback port. Does nothing if already started.
+     */
+    public synchronized void start() throws IOException {
+        if (serverChannel != null)
+            return;
+
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.socket().bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+        port = serverChannel.socket().getLocalPort();
+
+        executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "HttpCacheProxy-connection");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        final ServerSocketChannel server = serverChannel;
+        acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptLoop(server);
+            }
+        }, "HttpCacheProxy-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    public synchronized void stop() {
+        if (serverChannel == null)
+            return;
+
+        try {
+            serverChannel.close();
+        } catch (IOException ignored) {
+        }
+        executor.shutdownNow();
+        hlsSessions.clear();
+        serverChannel = null;
+        acceptThread = null;
+        executor = null;
+        port = -1;
+    }
+
+    public synchronized boolean isRunning() {
+        return serverChannel != null;
+    }
+
+    /**
+     * @return true if this url can be served by the proxy (http and https).
+     * HLS playlists are not: their relative uris would resolve against the proxy url.
+     */
+    public static boolean isCacheable(String url) {
+        return isHttp(url) && !HlsSession.isHlsUrl(url);
+    }
+
+    static boolean isHttp(String url) {
+        String lower = url.toLowerCase(Locale.US);
+        return lower.startsWith("http://") || lower.startsWith("https://");
+    }
+
+    public BandwidthEstimator getBandwidthEstimator() {
+        return bandwidthEstimator;
+    }
+
+    /**
+     * Starts adaptive playback of an HLS stream: MediaPlayer reads {@link HlsSession#getPlaylistUrl()}.
+     * Segments are cached like progressive videos.
+     *
+     * @param masterUrl url of the master playlist
+     * @return the session, or null if the proxy is not running or the url is not http(s)
+     */
+    public synchronized HlsSession openHlsSession(String masterUrl) {
+        if (serverChannel == null || !isHttp(masterUrl))
+            return null;
+
+        String id = String.valueOf(++lastSessionId);
+        String url = "http://127.0.0.1:" + port + "/" + token + HLS_PATH + id + "/" + HLS_PLAYLIST;
+        HlsSession session = new HlsSession(masterUrl, url, playlistLoader, bandwidthEstimator);
+        hlsSessions.put(id, session);
+        if (hlsSessions.size() > MAX_HLS_SESSIONS) {
+            Iterator<String> eldest = hlsSessions.keySet().iterator();
+            eldest.next();
+            eldest.remove();
+        }
+        return session;
+    }
+
+    /**
+     * Stops serving the session. Requests for it get 404.
+     */
+    public synchronized void closeHlsSession(HlsSession session) {
+        Iterator<Map.Entry<String, HlsSession>> it = hlsSessions.entrySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().getValue() == session) {
+                it.remove();
+                return;
+            }
+        }
+    }
+
+    private synchronized HlsSession getHlsSession(String id) {
+        return hlsSessions.get(id);
+    }
+
+    /**
+     * @param url the original http(s) url
+     * @return the loopback url serving the same content, or url itself if it can not be proxied
+     */
+    public synchronized String getProxyUrl(String url) {
+        if (serverChannel == null || !isCacheable(url))
+            return url;
+
+        try {
+            return "http://127.0.0.1:" + port + "/" + token + PATH + "?url=" + URLEncoder.encode(url, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            return url;
+        }
+    }
+
+    private void acceptLoop(ServerSocketChannel server) {
+        while (server.isOpen()) {
+            try {
+                final SocketChannel client = server.accept();
+                ExecutorService ex;
+                synchronized (this) {
+                    ex = executor;
+                }
+                if (ex == null) {
+                    client.close();
+                    break;
+                }
+                ex.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        handle(client);
+                    }
+                });
+            } catch (IOException e) {
+                break;
+            } catch (RuntimeException e) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * A parsed client request
+     */
+    static class Request {
+        String method;
+        boolean authorized; // starts with the token
+        String url;
+        long rangeStart = 0;
+        long rangeEnd = -1;
+        long suffixLength = -1; // bytes=-N: the last N bytes, rangeStart is known once the length is
+        boolean hasRange;
+        String hlsSession; // session id and file name of /hls/<id>/<name>
+        String hlsName;
+        boolean headSent;
+    }
+
+    /**
+     * Origin bytes and time of a request, for the bandwidth estimate
+     */
+    static class Transfer {
+        long bytes;
+        long nanos;
+    }
+
+    private void handle(SocketChannel client) {
+        Request request = null;
+        try {
+            request = readRequest(Channels.newInputStream(client), token);
+            if (request != null && !request.authorized) {
+                writeHead(client, request, "403 Forbidden", null, -1, null);
+                return;
+            }
+            if (request != null && request.hlsSession != null) {
+                serveHls(client, request);
+                return;
+            }
+            if (request == null || request.url == null) {
+                writeHead(client, request, "400 Bad Request", null, -1, null);
+                return;
+            }
+            serve(client, request);
+        } catch (IOException ignored) {
+            // Client went away (MediaPlayer closes connections when seeking) or origin failed
+        } catch (RuntimeException e) {
+            // Malformed request (e.g. bad escapes in the url) or unexpected origin response
+            if (request == null || !request.headSent) {
+                try {
+                    writeHead(client, null, request == null ? "400 Bad Request" : "502 Bad Gateway", null, -1, null);
+                } catch (IOException ignored) {
+                }
+            }
+        } finally {
+            try {
+                client.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * @param token path prefix required by {@link Request#authorized}
+     */
+    static Request readRequest(InputStream in, String token) throws IOException {
+        StringBuilder head = new StringBuilder();
+        int c, newlines = 0;
+        while ((c = in.read()) != -1) {
+            if (c == '\r')
+                continue;
+            if (c == '\n') {
+                if (++newlines == 2)
+                    break;
+            } else
+                newlines = 0;
+            head.append((char) c);
+            if (head.length() > 16 * 1024)
+                return null;
+        }
+
+        String[] lines = head.toString().split("\n");
+        if (lines.length == 0)
+            return null;
+
+        String[] requestLine = lines[0].split(" ");
+        if (requestLine.length < 2)
+            return null;
+
+        Request request = new Request();
+        request.method = requestLine[0];
+
+        String target = requestLine[1];
+        String prefix = "/" + token;
+        if (!target.startsWith(prefix + "/"))
+            return request;
+        request.authorized = true;
+        target = target.substring(prefix.length());
+
+        if (target.startsWith(HLS_PATH)) {
+            int slash = target.indexOf('/', HLS_PATH.length());
+            if (slash > 0) {
+                request.hlsSession = target.substring(HLS_PATH.length(), slash);
+                request.hlsName = target.substring(slash + 1);
+            }
+        }
+        int query = target.indexOf("?url=");
+        if (!target.startsWith(PATH) || query < 0)
+            return request;
+        request.url = URLDecoder.decode(target.substring(query + 5), "UTF-8");
+
+        for (int i = 1; i < lines.length; i++) {
+            String line = lines[i];
+            int colon = line.indexOf(':');
+            if (colon < 0)
+                continue;
+            String name = line.substring(0, colon).trim();
+            String value = line.substring(colon + 1).trim();
+            if (name.equalsIgnoreCase("Range") && value.startsWith("bytes="))
+                parseRange(request, value.substring(6).trim());
+        }
+        return request;
+    }
+
+    /**
+     * Parses "start-", "start-end" or "-suffixLength". Anything else, like several ranges,
+     * is ignored: the whole content is sent, as HTTP allows.
+     */
+    static void parseRange(Request request, String range) {
+        int dash = range.indexOf('-');
+        if (dash < 0 || range.indexOf(',') >= 0)
+            return;
+
+        String first = range.substring(0, dash).trim();
+        String last = range.substring(dash + 1).trim();
+        try {
+            if (first.length() == 0) {
+                long suffix = Long.parseLong(last);
+                if (suffix < 0)
+                    return;
+                request.suffixLength = suffix;
+            } else {
+                long start = Long.parseLong(first);
+                long end = last.length() > 0 ? Long.parseLong(last) : -1;
+                if (start < 0 || (end >= 0 && end < start))
+                    return;
+                request.rangeStart = start;
+                request.rangeEnd = end;
+            }
+            request.hasRange = true;
+        } catch (NumberFormatException ignored) {
+        }
+    }
+
+    /**
+     * Serves the playlist of an HLS session, or a segment of the variant it chooses
+     */
+    private void serveHls(SocketChannel client, Request request) throws IOException {
+        HlsSession session = getHlsSession(request.hlsSession);
+        if (session == null) {
+            writeHead(client, request, "404 Not Found", null, -1, null);
+            return;
+        }
+
+        if (request.hlsName.equals(HLS_PLAYLIST)) {
+            String playlist;
+            try {
+                playlist = session.getMediaPlaylist();
+            } catch (IOException e) {
+                writeHead(client, request, "502 Bad Gateway", null, -1, null);
+                return;
+            }
+            if (playlist == null) {
+                // Can not switch by segment: MediaPlayer plays the original stream
+                writeRedirect(client, session.getMasterUrl());
+                return;
+            }
+
+            byte[] body = playlist.getBytes("UTF-8");
+            writeHead(client, request, "200 OK", "application/vnd.apple.mpegurl", body.length, null);
+            if (!"HEAD".equals(request.method)) {
+                ByteBuffer out = ByteBuffer.wrap(body);
+                while (out.hasRemaining())
+                    client.write(out);
+            }
+            return;
+        }
+
+        String url = null;
+        int dot = request.hlsName.indexOf('.');
+        try {
+            url = session.getSegmentUrl(Long.parseLong(request.hlsName.substring(0, dot < 0 ? request.hlsName.length() : dot)));
+        } catch (NumberFormatException ignored) {
+        } catch (IOException e) {
+            writeHead(client, request, "502 Bad Gateway", null, -1, null);
+            return;
+        }
+        if (url == null) {
+            writeHead(client, request, "404 Not Found", null, -1, null);
+            return;
+        }
+
+        request.url = url;
+        Transfer transfer = new Transfer();
+        try {
+            serve(client, request, transfer);
+        } finally {
+            bandwidthEstimator.addSample(transfer.bytes, transfer.nanos);
+        }
+    }
+
+    private void serve(SocketChannel client, Request request) throws IOException {
+        serve(client, request, null);
+    }
+
+    /**
+     * @param transfer receives the origin bytes and time, or null
+     */
+    private void serve(SocketChannel client, Request request, Transfer transfer) throws IOException {
+        VideoCacheEntry entry = cache.open(request.url);
+        HttpURLConnection origin = null;
+        try {
+            if (request.suffixLength >= 0) {
+                // The last bytes: needs the length, which a one byte request gives
+                if (entry.getContentLength() < 0) {
+                    HttpURLConnection probe = openOrigin(request.url, 0, 0, transfer);
+                    if (probe == null) {
+                        writeHead(client, request, "502 Bad Gateway", null, -1, null);
+                        return;
+                    }
+                    probe.disconnect();
+                }
+                long length = entry.getContentLength();
+                if (length < 0 || request.suffixLength == 0) {
+                    writeHead(client, request, "416 Range Not Satisfiable", null, -1, length >= 0 ? "bytes */" + length : null);
+                    return;
+                }
+                request.rangeStart = Math.max(0, length - request.suffixLength);
+                request.rangeEnd = length - 1;
+            }
+
+            long pos = request.rangeStart;
+
+            // Unknown length: the first origin response gives it, and its body is used for the first gap
+            if (entry.getContentLength() < 0 || entry.cachedLengthAt(pos) == 0) {
+                origin = openOrigin(request.url, pos, gapEnd(entry, pos, request.rangeEnd), transfer);
+                if (origin == null) {
+                    writeHead(client, request, "502 Bad Gateway", null, -1, null);
+                    return;
+                }
+            }
+
+            long length = entry.getContentLength();
+            if (length >= 0 && pos >= length) {
+                writeHead(client, request, "416 Range Not Satisfiable", null, -1, "bytes */" + length);
+                return;
+            }
+
+            long end = request.rangeEnd;
+            if (length >= 0 && (end < 0 || end >= length))
+                end = length - 1;
+
+            String type = entry.getContentType();
+            if (request.hasRange && length >= 0)
+                writeHead(client, request, "206 Partial Content", type, end - pos + 1, "bytes " + pos + "-" + end + "/" + length);
+            else if (length < 0 && pos > 0)
+                // Unknown length: a 200 would claim the body starts at 0
+                writeHead(client, request, "206 Partial Content", type, end >= 0 ? end - pos + 1 : -1,
+                        "bytes " + pos + "-" + (end >= 0 ? String.valueOf(end) : "*") + "/*");
+            else
+                writeHead(client, request, "200 OK", type, length >= 0 ? end - pos + 1 : -1, null);
+
+            if ("HEAD".equals(request.method))
+                return;
+
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (end < 0 || pos <= end) {
+                long cached = entry.cachedLengthAt(pos);
+                if (cached > 0) {
+                    if (origin != null) {
+                        origin.disconnect();
+                        origin = null;
+                    }
+                    long count = end < 0 ? cached : Math.min(cached, end - pos + 1);
+                    long sent = entry.transferTo(pos, count, client);
+                    if (sent <= 0)
+                        break;
+                    cache.addBytesFromCache(sent);
+                    pos += sent;
+                    continue;
+                }
+
+                if (origin == null) {
+                    origin = openOrigin(request.url, pos, gapEnd(entry, pos, end), transfer);
+                    if (origin == null)
+                        break;
+                }
+
+                long copied = copyGap(origin, entry, client, pos, gapEnd(entry, pos, end), buffer, transfer);
+                origin.disconnect();
+                origin = null;
+                if (copied <= 0)
+                    break;
+                pos += copied;
+            }
+        } finally {
+            if (origin != null)
+                origin.disconnect();
+            cache.close(entry);
+        }
+    }
+
+    /**
+     * @return last byte to download from pos: just before the next cached range, or end
+     */
+    private static long gapEnd(VideoCacheEntry entry, long pos, long end) {
+        long next = entry.nextCachedStart(pos);
+        if (next == Long.MAX_VALUE)
+            return end;
+        return end < 0 ? next - 1 : Math.min(end, next - 1);
+    }
+
+    /**
+     * {@link #openOrigin(String, long, long)}, timed into transfer if not null
+     */
+    private HttpURLConnection openOrigin(String url, long from, long to, Transfer transfer) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return openOrigin(url, from, to);
+        } finally {
+            if (transfer != null)
+                transfer.nanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Opens the origin for [from, to] (to < 0 means until the end) and fills the entry length and type
+     * (if the entry is open). Also used by {@link VideoPrefetcher}.
+     *
+     * @return the connection positioned at from, or null if the origin failed
+     */
+    HttpURLConnection openOrigin(String url, long from, long to) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setConnectTimeout(TIMEOUT);
+        conn.setReadTimeout(TIMEOUT);
+        conn.setRequestProperty("Accept-Encoding", "identity");
+        if (from > 0 || to >= 0)
+            conn.setRequestProperty("Range", "bytes=" + from + "-" + (to >= 0 ? String.valueOf(to) : ""));
+
+        int code = conn.getResponseCode();
+        if (code != HttpURLConnection.HTTP_OK && code != HttpURLConnection.HTTP_PARTIAL) {
+            conn.disconnect();
+            return null;
+        }
+
+        if (conn.getContentType() != null)
+            cacheContentType(url, conn.getContentType());
+
+        long total = -1;
+        if (code == HttpURLConnection.HTTP_PARTIAL) {
+            String contentRange = conn.getHeaderField("Content-Range");
+            if (contentRange != null) {
+                int slash = contentRange.lastIndexOf('/');
+                if (slash >= 0 && !contentRange.endsWith("*")) {
+                    try {
+                        total = Long.parseLong(contentRange.substring(slash + 1).trim());
+                    } catch (NumberFormatException ignored) {
+                    }
+                }
+            }
+        } else {
+            total = parseLong(conn.getHeaderField("Content-Length"));
+            // Origin ignored the range: skips to the requested position
+            if (from > 0) {
+                InputStream in = conn.getInputStream();
+                long skipped = 0;
+                while (skipped < from) {
+                    long n = in.skip(from - skipped);
+                    if (n <= 0)
+                        break;
+                    skipped += n;
+                }
+            }
+        }
+
+        VideoCacheEntry entry = cache.peek(url);
+        if (entry != null && total >= 0)
+            entry.setContentLength(total);
+        return conn;
+    }
+
+    private void cacheContentType(String url, String type) {
+        VideoCacheEntry entry = cache.peek(url);
+        if (entry != null)
+            entry.setContentType(type);
+    }
+
+    /**
+     * Copies origin bytes for [pos, to] to the client and to the cache
+     *
+     * @return number of bytes copied
+     */
+    private long copyGap(HttpURLConnection origin, VideoCacheEntry entry, SocketChannel client,
+                         long pos, long to, byte[] buffer, Transfer transfer) throws IOException {
+        InputStream in = origin.getInputStream();
+        long copied = 0;
+        while (to < 0 || pos + copied <= to) {
+            int max = buffer.length;
+            if (to >= 0)
+                max = (int) Math.min(max, to - (pos + copied) + 1);
+            long start = System.nanoTime();
+            int n = in.read(buffer, 0, max);
+            if (transfer != null) {
+                // Only the origin reads: time spent writing to a slow client is not bandwidth
+                transfer.nanos += System.nanoTime() - start;
+                transfer.bytes += Math.max(0, n);
+            }
+            if (n < 0) {
+                // End of a resource whose length was unknown
+                if (to < 0 && entry.getContentLength() < 0)
+                    entry.setContentLength(pos + copied);
+                break;
+            }
+
+            cache.addBytesFromOrigin(n);
+            // Streamed anyway if the entries in use fill the cache
+            cache.write(entry, pos + copied, ByteBuffer.wrap(buffer, 0, n));
+
+            ByteBuffer out = ByteBuffer.wrap(buffer, 0, n);
+            while (out.hasRemaining())
+                client.write(out);
+            copied += n;
+        }
+        return copied;
+    }
+
+    /**
+     * @param request marked as answered, or null
+     */
+    private static void writeHead(SocketChannel client, Request request, String status, String contentType,
+                                  long contentLength, String contentRange) throws IOException {
+        if (request != null)
+            request.headSent = true;
+        StringBuilder sb = new StringBuilder();
+        sb.append("HTTP/1.1 ").append(status).append("\r\n");
+        sb.append("Accept-Ranges: bytes\r\n");
+        if (contentType != null)
+            sb.append("Content-Type: ").append(contentType).append("\r\n");
+        if (contentLength >= 0)
+            sb.append("Content-Length: ").append(contentLength).append("\r\n");
+        if (contentRange != null)
+            sb.append("Content-Range: ").append(contentRange).append("\r\n");
+        sb.append("Connection: close\r\n\r\n");
+
+        ByteBuffer head = ByteBuffer.wrap(sb.toString().getBytes("US-ASCII"));
+        while (head.hasRemaining())
+            client.write(head);
+    }
+
+    private static void writeRedirect(SocketChannel client, String location) throws IOException {
+        String head = "HTTP/1.1 302 Found\r\nLocation: " + location + "\r\nContent-Length: 0\r\nConnection: close\r\n\r\n";
+        ByteBuffer out = ByteBuffer.wrap(head.getBytes("US-ASCII"));
+        while (out.hasRemaining())
+            client.write(out);
+    }
+
+    /**
+     * @return the playlist at this url, read as UTF-8
+     */
+    private static String loadPlaylist(String url) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setConnectTimeout(TIMEOUT);
+        conn.setReadTimeout(TIMEOUT);
+        try {
+            if (conn.getResponseCode() != HttpURLConnection.HTTP_OK)
+                throw new IOException("HTTP " + conn.getResponseCode() + " for " + url);
+
+            InputStream in = conn.getInputStream();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+                if (out.size() > MAX_PLAYLIST_SIZE)
+                    throw new IOException("playlist too large: " + url);
+            }
+            return out.toString("UTF-8");
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    private static String newToken() {
+        byte[] bytes = new byte[16];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes)
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        return sb.toString();
+    }
+
+    private static long parseLong(String value) {
+        if (value == null)
+            return -1;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package com.github.rtoshiro.view.video;
+
+import android.graphics.Rect;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Plays only the most visible {@link FullscreenVideoView}s of a scrolling list
+ * (ListView, RecyclerView, ScrollView...), so the others do not hold hardware decoders.
+ *
+ * Bind each view with its source from the adapter, unbind it when it is recycled,
+ * and attach the coordinator to the list:
+ *
+ * <pre>
+ * coordinator.attach(recyclerView);
+ * coordinator.bind(holder.videoView, uri);   // onBindViewHolder
+ * coordinator.unbind(holder.videoView);      // onViewRecycled
+ * </pre>
+ *
+ * Visibility is checked once per frame while the list scrolls or lays out. Views that
+ * stop playing are paused or release their player, following the {@link InactivePolicy}.
+ * Released players go back to a small pool shared by the bound views, and the position
+ * is restored when the view plays again. With a {@link VideoPrefetcher}, bound views that
+ * do not play yet are prefetched, the most visible first. Views with a {@link PosterLoader}
+ * show their poster while they do not play.
+ *
+ * All methods must be called from the main thread.
+ */
+public class ListPlaybackCoordinator implements ViewTreeObserver.OnScrollChangedListener, ViewTreeObserver.OnGlobalLayoutListener {
+
+    private final static String TAG = "ListPlaybackCoordinator";
+
+    /**
+     * Prefetch priority of bound views that are not visible. Visible ones get 0 (fully visible) to
+     * this value; use higher values for items further down the feed.
+     */
+    public final static int PREFETCH_PRIORITY_BOUND = 100;
+
+    /**
+     * What happens to a view that stops being one of the most visible
+     */
+    public enum InactivePolicy
+    {
+        /**
+         * Pauses it. Resumes instantly, but keeps its decoder.
+         */
+        PAUSE,
+        /**
+         * Releases its player, freeing the decoder. Prepares again when it becomes visible.
+         */
+        RELEASE
+    }
+
+    protected static class Binding {
+        protected final FullscreenVideoView view;
+        protected Uri uri;
+        protected int position = -1;
+        protected boolean active;
+
+        protected Binding(FullscreenVideoView view) {
+            this.view = view;
+        }
+    }
+
+    protected final VisibilitySelector selector;
+    protected final MediaPlayerPool mediaPlayerPool;
+    protected InactivePolicy inactivePolicy = InactivePolicy.RELEASE;
+    protected VideoPrefetcher prefetcher;
+
+    protected final ArrayList<Binding> bindings = new ArrayList<Binding>();
+    protected float[] fractions = new float[8];
+    protected boolean[] selection = new boolean[8];
+    protected final Rect visibleRect = new Rect();
+
+    protected View root;
+    protected boolean updatePending;
+    protected final Runnable updateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            updatePending = false;
+            update();
+        }
+    };
+
+    /**
+     * Plays the most visible view, if at least half of it is visible
+     */
+    public ListPlaybackCoordinator() {
+        this(new VisibilitySelector(1, 0.5f, 0.1f));
+    }
+
+    /**
+     * @param selector chooses the views to play
+     */
+    public ListPlaybackCoordinator(VisibilitySelector selector) {
+        this.selector = selector;
+        // One spare player, so the next view can be prepared while the last one is released
+        this.mediaPlayerPool = new MediaPlayerPool(selector.getMaxActive() + 1);
+    }
+
+    public void setInactivePolicy(InactivePolicy policy) {
+        this.inactivePolicy = policy;
+    }
+
+    public InactivePolicy getInactivePolicy() {
+        return inactivePolicy;
+    }
+
+    /**
+     * Prefetches the sources of bound views before they play. Views bound after this call use it.
+     *
+     * @param prefetcher a prefetcher of the proxy the views play through, or null
+     */
+    public void setPrefetcher(VideoPrefetcher prefetcher) {
+        this.prefetcher = prefetcher;
+    }
+
+    public VideoPrefetcher getPrefetcher() {
+        return prefetcher;
+    }
+
+    /**
+     * Players released by the bound views are kept here
+     */
+    public MediaPlayerPool getMediaPlayerPool() {
+        return mediaPlayerPool;
+    }
+
+    /**
+     * Starts following scroll and layout changes of this view's window
+     *
+     * @param root the list, or any view in the same window
+     */
+    public void attach(View root) {
+        detach();
+        this.root = root;
+        ViewTreeObserver observer = root.getViewTreeObserver();
+        observer.addOnScrollChangedListener(this);
+        observer.addOnGlobalLayoutListener(this);
+        requestUpdate();
+    }
+
+    /**
+     * Stops following the list. Views keep their state; call {@link #release()} to stop them.
+     */
+    @SuppressWarnings("deprecation")
+    public void detach() {
+        if (root == null)
+            return;
+
+        ViewTreeObserver observer = root.getViewTreeObserver();
+        if (observer.isAlive()) {
+            observer.removeOnScrollChangedListener(this);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+                observer.removeOnGlobalLayoutListener(this);
+            else
+                observer.removeGlobalOnLayoutListener(this);
+        }
+        root.removeCallbacks(updateRunnable);
+        updatePending = false;
+        root = null;
+    }
+
+    /**
+     * Sets the source of a view. Does nothing if it is already bound to this uri.
+     * The view is opened when it becomes one of the most visible.
+     */
+    public void bind(FullscreenVideoView view, Uri uri) {
+        Binding binding = find(view);
+        if (binding == null) {
+            binding = new Binding(view);
+            bindings.add(binding);
+            // The view gets a player from the shared pool only when it plays
+            view.releasePlayer();
+            view.setMediaPlayerPool(mediaPlayerPool);
+            if (prefetcher != null)
+                view.setPrefetcher(prefetcher);
+        } else if (uri.equals(binding.uri)) {
+            return;
+        } else {
+            binding.active = false;
+            view.releasePlayer();
+            if (prefetcher != null)
+                prefetcher.cancel(binding.uri.toString());
+        }
+
+        binding.uri = uri;
+        binding.position = -1;
+        view.showPoster(uri.toString());
+        if (prefetcher != null)
+            prefetcher.prefetch(uri.toString(), PREFETCH_PRIORITY_BOUND);
+        requestUpdate();
+    }
+
+    /**
+     * Releases the player of a view and forgets it, e.g. when the view is recycled
+     */
+    public void unbind(FullscreenVideoView view) {
+        Binding binding = find(view);
+        if (binding == null)
+            return;
+
+        bindings.remove(binding);
+        view.releasePlayer();
+        if (prefetcher != null && binding.uri != null)
+            prefetcher.cancel(binding.uri.toString());
+        requestUpdate();
+    }
+
+    /**
+     * Releases every bound view and the pooled players
+     */
+    public void release() {
+        detach();
+        for (int i = 0; i < bindings.size(); i++)
+            bindings.get(i).view.releasePlayer();
+        bindings.clear();
+        mediaPlayerPool.clear();
+    }
+
+    /**
+     * Schedules {@link #update()} for the next frame.
+     * Several calls before that frame result in a single update.
+     */
+    public void requestUpdate() {
+        if (updatePending || root == null)
+            return;
+
+        updatePending = true;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+            root.postOnAnimation(updateRunnable);
+        else
+            root.post(updateRunnable);
+    }
+
+    @Override
+    public void onScrollChanged() {
+        requestUpdate();
+    }
+
+    @Override
+    public void onGlobalLayout() {
+        requestUpdate();
+    }
+
+    /**
+     * Measures the visible fraction of each bound view, then starts the most visible ones
+     * and pauses or releases the others
+     */
+    public void update() {
+        int count = bindings.size();
+        if (fractions.length < count) {
+            fractions = new float[count * 2];
+            selection = new boolean[count * 2];
+        }
+
+        for (int i = 0; i < count; i++) {
+            Binding binding = bindings.get(i);
+            fractions[i] = visibleFraction(binding.view);
+            selection[i] = binding.active;
+        }
+
+        selector.select(fractions, selection, count);
+
+        // Inactive first, so their decoders are free before the new ones open
+        for (int i = 0; i < count; i++) {
+            Binding binding = bindings.get(i);
+            if (binding.active && !selection[i]) {
+                binding.active = false;
+                deactivate(binding);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            Binding binding = bindings.get(i);
+            if (!binding.active && selection[i]) {
+                binding.active = true;
+                activate(binding);
+            } else if (!binding.active && prefetcher != null && fractions[i] > 0) {
+                // Partly visible: likely next, before the bound views out of screen
+                prefetcher.prefetch(binding.uri.toString(), (int) ((1 - fractions[i]) * PREFETCH_PRIORITY_BOUND));
+            }
+        }
+    }
+
+    /**
+     * @return the views playing or about to play
+     */
+    public ArrayList<FullscreenVideoView> getActiveViews() {
+        ArrayList<FullscreenVideoView> views = new ArrayList<FullscreenVideoView>();
+        for (int i = 0; i < bindings.size(); i++) {
+            if (bindings.get(i).active)
+                views.add(bindings.get(i).view);
+        }
+        return views;
+    }
+
+    /**
+     * @return visible area of the view over its total area, from 0 to 1
+     */
+    protected float visibleFraction(View view) {
+        int width = view.getWidth();
+        int height = view.getHeight();
+        if (width == 0 || height == 0 || !view.isShown() || !view.getGlobalVisibleRect(visibleRect))
+            return 0;
+        return (float) visibleRect.width() * visibleRect.height() / ((float) width * height);
+    }
+
+    protected void activate(Binding binding) {
+        FullscreenVideoView view = binding.view;
+        switch (view.getCurrentState()) {
+            case IDLE:
+                view.setResumePosition(binding.position, true);
+                try {
+                    view.setVideoURI(binding.uri);
+                } catch (IOException e) {
+                    Log.e(TAG, "Could not open " + binding.uri, e);
+                }
+                break;
+            case INITIALIZED:
+            case PREPARING:
+                view.setResumePosition(binding.position, true);
+                break;
+            case PREPARED:
+            case PAUSED:
+            case PLAYBACKCOMPLETED:
+                view.start();
+                break;
+            default:
+                break;
+        }
+    }
+
+    protected void deactivate(Binding binding) {
+        FullscreenVideoView view = binding.view;
+        FullscreenVideoView.State state = view.getCurrentState();
+        if (inactivePolicy == InactivePolicy.RELEASE) {
+            if (state == FullscreenVideoView.State.PLAYBACKCOMPLETED)
+                binding.position = -1;
+            else if (view.isInPlaybackState())
+                binding.position = view.getCurrentPosition();
+            view.releasePlayer();
+            view.showPoster(binding.uri.toString());
+        } else if (state == FullscreenVideoView.State.STARTED) {
+            view.pause();
+        } else if (state == FullscreenVideoView.State.INITIALIZED || state == FullscreenVideoView.State.PREPARING) {
+            view.setResumePosition(binding.position, false);
+        }
+    }
+
+    protected Binding find(FullscreenVideoView view) {
+        for (int i = 0; i < bindings.size(); i++) {
+            if (bindings.get(i).view == view)
+                return bindings.get(i);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,112 @@
+package com.github.rtoshiro.view.video;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Copy-on-write list of listeners used by {@link FullscreenVideoView}.
+ * Adding and removing copy a small array; dispatching iterates over the current
+ * array without locking or allocating. Each listener can be registered with an
+ * {@link Executor}, so slow consumers (analytics, logging) are called off the main thread.
+ *
+ * @param <T> the listener interface
+ */
+public class ListenerRegistry<T> {
+
+    /**
+     * A listener and where it is called
+     */
+    public static final class Registration<T> {
+        public final T listener;
+
+        /**
+         * null to call the listener directly, on the thread that dispatches the event
+         */
+        public final Executor executor;
+
+        Registration(T listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+    }
+
+    private static final Registration<?>[] EMPTY = new Registration<?>[0];
+
+    private volatile Registration<T>[] registrations = newArray(0);
+
+    /**
+     * Adds a listener called on the thread that dispatches the event
+     */
+    public void add(T listener) {
+        add(listener, null);
+    }
+
+    /**
+     * Adds a listener. Does nothing if it is already registered.
+     *
+     * @param listener the listener
+     * @param executor where the listener is called, or null to call it directly
+     */
+    public synchronized void add(T listener, Executor executor) {
+        if (listener == null)
+            throw new IllegalArgumentException("listener must not be null");
+        if (indexOf(listener) >= 0)
+            return;
+
+        Registration<T>[] current = registrations;
+        Registration<T>[] grown = newArray(current.length + 1);
+        System.arraycopy(current, 0, grown, 0, current.length);
+        grown[current.length] = new Registration<T>(listener, executor);
+        registrations = grown;
+    }
+
+    /**
+     * @return true if the listener was registered
+     */
+    public synchronized boolean remove(T listener) {
+        int index = indexOf(listener);
+        if (index < 0)
+            return false;
+
+        Registration<T>[] current = registrations;
+        Registration<T>[] shrunk = newArray(current.length - 1);
+        System.arraycopy(current, 0, shrunk, 0, index);
+        System.arraycopy(current, index + 1, shrunk, index, current.length - index - 1);
+        registrations = shrunk;
+        return true;
+    }
+
+    public synchronized void clear() {
+        registrations = newArray(0);
+    }
+
+    public boolean isEmpty() {
+        return registrations.length == 0;
+    }
+
+    public int size() {
+        return registrations.length;
+    }
+
+    /**
+     * @return the current registrations, in insertion order. Must not be modified.
+     */
+    public Registration<T>[] get() {
+        return registrations;
+    }
+
+    // Java has no generic array creation. Safe: the arrays only ever hold
+    // Registration<T> added through add(), and never escape typed otherwise.
+    @SuppressWarnings("unchecked")
+    private static <T> Registration<T>[] newArray(int length) {
+        return (Registration<T>[]) (length == 0 ? EMPTY : new Registration<?>[length]);
+    }
+
+    private int indexOf(T listener) {
+        Registration<T>[] current = registrations;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].listener == listener)
+                return i;
+        }
+        return -1;
+    }
+}
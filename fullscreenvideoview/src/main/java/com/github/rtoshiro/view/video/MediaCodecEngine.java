@@ -0,0 +1,681 @@
+package com.github.rtoshiro.view.video;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.util.Log;
+import android.view.Surface;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PlayerEngine} built on MediaExtractor and MediaCodec, for low latency startup.
+ * Playback starts as soon as the {@link BufferingPolicy} allows it, and with
+ * {@link #setKeepCodec(boolean)} the configured decoder survives reset(), so the next
+ * source with the same format skips creating and configuring a codec.
+ *
+ * Only the video track is played: audio tracks are ignored (with a warning in the log) and
+ * {@link #setVolume(float, float)} does nothing. The output surface is set with
+ * {@link #setSurface(Surface)}. Extractor and codec run on their own thread; events are
+ * delivered on the thread that created the engine (or the main thread).
+ *
+ * Requires API 16.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+public class MediaCodecEngine implements PlayerEngine, Handler.Callback {
+
+    private final static String TAG = "MediaCodecEngine";
+
+    private final static int MSG_PREPARE = 1;
+    private final static int MSG_START = 2;
+    private final static int MSG_PAUSE = 3;
+    private final static int MSG_SEEK = 4;
+    private final static int MSG_STOP = 5;
+    private final static int MSG_RESET = 6;
+    private final static int MSG_RELEASE = 7;
+    private final static int MSG_SURFACE = 8;
+    private final static int MSG_WORK = 9;
+
+    // Longest wait for the engine thread in setSurface(null) and release()
+    private final static long WAIT_TIMEOUT_MS = 500;
+    // The work loop runs this often while decoding
+    private final static long WORK_INTERVAL_MS = 5;
+    // Frames due within this are rendered now; frames later than LATE_DROP are dropped
+    private final static long EARLY_RENDER_US = 10000;
+    private final static long LATE_DROP_US = 40000;
+
+    protected final Context context;
+    protected final HandlerThread thread;
+    protected final Handler handler;
+    protected final Handler callbackHandler;
+
+    protected volatile Listener listener;
+    protected volatile BufferingPolicy bufferingPolicy = BufferingPolicy.DEFAULT;
+    protected volatile boolean keepCodec;
+    protected volatile boolean looping;
+
+    // Read from any thread
+    protected volatile int positionMs;
+    protected volatile int durationMs = -1;
+    protected volatile int videoWidth, videoHeight;
+    protected volatile boolean playing;
+
+    // Engine thread only
+    private String source;
+    private MediaExtractor extractor;
+    private MediaFormat format;
+    private Surface surface;
+    private MediaCodec codec;
+    private String codecMime;
+    private int codecWidth, codecHeight;
+    private Surface codecSurface;
+    private ByteBuffer[] inputBuffers;
+    private final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+    private final PlaybackClock clock = new PlaybackClock();
+    private boolean preparing;
+    private boolean prepared;
+    private boolean stalled;
+    private boolean inputDone, outputDone;
+    private long lastQueuedUs;
+    private int pendingOutput = -1;
+    private long pendingOutputUs;
+    private boolean renderNextFrame; // first frame, or the frame after a seek, even while paused
+    private boolean firstFrameReported;
+    private boolean seeking;
+    private long seekTargetUs = -1;
+    private int bufferPercent = -1;
+
+    public MediaCodecEngine(Context context) {
+        this.context = context.getApplicationContext();
+        Looper looper = Looper.myLooper();
+        this.callbackHandler = new Handler(looper != null ? looper : Looper.getMainLooper());
+        this.thread = new HandlerThread(TAG);
+        this.thread.start();
+        this.handler = new Handler(thread.getLooper(), this);
+    }
+
+    /**
+     * Used from the next prepareAsync()
+     */
+    public void setBufferingPolicy(BufferingPolicy policy) {
+        this.bufferingPolicy = policy;
+    }
+
+    public BufferingPolicy getBufferingPolicy() {
+        return bufferingPolicy;
+    }
+
+    /**
+     * @param keepCodec true to keep the configured decoder on reset(), for the next source.
+     *                  It is reused if the next source has the same mime type and size.
+     */
+    public void setKeepCodec(boolean keepCodec) {
+        this.keepCodec = keepCodec;
+    }
+
+    /**
+     * Sets the output. MediaCodec can not change its surface before API 23, so the decoder
+     * is created again and the current frame decoded again on the new surface.
+     * With null, waits until the decoder has released the surface, so the caller can let it be destroyed.
+     *
+     * @param surface the surface, or null when it is destroyed
+     */
+    public void setSurface(Surface surface) {
+        handler.obtainMessage(MSG_SURFACE, surface).sendToTarget();
+        if (surface == null) {
+            final CountDownLatch done = new CountDownLatch(1);
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    done.countDown();
+                }
+            });
+            try {
+                done.await(WAIT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Same as {@link #setSurface(Surface)} with the surface of target
+     */
+    @Override
+    public void setDisplay(RenderTarget target) {
+        setSurface(target != null ? target.getSurface() : null);
+    }
+
+    @Override
+    public int getVideoWidth() {
+        return videoWidth;
+    }
+
+    @Override
+    public int getVideoHeight() {
+        return videoHeight;
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Recorded now, opened by prepareAsync() on the engine thread
+     *
+     * @param source a path, a http(s) url or a content uri
+     */
+    @Override
+    public void setDataSource(String source) throws IOException {
+        if (source == null)
+            throw new IOException("source must not be null");
+        handler.obtainMessage(MSG_RESET, source).sendToTarget();
+    }
+
+    @Override
+    public void prepareAsync() {
+        handler.sendEmptyMessage(MSG_PREPARE);
+    }
+
+    @Override
+    public void start() {
+        playing = true;
+        handler.sendEmptyMessage(MSG_START);
+    }
+
+    @Override
+    public void pause() {
+        playing = false;
+        handler.sendEmptyMessage(MSG_PAUSE);
+    }
+
+    @Override
+    public void stop() {
+        playing = false;
+        handler.sendEmptyMessage(MSG_STOP);
+    }
+
+    @Override
+    public void seekTo(int msec, boolean exact) {
+        handler.obtainMessage(MSG_SEEK, msec, exact ? 1 : 0).sendToTarget();
+    }
+
+    @Override
+    public void reset() {
+        playing = false;
+        handler.obtainMessage(MSG_RESET, null).sendToTarget();
+    }
+
+    /**
+     * Releases the decoder and stops the engine thread. The engine can not be used anymore.
+     * Waits until the surface is free for another player.
+     */
+    @Override
+    public void release() {
+        playing = false;
+        listener = null;
+        handler.sendEmptyMessage(MSG_RELEASE);
+        try {
+            thread.join(WAIT_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void setLooping(boolean looping) {
+        this.looping = looping;
+    }
+
+    /**
+     * Does nothing: audio is not played
+     */
+    @Override
+    public void setVolume(float leftVolume, float rightVolume) {
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        return positionMs;
+    }
+
+    @Override
+    public int getDuration() {
+        return durationMs;
+    }
+
+    @Override
+    public boolean isPlaying() {
+        return playing;
+    }
+
+    @Override
+    public boolean handleMessage(Message msg) {
+        try {
+            switch (msg.what) {
+                case MSG_PREPARE:
+                    doPrepare();
+                    break;
+                case MSG_START:
+                    clock.start(System.nanoTime());
+                    scheduleWork();
+                    break;
+                case MSG_PAUSE:
+                    clock.pause(System.nanoTime());
+                    break;
+                case MSG_SEEK:
+                    doSeek(msg.arg1 * 1000L, msg.arg2 != 0);
+                    break;
+                case MSG_STOP:
+                    clock.pause(System.nanoTime());
+                    closeSource();
+                    break;
+                case MSG_RESET:
+                    doReset();
+                    source = (String) msg.obj;
+                    break;
+                case MSG_RELEASE:
+                    doReset();
+                    releaseCodec();
+                    thread.quit();
+                    break;
+                case MSG_SURFACE:
+                    doSetSurface((Surface) msg.obj);
+                    break;
+                case MSG_WORK:
+                    doWork();
+                    break;
+            }
+        } catch (IOException e) {
+            fail(ERROR_IO, e);
+        } catch (RuntimeException e) {
+            // MediaCodec and MediaExtractor report most failures as IllegalStateException
+            fail(ERROR_UNKNOWN, e);
+        }
+        return true;
+    }
+
+    private void doPrepare() throws IOException {
+        if (source == null)
+            throw new IOException("no data source");
+
+        extractor = new MediaExtractor();
+        Uri uri = Uri.parse(source);
+        String scheme = uri.getScheme();
+        if (scheme != null && (scheme.equals("content") || scheme.equals("android.resource")))
+            extractor.setDataSource(context, uri, null);
+        else
+            extractor.setDataSource(source);
+
+        format = null;
+        boolean hasAudio = false;
+        for (int i = 0; i < extractor.getTrackCount(); i++) {
+            MediaFormat f = extractor.getTrackFormat(i);
+            String mime = f.getString(MediaFormat.KEY_MIME);
+            if (mime == null)
+                continue;
+            if (format == null && mime.startsWith("video/")) {
+                extractor.selectTrack(i);
+                format = f;
+            } else if (mime.startsWith("audio/")) {
+                hasAudio = true;
+            }
+        }
+        if (hasAudio)
+            Log.w(TAG, "audio track not played: MediaCodecEngine decodes video only - " + source);
+        if (format == null) {
+            fail(ERROR_UNSUPPORTED, new IOException("no video track in " + source));
+            return;
+        }
+
+        videoWidth = format.getInteger(MediaFormat.KEY_WIDTH);
+        videoHeight = format.getInteger(MediaFormat.KEY_HEIGHT);
+        post(EVENT_VIDEO_SIZE_CHANGED, videoWidth, videoHeight);
+        durationMs = format.containsKey(MediaFormat.KEY_DURATION) ? (int) (format.getLong(MediaFormat.KEY_DURATION) / 1000) : -1;
+        lastQueuedUs = 0;
+        clock.setPositionUs(0, System.nanoTime());
+        preparing = true;
+        renderNextFrame = true;
+        if (surface != null)
+            configureCodec();
+        scheduleWork();
+    }
+
+    private void doSeek(long positionUs, boolean exact) {
+        if (extractor == null)
+            return;
+
+        long now = System.nanoTime();
+        extractor.seekTo(positionUs, exact ? MediaExtractor.SEEK_TO_PREVIOUS_SYNC : MediaExtractor.SEEK_TO_CLOSEST_SYNC);
+        long sampleUs = Math.max(0, extractor.getSampleTime());
+        lastQueuedUs = sampleUs;
+        inputDone = outputDone = false;
+        flushCodec();
+
+        // Without exact, the sync frame found by the extractor is the new position
+        long targetUs = exact ? positionUs : sampleUs;
+        clock.setPositionUs(targetUs, now);
+        positionMs = (int) (targetUs / 1000);
+        if (codec == null) {
+            post(EVENT_SEEK_COMPLETE, 0, 0);
+            return;
+        }
+
+        seeking = true;
+        seekTargetUs = exact ? positionUs : -1;
+        renderNextFrame = true;
+        scheduleWork();
+    }
+
+    private void doSetSurface(Surface surface) {
+        if (surface == this.surface)
+            return;
+        this.surface = surface;
+
+        if (codec != null && codecSurface != surface)
+            releaseCodec();
+        if (surface != null && extractor != null) {
+            configureCodec();
+            // Decodes the current frame again on the new surface
+            doSeek(clock.getPositionUs(System.nanoTime()), false);
+            seeking = false;
+        }
+    }
+
+    /**
+     * Reuses the kept decoder if the format matches, otherwise creates one
+     */
+    private void configureCodec() {
+        String mime = format.getString(MediaFormat.KEY_MIME);
+        if (codec != null && codecSurface == surface && mime.equals(codecMime) &&
+                codecWidth == videoWidth && codecHeight == videoHeight) {
+            Log.d(TAG, "reusing " + mime + " decoder");
+            flushCodec();
+            return;
+        }
+
+        releaseCodec();
+        long start = System.nanoTime();
+        try {
+            codec = MediaCodec.createDecoderByType(mime);
+        } catch (IOException e) {
+            throw new IllegalStateException("no decoder for " + mime, e);
+        }
+        codec.configure(format, surface, null, 0);
+        codec.setVideoScalingMode(MediaCodec.VIDEO_SCALING_MODE_SCALE_TO_FIT);
+        codec.start();
+        inputBuffers = codec.getInputBuffers();
+        codecMime = mime;
+        codecWidth = videoWidth;
+        codecHeight = videoHeight;
+        codecSurface = surface;
+        Log.d(TAG, "created " + mime + " decoder in " + (System.nanoTime() - start) / 1000000 + "ms");
+    }
+
+    private void flushCodec() {
+        pendingOutput = -1;
+        if (codec != null)
+            codec.flush();
+    }
+
+    private void releaseCodec() {
+        pendingOutput = -1;
+        if (codec == null)
+            return;
+        try {
+            codec.stop();
+        } catch (RuntimeException e) {
+            Log.w(TAG, "MediaCodec.stop() failed", e);
+        }
+        codec.release();
+        codec = null;
+        codecMime = null;
+        codecSurface = null;
+        inputBuffers = null;
+    }
+
+    private void closeSource() {
+        handler.removeMessages(MSG_WORK);
+        if (extractor != null) {
+            extractor.release();
+            extractor = null;
+        }
+        preparing = prepared = stalled = seeking = false;
+        inputDone = outputDone = false;
+        bufferPercent = -1;
+    }
+
+    private void doReset() {
+        closeSource();
+        if (keepCodec && codec != null)
+            flushCodec();
+        else
+            releaseCodec();
+
+        source = null;
+        format = null;
+        firstFrameReported = false;
+        renderNextFrame = false;
+        seekTargetUs = -1;
+        clock.pause(System.nanoTime());
+        clock.setPositionUs(0, System.nanoTime());
+        positionMs = 0;
+        durationMs = -1;
+        videoWidth = videoHeight = 0;
+    }
+
+    private void scheduleWork() {
+        if (!handler.hasMessages(MSG_WORK))
+            handler.sendEmptyMessage(MSG_WORK);
+    }
+
+    /**
+     * One pass of the decode loop: buffering checks, feeding the decoder, rendering due frames
+     */
+    private void doWork() {
+        if (extractor == null)
+            return;
+
+        long now = System.nanoTime();
+        long bufferedMs = extractor.getCachedDuration();
+        bufferedMs = bufferedMs >= 0 ? bufferedMs / 1000 : -1;
+        boolean cacheComplete = extractor.hasCacheReachedEndOfStream();
+        BufferingPolicy policy = bufferingPolicy;
+
+        // Local files report no cache: everything is available
+        int percent = cacheComplete || bufferedMs < 0 ? 100 :
+                durationMs > 0 ? (int) Math.min(100, (positionMs + bufferedMs) * 100 / durationMs) : 0;
+        if (percent != bufferPercent) {
+            bufferPercent = percent;
+            post(EVENT_BUFFERING_UPDATE, percent, 0);
+        }
+
+        if (preparing && policy.canStart(bufferedMs, cacheComplete)) {
+            preparing = false;
+            prepared = true;
+            post(EVENT_PREPARED, 0, 0);
+        }
+
+        if (prepared && playing && !seeking) {
+            if (!stalled && policy.shouldStall(bufferedMs, cacheComplete)) {
+                stalled = true;
+                clock.pause(now);
+                post(EVENT_INFO, INFO_BUFFERING_START, 0);
+            } else if (stalled && policy.canResume(bufferedMs, cacheComplete)) {
+                stalled = false;
+                clock.start(now);
+                post(EVENT_INFO, INFO_BUFFERING_END, 0);
+            }
+        }
+
+        if (codec != null) {
+            feedInput(policy, now);
+            drainOutput(now);
+        } else if (prepared && playing) {
+            // No surface: the position still advances, frames are decoded once one is set
+            positionMs = (int) (clock.getPositionUs(now) / 1000);
+        }
+
+        if (outputDone && playing)
+            onEndOfStream(now);
+
+        if (preparing || seeking || renderNextFrame || (prepared && playing))
+            handler.sendEmptyMessageDelayed(MSG_WORK, WORK_INTERVAL_MS);
+    }
+
+    private void feedInput(BufferingPolicy policy, long now) {
+        long positionUs = clock.getPositionUs(now);
+        while (!inputDone && policy.shouldRead((lastQueuedUs - positionUs) / 1000)) {
+            int index = codec.dequeueInputBuffer(0);
+            if (index < 0)
+                return;
+
+            int size = extractor.readSampleData(inputBuffers[index], 0);
+            if (size < 0) {
+                codec.queueInputBuffer(index, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                inputDone = true;
+                return;
+            }
+            long sampleUs = extractor.getSampleTime();
+            codec.queueInputBuffer(index, 0, size, sampleUs, 0);
+            lastQueuedUs = sampleUs;
+            extractor.advance();
+        }
+    }
+
+    private void drainOutput(long now) {
+        while (!outputDone) {
+            if (pendingOutput < 0) {
+                int index = codec.dequeueOutputBuffer(info, 0);
+                if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED || index == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED)
+                    continue;
+                if (index < 0)
+                    return;
+                if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                    codec.releaseOutputBuffer(index, false);
+                    outputDone = true;
+                    return;
+                }
+                pendingOutput = index;
+                pendingOutputUs = info.presentationTimeUs;
+            }
+
+            // Exact seek: decode up to the target without showing the frames before it
+            if (seekTargetUs >= 0 && pendingOutputUs < seekTargetUs) {
+                releaseOutput(false);
+                continue;
+            }
+
+            if (renderNextFrame) {
+                clock.setPositionUs(pendingOutputUs, now);
+                releaseOutput(true);
+                renderNextFrame = false;
+                seekTargetUs = -1;
+                if (!firstFrameReported) {
+                    firstFrameReported = true;
+                    post(EVENT_INFO, INFO_VIDEO_RENDERING_START, 0);
+                }
+                if (seeking) {
+                    seeking = false;
+                    post(EVENT_SEEK_COMPLETE, 0, 0);
+                }
+                continue;
+            }
+
+            if (!playing || stalled || !clock.isRunning())
+                return;
+
+            long latenessUs = clock.getLatenessUs(pendingOutputUs, now);
+            if (latenessUs < -EARLY_RENDER_US)
+                return;
+            releaseOutput(latenessUs <= LATE_DROP_US);
+        }
+    }
+
+    private void releaseOutput(boolean render) {
+        codec.releaseOutputBuffer(pendingOutput, render);
+        if (render)
+            positionMs = (int) (pendingOutputUs / 1000);
+        pendingOutput = -1;
+    }
+
+    private void onEndOfStream(long now) {
+        if (looping) {
+            doSeek(0, false);
+            seeking = false;
+            clock.start(now);
+            return;
+        }
+
+        playing = false;
+        clock.pause(now);
+        if (durationMs > 0)
+            positionMs = durationMs;
+        post(EVENT_COMPLETION, 0, 0);
+    }
+
+    private void fail(int extra, Exception e) {
+        Log.e(TAG, "playback failed: " + source, e);
+        closeSource();
+        releaseCodec();
+        playing = false;
+        post(EVENT_ERROR, ERROR_UNKNOWN, extra);
+    }
+
+    private final static int EVENT_PREPARED = 1;
+    private final static int EVENT_SEEK_COMPLETE = 2;
+    private final static int EVENT_COMPLETION = 3;
+    private final static int EVENT_INFO = 4;
+    private final static int EVENT_ERROR = 5;
+    private final static int EVENT_BUFFERING_UPDATE = 6;
+    private final static int EVENT_VIDEO_SIZE_CHANGED = 7;
+
+    /**
+     * Delivers an event on {@link #callbackHandler}
+     */
+    private void post(final int event, final int what, final int extra) {
+        callbackHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                Listener l = listener;
+                if (l == null)
+                    return;
+                switch (event) {
+                    case EVENT_PREPARED:
+                        l.onPrepared(MediaCodecEngine.this);
+                        break;
+                    case EVENT_BUFFERING_UPDATE:
+                        l.onBufferingUpdate(MediaCodecEngine.this, what);
+                        break;
+                    case EVENT_SEEK_COMPLETE:
+                        l.onSeekComplete(MediaCodecEngine.this);
+                        break;
+                    case EVENT_COMPLETION:
+                        l.onCompletion(MediaCodecEngine.this);
+                        break;
+                    case EVENT_INFO:
+                        l.onInfo(MediaCodecEngine.this, what, extra);
+                        break;
+                    case EVENT_ERROR:
+                        l.onError(MediaCodecEngine.this, what, extra);
+                        break;
+                    case EVENT_VIDEO_SIZE_CHANGED:
+                        l.onVideoSizeChanged(MediaCodecEngine.this, what, extra);
+                        break;
+                }
+            }
+        });
+    }
+}
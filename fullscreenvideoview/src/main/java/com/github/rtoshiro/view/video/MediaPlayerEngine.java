@@ -0,0 +1,638 @@
+package com.github.rtoshiro.view.video;
+
+import android.content.Context;
+import android.media.AudioManager;
+import android.media.MediaPlayer;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@link PlayerEngine} backed by android.media.MediaPlayer, one engine per player.
+ *
+ * Every call to the player goes through this engine: commands run on the player thread if one
+ * is set, in call order, or right away on the calling thread. The player is created on the main
+ * thread, which receives its callbacks; the engine listens to it from construction and forwards
+ * the events to its {@link PlayerEngine.Listener}, if any.
+ *
+ * With a player thread, the getters do not call the player either: they answer from values
+ * read on the player thread once prepared, after a seek and after each read, and the position
+ * moves on with the clock while playing. onPrepared() is forwarded once those values are read.
+ */
+public class MediaPlayerEngine implements PlayerEngine, MediaPlayer.OnPreparedListener, MediaPlayer.OnSeekCompleteListener,
+        MediaPlayer.OnCompletionListener, MediaPlayer.OnBufferingUpdateListener, MediaPlayer.OnInfoListener, MediaPlayer.OnErrorListener,
+        MediaPlayer.OnVideoSizeChangedListener {
+
+    private final static String TAG = "MediaPlayerEngine";
+
+    // MediaPlayer.SEEK_CLOSEST_SYNC and SEEK_CLOSEST, API 26
+    private final static int SEEK_CLOSEST_SYNC = 2;
+    private final static int SEEK_CLOSEST = 3;
+    private static Method seekToModeMethod;
+    private static boolean seekToModeResolved;
+    private static Handler mainHandler;
+
+    private final Context context;
+    private final MediaPlayer mediaPlayer;
+    private MediaPlayerPool pool;
+    private PlayerCommandQueue<MediaPlayer> commandQueue;
+    private volatile Listener listener;
+    private RenderTarget display;
+    // Set on the player thread once setNextMediaPlayer() succeeded
+    private volatile MediaPlayerEngine nextPlayer;
+
+    // Read on the player thread, for the getters in player thread mode
+    private final Object cacheLock = new Object();
+    private final AtomicBoolean refreshQueued = new AtomicBoolean();
+    private volatile boolean prepared;
+    private int cachedPosition;
+    private long cachedPositionTime;
+    private int cachedDuration = -1;
+    private boolean cachedPlaying;
+    private int cachedVideoWidth;
+    private int cachedVideoHeight;
+    // Bumped by the commands that change the values, so older reads are dropped
+    private int cacheGeneration;
+    // Bumped by reset() and release(), so a late onPrepared() is dropped
+    private int resetCount;
+
+    public MediaPlayerEngine(MediaPlayer mediaPlayer) {
+        this(null, mediaPlayer);
+    }
+
+    /**
+     * @param context used to open content and resource uris, or null
+     */
+    public MediaPlayerEngine(Context context, MediaPlayer mediaPlayer) {
+        this.context = context;
+        this.mediaPlayer = mediaPlayer;
+        mediaPlayer.setOnPreparedListener(this);
+        mediaPlayer.setOnSeekCompleteListener(this);
+        mediaPlayer.setOnCompletionListener(this);
+        mediaPlayer.setOnBufferingUpdateListener(this);
+        mediaPlayer.setOnInfoListener(this);
+        mediaPlayer.setOnErrorListener(this);
+        mediaPlayer.setOnVideoSizeChangedListener(this);
+    }
+
+    /**
+     * The player, for APIs that take a MediaPlayer (e.g. listeners, {@link MediaPlayerPreloader}).
+     * Calls to it bypass the player thread.
+     */
+    public MediaPlayer getMediaPlayer() {
+        return mediaPlayer;
+    }
+
+    /**
+     * Commands are queued on this thread (usually a {@link PlayerThread}), or run right away if
+     * null. A queued command that throws is reported to
+     * {@link Listener#onError(PlayerEngine, int, int)} on the main thread, and the commands after
+     * it are skipped until reset().
+     */
+    public void setPlayerThread(Executor playerThread) {
+        commandQueue = playerThread == null ? null : new PlayerCommandQueue<MediaPlayer>(playerThread, new PlayerCommandQueue.Listener<MediaPlayer>() {
+            @Override
+            public void onCommandFailed(MediaPlayer mp, RuntimeException e) {
+                Log.e(TAG, "MediaPlayer command failed", e);
+                reportError(0);
+            }
+        });
+    }
+
+    /**
+     * release() gives the player back to this pool instead of releasing it
+     *
+     * @param pool the pool, or null
+     */
+    public void setPool(MediaPlayerPool pool) {
+        this.pool = pool;
+    }
+
+    private void runCommand(Runnable command) {
+        if (commandQueue != null)
+            commandQueue.execute(mediaPlayer, command);
+        else
+            command.run();
+    }
+
+    /**
+     * Runs reset() or release(), which also run after a failed command
+     */
+    private void runResetCommand(Runnable command) {
+        if (commandQueue != null)
+            commandQueue.executeReset(mediaPlayer, command);
+        else
+            command.run();
+    }
+
+    /**
+     * Reports a failed command through onError() on the main thread
+     */
+    private void reportError(final int extra) {
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                onError(mediaPlayer, MediaPlayer.MEDIA_ERROR_UNKNOWN, extra);
+            }
+        });
+    }
+
+    /**
+     * Posts events from the player thread to the main thread
+     */
+    protected void runOnMainThread(Runnable r) {
+        Handler handler;
+        synchronized (MediaPlayerEngine.class) {
+            if (mainHandler == null)
+                mainHandler = new Handler(Looper.getMainLooper());
+            handler = mainHandler;
+        }
+        handler.post(r);
+    }
+
+    /**
+     * Queues a read of the player values, unless one is already queued
+     */
+    private void queueRefresh() {
+        if (!refreshQueued.compareAndSet(false, true))
+            return;
+
+        final int generation;
+        synchronized (cacheLock) {
+            generation = cacheGeneration;
+        }
+        runCommand(new Runnable() {
+            @Override
+            public void run() {
+                refreshQueued.set(false);
+                refreshCache(generation);
+            }
+        });
+    }
+
+    /**
+     * Reads the player values on the player thread. They are dropped if a command changed them
+     * since the read was queued.
+     */
+    private void refreshCache(int generation) {
+        if (!prepared)
+            return;
+
+        int position, duration, width, height;
+        boolean playing;
+        try {
+            position = mediaPlayer.getCurrentPosition();
+            duration = mediaPlayer.getDuration();
+            playing = mediaPlayer.isPlaying();
+            width = mediaPlayer.getVideoWidth();
+            height = mediaPlayer.getVideoHeight();
+        } catch (IllegalStateException e) {
+            return;
+        }
+
+        synchronized (cacheLock) {
+            if (generation != cacheGeneration)
+                return;
+            cachedPosition = position;
+            cachedPositionTime = SystemClock.elapsedRealtime();
+            cachedDuration = duration;
+            cachedPlaying = playing;
+            cachedVideoWidth = width;
+            cachedVideoHeight = height;
+        }
+    }
+
+    /**
+     * Position in the cache, moved on with the clock while playing. Call with cacheLock held.
+     */
+    private int extrapolatePosition() {
+        int position = cachedPosition;
+        if (cachedPlaying)
+            position += (int) (SystemClock.elapsedRealtime() - cachedPositionTime);
+        if (cachedDuration > 0 && position > cachedDuration)
+            position = cachedDuration;
+        return position;
+    }
+
+    /**
+     * Sets the cached values changed by a command
+     *
+     * @param position the new position, or -1 to keep it
+     */
+    private void updateCache(int position, boolean playing) {
+        synchronized (cacheLock) {
+            cachedPosition = position >= 0 ? position : extrapolatePosition();
+            cachedPositionTime = SystemClock.elapsedRealtime();
+            cachedPlaying = playing;
+            cacheGeneration++;
+        }
+    }
+
+    private void clearCache() {
+        synchronized (cacheLock) {
+            resetCount++;
+            prepared = false;
+            cachedPosition = 0;
+            cachedDuration = -1;
+            cachedPlaying = false;
+            cachedVideoWidth = 0;
+            cachedVideoHeight = 0;
+            cacheGeneration++;
+        }
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Content and resource uris are opened with the context, if any.
+     * With a player thread, a failure is reported through onError() instead of thrown.
+     */
+    @Override
+    public void setDataSource(final String source) throws IOException {
+        if (commandQueue == null) {
+            openSource(source);
+            return;
+        }
+
+        runCommand(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    openSource(source);
+                } catch (IOException e) {
+                    Log.e(TAG, "setDataSource failed", e);
+                    // prepareAsync() may already be queued
+                    commandQueue.markFailed(mediaPlayer);
+                    reportError(MediaPlayer.MEDIA_ERROR_IO);
+                }
+            }
+        });
+    }
+
+    private void openSource(String source) throws IOException {
+        if (context != null && source.indexOf("://") > 0)
+            mediaPlayer.setDataSource(context, Uri.parse(source));
+        else
+            mediaPlayer.setDataSource(source);
+    }
+
+    @Override
+    public void prepareAsync() {
+        runCommand(new Runnable() {
+            @Override
+            public void run() {
+                mediaPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
+                mediaPlayer.prepareAsync();
+            }
+        });
+    }
+
+    @Override
+    public void start() {
+        if (commandQueue != null)
+            updateCache(-1, true);
+        runCommand(new Runnable() {
+            @Override
+            public void run() {
+                mediaPlayer.start();
+            }
+        });
+    }
+
+    @Override
+    public void pause() {
+        if (commandQueue != null)
+            updateCache(-1, false);
+        runCommand(new Runnable() {
+            @Override
+            public void run() {
+                mediaPlayer.pause();
+            }
+        });
+    }
+
+    @Override
+    public void stop() {
+        if (commandQueue != null)
+            updateCache(-1, false);
+        runCommand(new Runnable() {
+            @Override
+            public void run() {
+                mediaPlayer.stop();
+            }
+        });
+    }
+
+    /**
+     * Uses MediaPlayer.seekTo(long, int) from API 26. Before that, both modes are the same.
+     */
+    @Override
+    public void seekTo(final int msec, final boolean exact) {
+        if (commandQueue != null)
+            updateCache(msec, isPlaying());
+        runCommand(new Runnable() {
+            @Override
+            public void run() {
+                if (!seekPlayer(mediaPlayer, msec, exact ? SEEK_CLOSEST : SEEK_CLOSEST_SYNC))
+                    mediaPlayer.seekTo(msec);
+            }
+        });
+    }
+
+    @Override
+    public void reset() {
+        nextPlayer = null;
+        clearCache();
+        runResetCommand(new Runnable() {
+            @Override
+            public void run() {
+                mediaPlayer.reset();
+            }
+        });
+    }
+
+    /**
+     * Stops the player and gives it back to the pool, if any, or releases it.
+     * The engine must not be used afterwards.
+     */
+    @Override
+    public void release() {
+        listener = null;
+        nextPlayer = null;
+        clearCache();
+        final MediaPlayerPool pool = this.pool;
+        runResetCommand(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (mediaPlayer.isPlaying())
+                        mediaPlayer.stop();
+                } catch (IllegalStateException e) {
+                    // Error state: reset() or release() still work
+                }
+                if (pool != null)
+                    pool.recycle(mediaPlayer);
+                else
+                    mediaPlayer.release();
+            }
+        });
+    }
+
+    @Override
+    public void setLooping(final boolean looping) {
+        runCommand(new Runnable() {
+            @Override
+            public void run() {
+                mediaPlayer.setLooping(looping);
+            }
+        });
+    }
+
+    @Override
+    public void setVolume(final float leftVolume, final float rightVolume) {
+        runCommand(new Runnable() {
+            @Override
+            public void run() {
+                mediaPlayer.setVolume(leftVolume, rightVolume);
+            }
+        });
+    }
+
+    @Override
+    public void setDisplay(final RenderTarget target) {
+        final RenderTarget old = display;
+        display = target;
+        if (target == null && old == null)
+            return;
+
+        runCommand(new Runnable() {
+            @Override
+            public void run() {
+                if (target != null)
+                    target.attachPlayer(mediaPlayer);
+                else
+                    old.detachPlayer(mediaPlayer);
+            }
+        });
+    }
+
+    /**
+     * Chains next to this player with MediaPlayer.setNextMediaPlayer() (API 16), so the platform
+     * starts it when this one completes. A failure is logged: {@link #getNextPlayer()} stays null.
+     *
+     * @param next the prepared engine, or null to unchain
+     */
+    public void setNextPlayer(final MediaPlayerEngine next) {
+        nextPlayer = null;
+        runCommand(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mediaPlayer.setNextMediaPlayer(next != null ? next.mediaPlayer : null);
+                    nextPlayer = next;
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "setNextMediaPlayer failed", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the engine chained by {@link #setNextPlayer(MediaPlayerEngine)}, once the platform accepted it
+     */
+    public MediaPlayerEngine getNextPlayer() {
+        return nextPlayer;
+    }
+
+    @Override
+    public int getVideoWidth() {
+        if (commandQueue == null)
+            return mediaPlayer.getVideoWidth();
+        synchronized (cacheLock) {
+            return cachedVideoWidth;
+        }
+    }
+
+    @Override
+    public int getVideoHeight() {
+        if (commandQueue == null)
+            return mediaPlayer.getVideoHeight();
+        synchronized (cacheLock) {
+            return cachedVideoHeight;
+        }
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        if (commandQueue == null)
+            return mediaPlayer.getCurrentPosition();
+        queueRefresh();
+        synchronized (cacheLock) {
+            return extrapolatePosition();
+        }
+    }
+
+    @Override
+    public int getDuration() {
+        if (commandQueue == null)
+            return mediaPlayer.getDuration();
+        synchronized (cacheLock) {
+            return cachedDuration;
+        }
+    }
+
+    @Override
+    public boolean isPlaying() {
+        if (commandQueue == null)
+            return mediaPlayer.isPlaying();
+        synchronized (cacheLock) {
+            return cachedPlaying;
+        }
+    }
+
+    /**
+     * With a player thread, the values are read there before the listener is called
+     */
+    @Override
+    public void onPrepared(MediaPlayer mp) {
+        if (commandQueue == null) {
+            notifyPrepared();
+            return;
+        }
+
+        final int preparedResetCount;
+        synchronized (cacheLock) {
+            preparedResetCount = resetCount;
+        }
+        runCommand(new Runnable() {
+            @Override
+            public void run() {
+                int generation;
+                synchronized (cacheLock) {
+                    if (resetCount != preparedResetCount)
+                        return;
+                    prepared = true;
+                    generation = cacheGeneration;
+                }
+                refreshCache(generation);
+                runOnMainThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        boolean current;
+                        synchronized (cacheLock) {
+                            current = resetCount == preparedResetCount;
+                        }
+                        if (current)
+                            notifyPrepared();
+                    }
+                });
+            }
+        });
+    }
+
+    private void notifyPrepared() {
+        Listener l = listener;
+        if (l != null)
+            l.onPrepared(this);
+    }
+
+    @Override
+    public void onSeekComplete(MediaPlayer mp) {
+        if (commandQueue != null)
+            queueRefresh();
+        Listener l = listener;
+        if (l != null)
+            l.onSeekComplete(this);
+    }
+
+    @Override
+    public void onCompletion(MediaPlayer mp) {
+        if (commandQueue != null) {
+            int duration = getDuration();
+            updateCache(duration > 0 ? duration : -1, false);
+        }
+        Listener l = listener;
+        if (l != null)
+            l.onCompletion(this);
+    }
+
+    @Override
+    public void onBufferingUpdate(MediaPlayer mp, int percent) {
+        Listener l = listener;
+        if (l != null)
+            l.onBufferingUpdate(this, percent);
+    }
+
+    @Override
+    public boolean onInfo(MediaPlayer mp, int what, int extra) {
+        Listener l = listener;
+        if (l != null)
+            l.onInfo(this, what, extra);
+        return l != null;
+    }
+
+    @Override
+    public boolean onError(MediaPlayer mp, int what, int extra) {
+        if (commandQueue != null)
+            updateCache(-1, false);
+        Listener l = listener;
+        if (l != null)
+            l.onError(this, what, extra);
+        return l != null;
+    }
+
+    @Override
+    public void onVideoSizeChanged(MediaPlayer mp, int width, int height) {
+        synchronized (cacheLock) {
+            cachedVideoWidth = width;
+            cachedVideoHeight = height;
+        }
+        Listener l = listener;
+        if (l != null)
+            l.onVideoSizeChanged(this, width, height);
+    }
+
+    /**
+     * Calls MediaPlayer.seekTo(long, int), available from API 26
+     *
+     * @return false if this platform does not have it
+     */
+    private static boolean seekPlayer(MediaPlayer mp, int msec, int mode) {
+        Method seekToModeMethod = getSeekToModeMethod();
+        if (seekToModeMethod == null)
+            return false;
+
+        try {
+            seekToModeMethod.invoke(mp, (long) msec, mode);
+            return true;
+        } catch (Exception e) {
+            Log.w(TAG, "MediaPlayer.seekTo(long, int) failed", e);
+            return false;
+        }
+    }
+
+    private static synchronized Method getSeekToModeMethod() {
+        if (!seekToModeResolved) {
+            seekToModeResolved = true;
+            if (Build.VERSION.SDK_INT >= 26) {
+                try {
+                    seekToModeMethod = MediaPlayer.class.getMethod("seekTo", long.class, int.class);
+                } catch (NoSuchMethodException e) {
+                    Log.w(TAG, "MediaPlayer.seekTo(long, int) not found", e);
+                }
+            }
+        }
+        return seekToModeMethod;
+    }
+}
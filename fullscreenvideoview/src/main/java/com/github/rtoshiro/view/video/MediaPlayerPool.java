@@ -0,0 +1,56 @@
+package com.github.rtoshiro.view.video;
+
+import android.media.MediaPlayer;
+import android.util.Log;
+
+/**
+ * Keeps idle {@link MediaPlayer} instances, so views in a scrolling list
+ * do not create and release a native player on every attach/detach.
+ * Players are reset() before returning to the pool and released when the pool is full.
+ *
+ * Players must be acquired from the main thread, so their callbacks are delivered there.
+ */
+public class MediaPlayerPool extends PlayerPool<MediaPlayer> {
+
+    private final static String TAG = "MediaPlayerPool";
+
+    /**
+     * @param maxIdle maximum number of idle players kept by this pool
+     */
+    public MediaPlayerPool(int maxIdle) {
+        super(maxIdle);
+    }
+
+    @Override
+    protected MediaPlayer createPlayer() {
+        return new MediaPlayer();
+    }
+
+    /**
+     * Clears the listeners and the display, then calls reset()
+     */
+    @Override
+    protected boolean resetPlayer(MediaPlayer mp) {
+        mp.setOnPreparedListener(null);
+        mp.setOnErrorListener(null);
+        mp.setOnSeekCompleteListener(null);
+        mp.setOnCompletionListener(null);
+        mp.setOnBufferingUpdateListener(null);
+        mp.setOnInfoListener(null);
+        mp.setOnVideoSizeChangedListener(null);
+
+        try {
+            mp.setDisplay(null);
+            mp.reset();
+            return true;
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Could not reset MediaPlayer, releasing it", e);
+            return false;
+        }
+    }
+
+    @Override
+    protected void releasePlayer(MediaPlayer mp) {
+        mp.release();
+    }
+}
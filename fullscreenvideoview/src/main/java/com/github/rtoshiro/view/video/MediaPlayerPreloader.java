@@ -0,0 +1,227 @@
+package com.github.rtoshiro.view.video;
+
+import android.content.Context;
+import android.media.AudioManager;
+import android.media.MediaPlayer;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Prepares MediaPlayers ahead of time, before any surface exists.
+ * A {@link FullscreenVideoView} using this preloader takes the prepared player
+ * when setVideoURI()/setVideoPath() is called with the same source, so the
+ * next item of a playlist or feed starts without waiting for prepareAsync().
+ *
+ * All methods must be called from the main thread.
+ */
+public class MediaPlayerPreloader {
+
+    private final static String TAG = "MediaPlayerPreloader";
+
+    /**
+     * A preloaded player and its preparation status
+     */
+    public static class Entry implements MediaPlayer.OnPreparedListener, MediaPlayer.OnErrorListener {
+        protected final String key;
+        protected final MediaPlayer mediaPlayer;
+        protected final long startTime;
+        protected long preparedTime = -1;
+        protected boolean failed;
+
+        protected Entry(String key, MediaPlayer mediaPlayer) {
+            this.key = key;
+            this.mediaPlayer = mediaPlayer;
+            this.startTime = SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void onPrepared(MediaPlayer mp) {
+            preparedTime = SystemClock.elapsedRealtime();
+            Log.d(TAG, "preloaded " + key + " in " + (preparedTime - startTime) + "ms");
+        }
+
+        @Override
+        public boolean onError(MediaPlayer mp, int what, int extra) {
+            Log.d(TAG, "preload failed " + key + " (" + what + ", " + extra + ")");
+            failed = true;
+            return true;
+        }
+
+        public MediaPlayer getMediaPlayer() {
+            return mediaPlayer;
+        }
+
+        /**
+         * @return true if the player has reached PREPARED state
+         */
+        public boolean isPrepared() {
+            return preparedTime >= 0;
+        }
+
+        public boolean isFailed() {
+            return failed;
+        }
+
+        /**
+         * @return elapsedRealtime() when preload() was called
+         */
+        public long getStartTime() {
+            return startTime;
+        }
+    }
+
+    protected final Context context;
+    protected final int maxEntries;
+    protected MediaPlayerPool mediaPlayerPool;
+
+    // Access ordered: the first entry is the least recently used
+    protected final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(8, 0.75f, true);
+
+    /**
+     * @param context    used by MediaPlayer.setDataSource(Context, Uri)
+     * @param maxEntries maximum number of players kept prepared. The oldest one is released when exceeded.
+     */
+    public MediaPlayerPreloader(Context context, int maxEntries) {
+        if (maxEntries < 1)
+            throw new IllegalArgumentException("maxEntries must be >= 1");
+        this.context = context.getApplicationContext();
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Players are acquired from and recycled to this pool, when set
+     */
+    public void setMediaPlayerPool(MediaPlayerPool pool) {
+        this.mediaPlayerPool = pool;
+    }
+
+    /**
+     * Starts preparing a player for the given uri
+     *
+     * @return false if this uri is already preloaded or could not be opened
+     */
+    public boolean preload(Uri uri) {
+        return preload(uri.toString(), uri, null);
+    }
+
+    /**
+     * Starts preparing a player for the given path
+     *
+     * @return false if this path is already preloaded or could not be opened
+     */
+    public boolean preload(String path) {
+        return preload(path, null, path);
+    }
+
+    protected boolean preload(String key, Uri uri, String path) {
+        if (entries.containsKey(key))
+            return false;
+
+        MediaPlayer mp = mediaPlayerPool != null ? mediaPlayerPool.acquire() : new MediaPlayer();
+        Entry entry = new Entry(key, mp);
+        try {
+            if (uri != null)
+                mp.setDataSource(context, uri);
+            else
+                mp.setDataSource(path);
+            mp.setOnPreparedListener(entry);
+            mp.setOnErrorListener(entry);
+            mp.setAudioStreamType(AudioManager.STREAM_MUSIC);
+            mp.prepareAsync();
+        } catch (IOException e) {
+            Log.w(TAG, "Could not preload " + key, e);
+            dispose(mp);
+            return false;
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Could not preload " + key, e);
+            dispose(mp);
+            return false;
+        }
+
+        entries.put(key, entry);
+        trim();
+        return true;
+    }
+
+    /**
+     * Keeps a player that is already prepared, e.g. the one of a view destroyed by a
+     * configuration change, so the recreated view takes it instead of preparing again.
+     * The preloader takes ownership of the player and replaces its listeners.
+     *
+     * @param key uri.toString() or the path of the player source
+     * @return false if this source is already preloaded; the caller keeps the player
+     */
+    public boolean keep(String key, MediaPlayer mp) {
+        if (entries.containsKey(key))
+            return false;
+
+        Entry entry = new Entry(key, mp);
+        entry.preparedTime = entry.startTime;
+        mp.setOnPreparedListener(entry);
+        mp.setOnErrorListener(entry);
+        entries.put(key, entry);
+        trim();
+        return true;
+    }
+
+    /**
+     * Removes the preloaded player of this source and gives its ownership to the caller.
+     * The caller must replace the preloader listeners.
+     *
+     * @param key uri.toString() or the path used in preload()
+     * @return the entry, or null if this source is not preloaded or its preparation failed
+     */
+    public Entry take(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null && entry.isFailed()) {
+            dispose(entry.mediaPlayer);
+            return null;
+        }
+        return entry;
+    }
+
+    public boolean isPreloaded(String key) {
+        return entries.containsKey(key);
+    }
+
+    /**
+     * Releases the preloaded player of this source, if any
+     */
+    public void cancel(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null)
+            dispose(entry.mediaPlayer);
+    }
+
+    /**
+     * Releases every preloaded player
+     */
+    public void clear() {
+        for (Entry entry : entries.values())
+            dispose(entry.mediaPlayer);
+        entries.clear();
+    }
+
+    protected void trim() {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (entries.size() > maxEntries && it.hasNext()) {
+            Entry eldest = it.next().getValue();
+            it.remove();
+            Log.d(TAG, "evicting " + eldest.key);
+            dispose(eldest.mediaPlayer);
+        }
+    }
+
+    protected void dispose(MediaPlayer mp) {
+        if (mediaPlayerPool != null)
+            mediaPlayerPool.recycle(mp);
+        else
+            mp.release();
+    }
+}
@@ -0,0 +1,65 @@
+package com.github.rtoshiro.view.video;
+
+/**
+ * Media position of {@link MediaCodecEngine}, derived from a monotonic time source:
+ * it advances while running and holds still while paused or stalled. Frames are
+ * rendered when the clock reaches their presentation time.
+ *
+ * Times are passed in, so it has no Android dependencies and can be driven by a fake clock.
+ * Not thread safe.
+ */
+public class PlaybackClock {
+
+    private long basePositionUs;
+    private long baseTimeNs;
+    private boolean running;
+
+    /**
+     * @return media position at this time
+     */
+    public long getPositionUs(long nowNs) {
+        if (!running)
+            return basePositionUs;
+        return basePositionUs + (nowNs - baseTimeNs) / 1000;
+    }
+
+    /**
+     * Starts advancing from the current position
+     */
+    public void start(long nowNs) {
+        if (running)
+            return;
+        baseTimeNs = nowNs;
+        running = true;
+    }
+
+    /**
+     * Holds the current position
+     */
+    public void pause(long nowNs) {
+        if (!running)
+            return;
+        basePositionUs = getPositionUs(nowNs);
+        running = false;
+    }
+
+    /**
+     * Jumps to a position, e.g. after a seek. Keeps running if it was.
+     */
+    public void setPositionUs(long positionUs, long nowNs) {
+        basePositionUs = positionUs;
+        baseTimeNs = nowNs;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @param presentationUs presentation time of a frame
+     * @return how late the frame is at this time, negative if it is early
+     */
+    public long getLatenessUs(long presentationUs, long nowNs) {
+        return getPositionUs(nowNs) - presentationUs;
+    }
+}
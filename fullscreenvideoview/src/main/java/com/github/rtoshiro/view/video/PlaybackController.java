@@ -0,0 +1,288 @@
+package com.github.rtoshiro.view.video;
+
+import com.github.rtoshiro.view.video.FullscreenVideoView.State;
+
+/**
+ * Transport logic of {@link FullscreenVideoView}: start, pause, stop and seeks, validated by a
+ * {@link PlaybackStateMachine}, coalesced by a {@link SeekScheduler} and sent to a {@link PlayerEngine}.
+ * Playback resumes once every pending seek completes, unless paused in the meantime.
+ *
+ * Has no Android dependencies, so it runs on a plain JVM with a fake engine.
+ * Not thread safe; call it from the thread that receives the engine events.
+ */
+public class PlaybackController {
+
+    /**
+     * Source of the times given to {@link PlaybackMetrics}
+     */
+    public interface Clock {
+        /**
+         * @return milliseconds, from any origin
+         */
+        long now();
+    }
+
+    /**
+     * Side effects left to the owner of the controller
+     */
+    public interface Host {
+        /**
+         * A seek was sent to the engine
+         *
+         * @param scrubbing true if sent during {@link #beginScrubbing()}
+         */
+        void onSeekStarted(boolean scrubbing);
+
+        /**
+         * Every pending seek completed and no scrub is running
+         *
+         * @param resumeState the state before the first of these seeks.
+         *                    If STARTED and the state is still PAUSED, playback should resume.
+         */
+        void onSeeksFinished(State resumeState);
+    }
+
+    protected final PlaybackStateMachine stateMachine;
+    protected final PlaybackMetrics metrics;
+    protected final Clock clock;
+    protected final SeekScheduler seekScheduler = new SeekScheduler(new SeekScheduler.Seeker() {
+        @Override
+        public void performSeek(int msec, boolean exact) {
+            performEngineSeek(msec, exact);
+        }
+    });
+
+    protected PlayerEngine engine;
+    protected Host host;
+    protected boolean scrubbing;
+
+    public PlaybackController(PlaybackStateMachine stateMachine, PlaybackMetrics metrics, Clock clock) {
+        this.stateMachine = stateMachine;
+        this.metrics = metrics;
+        this.clock = clock;
+    }
+
+    public void setEngine(PlayerEngine engine) {
+        this.engine = engine;
+    }
+
+    public PlayerEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Without a host, playback resumes after seeks through {@link #start()}
+     */
+    public void setHost(Host host) {
+        this.host = host;
+    }
+
+    public PlaybackStateMachine getStateMachine() {
+        return stateMachine;
+    }
+
+    public SeekScheduler getSeekScheduler() {
+        return seekScheduler;
+    }
+
+    /**
+     * @return true in the states where position, duration and seeks are valid:
+     * PREPARED, STARTED, PAUSED and PLAYBACKCOMPLETED
+     */
+    public boolean isInPlaybackState() {
+        State state = stateMachine.getState();
+        return state == State.PREPARED || state == State.STARTED ||
+                state == State.PAUSED || state == State.PLAYBACKCOMPLETED;
+    }
+
+    /**
+     * @return true if playing, or if playback resumes once the pending seeks complete.
+     * isPlaying() of the engine is false during seeks, so play/pause toggles use this.
+     */
+    public boolean isPlaybackRequested() {
+        if (stateMachine.isSeeking())
+            return stateMachine.getSeekResumeState() == State.STARTED;
+        return stateMachine.getState() == State.STARTED;
+    }
+
+    /**
+     * Starts. A start during a seek resumes playback once it completes, like a start before it.
+     *
+     * @return false if the current state does not allow it; nothing was sent to the engine
+     */
+    public boolean start() {
+        if (stateMachine.isSeeking() && stateMachine.getState() == State.PAUSED) {
+            stateMachine.setSeekResumeState(State.STARTED);
+            return true;
+        }
+        if (!stateMachine.moveTo(State.STARTED))
+            return false;
+        engine.start();
+        metrics.onPlaybackStarted(clock.now());
+        return true;
+    }
+
+    /**
+     * Pauses. A pause during a seek wins over the state saved by seekTo().
+     *
+     * @return false if the current state does not allow it
+     */
+    public boolean pause() {
+        if (stateMachine.isSeeking())
+            stateMachine.setSeekResumeState(State.PAUSED);
+        return pausePlayback();
+    }
+
+    /**
+     * Pauses the engine, without touching the state restored after seeks
+     */
+    protected boolean pausePlayback() {
+        State state = stateMachine.getState();
+        // MediaPlayer allows pause() in PLAYBACKCOMPLETED, but stays there
+        if (state == State.PLAYBACKCOMPLETED || state == State.PAUSED)
+            return true;
+
+        if (!stateMachine.moveTo(state, State.PAUSED))
+            return false;
+        engine.pause();
+        metrics.onPlaybackStopped(clock.now());
+        return true;
+    }
+
+    /**
+     * @return false if the current state does not allow it
+     */
+    public boolean stop() {
+        if (!stateMachine.moveTo(State.STOPPED))
+            return false;
+        cancelSeeks();
+        engine.stop();
+        metrics.onPlaybackStopped(clock.now());
+        return true;
+    }
+
+    /**
+     * Seeks through {@link #seekScheduler}: only one seek runs at a time and, while it runs,
+     * only the latest target is kept.
+     *
+     * @return false if ignored: not in a playback state, unknown duration or target after the end
+     */
+    public boolean seekTo(int msec, boolean exact) {
+        if (!isInPlaybackState())
+            return false;
+
+        // No live streaming
+        int duration = engine.getDuration();
+        if (duration <= -1 || msec > duration)
+            return false;
+
+        seekScheduler.seekTo(msec, exact);
+        return true;
+    }
+
+    /**
+     * Called by {@link #seekScheduler} for each seek actually sent to the engine
+     */
+    protected void performEngineSeek(int msec, boolean exact) {
+        stateMachine.beginSeek();
+        if (stateMachine.getState() == State.STARTED)
+            pausePlayback();
+        metrics.onSeekStarted(clock.now());
+        engine.seekTo(msec, exact);
+
+        if (host != null)
+            host.onSeekStarted(scrubbing);
+    }
+
+    /**
+     * Must be called when the engine reports a completed seek.
+     * Sends the latest collapsed target, if any, before releasing this seek.
+     * The completion of a seek sent before {@link #cancelSeeks()} is ignored.
+     *
+     * @return true if no seek is running anymore, false if one is or the completion was ignored
+     */
+    public boolean onSeekComplete() {
+        if (seekScheduler.isNextCompletionStale()) {
+            seekScheduler.onSeekComplete();
+            return false;
+        }
+        metrics.onSeekCompleted(clock.now());
+        boolean idle = seekScheduler.onSeekComplete() == SeekScheduler.Completion.IDLE;
+        finishSeek(stateMachine.endSeek());
+        return idle;
+    }
+
+    /**
+     * Starts a scrub: playback pauses and is not resumed by the seeks issued until
+     * {@link #endScrubbing()}, which restores the state from before this call.
+     */
+    public void beginScrubbing() {
+        if (scrubbing || !isInPlaybackState())
+            return;
+
+        State state = stateMachine.getState();
+        scrubbing = true;
+        // Holds the resume state until endScrubbing()
+        stateMachine.beginSeek();
+        if (state == State.STARTED)
+            pausePlayback();
+    }
+
+    public void endScrubbing() {
+        if (!scrubbing)
+            return;
+
+        scrubbing = false;
+        finishSeek(stateMachine.endSeek());
+    }
+
+    public boolean isScrubbing() {
+        return scrubbing;
+    }
+
+    /**
+     * Drops running, pending and scrub seeks, e.g. after stop() or an error.
+     * If the engine still completes the running seek, that completion is ignored.
+     */
+    public void cancelSeeks() {
+        seekScheduler.cancel();
+        stateMachine.cancelSeeks();
+        scrubbing = false;
+    }
+
+    /**
+     * Must be called when the engine was reset, replaced or starts preparing: it will not
+     * complete the seeks sent before. Also cancels them.
+     */
+    public void onEngineReset() {
+        cancelSeeks();
+        seekScheduler.reset();
+    }
+
+    /**
+     * @param resumeState the state returned by {@link PlaybackStateMachine#endSeek()}, null if seeks are still pending
+     */
+    protected void finishSeek(State resumeState) {
+        if (resumeState == null)
+            return;
+
+        if (host != null)
+            host.onSeeksFinished(resumeState);
+        else if (resumeState == State.STARTED && stateMachine.getState() == State.PAUSED)
+            start();
+    }
+
+    /**
+     * Must be called when the engine reports the end of the media
+     *
+     * @param looping true if the engine loops, so playback goes on
+     * @return true if the state moved to PLAYBACKCOMPLETED
+     */
+    public boolean onCompletion(boolean looping) {
+        boolean completed = !looping && stateMachine.moveTo(State.PLAYBACKCOMPLETED);
+        if (completed)
+            metrics.onPlaybackStopped(clock.now());
+        metrics.onCompletion();
+        return completed;
+    }
+}
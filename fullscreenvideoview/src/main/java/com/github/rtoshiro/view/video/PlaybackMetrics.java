@@ -0,0 +1,413 @@
+package com.github.rtoshiro.view.video;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Quality of experience counters of one player: startup time, seek latency,
+ * buffering stalls, rebuffer ratio, errors and fullscreen toggle latency.
+ * {@link FullscreenVideoView} feeds it with timestamps (milliseconds, any monotonic clock),
+ * so it has no Android dependencies. Counters are lock free and can be read from any thread
+ * with {@link #snapshot()}.
+ */
+public class PlaybackMetrics {
+
+    public static final int EVENT_PREPARED = 1;
+    public static final int EVENT_FIRST_FRAME = 2;
+    public static final int EVENT_SEEK_COMPLETE = 3;
+    public static final int EVENT_STALL_END = 4;
+    public static final int EVENT_ERROR = 5;
+    public static final int EVENT_COMPLETION = 6;
+    public static final int EVENT_READY = 7;
+    public static final int EVENT_FULLSCREEN_LAYOUT = 8;
+    public static final int EVENT_FULLSCREEN_SURFACE = 9;
+
+    /**
+     * Upper bounds (exclusive, milliseconds) of the seek latency histogram buckets.
+     * The last bucket holds every seek slower than the last bound.
+     */
+    public static final long[] SEEK_LATENCY_BOUNDS = {50, 100, 250, 500, 1000, 2000};
+
+    /**
+     * Receives metrics events. Called on the thread that reported the event (usually the main thread).
+     */
+    public interface Listener {
+        /**
+         * @param metrics the metrics that changed
+         * @param event   one of the EVENT_* constants
+         * @param value   duration in ms for PREPARED, READY, FIRST_FRAME, SEEK_COMPLETE, STALL_END,
+         *                FULLSCREEN_LAYOUT and FULLSCREEN_SURFACE,
+         *                error code (what) for ERROR, 0 otherwise
+         */
+        void onPlaybackEvent(PlaybackMetrics metrics, int event, long value);
+    }
+
+    /**
+     * Copy of the counters at a given time
+     */
+    public static class Snapshot {
+        public long timeToPrepared = -1;
+        public long timeToReady = -1; // prepared and surface ready
+        public long timeToFirstFrame = -1;
+        public boolean startPreloaded; // the player was prepared before the view needed it
+        public long coldStartCount; // first frames of players prepared by the view
+        public long coldStartTotalTime;
+        public long preloadedStartCount; // first frames of preloaded players
+        public long preloadedStartTotalTime;
+        public long seekCount;
+        public long seekTotalTime;
+        public long[] seekLatencyHistogram;
+        public long stallCount;
+        public long stallTotalTime;
+        public long playTime; // time in STARTED state, stalls included
+        public long errorCount;
+        public int lastErrorWhat;
+        public int lastErrorExtra;
+        public long completionCount;
+        public long fullscreenToggleCount;
+        public long fullscreenLayoutTotalTime; // from fullscreen() to the next layout pass
+        public long fullscreenSurfaceCount; // toggles that recreated the surface
+        public long fullscreenSurfaceTotalTime; // from fullscreen() to the new surface
+
+        /**
+         * @return time spent stalled / time in STARTED state, between 0 and 1
+         */
+        public float getRebufferRatio() {
+            return playTime > 0 ? Math.min(1f, (float) stallTotalTime / playTime) : 0;
+        }
+
+        /**
+         * @return average time to first frame of players prepared by the view in ms, or -1 without any
+         */
+        public long getAverageColdStartTime() {
+            return coldStartCount > 0 ? coldStartTotalTime / coldStartCount : -1;
+        }
+
+        /**
+         * @return average time to first frame of preloaded players in ms, or -1 without any
+         */
+        public long getAveragePreloadedStartTime() {
+            return preloadedStartCount > 0 ? preloadedStartTotalTime / preloadedStartCount : -1;
+        }
+
+        /**
+         * @return average seek latency in ms, or -1 without seeks
+         */
+        public long getAverageSeekTime() {
+            return seekCount > 0 ? seekTotalTime / seekCount : -1;
+        }
+
+        /**
+         * @return average time from fullscreen() to the next layout pass in ms, or -1 without toggles
+         */
+        public long getAverageFullscreenLayoutTime() {
+            return fullscreenToggleCount > 0 ? fullscreenLayoutTotalTime / fullscreenToggleCount : -1;
+        }
+
+        /**
+         * @return average time from fullscreen() to the recreated surface in ms, or -1 if none was recreated
+         */
+        public long getAverageFullscreenSurfaceTime() {
+            return fullscreenSurfaceCount > 0 ? fullscreenSurfaceTotalTime / fullscreenSurfaceCount : -1;
+        }
+
+        @Override
+        public String toString() {
+            return "PlaybackMetrics{prepared=" + timeToPrepared + "ms, ready=" + timeToReady +
+                    "ms, firstFrame=" + timeToFirstFrame + "ms" + (startPreloaded ? " (preloaded)" : "") +
+                    ", cold start avg " + getAverageColdStartTime() + "ms, preloaded start avg " +
+                    getAveragePreloadedStartTime() + "ms, seeks=" + seekCount + " avg " + getAverageSeekTime() +
+                    "ms, stalls=" + stallCount + " " + stallTotalTime + "ms, rebuffer=" + getRebufferRatio() + ", errors=" + errorCount +
+                    ", fullscreen=" + fullscreenToggleCount + " layout avg " + getAverageFullscreenLayoutTime() +
+                    "ms surface avg " + getAverageFullscreenSurfaceTime() + "ms}";
+        }
+    }
+
+    private final AtomicLong prepareStart = new AtomicLong(-1);
+    private final AtomicLong timeToPrepared = new AtomicLong(-1);
+    private final AtomicLong timeToReady = new AtomicLong(-1);
+    private final AtomicLong timeToFirstFrame = new AtomicLong(-1);
+    private volatile boolean startPreloaded;
+    private final AtomicLong coldStartCount = new AtomicLong();
+    private final AtomicLong coldStartTotalTime = new AtomicLong();
+    private final AtomicLong preloadedStartCount = new AtomicLong();
+    private final AtomicLong preloadedStartTotalTime = new AtomicLong();
+
+    private final AtomicLong seekStart = new AtomicLong(-1);
+    private final AtomicLong seekCount = new AtomicLong();
+    private final AtomicLong seekTotalTime = new AtomicLong();
+    private final AtomicLongArray seekHistogram = new AtomicLongArray(SEEK_LATENCY_BOUNDS.length + 1);
+
+    private final AtomicLong stallStart = new AtomicLong(-1);
+    private final AtomicLong stallCount = new AtomicLong();
+    private final AtomicLong stallTotalTime = new AtomicLong();
+
+    private final AtomicLong playStart = new AtomicLong(-1);
+    private final AtomicLong playTime = new AtomicLong();
+
+    private final AtomicLong errorCount = new AtomicLong();
+    private final AtomicLong lastError = new AtomicLong();
+    private final AtomicLong completionCount = new AtomicLong();
+
+    private final AtomicLong fullscreenStart = new AtomicLong(-1);
+    private final AtomicLong fullscreenSurfaceStart = new AtomicLong(-1);
+    private final AtomicLong fullscreenToggleCount = new AtomicLong();
+    private final AtomicLong fullscreenLayoutTotalTime = new AtomicLong();
+    private final AtomicLong fullscreenSurfaceCount = new AtomicLong();
+    private final AtomicLong fullscreenSurfaceTotalTime = new AtomicLong();
+
+    private volatile Listener listener;
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public Listener getListener() {
+        return listener;
+    }
+
+    /**
+     * A new source was opened. Startup times are measured from here.
+     *
+     * @param preloaded true if the player was prepared ahead, e.g. by a {@link MediaPlayerPreloader}
+     *                  or as the next playlist item
+     */
+    public void onPrepareStarted(long now, boolean preloaded) {
+        prepareStart.set(now);
+        timeToPrepared.set(-1);
+        timeToReady.set(-1);
+        startPreloaded = preloaded;
+        timeToFirstFrame.set(-1);
+        stallStart.set(-1);
+    }
+
+    public void onPrepared(long now) {
+        long start = prepareStart.get();
+        if (start >= 0 && timeToPrepared.compareAndSet(-1, now - start))
+            notify(EVENT_PREPARED, now - start);
+    }
+
+    /**
+     * Prepared and the surface is ready: playback can start
+     */
+    public void onReady(long now) {
+        long start = prepareStart.get();
+        if (start >= 0 && timeToReady.compareAndSet(-1, now - start))
+            notify(EVENT_READY, now - start);
+    }
+
+    /**
+     * The first frame of the source was rendered (MEDIA_INFO_VIDEO_RENDERING_START or the first
+     * frame reported by the render target). Only the first call after onPrepareStarted() counts,
+     * as a cold or a preloaded start.
+     */
+    public void onFirstFrame(long now) {
+        long start = prepareStart.get();
+        if (start < 0 || !timeToFirstFrame.compareAndSet(-1, now - start))
+            return;
+
+        if (startPreloaded) {
+            preloadedStartCount.incrementAndGet();
+            preloadedStartTotalTime.addAndGet(now - start);
+        } else {
+            coldStartCount.incrementAndGet();
+            coldStartTotalTime.addAndGet(now - start);
+        }
+        notify(EVENT_FIRST_FRAME, now - start);
+    }
+
+    /**
+     * A seek was issued. If a seek is already pending, its start time is kept.
+     */
+    public void onSeekStarted(long now) {
+        seekStart.compareAndSet(-1, now);
+    }
+
+    public void onSeekCompleted(long now) {
+        long start = seekStart.getAndSet(-1);
+        if (start < 0)
+            return;
+
+        long latency = now - start;
+        seekCount.incrementAndGet();
+        seekTotalTime.addAndGet(latency);
+
+        int bucket = 0;
+        while (bucket < SEEK_LATENCY_BOUNDS.length && latency >= SEEK_LATENCY_BOUNDS[bucket])
+            bucket++;
+        seekHistogram.incrementAndGet(bucket);
+
+        notify(EVENT_SEEK_COMPLETE, latency);
+    }
+
+    /**
+     * MEDIA_INFO_BUFFERING_START
+     */
+    public void onStallStarted(long now) {
+        if (stallStart.compareAndSet(-1, now))
+            stallCount.incrementAndGet();
+    }
+
+    /**
+     * MEDIA_INFO_BUFFERING_END
+     */
+    public void onStallEnded(long now) {
+        long start = stallStart.getAndSet(-1);
+        if (start < 0)
+            return;
+
+        stallTotalTime.addAndGet(now - start);
+        notify(EVENT_STALL_END, now - start);
+    }
+
+    /**
+     * Playback started or resumed (STARTED state)
+     */
+    public void onPlaybackStarted(long now) {
+        playStart.compareAndSet(-1, now);
+    }
+
+    /**
+     * Playback left STARTED state (paused, stopped, completed, reset...)
+     */
+    public void onPlaybackStopped(long now) {
+        long start = playStart.getAndSet(-1);
+        if (start >= 0)
+            playTime.addAndGet(now - start);
+    }
+
+    public void onError(int what, int extra) {
+        errorCount.incrementAndGet();
+        lastError.set(((long) what << 32) | (extra & 0xffffffffL));
+        notify(EVENT_ERROR, what);
+    }
+
+    public void onCompletion() {
+        completionCount.incrementAndGet();
+        notify(EVENT_COMPLETION, 0);
+    }
+
+    /**
+     * fullscreen() was called. A toggle started before the previous one finished replaces it.
+     *
+     * @param surfaceRecreated true if the toggle destroys the surface, so
+     *                         {@link #onFullscreenSurfaceReady(long)} will follow
+     */
+    public void onFullscreenToggleStarted(long now, boolean surfaceRecreated) {
+        fullscreenStart.set(now);
+        fullscreenSurfaceStart.set(surfaceRecreated ? now : -1);
+    }
+
+    /**
+     * First layout pass after the toggle
+     */
+    public void onFullscreenLaidOut(long now) {
+        long start = fullscreenStart.getAndSet(-1);
+        if (start < 0)
+            return;
+
+        fullscreenToggleCount.incrementAndGet();
+        fullscreenLayoutTotalTime.addAndGet(now - start);
+        notify(EVENT_FULLSCREEN_LAYOUT, now - start);
+    }
+
+    /**
+     * The surface destroyed by the toggle is available again. It may come before or after the layout pass.
+     */
+    public void onFullscreenSurfaceReady(long now) {
+        long start = fullscreenSurfaceStart.getAndSet(-1);
+        if (start < 0)
+            return;
+
+        fullscreenSurfaceCount.incrementAndGet();
+        fullscreenSurfaceTotalTime.addAndGet(now - start);
+        notify(EVENT_FULLSCREEN_SURFACE, now - start);
+    }
+
+    /**
+     * @param now current time, used to include the running play and stall periods
+     * @return a copy of the counters
+     */
+    public Snapshot snapshot(long now) {
+        Snapshot s = new Snapshot();
+        s.timeToPrepared = timeToPrepared.get();
+        s.timeToReady = timeToReady.get();
+        s.timeToFirstFrame = timeToFirstFrame.get();
+        s.startPreloaded = startPreloaded;
+        s.coldStartCount = coldStartCount.get();
+        s.coldStartTotalTime = coldStartTotalTime.get();
+        s.preloadedStartCount = preloadedStartCount.get();
+        s.preloadedStartTotalTime = preloadedStartTotalTime.get();
+        s.seekCount = seekCount.get();
+        s.seekTotalTime = seekTotalTime.get();
+        s.seekLatencyHistogram = new long[seekHistogram.length()];
+        for (int i = 0; i < s.seekLatencyHistogram.length; i++)
+            s.seekLatencyHistogram[i] = seekHistogram.get(i);
+        s.stallCount = stallCount.get();
+        s.stallTotalTime = stallTotalTime.get();
+        long stall = stallStart.get();
+        if (stall >= 0 && now >= 0)
+            s.stallTotalTime += now - stall;
+        s.playTime = playTime.get();
+        long play = playStart.get();
+        if (play >= 0 && now >= 0)
+            s.playTime += now - play;
+        s.errorCount = errorCount.get();
+        long error = lastError.get();
+        s.lastErrorWhat = (int) (error >> 32);
+        s.lastErrorExtra = (int) error;
+        s.completionCount = completionCount.get();
+        s.fullscreenToggleCount = fullscreenToggleCount.get();
+        s.fullscreenLayoutTotalTime = fullscreenLayoutTotalTime.get();
+        s.fullscreenSurfaceCount = fullscreenSurfaceCount.get();
+        s.fullscreenSurfaceTotalTime = fullscreenSurfaceTotalTime.get();
+        return s;
+    }
+
+    /**
+     * @return a copy of the counters, without the running play and stall periods
+     */
+    public Snapshot snapshot() {
+        return snapshot(-1);
+    }
+
+    /**
+     * Clears every counter
+     */
+    public void reset() {
+        prepareStart.set(-1);
+        timeToPrepared.set(-1);
+        timeToReady.set(-1);
+        timeToFirstFrame.set(-1);
+        startPreloaded = false;
+        coldStartCount.set(0);
+        coldStartTotalTime.set(0);
+        preloadedStartCount.set(0);
+        preloadedStartTotalTime.set(0);
+        seekStart.set(-1);
+        seekCount.set(0);
+        seekTotalTime.set(0);
+        for (int i = 0; i < seekHistogram.length(); i++)
+            seekHistogram.set(i, 0);
+        stallStart.set(-1);
+        stallCount.set(0);
+        stallTotalTime.set(0);
+        playStart.set(-1);
+        playTime.set(0);
+        errorCount.set(0);
+        lastError.set(0);
+        completionCount.set(0);
+        fullscreenStart.set(-1);
+        fullscreenSurfaceStart.set(-1);
+        fullscreenToggleCount.set(0);
+        fullscreenLayoutTotalTime.set(0);
+        fullscreenSurfaceCount.set(0);
+        fullscreenSurfaceTotalTime.set(0);
+    }
+
+    private void notify(int event, long value) {
+        Listener l = listener;
+        if (l != null)
+            l.onPlaybackEvent(this, event, value);
+    }
+}
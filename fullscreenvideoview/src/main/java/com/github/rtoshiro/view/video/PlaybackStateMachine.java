@@ -0,0 +1,175 @@
+package com.github.rtoshiro.view.video;
+
+import com.github.rtoshiro.view.video.FullscreenVideoView.State;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * MediaPlayer state machine used by {@link FullscreenVideoView}.
+ * Transitions are validated against a table built from the MediaPlayer state diagram
+ * (http://developer.android.com/reference/android/media/MediaPlayer.html) and applied
+ * atomically, so it can be used from any thread. Invalid transitions are rejected
+ * before the native player is called.
+ *
+ * It also remembers the state to restore after a seek. Seeks issued while another
+ * one is pending keep the state of the first one.
+ */
+public class PlaybackStateMachine {
+
+    /**
+     * Receives every accepted transition, on the thread that made it
+     */
+    public interface Listener {
+        void onStateChanged(State from, State to);
+    }
+
+    private static final int STATES = State.values().length;
+    private static final boolean[][] TRANSITIONS = new boolean[STATES][STATES];
+
+    static {
+        allow(State.IDLE, State.INITIALIZED);
+        allow(State.INITIALIZED, State.PREPARING, State.PREPARED);
+        allow(State.PREPARING, State.PREPARED);
+        allow(State.PREPARED, State.PREPARED, State.STARTED, State.STOPPED);
+        allow(State.STARTED, State.STARTED, State.PAUSED, State.STOPPED, State.PLAYBACKCOMPLETED);
+        allow(State.PAUSED, State.PAUSED, State.STARTED, State.STOPPED);
+        allow(State.PLAYBACKCOMPLETED, State.PLAYBACKCOMPLETED, State.STARTED, State.PAUSED, State.STOPPED);
+        allow(State.STOPPED, State.STOPPED, State.PREPARING, State.PREPARED);
+        allow(State.END, State.IDLE);
+
+        // reset(), errors and release() are accepted from any state
+        for (State from : State.values()) {
+            allow(from, State.IDLE, State.ERROR, State.END);
+        }
+    }
+
+    private static void allow(State from, State... to) {
+        for (State s : to)
+            TRANSITIONS[from.ordinal()][s.ordinal()] = true;
+    }
+
+    /**
+     * @return true if the transition is in the table
+     */
+    public static boolean isValid(State from, State to) {
+        return TRANSITIONS[from.ordinal()][to.ordinal()];
+    }
+
+    private final AtomicReference<State> state;
+    private final AtomicInteger pendingSeeks = new AtomicInteger();
+    private volatile State seekResumeState;
+    private volatile Listener listener;
+
+    public PlaybackStateMachine() {
+        this(State.IDLE);
+    }
+
+    public PlaybackStateMachine(State initial) {
+        state = new AtomicReference<State>(initial);
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public Listener getListener() {
+        return listener;
+    }
+
+    /**
+     * @return true if the current state can move to this state
+     */
+    public boolean canMoveTo(State to) {
+        return isValid(state.get(), to);
+    }
+
+    /**
+     * Moves to this state if the transition is valid
+     *
+     * @return false if the transition was rejected
+     */
+    public boolean moveTo(State to) {
+        while (true) {
+            State from = state.get();
+            if (!isValid(from, to))
+                return false;
+            if (state.compareAndSet(from, to)) {
+                changed(from, to);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Moves to this state only if the current state is expected and the transition is valid
+     *
+     * @return false if the state was not expected or the transition was rejected
+     */
+    public boolean moveTo(State expected, State to) {
+        if (!isValid(expected, to) || !state.compareAndSet(expected, to))
+            return false;
+        changed(expected, to);
+        return true;
+    }
+
+    /**
+     * A seek was issued. The first of a series of pending seeks saves the state to restore.
+     */
+    public void beginSeek() {
+        if (pendingSeeks.getAndIncrement() == 0)
+            seekResumeState = state.get();
+    }
+
+    /**
+     * A seek completed
+     *
+     * @return the state to restore, or null if other seeks are still pending
+     */
+    public State endSeek() {
+        while (true) {
+            int pending = pendingSeeks.get();
+            if (pending == 0)
+                return null;
+            if (pendingSeeks.compareAndSet(pending, pending - 1))
+                return pending == 1 ? seekResumeState : null;
+        }
+    }
+
+    /**
+     * Replaces the state restored after the pending seeks, e.g. when the user pauses during a seek
+     */
+    public void setSeekResumeState(State resumeState) {
+        if (pendingSeeks.get() > 0)
+            seekResumeState = resumeState;
+    }
+
+    /**
+     * @return the state restored once the pending seeks complete, or null if no seek is pending
+     */
+    public State getSeekResumeState() {
+        return pendingSeeks.get() > 0 ? seekResumeState : null;
+    }
+
+    public boolean isSeeking() {
+        return pendingSeeks.get() > 0;
+    }
+
+    /**
+     * Forgets pending seeks, e.g. after reset() or an error
+     */
+    public void cancelSeeks() {
+        pendingSeeks.set(0);
+        seekResumeState = null;
+    }
+
+    private void changed(State from, State to) {
+        Listener l = listener;
+        if (l != null && from != to)
+            l.onStateChanged(from, to);
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.rtoshiro.view.video;
+
+import java.util.IdentityHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs player commands in order on an {@link Executor}, usually a {@link PlayerThread}, and keeps
+ * their failures on that thread.
+ *
+ * A command that throws marks its player as failed: the commands queued after it for the same
+ * player are skipped, as they would only throw IllegalStateException on a player in the Error
+ * state. Reset commands still run and clear the failure. Failures are reported to the
+ * {@link Listener}, once per failed player.
+ *
+ * Has no Android dependencies.
+ *
+ * @param <P> the player type, compared by identity
+ */
+public class PlayerCommandQueue<P> {
+
+    public interface Listener<P> {
+        /**
+         * Called on the executor thread, when a command throws
+         */
+        void onCommandFailed(P player, RuntimeException e);
+    }
+
+    private final Executor executor;
+    private final Listener<P> listener;
+    // Used as a set; Collections.newSetFromMap() needs API 9
+    private final IdentityHashMap<P, Boolean> failed = new IdentityHashMap<P, Boolean>();
+
+    public PlayerCommandQueue(Executor executor, Listener<P> listener) {
+        this.executor = executor;
+        this.listener = listener;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Queues a command, skipped if the player has failed by the time it runs
+     */
+    public void execute(final P player, final Runnable command) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!isFailed(player))
+                    runCommand(player, command);
+            }
+        });
+    }
+
+    /**
+     * Queues a command that brings the player back to a known state, like reset() or release().
+     * It runs even if the player has failed, and clears the failure first.
+     */
+    public void executeReset(final P player, final Runnable command) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (failed) {
+                    failed.remove(player);
+                }
+                runCommand(player, command);
+            }
+        });
+    }
+
+    /**
+     * Marks the player as failed, e.g. by a command that caught an IOException.
+     * The commands queued after it are skipped until a reset command.
+     */
+    public void markFailed(P player) {
+        synchronized (failed) {
+            failed.put(player, Boolean.TRUE);
+        }
+    }
+
+    public boolean isFailed(P player) {
+        synchronized (failed) {
+            return failed.containsKey(player);
+        }
+    }
+
+    private void runCommand(P player, Runnable command) {
+        try {
+            command.run();
+        } catch (RuntimeException e) {
+            markFailed(player);
+            listener.onCommandFailed(player, e);
+        }
+    }
+}
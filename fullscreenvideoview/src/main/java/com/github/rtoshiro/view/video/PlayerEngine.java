@@ -0,0 +1,104 @@
+package com.github.rtoshiro.view.video;
+
+import java.io.IOException;
+
+/**
+ * The player commands used by {@link PlaybackController}, so the playback logic does not
+ * depend on android.media.MediaPlayer. {@link FullscreenVideoView} makes every player call
+ * through an engine: {@link MediaPlayerEngine} by default, {@link MediaCodecEngine} with the
+ * MEDIA_CODEC backend, or the one returned by {@link FullscreenVideoView#createPlayerEngine()},
+ * e.g. a fake engine with a virtual clock (see the benchmark module).
+ *
+ * Commands follow the MediaPlayer contract: they may complete asynchronously, and the
+ * result of prepareAsync() and seekTo() is reported through the {@link Listener}.
+ */
+public interface PlayerEngine {
+
+    /**
+     * Values of {@link Listener#onInfo(PlayerEngine, int, int)}, same as MediaPlayer
+     */
+    int INFO_VIDEO_RENDERING_START = 3;
+    int INFO_BUFFERING_START = 701;
+    int INFO_BUFFERING_END = 702;
+
+    /**
+     * Values of {@link Listener#onError(PlayerEngine, int, int)}, same as MediaPlayer
+     */
+    int ERROR_UNKNOWN = 1;
+    int ERROR_IO = -1004;
+    int ERROR_UNSUPPORTED = -1010;
+
+    /**
+     * Receives the engine events, on the thread the engine reports them
+     */
+    interface Listener {
+        void onPrepared(PlayerEngine engine);
+
+        void onSeekComplete(PlayerEngine engine);
+
+        void onCompletion(PlayerEngine engine);
+
+        /**
+         * @param percent percentage of the content buffered, 0-100
+         */
+        void onBufferingUpdate(PlayerEngine engine, int percent);
+
+        void onInfo(PlayerEngine engine, int what, int extra);
+
+        void onError(PlayerEngine engine, int what, int extra);
+
+        /**
+         * The size of the video is known or changed. 0x0 if there is no video.
+         */
+        void onVideoSizeChanged(PlayerEngine engine, int width, int height);
+    }
+
+    void setListener(Listener listener);
+
+    /**
+     * @param source a path or url
+     */
+    void setDataSource(String source) throws IOException;
+
+    void prepareAsync();
+
+    void start();
+
+    void pause();
+
+    void stop();
+
+    /**
+     * @param msec  target position
+     * @param exact true for the exact position, false for the closest sync frame (faster)
+     */
+    void seekTo(int msec, boolean exact);
+
+    void reset();
+
+    void release();
+
+    void setLooping(boolean looping);
+
+    void setVolume(float leftVolume, float rightVolume);
+
+    /**
+     * Renders into the surface of target, once it is available
+     *
+     * @param target the target, or null to stop rendering
+     */
+    void setDisplay(RenderTarget target);
+
+    int getVideoWidth();
+
+    int getVideoHeight();
+
+    int getCurrentPosition();
+
+    /**
+     * @return the duration in milliseconds, or -1 if unknown (live streams)
+     */
+    int getDuration();
+
+    boolean isPlaying();
+}
@@ -0,0 +1,144 @@
+package com.github.rtoshiro.view.video;
+
+import java.util.LinkedList;
+
+/**
+ * Keeps up to maxIdle idle players for reuse, and counts how often it creates, reuses
+ * and evicts them. Subclasses create, reset and release the players,
+ * see {@link MediaPlayerPool}.
+ *
+ * Has no Android dependencies.
+ *
+ * @param <P> the player type
+ */
+public abstract class PlayerPool<P> {
+
+    private final LinkedList<P> idlePlayers = new LinkedList<P>();
+    private int maxIdle;
+
+    private int created, reused, evicted;
+
+    /**
+     * @param maxIdle maximum number of idle players kept by this pool
+     */
+    public PlayerPool(int maxIdle) {
+        if (maxIdle < 0)
+            throw new IllegalArgumentException("maxIdle must be >= 0");
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Creates a player when the pool is empty
+     */
+    protected abstract P createPlayer();
+
+    /**
+     * Brings a recycled player back to its initial state
+     *
+     * @return false if the player could not be reset, so it is released instead of kept
+     */
+    protected abstract boolean resetPlayer(P player);
+
+    protected abstract void releasePlayer(P player);
+
+    /**
+     * Returns an idle player, or a new one if the pool is empty.
+     */
+    public P acquire() {
+        synchronized (this) {
+            P player = idlePlayers.poll();
+            if (player != null) {
+                reused++;
+                return player;
+            }
+            created++;
+        }
+        return createPlayer();
+    }
+
+    /**
+     * Resets the player and keeps it for the next {@link #acquire()}.
+     * If the pool is already full, the player is released.
+     *
+     * @param player a player that is not used anymore. It must not be used after this call.
+     */
+    public void recycle(P player) {
+        if (player == null)
+            return;
+
+        if (!resetPlayer(player)) {
+            releasePlayer(player);
+            return;
+        }
+
+        synchronized (this) {
+            if (idlePlayers.size() < maxIdle) {
+                idlePlayers.add(player);
+                return;
+            }
+            evicted++;
+        }
+        releasePlayer(player);
+    }
+
+    /**
+     * Changes the maximum number of idle players, releasing the exceeding ones.
+     */
+    public void setMaxIdle(int maxIdle) {
+        if (maxIdle < 0)
+            throw new IllegalArgumentException("maxIdle must be >= 0");
+
+        synchronized (this) {
+            this.maxIdle = maxIdle;
+        }
+        trimTo(maxIdle);
+    }
+
+    public synchronized int getMaxIdle() {
+        return maxIdle;
+    }
+
+    /**
+     * Releases every idle player
+     */
+    public void clear() {
+        trimTo(0);
+    }
+
+    private void trimTo(int size) {
+        LinkedList<P> exceeding = new LinkedList<P>();
+        synchronized (this) {
+            while (idlePlayers.size() > size) {
+                exceeding.add(idlePlayers.removeLast());
+                evicted++;
+            }
+        }
+        for (P player : exceeding)
+            releasePlayer(player);
+    }
+
+    public synchronized int getIdleCount() {
+        return idlePlayers.size();
+    }
+
+    /**
+     * Number of players created because the pool was empty
+     */
+    public synchronized int getCreatedCount() {
+        return created;
+    }
+
+    /**
+     * Number of acquire() calls served by an idle player
+     */
+    public synchronized int getReusedCount() {
+        return reused;
+    }
+
+    /**
+     * Number of players released because the pool was full
+     */
+    public synchronized int getEvictedCount() {
+        return evicted;
+    }
+}
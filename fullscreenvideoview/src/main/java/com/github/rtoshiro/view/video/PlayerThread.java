@@ -0,0 +1,73 @@
+package com.github.rtoshiro.view.video;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Runs MediaPlayer commands one after the other on a background thread, so the
+ * main thread never waits for native calls like reset(), release() or setDataSource().
+ *
+ * Players used with it are still created on the main thread, so MediaPlayer keeps
+ * delivering their callbacks there.
+ *
+ * @see FullscreenVideoView#setPlayerThread(PlayerThread)
+ * @see PlayerCommandQueue
+ */
+public class PlayerThread implements Executor {
+
+    private static PlayerThread shared;
+
+    private final HandlerThread thread;
+    private final Handler handler;
+
+    /**
+     * @return a thread shared by every view, created on first use
+     */
+    public static synchronized PlayerThread getShared() {
+        if (shared == null)
+            shared = new PlayerThread("FullscreenVideoView-player");
+        return shared;
+    }
+
+    public PlayerThread(String name) {
+        thread = new HandlerThread(name);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Queues a command. Commands run in the order they were queued.
+     */
+    public void post(Runnable command) {
+        handler.post(command);
+    }
+
+    /**
+     * Same as {@link #post(Runnable)}
+     */
+    @Override
+    public void execute(Runnable command) {
+        post(command);
+    }
+
+    /**
+     * @return true if called from this thread
+     */
+    public boolean isCurrentThread() {
+        return Looper.myLooper() == thread.getLooper();
+    }
+
+    public Looper getLooper() {
+        return thread.getLooper();
+    }
+
+    /**
+     * Stops the thread. Commands still queued are dropped.
+     */
+    public void quit() {
+        thread.quit();
+    }
+}
@@ -0,0 +1,292 @@
+package com.github.rtoshiro.view.video;
+
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+
+import com.github.rtoshiro.view.video.FullscreenVideoView.State;
+
+import java.io.IOException;
+
+/**
+ * The {@link PlaylistQueue} of a {@link FullscreenVideoView}. While the current item plays, the
+ * next one is prepared on a second player engine, which takes over on completion without a new
+ * prepare: through MediaPlayer.setNextMediaPlayer() on API 16+ when both engines are
+ * {@link MediaPlayerEngine}s, or by swapping the engines on the surface otherwise (or if
+ * setNextMediaPlayer() fails).
+ * Main thread only.
+ */
+public class PlaylistHandOff {
+
+    private final static String TAG = "PlaylistHandOff";
+
+    protected final FullscreenVideoView videoView;
+    protected PlaylistQueue queue;
+    protected PlayerEngine nextPlayer;
+    protected PlaylistQueue.Item nextItem;
+    protected boolean nextPrepared;
+    protected boolean linked; // MediaPlayerEngine.setNextPlayer() was called
+    protected boolean autoStart;
+    protected final NextPlayerListener nextPlayerListener = new NextPlayerListener();
+    protected final Runnable startRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (videoView.stateMachine.getState() == State.PREPARED)
+                videoView.start();
+        }
+    };
+
+    public PlaylistHandOff(FullscreenVideoView videoView) {
+        this.videoView = videoView;
+    }
+
+    /**
+     * Opens the current item of the queue now, started by the caller once prepared
+     *
+     * @param queue the queue, or null to stop following a queue
+     */
+    public void setQueue(PlaylistQueue queue) {
+        release();
+        this.queue = queue;
+
+        if (queue != null && queue.getCurrent() != null)
+            open(queue.getCurrent(), false);
+    }
+
+    public PlaylistQueue getQueue() {
+        return queue;
+    }
+
+    /**
+     * @return false if there is no next item
+     */
+    public boolean skipToNext() {
+        if (queue == null || !queue.hasNext())
+            return false;
+        playNext(false);
+        return true;
+    }
+
+    /**
+     * The previous item is prepared from scratch
+     *
+     * @return false if there is no previous item
+     */
+    public boolean skipToPrevious() {
+        if (queue == null || !queue.moveToPrevious())
+            return false;
+        release();
+        open(queue.getCurrent(), true);
+        return true;
+    }
+
+    /**
+     * The current item completed, without looping
+     *
+     * @return true if the next item plays instead of completing
+     */
+    public boolean onCompletion() {
+        if (queue == null || !queue.hasNext())
+            return false;
+        playNext(true);
+        return true;
+    }
+
+    /**
+     * The current item is prepared: prepares the next one, and starts this one if opened to play
+     */
+    public void onPrepared() {
+        if (queue == null)
+            return;
+        prepareNext();
+        // Posted, so subclasses see PREPARED at the end of their tryToPrepare()
+        if (autoStart) {
+            autoStart = false;
+            videoView.post(startRunnable);
+        }
+    }
+
+    /**
+     * The current item is not started once prepared
+     */
+    public void cancelAutoStart() {
+        autoStart = false;
+        videoView.removeCallbacks(startRunnable);
+    }
+
+    /**
+     * @return true if the prepared next player is chained to the current one
+     */
+    public boolean isLinked() {
+        return linked;
+    }
+
+    /**
+     * Moves to the next item: hands off to the prepared next player if it holds this item,
+     * otherwise opens the item on the current player.
+     *
+     * @param completed true if the current item has just completed
+     */
+    protected void playNext(boolean completed) {
+        PlaylistQueue.Item item = queue.peekNext();
+        if (nextPlayer != null && nextPrepared && nextItem == item) {
+            // The link may have failed, or still be queued on the player thread
+            PlayerEngine current = videoView.playerEngine;
+            boolean startedByPlatform = completed && linked && current instanceof MediaPlayerEngine &&
+                    ((MediaPlayerEngine) current).getNextPlayer() == nextPlayer;
+            if (linked && !completed)
+                unlink();
+
+            PlayerEngine next = nextPlayer;
+            nextPlayer = null;
+            nextItem = null;
+            nextPrepared = false;
+            linked = false;
+            videoView.swapPlayer(next, item, startedByPlatform);
+
+            queue.moveToNext();
+            prepareNext();
+        } else {
+            Log.d(TAG, "next playlist item not prepared yet");
+            release();
+            queue.moveToNext();
+            open(queue.getCurrent(), true);
+        }
+    }
+
+    /**
+     * Prepares the item after the current one on {@link #nextPlayer}, if it is not already
+     */
+    protected void prepareNext() {
+        // Gapless playback needs a second MediaPlayer; the codec engine opens each item
+        if (videoView.codecBinding.isActive())
+            return;
+
+        PlaylistQueue.Item item = queue != null ? queue.peekNext() : null;
+        if (nextPlayer != null && nextItem == item)
+            return;
+
+        release();
+        if (item == null)
+            return;
+
+        // With a player thread, failures arrive through onError()
+        PlayerEngine engine = videoView.createPlayerEngine();
+        nextPlayer = engine;
+        nextItem = item;
+        engine.setListener(nextPlayerListener);
+        try {
+            engine.setDataSource(videoView.sourceRouter.getCacheUrl(item.getSource()));
+            engine.prepareAsync();
+        } catch (IOException e) {
+            Log.w(TAG, "Could not prepare next playlist item " + item, e);
+            release();
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Could not prepare next playlist item " + item, e);
+            release();
+        }
+    }
+
+    /**
+     * Chains the prepared next player to the current one, so the platform starts it on completion
+     */
+    protected void link() {
+        PlayerEngine current = videoView.playerEngine;
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN || linked || !nextPrepared ||
+                !(current instanceof MediaPlayerEngine) || !(nextPlayer instanceof MediaPlayerEngine) ||
+                videoView.looping || !videoView.isInPlaybackState())
+            return;
+
+        // If it fails, the players are swapped on completion
+        linked = true;
+        ((MediaPlayerEngine) current).setNextPlayer((MediaPlayerEngine) nextPlayer);
+    }
+
+    /**
+     * Unchains the next player, e.g. when the current one starts looping
+     */
+    public void unlink() {
+        PlayerEngine current = videoView.playerEngine;
+        if (linked && current instanceof MediaPlayerEngine)
+            ((MediaPlayerEngine) current).setNextPlayer(null);
+        linked = false;
+    }
+
+    /**
+     * Drops the next player, if any
+     */
+    public void release() {
+        if (nextPlayer == null)
+            return;
+
+        unlink();
+        videoView.disposePlayer(nextPlayer);
+        nextPlayer = null;
+        nextItem = null;
+        nextPrepared = false;
+    }
+
+    /**
+     * Opens an item on the current player, with a full prepare
+     *
+     * @param autoStart true to start playing once prepared
+     */
+    protected void open(PlaylistQueue.Item item, boolean autoStart) {
+        if (videoView.checkPlayer() && videoView.stateMachine.getState() != State.IDLE)
+            videoView.reset();
+
+        this.autoStart = autoStart;
+        try {
+            if (item.isUri())
+                videoView.setVideoURI(Uri.parse(item.getSource()));
+            else
+                videoView.setVideoPath(item.getSource());
+        } catch (IOException e) {
+            Log.e(TAG, "Could not open playlist item " + item, e);
+            this.autoStart = false;
+            videoView.onError(videoView.playerEngine, PlayerEngine.ERROR_UNKNOWN, PlayerEngine.ERROR_IO);
+        }
+    }
+
+    /**
+     * Listens to the engine preparing the next item, until it takes over
+     */
+    protected class NextPlayerListener implements PlayerEngine.Listener {
+        @Override
+        public void onPrepared(PlayerEngine engine) {
+            if (engine != nextPlayer)
+                return;
+            Log.d(TAG, "next playlist item prepared: " + nextItem);
+            nextPrepared = true;
+            link();
+        }
+
+        @Override
+        public void onError(PlayerEngine engine, int what, int extra) {
+            if (engine == nextPlayer) {
+                Log.w(TAG, "next playlist item failed (" + what + ", " + extra + ")");
+                release();
+            }
+        }
+
+        @Override
+        public void onSeekComplete(PlayerEngine engine) {
+        }
+
+        @Override
+        public void onCompletion(PlayerEngine engine) {
+        }
+
+        @Override
+        public void onBufferingUpdate(PlayerEngine engine, int percent) {
+        }
+
+        @Override
+        public void onInfo(PlayerEngine engine, int what, int extra) {
+        }
+
+        @Override
+        public void onVideoSizeChanged(PlayerEngine engine, int width, int height) {
+        }
+    }
+}
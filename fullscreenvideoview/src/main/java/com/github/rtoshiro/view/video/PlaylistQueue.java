@@ -0,0 +1,223 @@
+package com.github.rtoshiro.view.video;
+
+import java.util.ArrayList;
+
+/**
+ * Ordered list of sources played one after the other by {@link FullscreenVideoView#setPlaylist(PlaylistQueue)}.
+ * Only keeps the items and the current position, so it has no Android dependencies.
+ *
+ * All methods must be called from the main thread.
+ */
+public class PlaylistQueue {
+
+    /**
+     * A source of the queue: a path (as in setVideoPath()) or an uri string (as in setVideoURI())
+     */
+    public static class Item {
+        protected final String source;
+        protected final boolean uri;
+
+        public Item(String source, boolean uri) {
+            if (source == null)
+                throw new IllegalArgumentException("source must not be null");
+            this.source = source;
+            this.uri = uri;
+        }
+
+        public static Item fromPath(String path) {
+            return new Item(path, false);
+        }
+
+        public static Item fromUri(String uri) {
+            return new Item(uri, true);
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        /**
+         * @return true if the source is an uri string, false if it is a path
+         */
+        public boolean isUri() {
+            return uri;
+        }
+
+        @Override
+        public String toString() {
+            return source;
+        }
+    }
+
+    public enum RepeatMode
+    {
+        /**
+         * Stops after the last item
+         */
+        NONE,
+        /**
+         * Goes back to the first item after the last one
+         */
+        ALL
+    }
+
+    /**
+     * Receives changes of the current item
+     */
+    public interface Listener {
+        /**
+         * @param queue the queue
+         * @param index the new current index, -1 if the queue is empty
+         */
+        void onCurrentItemChanged(PlaylistQueue queue, int index);
+    }
+
+    protected final ArrayList<Item> items = new ArrayList<Item>();
+    protected int currentIndex = -1;
+    protected RepeatMode repeatMode = RepeatMode.NONE;
+    protected Listener listener;
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public void setRepeatMode(RepeatMode repeatMode) {
+        this.repeatMode = repeatMode;
+    }
+
+    public RepeatMode getRepeatMode() {
+        return repeatMode;
+    }
+
+    /**
+     * Appends an item. The first item added becomes the current one.
+     */
+    public void add(Item item) {
+        add(items.size(), item);
+    }
+
+    public void add(int index, Item item) {
+        if (item == null)
+            throw new IllegalArgumentException("item must not be null");
+
+        items.add(index, item);
+        if (currentIndex < 0)
+            setCurrent(0);
+        else if (index <= currentIndex)
+            currentIndex++;
+    }
+
+    /**
+     * Removes an item. If it was the current one, the following item (or the previous one,
+     * if it was the last) becomes current.
+     */
+    public Item remove(int index) {
+        Item removed = items.remove(index);
+        if (index < currentIndex) {
+            currentIndex--;
+        } else if (index == currentIndex) {
+            setCurrent(items.isEmpty() ? -1 : Math.min(currentIndex, items.size() - 1));
+        }
+        return removed;
+    }
+
+    public void clear() {
+        items.clear();
+        setCurrent(-1);
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    public boolean isEmpty() {
+        return items.isEmpty();
+    }
+
+    public Item get(int index) {
+        return items.get(index);
+    }
+
+    public int getCurrentIndex() {
+        return currentIndex;
+    }
+
+    /**
+     * @return the current item, or null if the queue is empty
+     */
+    public Item getCurrent() {
+        return currentIndex >= 0 ? items.get(currentIndex) : null;
+    }
+
+    public void setCurrentIndex(int index) {
+        if (index < 0 || index >= items.size())
+            throw new IndexOutOfBoundsException("index " + index + ", size " + items.size());
+        setCurrent(index);
+    }
+
+    /**
+     * @return index of the item after the current one, following the repeat mode, or -1
+     */
+    public int getNextIndex() {
+        if (currentIndex < 0)
+            return -1;
+        if (currentIndex + 1 < items.size())
+            return currentIndex + 1;
+        return repeatMode == RepeatMode.ALL ? 0 : -1;
+    }
+
+    /**
+     * @return index of the item before the current one, following the repeat mode, or -1
+     */
+    public int getPreviousIndex() {
+        if (currentIndex < 0)
+            return -1;
+        if (currentIndex > 0)
+            return currentIndex - 1;
+        return repeatMode == RepeatMode.ALL ? items.size() - 1 : -1;
+    }
+
+    public boolean hasNext() {
+        return getNextIndex() >= 0;
+    }
+
+    /**
+     * @return the item after the current one, or null
+     */
+    public Item peekNext() {
+        int next = getNextIndex();
+        return next >= 0 ? items.get(next) : null;
+    }
+
+    /**
+     * Makes the next item current
+     *
+     * @return false if there is no next item
+     */
+    public boolean moveToNext() {
+        int next = getNextIndex();
+        if (next < 0)
+            return false;
+        setCurrent(next);
+        return true;
+    }
+
+    /**
+     * Makes the previous item current
+     *
+     * @return false if there is no previous item
+     */
+    public boolean moveToPrevious() {
+        int previous = getPreviousIndex();
+        if (previous < 0)
+            return false;
+        setCurrent(previous);
+        return true;
+    }
+
+    protected void setCurrent(int index) {
+        currentIndex = index;
+        if (listener != null)
+            listener.onCurrentItemChanged(this, index);
+    }
+}
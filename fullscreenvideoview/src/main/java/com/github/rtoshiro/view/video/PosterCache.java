@@ -0,0 +1,261 @@
+package com.github.rtoshiro.view.video;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Poster frames, kept in a memory cache bounded by bitmap bytes and in a disk cache
+ * bounded by file bytes (JPEG). Both drop the least recently used entries first.
+ * Keys are chosen by {@link PosterLoader} (source and decoded size).
+ *
+ * Thread safe.
+ */
+public class PosterCache {
+
+    private final static String TAG = "PosterCache";
+
+    private final File directory;
+    private final long maxMemoryBytes;
+    private final long maxDiskBytes;
+
+    // Access ordered: the first entry is the least recently used
+    private final LinkedHashMap<String, Bitmap> memory = new LinkedHashMap<String, Bitmap>(16, 0.75f, true);
+    private long memoryBytes;
+    private final LinkedHashMap<String, Long> files = new LinkedHashMap<String, Long>(16, 0.75f, true);
+    private long diskBytes;
+
+    /**
+     * @param directory      where posters are stored, or null for memory only. Files found there are reused.
+     * @param maxMemoryBytes maximum size of the bitmaps kept in memory
+     * @param maxDiskBytes   maximum size of the files on disk
+     */
+    public PosterCache(File directory, long maxMemoryBytes, long maxDiskBytes) {
+        this.directory = directory;
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.maxDiskBytes = maxDiskBytes;
+
+        if (directory != null) {
+            //noinspection ResultOfMethodCallIgnored
+            directory.mkdirs();
+            loadFiles();
+        }
+    }
+
+    /**
+     * Memory cache of 1/8 of the heap, 20MB on disk
+     *
+     * @param directory where posters are stored, or null for memory only
+     */
+    public PosterCache(File directory) {
+        this(directory, Runtime.getRuntime().maxMemory() / 8, 20 * 1024 * 1024);
+    }
+
+    private synchronized void loadFiles() {
+        File[] found = directory.listFiles();
+        if (found == null)
+            return;
+
+        // Oldest first, so the access order starts close to the previous one
+        Arrays.sort(found, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long diff = a.lastModified() - b.lastModified();
+                return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+            }
+        });
+        for (File f : found) {
+            String name = f.getName();
+            if (name.endsWith(".tmp")) {
+                // Interrupted write
+                //noinspection ResultOfMethodCallIgnored
+                f.delete();
+                continue;
+            }
+            if (!name.endsWith(".jpg"))
+                continue;
+            files.put(name.substring(0, name.length() - 4), f.length());
+            diskBytes += f.length();
+        }
+        trimDisk();
+    }
+
+    /**
+     * @return the bitmap in memory, or null. Does not read the disk, so it can be called on the main thread.
+     */
+    public synchronized Bitmap getFromMemory(String key) {
+        Bitmap bitmap = memory.get(key);
+        if (bitmap != null && bitmap.isRecycled()) {
+            removeFromMemory(key);
+            return null;
+        }
+        return bitmap;
+    }
+
+    /**
+     * Reads the poster from disk and keeps it in memory
+     *
+     * @return the bitmap, or null if it is not on disk
+     */
+    public Bitmap getFromDisk(String key) {
+        File file;
+        synchronized (this) {
+            if (directory == null || files.get(key) == null)
+                return null;
+            file = fileFor(key);
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        Bitmap bitmap = BitmapFactory.decodeFile(file.getPath(), options);
+        synchronized (this) {
+            if (bitmap == null) {
+                removeFile(key);
+                return null;
+            }
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(System.currentTimeMillis());
+            putInMemory(key, bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Keeps the poster in memory and writes it to disk. Call it off the main thread.
+     */
+    public void put(String key, Bitmap bitmap) {
+        synchronized (this) {
+            putInMemory(key, bitmap);
+            if (directory == null || files.containsKey(key))
+                return;
+        }
+
+        File file = fileFor(key);
+        File tmp = new File(directory, key + ".tmp");
+        OutputStream out = null;
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(tmp));
+            if (!bitmap.compress(Bitmap.CompressFormat.JPEG, 85, out))
+                throw new IOException("compress failed");
+            out.close();
+            out = null;
+            if (!tmp.renameTo(file))
+                throw new IOException("rename failed");
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write poster " + key, e);
+            //noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+            return;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        synchronized (this) {
+            Long old = files.put(key, file.length());
+            if (old != null)
+                diskBytes -= old;
+            diskBytes += file.length();
+            trimDisk();
+        }
+    }
+
+    /**
+     * Drops every poster, in memory and on disk
+     */
+    public synchronized void clear() {
+        memory.clear();
+        memoryBytes = 0;
+        for (String key : files.keySet())
+            //noinspection ResultOfMethodCallIgnored
+            fileFor(key).delete();
+        files.clear();
+        diskBytes = 0;
+    }
+
+    /**
+     * Drops the memory cache only, e.g. from onTrimMemory()
+     */
+    public synchronized void clearMemory() {
+        memory.clear();
+        memoryBytes = 0;
+    }
+
+    /**
+     * @return bytes of the bitmaps in memory
+     */
+    public synchronized long getMemorySize() {
+        return memoryBytes;
+    }
+
+    /**
+     * @return bytes of the files on disk
+     */
+    public synchronized long getDiskSize() {
+        return diskBytes;
+    }
+
+    private void putInMemory(String key, Bitmap bitmap) {
+        Bitmap old = memory.put(key, bitmap);
+        if (old != null)
+            memoryBytes -= sizeOf(old);
+        memoryBytes += sizeOf(bitmap);
+
+        Iterator<Bitmap> it = memory.values().iterator();
+        while (memoryBytes > maxMemoryBytes && it.hasNext()) {
+            Bitmap b = it.next();
+            // Not recycled: views may still show it
+            memoryBytes -= sizeOf(b);
+            it.remove();
+        }
+    }
+
+    private void removeFromMemory(String key) {
+        Bitmap old = memory.remove(key);
+        if (old != null)
+            memoryBytes -= sizeOf(old);
+    }
+
+    private void trimDisk() {
+        Iterator<Map.Entry<String, Long>> it = files.entrySet().iterator();
+        while (diskBytes > maxDiskBytes && it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            diskBytes -= entry.getValue();
+            it.remove();
+            //noinspection ResultOfMethodCallIgnored
+            fileFor(entry.getKey()).delete();
+        }
+    }
+
+    private void removeFile(String key) {
+        Long size = files.remove(key);
+        if (size != null)
+            diskBytes -= size;
+        //noinspection ResultOfMethodCallIgnored
+        fileFor(key).delete();
+    }
+
+    private File fileFor(String key) {
+        return new File(directory, key + ".jpg");
+    }
+
+    private static long sizeOf(Bitmap bitmap) {
+        // getByteCount() needs API 12
+        return (long) bitmap.getRowBytes() * bitmap.getHeight();
+    }
+}
@@ -0,0 +1,312 @@
+package com.github.rtoshiro.view.video;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.MediaMetadataRetriever;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Loads poster frames on background threads: a frame of the video extracted with
+ * MediaMetadataRetriever (API 10+), or an image url given with it. Bitmaps are downsampled
+ * to about the view size and kept in a {@link PosterCache}, so a video seen before gets
+ * its poster from memory, without waiting for a thread.
+ *
+ * @see FullscreenVideoView#setPosterLoader(PosterLoader)
+ */
+public class PosterLoader {
+
+    private final static String TAG = "PosterLoader";
+    private final static int TIMEOUT = 15000;
+
+    public interface Callback {
+        /**
+         * Called on the main thread, unless the request was cancelled
+         *
+         * @param bitmap the poster, or null if it could not be loaded
+         */
+        void onPosterLoaded(Request request, Bitmap bitmap);
+    }
+
+    /**
+     * A poster being loaded
+     */
+    public static class Request {
+        protected final String source;
+        protected final String imageUrl;
+        protected final String key;
+        protected final int width, height;
+        protected volatile boolean cancelled;
+        protected Future<?> future;
+
+        protected Request(String source, String imageUrl, String key, int width, int height) {
+            this.source = source;
+            this.imageUrl = imageUrl;
+            this.key = key;
+            this.width = width;
+            this.height = height;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        /**
+         * The callback is not called after this
+         */
+        public synchronized void cancel() {
+            cancelled = true;
+            if (future != null)
+                future.cancel(false);
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    protected final Context context;
+    protected final PosterCache cache;
+    protected final ExecutorService executor;
+    protected volatile long frameTimeUs = 1000000;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Two threads
+     */
+    public PosterLoader(Context context, PosterCache cache) {
+        this(context, cache, 2);
+    }
+
+    /**
+     * @param context used for content and resource uris
+     * @param cache   where posters are kept
+     * @param threads number of posters loaded at a time
+     */
+    public PosterLoader(Context context, PosterCache cache, int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be >= 1");
+        this.context = context.getApplicationContext();
+        this.cache = cache;
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                Thread t = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                }, "FullscreenVideoView-poster");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    public PosterCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @param frameTimeUs position of the extracted frame, in microseconds (default 1s, as first frames are often black).
+     *                    The closest key frame is used.
+     */
+    public void setFrameTime(long frameTimeUs) {
+        this.frameTimeUs = frameTimeUs;
+    }
+
+    /**
+     * @param source   the video path or uri
+     * @param imageUrl image to use instead of a frame of the video, or null
+     * @return the poster if it is in memory, or null
+     */
+    public Bitmap getCached(String source, String imageUrl, int width, int height) {
+        return cache.getFromMemory(keyFor(source, imageUrl, width, height));
+    }
+
+    /**
+     * Loads a poster in the background, from disk if it was loaded before
+     *
+     * @param source   the video path or uri
+     * @param imageUrl image to use instead of a frame of the video, or null
+     * @param width    size the poster is shown at; it is decoded at least this large, when the original is
+     * @param height   size the poster is shown at
+     * @param callback called on the main thread
+     */
+    public Request load(String source, String imageUrl, int width, int height, final Callback callback) {
+        final Request request = new Request(source, imageUrl, keyFor(source, imageUrl, width, height), width, height);
+        Future<?> future = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                if (request.cancelled)
+                    return;
+
+                final Bitmap bitmap = loadBitmap(request);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!request.cancelled)
+                            callback.onPosterLoaded(request, bitmap);
+                    }
+                });
+            }
+        });
+        synchronized (request) {
+            request.future = future;
+        }
+        return request;
+    }
+
+    /**
+     * Stops the threads. Pending requests are dropped.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Runs on a loader thread
+     */
+    protected Bitmap loadBitmap(Request request) {
+        Bitmap bitmap = cache.getFromDisk(request.key);
+        if (bitmap != null)
+            return bitmap;
+
+        try {
+            if (request.imageUrl != null)
+                bitmap = decodeImage(request.imageUrl, request.width, request.height);
+            else
+                bitmap = extractFrame(request.source, request.width, request.height);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not load poster of " + request.source, e);
+        } catch (RuntimeException e) {
+            // MediaMetadataRetriever throws IllegalArgumentException for unreadable sources
+            Log.w(TAG, "Could not load poster of " + request.source, e);
+        }
+
+        if (bitmap != null && !request.cancelled)
+            cache.put(request.key, bitmap);
+        return bitmap;
+    }
+
+    /**
+     * Extracts the frame at {@link #setFrameTime(long)}, or the first one if the video is shorter
+     */
+    protected Bitmap extractFrame(String source, int width, int height) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.GINGERBREAD_MR1)
+            return null;
+
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            if (HttpCacheProxy.isHttp(source)) {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+                    retriever.setDataSource(source, new HashMap<String, String>());
+                else
+                    return null;
+            } else if (source.indexOf("://") > 0)
+                retriever.setDataSource(context, Uri.parse(source));
+            else
+                retriever.setDataSource(source);
+
+            Bitmap frame = retriever.getFrameAtTime(frameTimeUs, MediaMetadataRetriever.OPTION_CLOSEST_SYNC);
+            if (frame == null)
+                frame = retriever.getFrameAtTime();
+            return frame != null ? scaleDown(frame, width, height) : null;
+        } finally {
+            retriever.release();
+        }
+    }
+
+    /**
+     * Reads an image from an http(s) url, a content uri or a file, decoded with a sample size
+     * that keeps it at least width x height
+     */
+    protected Bitmap decodeImage(String imageUrl, int width, int height) throws IOException {
+        byte[] data;
+        InputStream in = null;
+        HttpURLConnection conn = null;
+        try {
+            if (HttpCacheProxy.isHttp(imageUrl)) {
+                conn = (HttpURLConnection) new URL(imageUrl).openConnection();
+                conn.setConnectTimeout(TIMEOUT);
+                conn.setReadTimeout(TIMEOUT);
+                in = conn.getInputStream();
+            } else if (imageUrl.indexOf("://") > 0) {
+                in = context.getContentResolver().openInputStream(Uri.parse(imageUrl));
+            } else
+                in = new FileInputStream(imageUrl);
+            if (in == null)
+                throw new IOException("Could not open " + imageUrl);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0)
+                out.write(buffer, 0, n);
+            data = out.toByteArray();
+        } finally {
+            if (in != null)
+                in.close();
+            if (conn != null)
+                conn.disconnect();
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize(options.outWidth, options.outHeight, width, height);
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+    }
+
+    /**
+     * @return the largest power of two that keeps the image at least width x height
+     */
+    static int sampleSize(int imageWidth, int imageHeight, int width, int height) {
+        int sampleSize = 1;
+        if (width <= 0 || height <= 0)
+            return sampleSize;
+        while (imageWidth / (sampleSize * 2) >= width && imageHeight / (sampleSize * 2) >= height)
+            sampleSize *= 2;
+        return sampleSize;
+    }
+
+    /**
+     * Scales the frame down to cover width x height, keeping its proportion
+     */
+    static Bitmap scaleDown(Bitmap frame, int width, int height) {
+        if (width <= 0 || height <= 0)
+            return frame;
+        float scale = Math.max((float) width / frame.getWidth(), (float) height / frame.getHeight());
+        if (scale >= 1)
+            return frame;
+
+        Bitmap scaled = Bitmap.createScaledBitmap(frame, Math.round(frame.getWidth() * scale), Math.round(frame.getHeight() * scale), true);
+        if (scaled != frame)
+            frame.recycle();
+        return scaled;
+    }
+
+    static String keyFor(String source, String imageUrl, int width, int height) {
+        return VideoCache.keyFor((imageUrl != null ? imageUrl : source) + '#' + width + 'x' + height);
+    }
+}
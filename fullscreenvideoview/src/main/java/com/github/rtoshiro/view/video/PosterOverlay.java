@@ -0,0 +1,156 @@
+package com.github.rtoshiro.view.video;
+
+import android.graphics.Bitmap;
+import android.view.View;
+import android.widget.ImageView;
+import android.widget.RelativeLayout;
+
+/**
+ * The poster of a {@link FullscreenVideoView}: an ImageView above its render target showing
+ * the poster of the source, from a {@link PosterLoader}, until the first frame is rendered.
+ * Main thread only.
+ */
+public class PosterOverlay {
+
+    protected final FullscreenVideoView videoView;
+    protected PosterLoader loader;
+    protected ImageView imageView;
+    protected String imageUrl;
+    protected VideoScaler.ScaleMode scaleMode = VideoScaler.ScaleMode.FIT;
+    // Source of the poster shown or loading, null if hidden
+    protected String source;
+    protected PosterLoader.Request request;
+    protected final PosterLoader.Callback callback = new PosterLoader.Callback() {
+        @Override
+        public void onPosterLoaded(PosterLoader.Request loaded, Bitmap bitmap) {
+            if (loaded != request)
+                return;
+            request = null;
+            if (bitmap != null)
+                setBitmap(bitmap);
+        }
+    };
+
+    public PosterOverlay(FullscreenVideoView videoView) {
+        this.videoView = videoView;
+    }
+
+    /**
+     * @param loader the loader, or null for no posters (hides the current one)
+     */
+    public void setLoader(PosterLoader loader) {
+        if (loader == null)
+            hide();
+        this.loader = loader;
+    }
+
+    public PosterLoader getLoader() {
+        return loader;
+    }
+
+    /**
+     * @param imageUrl image shown instead of a frame of the video, from the next poster on
+     */
+    public void setImageUrl(String imageUrl) {
+        this.imageUrl = imageUrl;
+    }
+
+    public String getImageUrl() {
+        return imageUrl;
+    }
+
+    /**
+     * Shows the poster of a source: at once if it is in the memory cache, otherwise when loaded
+     *
+     * @param source the video path or uri
+     */
+    public void show(String source) {
+        if (loader == null || source == null)
+            return;
+        // Shown or loading already
+        if (source.equals(this.source))
+            return;
+
+        hide();
+        this.source = source;
+        // Before the first layout, assumes the screen width and 16:9
+        int width = videoView.getWidth() > 0 ? videoView.getWidth() : videoView.getResources().getDisplayMetrics().widthPixels;
+        int height = videoView.getHeight() > 0 ? videoView.getHeight() : width * 9 / 16;
+        Bitmap cached = loader.getCached(source, imageUrl, width, height);
+        if (cached != null)
+            setBitmap(cached);
+        else
+            request = loader.load(source, imageUrl, width, height, callback);
+    }
+
+    /**
+     * Hides the poster and cancels its loading
+     */
+    public void hide() {
+        source = null;
+        if (request != null) {
+            request.cancel();
+            request = null;
+        }
+        if (imageView != null && imageView.getVisibility() != View.GONE) {
+            imageView.setVisibility(View.GONE);
+            // The bitmap belongs to the cache
+            imageView.setImageBitmap(null);
+        }
+    }
+
+    /**
+     * @return true if a poster is shown
+     */
+    public boolean isShown() {
+        return imageView != null && imageView.getVisibility() == View.VISIBLE;
+    }
+
+    /**
+     * @return the poster view, or null before the first poster
+     */
+    public ImageView getImageView() {
+        return imageView;
+    }
+
+    /**
+     * Scales the poster like the video
+     */
+    public void setScaleMode(VideoScaler.ScaleMode scaleMode) {
+        this.scaleMode = scaleMode;
+        if (imageView != null)
+            imageView.setScaleType(getScaleType());
+    }
+
+    /**
+     * Shows the bitmap in {@link #imageView}, created above the render target and below the loading view
+     */
+    protected void setBitmap(Bitmap bitmap) {
+        if (imageView == null) {
+            imageView = new ImageView(videoView.getContext());
+            imageView.setScaleType(getScaleType());
+            RelativeLayout.LayoutParams layoutParams = new RelativeLayout.LayoutParams(
+                    RelativeLayout.LayoutParams.MATCH_PARENT, RelativeLayout.LayoutParams.MATCH_PARENT);
+            layoutParams.addRule(RelativeLayout.CENTER_IN_PARENT);
+            imageView.setLayoutParams(layoutParams);
+            RenderTarget renderTarget = videoView.getRenderTarget();
+            videoView.addView(imageView, renderTarget != null ? videoView.indexOfChild(renderTarget.getView()) + 1 : 0);
+        }
+        imageView.setImageBitmap(bitmap);
+        imageView.setVisibility(View.VISIBLE);
+    }
+
+    /**
+     * @return the scale type matching {@link #scaleMode}
+     */
+    protected ImageView.ScaleType getScaleType() {
+        switch (scaleMode) {
+            case FILL:
+                return ImageView.ScaleType.CENTER_CROP;
+            case STRETCH:
+                return ImageView.ScaleType.FIT_XY;
+            default:
+                return ImageView.ScaleType.FIT_CENTER;
+        }
+    }
+}
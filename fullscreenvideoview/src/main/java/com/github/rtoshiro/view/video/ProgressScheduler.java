@@ -0,0 +1,203 @@
+package com.github.rtoshiro.view.video;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+
+/**
+ * Drives progress updates of every active player from a single main thread callback.
+ * Each {@link Client} tells when it wants to be called again, and the scheduler only
+ * wakes up at the earliest of those deadlines.
+ * On API 16+ the wake ups are aligned to frames using {@link Choreographer}.
+ *
+ * All methods must be called from the main thread.
+ */
+public class ProgressScheduler {
+
+    /**
+     * A player (or any view) that wants periodic progress ticks
+     */
+    public interface Client {
+        /**
+         * Called when the client deadline has been reached.
+         *
+         * @return delay in milliseconds until the next tick, or a negative value to stop ticking
+         */
+        long onProgressTick();
+    }
+
+    private static ProgressScheduler instance;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ArrayList<Client> clients = new ArrayList<Client>();
+    private long[] deadlines = new long[4];
+    // Clients due in the current tick, reused across ticks
+    private Client[] due = new Client[4];
+
+    private long scheduledAt = Long.MAX_VALUE;
+    private FrameTicker frameTicker;
+
+    private final Runnable tickRunnable = new Runnable() {
+        @Override
+        public void run() {
+            tick();
+        }
+    };
+
+    public static ProgressScheduler getInstance() {
+        if (instance == null)
+            instance = new ProgressScheduler();
+        return instance;
+    }
+
+    protected ProgressScheduler() {
+        this(Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN);
+    }
+
+    /**
+     * @param frameAligned true to tick from {@link Choreographer} frames, API 16+ only
+     */
+    protected ProgressScheduler(boolean frameAligned) {
+        if (frameAligned)
+            frameTicker = new FrameTicker();
+    }
+
+    /**
+     * Registers the client (or changes its deadline if it is already registered).
+     *
+     * @param client  the client to tick
+     * @param delayMs delay in milliseconds until its first tick
+     */
+    public void schedule(Client client, long delayMs) {
+        long deadline = SystemClock.uptimeMillis() + Math.max(0, delayMs);
+        int index = clients.indexOf(client);
+        if (index < 0) {
+            index = clients.size();
+            clients.add(client);
+            if (deadlines.length < clients.size()) {
+                long[] grown = new long[deadlines.length * 2];
+                System.arraycopy(deadlines, 0, grown, 0, deadlines.length);
+                deadlines = grown;
+            }
+        }
+        deadlines[index] = deadline;
+        reschedule();
+    }
+
+    /**
+     * Unregisters the client. Does nothing if it is not registered.
+     */
+    public void cancel(Client client) {
+        int index = clients.indexOf(client);
+        if (index >= 0) {
+            removeAt(index);
+            reschedule();
+        }
+    }
+
+    public boolean isScheduled(Client client) {
+        return clients.indexOf(client) >= 0;
+    }
+
+    private void removeAt(int index) {
+        int last = clients.size() - 1;
+        System.arraycopy(deadlines, index + 1, deadlines, index, last - index);
+        clients.remove(index);
+    }
+
+    /**
+     * Calls the clients whose deadline has been reached
+     */
+    protected void tick() {
+        scheduledAt = Long.MAX_VALUE;
+        long now = SystemClock.uptimeMillis();
+
+        // A client may cancel or schedule any client inside onProgressTick(), which shifts
+        // the indices: the due clients are collected first, then each one is found again
+        int count = 0;
+        for (int i = 0; i < clients.size(); i++) {
+            if (deadlines[i] > now)
+                continue;
+            if (count == due.length) {
+                Client[] grown = new Client[due.length * 2];
+                System.arraycopy(due, 0, grown, 0, count);
+                due = grown;
+            }
+            due[count++] = clients.get(i);
+        }
+
+        for (int i = 0; i < count; i++) {
+            Client client = due[i];
+            due[i] = null;
+            // Cancelled or rescheduled by a previous client of this tick
+            int index = clients.indexOf(client);
+            if (index < 0 || deadlines[index] > now)
+                continue;
+
+            long delay = client.onProgressTick();
+
+            // The client may have cancelled or rescheduled itself too
+            index = clients.indexOf(client);
+            if (index < 0)
+                continue;
+            if (delay < 0)
+                removeAt(index);
+            else
+                deadlines[index] = now + delay;
+        }
+
+        reschedule();
+    }
+
+    private void reschedule() {
+        long next = Long.MAX_VALUE;
+        for (int i = 0; i < clients.size(); i++) {
+            if (deadlines[i] < next)
+                next = deadlines[i];
+        }
+
+        if (next == scheduledAt)
+            return;
+
+        removeCallbacks();
+        scheduledAt = next;
+        if (next == Long.MAX_VALUE)
+            return;
+
+        long delay = Math.max(0, next - SystemClock.uptimeMillis());
+        if (frameTicker != null)
+            frameTicker.post(delay);
+        else
+            handler.postDelayed(tickRunnable, delay);
+    }
+
+    private void removeCallbacks() {
+        if (frameTicker != null)
+            frameTicker.remove();
+        else
+            handler.removeCallbacks(tickRunnable);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private class FrameTicker implements Choreographer.FrameCallback {
+        private final Choreographer choreographer = Choreographer.getInstance();
+
+        void post(long delay) {
+            choreographer.postFrameCallbackDelayed(this, delay);
+        }
+
+        void remove() {
+            choreographer.removeFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            tick();
+        }
+    }
+}
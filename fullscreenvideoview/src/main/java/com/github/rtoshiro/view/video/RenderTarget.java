@@ -0,0 +1,137 @@
+package com.github.rtoshiro.view.video;
+
+import android.media.MediaPlayer;
+import android.view.Surface;
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * The view where {@link FullscreenVideoView} renders the video.
+ * Implementations: {@link SurfaceViewRenderTarget} and {@link TextureViewRenderTarget}.
+ */
+public abstract class RenderTarget {
+
+    /**
+     * Receives the surface life cycle of a RenderTarget
+     */
+    public interface Callback {
+        /**
+         * The surface can receive frames. The player should be attached now.
+         */
+        void onRenderSurfaceAvailable(RenderTarget target);
+
+        /**
+         * The surface is gone. The player can not render until the next onRenderSurfaceAvailable().
+         */
+        void onRenderSurfaceDestroyed(RenderTarget target);
+
+        /**
+         * A frame was rendered after {@link RenderTarget#expectFirstFrame()}
+         */
+        void onRenderFirstFrame(RenderTarget target);
+    }
+
+    protected Callback callback;
+    protected boolean firstFrameExpected;
+
+    public void setCallback(Callback callback) {
+        this.callback = callback;
+    }
+
+    /**
+     * @return the view to be added to the FullscreenVideoView
+     */
+    public abstract View getView();
+
+    /**
+     * @return true if a player attached now would render
+     */
+    public abstract boolean isSurfaceAvailable();
+
+    /**
+     * Sets the surface as the player output. Does nothing if the surface is not available yet.
+     */
+    public abstract void attachPlayer(MediaPlayer mp);
+
+    /**
+     * Removes the surface from the player
+     */
+    public abstract void detachPlayer(MediaPlayer mp);
+
+    /**
+     * @return the surface, for decoders other than MediaPlayer, or null if it is not available
+     */
+    public abstract Surface getSurface();
+
+    /**
+     * Shows the video with the given size, centered in the target view.
+     * The default implementation changes the view layout params, which costs a layout pass.
+     *
+     * @param width  rendered video width
+     * @param height rendered video height
+     */
+    public void applyContentSize(int width, int height) {
+        View view = getView();
+        ViewGroup.LayoutParams lp = view.getLayoutParams();
+        boolean changed = lp.width != width || lp.height != height;
+        lp.width = width;
+        lp.height = height;
+
+        // A video bigger than its container (crop) needs negative margins, or the layout clamps it
+        if (lp instanceof ViewGroup.MarginLayoutParams && view.getParent() instanceof View) {
+            View container = (View) view.getParent();
+            int horizontal = Math.min(0, (container.getWidth() - width) / 2);
+            int vertical = Math.min(0, (container.getHeight() - height) / 2);
+            ViewGroup.MarginLayoutParams mlp = (ViewGroup.MarginLayoutParams) lp;
+            if (mlp.leftMargin != horizontal || mlp.topMargin != vertical) {
+                mlp.leftMargin = mlp.rightMargin = horizontal;
+                mlp.topMargin = mlp.bottomMargin = vertical;
+                changed = true;
+            }
+        }
+
+        if (changed)
+            view.setLayoutParams(lp);
+    }
+
+    /**
+     * @return true if the surface survives when the view is detached (reparenting)
+     */
+    public boolean keepsSurfaceWhenDetached() {
+        return false;
+    }
+
+    /**
+     * Releases the surface kept while the view was detached, if any.
+     * Called when the FullscreenVideoView is detached for good.
+     */
+    public void releaseSurface() {
+    }
+
+    protected void notifyAvailable() {
+        if (callback != null)
+            callback.onRenderSurfaceAvailable(this);
+    }
+
+    protected void notifyDestroyed() {
+        if (callback != null)
+            callback.onRenderSurfaceDestroyed(this);
+    }
+
+    /**
+     * Reports the next rendered frame to {@link Callback#onRenderFirstFrame}, e.g. when a new
+     * source is opened. Only targets that see their frames report it: not SurfaceView.
+     */
+    public void expectFirstFrame() {
+        firstFrameExpected = true;
+    }
+
+    protected void notifyFrameRendered() {
+        if (!firstFrameExpected)
+            return;
+
+        firstFrameExpected = false;
+        if (callback != null)
+            callback.onRenderFirstFrame(this);
+    }
+}
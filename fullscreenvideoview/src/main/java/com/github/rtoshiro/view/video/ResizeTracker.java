@@ -0,0 +1,84 @@
+package com.github.rtoshiro.view.video;
+
+/**
+ * Bookkeeping of {@link FullscreenVideoView#resize()}: merges the resize requests made before
+ * the next frame into one, and skips resizes whose sizes did not change since the last
+ * applied one. No objects are allocated after construction.
+ *
+ * Has no Android dependencies. Main thread only.
+ */
+public class ResizeTracker {
+
+    private boolean pending;
+    private final int[] result = new int[2];
+    private int parentWidth = -1, parentHeight = -1;
+    private int viewWidth = -1, viewHeight = -1;
+    private int videoWidth = -1, videoHeight = -1;
+
+    /**
+     * @return true if the caller must schedule a resize, false if one is already scheduled
+     */
+    public boolean request() {
+        if (pending)
+            return false;
+        pending = true;
+        return true;
+    }
+
+    /**
+     * The scheduled resize runs: the next {@link #request()} schedules another one
+     */
+    public void onScheduledResize() {
+        pending = false;
+    }
+
+    public boolean isPending() {
+        return pending;
+    }
+
+    /**
+     * Computes the content size, unless every size is the same as for the last applied one.
+     *
+     * @return true if {@link #getWidth()} and {@link #getHeight()} hold a size to apply
+     */
+    public boolean update(VideoScaler.ScaleMode mode, float fixedRatio, int videoWidth, int videoHeight,
+                          int parentWidth, int parentHeight, int viewWidth, int viewHeight) {
+        if (parentWidth == this.parentWidth && parentHeight == this.parentHeight &&
+                viewWidth == this.viewWidth && viewHeight == this.viewHeight &&
+                videoWidth == this.videoWidth && videoHeight == this.videoHeight)
+            return false;
+
+        if (!VideoScaler.compute(mode, fixedRatio, videoWidth, videoHeight, parentWidth, parentHeight, result))
+            return false;
+
+        this.parentWidth = parentWidth;
+        this.parentHeight = parentHeight;
+        this.viewWidth = viewWidth;
+        this.viewHeight = viewHeight;
+        this.videoWidth = videoWidth;
+        this.videoHeight = videoHeight;
+        return true;
+    }
+
+    /**
+     * @return content width computed by the last successful {@link #update}
+     */
+    public int getWidth() {
+        return result[0];
+    }
+
+    /**
+     * @return content height computed by the last successful {@link #update}
+     */
+    public int getHeight() {
+        return result[1];
+    }
+
+    /**
+     * Forgets the last applied size, so the next update() computes it again,
+     * e.g. after a scale mode or render target change
+     */
+    public void invalidate() {
+        parentWidth = -1;
+    }
+}
@@ -0,0 +1,254 @@
+package com.github.rtoshiro.view.video;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Playback positions to resume from, keyed by source (uri string or path).
+ * Keeps the most recently used entries only and stores them in a small binary file,
+ * so a video opened again, even after the process died, starts where it was left.
+ *
+ * Changes are kept in memory and written by a background thread, at most once per
+ * {@link #setSaveDelay(long) save delay}, so put() never waits for the disk.
+ * {@link #flush()} writes them right away, still in the background.
+ *
+ * Thread safe. Has no Android dependencies.
+ *
+ * @see FullscreenVideoView#setResumePositionStore(ResumePositionStore)
+ */
+public class ResumePositionStore {
+
+    private final static int FILE_VERSION = 1;
+    private final static long DEFAULT_SAVE_DELAY = 2000;
+
+    // One thread for every store, writes are short
+    private static ScheduledExecutorService writer;
+
+    private final File file;
+    private final int maxEntries;
+
+    // Access ordered: the first entry is the least recently used
+    private final LinkedHashMap<String, Integer> positions = new LinkedHashMap<String, Integer>(16, 0.75f, true);
+    private boolean dirty;
+    private long saveDelay = DEFAULT_SAVE_DELAY;
+    private Future<?> scheduledSave;
+    // True until the scheduled save takes its snapshot: later changes are included
+    private boolean saveScheduled;
+    // Serializes writes of the file, without blocking get() and put()
+    private final Object fileLock = new Object();
+
+    /**
+     * @param file       where positions are stored. Positions found there are loaded.
+     * @param maxEntries maximum number of positions kept. The least recently used one is dropped when exceeded.
+     */
+    public ResumePositionStore(File file, int maxEntries) {
+        if (maxEntries < 1)
+            throw new IllegalArgumentException("maxEntries must be >= 1");
+        this.file = file;
+        this.maxEntries = maxEntries;
+        load();
+    }
+
+    /**
+     * @return the saved position in milliseconds, or -1
+     */
+    public synchronized int get(String key) {
+        Integer position = positions.get(key);
+        return position != null ? position : -1;
+    }
+
+    public synchronized void put(String key, int position) {
+        if (position < 0)
+            throw new IllegalArgumentException("position must be >= 0");
+        Integer old = positions.put(key, position);
+        if (old == null || old != position) {
+            trim();
+            changed();
+        }
+    }
+
+    public synchronized void remove(String key) {
+        if (positions.remove(key) != null)
+            changed();
+    }
+
+    public synchronized void clear() {
+        if (!positions.isEmpty()) {
+            positions.clear();
+            changed();
+        }
+    }
+
+    /**
+     * @param saveDelay milliseconds between a change and its write (default 2000).
+     *                  Changes made meanwhile are written together.
+     */
+    public synchronized void setSaveDelay(long saveDelay) {
+        if (saveDelay < 0)
+            throw new IllegalArgumentException("saveDelay must be >= 0");
+        this.saveDelay = saveDelay;
+    }
+
+    /**
+     * Writes the changes in the background now, without waiting for the save delay,
+     * e.g. when the view is detached or its player released
+     *
+     * @return completes once the positions are written
+     */
+    public synchronized Future<?> flush() {
+        if (scheduledSave != null)
+            scheduledSave.cancel(false);
+        scheduledSave = getWriter().submit(saveTask());
+        saveScheduled = true;
+        return scheduledSave;
+    }
+
+    public synchronized int size() {
+        return positions.size();
+    }
+
+    /**
+     * Writes the positions to the file on the calling thread, if they changed since the last save.
+     * The file is replaced atomically, so a crash while saving keeps the previous positions.
+     */
+    public void save() throws IOException {
+        synchronized (fileLock) {
+            String[] keys;
+            int[] values;
+            synchronized (this) {
+                if (!dirty)
+                    return;
+                // Least recently used first, so load() restores the same order
+                keys = new String[positions.size()];
+                values = new int[keys.length];
+                int i = 0;
+                for (Map.Entry<String, Integer> e : positions.entrySet()) {
+                    keys[i] = e.getKey();
+                    values[i++] = e.getValue();
+                }
+                dirty = false;
+            }
+
+            try {
+                write(keys, values);
+            } catch (IOException e) {
+                synchronized (this) {
+                    dirty = true;
+                }
+                throw e;
+            }
+        }
+    }
+
+    private void write(String[] keys, int[] values) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null)
+            //noinspection ResultOfMethodCallIgnored
+            parent.mkdirs();
+
+        File tmp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(FILE_VERSION);
+            out.writeInt(keys.length);
+            for (int i = 0; i < keys.length; i++) {
+                out.writeUTF(keys[i]);
+                out.writeInt(values[i]);
+            }
+        } finally {
+            out.close();
+        }
+
+        if (!tmp.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    /**
+     * Schedules a write after the save delay, unless one is scheduled already
+     */
+    private void changed() {
+        dirty = true;
+        if (!saveScheduled) {
+            scheduledSave = getWriter().schedule(saveTask(), saveDelay, TimeUnit.MILLISECONDS);
+            saveScheduled = true;
+        }
+    }
+
+    private Callable<Void> saveTask() {
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                synchronized (ResumePositionStore.this) {
+                    saveScheduled = false;
+                }
+                // A failed write stays dirty and is retried by the next change or flush()
+                save();
+                return null;
+            }
+        };
+    }
+
+    private static synchronized ScheduledExecutorService getWriter() {
+        if (writer == null) {
+            writer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "ResumePositionStore");
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                }
+            });
+        }
+        return writer;
+    }
+
+    private synchronized void load() {
+        if (!file.exists())
+            return;
+
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != FILE_VERSION)
+                    return;
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    String key = in.readUTF();
+                    positions.put(key, in.readInt());
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // Truncated or corrupted: keep what could be read
+        }
+        trim();
+    }
+
+    private void trim() {
+        Iterator<Integer> it = positions.values().iterator();
+        while (positions.size() > maxEntries && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+}
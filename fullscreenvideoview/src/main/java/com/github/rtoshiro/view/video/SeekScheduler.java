@@ -0,0 +1,183 @@
+package com.github.rtoshiro.view.video;
+
+/**
+ * Coalesces seek requests: at most one seek is sent to the player at a time,
+ * and targets requested while it runs are collapsed so only the latest one
+ * is sent when it completes. N rapid seeks result in at most two player seeks.
+ *
+ * Each seek sent is tagged with the generation of the scheduler, which {@link #cancel()}
+ * increments. Players complete seeks in the order they were sent, so a completion is matched
+ * to the oldest seek sent, and ignored if that seek was sent before a cancel(): it must not
+ * end the seek running now.
+ *
+ * Has no Android dependencies. Thread safe; the {@link Seeker} is called
+ * without holding any lock, on the thread that requested or completed the seek.
+ */
+public class SeekScheduler {
+
+    /**
+     * What {@link #onSeekComplete()} did with a completion
+     */
+    public enum Completion
+    {
+        /**
+         * Completion of a seek sent before cancel(), or of no known seek: ignored
+         */
+        STALE,
+        /**
+         * The pending target was sent
+         */
+        PENDING_SENT,
+        /**
+         * No seek is running anymore
+         */
+        IDLE
+    }
+
+    /**
+     * Performs the actual seek
+     */
+    public interface Seeker {
+        /**
+         * @param msec  target position
+         * @param exact true to seek to the exact position, false to the closest sync frame (faster)
+         */
+        void performSeek(int msec, boolean exact);
+    }
+
+    private final Seeker seeker;
+
+    private boolean inFlight;
+    private int pendingTarget = -1;
+    private boolean pendingExact;
+
+    private int generation;
+    // Ring of the generations of the seeks sent and not completed yet, oldest first.
+    // Grows only if cancel() is called again and again while the player completes nothing.
+    private int[] sent = new int[4];
+    private int sentHead;
+    private int sentCount;
+
+    private long requested;
+    private long performed;
+    private long stale;
+
+    public SeekScheduler(Seeker seeker) {
+        this.seeker = seeker;
+    }
+
+    /**
+     * Seeks now if no seek is running, otherwise replaces the pending target
+     */
+    public void seekTo(int msec, boolean exact) {
+        synchronized (this) {
+            requested++;
+            if (inFlight) {
+                pendingTarget = msec;
+                pendingExact = exact;
+                return;
+            }
+            inFlight = true;
+            performed++;
+            addSent();
+        }
+        seeker.performSeek(msec, exact);
+    }
+
+    /**
+     * Must be called when the player reports a completed seek. Sends the pending target, if any.
+     */
+    public Completion onSeekComplete() {
+        int target;
+        boolean exact;
+        synchronized (this) {
+            boolean current = sentCount > 0 && sent[sentHead] == generation;
+            if (sentCount > 0) {
+                sentHead = (sentHead + 1) % sent.length;
+                sentCount--;
+            }
+            if (!current) {
+                stale++;
+                return Completion.STALE;
+            }
+            if (pendingTarget < 0) {
+                inFlight = false;
+                return Completion.IDLE;
+            }
+            target = pendingTarget;
+            exact = pendingExact;
+            pendingTarget = -1;
+            performed++;
+            addSent();
+        }
+        seeker.performSeek(target, exact);
+        return Completion.PENDING_SENT;
+    }
+
+    /**
+     * Forgets the running and pending seeks, e.g. after stop() or an error.
+     * If the player still completes the running one, that completion is ignored.
+     */
+    public synchronized void cancel() {
+        generation++;
+        inFlight = false;
+        pendingTarget = -1;
+    }
+
+    /**
+     * Cancels, and forgets the seeks already sent: the player was reset, replaced or
+     * prepared again, so it will not complete them
+     */
+    public synchronized void reset() {
+        cancel();
+        sentHead = 0;
+        sentCount = 0;
+    }
+
+    /**
+     * @return true if the next completion belongs to a cancelled seek, or to no known seek
+     */
+    public synchronized boolean isNextCompletionStale() {
+        return sentCount == 0 || sent[sentHead] != generation;
+    }
+
+    /**
+     * Queues the current generation as a sent seek. Called with the lock held.
+     */
+    private void addSent() {
+        if (sentCount == sent.length) {
+            int[] grown = new int[sent.length * 2];
+            for (int i = 0; i < sentCount; i++)
+                grown[i] = sent[(sentHead + i) % sent.length];
+            sent = grown;
+            sentHead = 0;
+        }
+        sent[(sentHead + sentCount) % sent.length] = generation;
+        sentCount++;
+    }
+
+    public synchronized boolean isSeeking() {
+        return inFlight;
+    }
+
+    /**
+     * @return number of seekTo() calls
+     */
+    public synchronized long getRequestedCount() {
+        return requested;
+    }
+
+    /**
+     * @return number of seeks sent to the {@link Seeker}
+     */
+    public synchronized long getPerformedCount() {
+        return performed;
+    }
+
+    /**
+     * @return number of completions ignored, as they belonged to a cancelled seek
+     */
+    public synchronized long getStaleCount() {
+        return stale;
+    }
+}
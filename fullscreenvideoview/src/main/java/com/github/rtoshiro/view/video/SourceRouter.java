@@ -0,0 +1,119 @@
+package com.github.rtoshiro.view.video;
+
+/**
+ * Chooses the url a player reads for a source of {@link FullscreenVideoView}: the source
+ * itself, the disk cache of an {@link HttpCacheProxy}, or, for adaptive HLS, an
+ * {@link HlsSession} of that proxy. Tells the {@link VideoPrefetcher} which sources are
+ * played, and owns the HLS session of the current source.
+ *
+ * Has no Android dependencies. Main thread only.
+ */
+public class SourceRouter {
+
+    protected HttpCacheProxy proxy;
+    protected VideoPrefetcher prefetcher;
+    protected boolean adaptiveStreaming;
+    protected HlsSession session;
+    protected final HlsSession.Listener sessionListener;
+
+    /**
+     * @param sessionListener set on every session opened, called on the proxy threads
+     */
+    public SourceRouter(HlsSession.Listener sessionListener) {
+        this.sessionListener = sessionListener;
+    }
+
+    /**
+     * @param proxy a started proxy, or null to read sources directly
+     */
+    public void setProxy(HttpCacheProxy proxy) {
+        this.proxy = proxy;
+    }
+
+    public HttpCacheProxy getProxy() {
+        return proxy;
+    }
+
+    /**
+     * @param prefetcher a prefetcher of the same proxy, or null
+     */
+    public void setPrefetcher(VideoPrefetcher prefetcher) {
+        this.prefetcher = prefetcher;
+    }
+
+    public VideoPrefetcher getPrefetcher() {
+        return prefetcher;
+    }
+
+    /**
+     * @param adaptiveStreaming true to open an HlsSession for the next HLS sources
+     */
+    public void setAdaptiveStreaming(boolean adaptiveStreaming) {
+        this.adaptiveStreaming = adaptiveStreaming;
+    }
+
+    public boolean isAdaptiveStreaming() {
+        return adaptiveStreaming;
+    }
+
+    /**
+     * @return the session of the current source, or null
+     */
+    public HlsSession getSession() {
+        return session;
+    }
+
+    /**
+     * Closes the session of the previous source and routes this one, which becomes current
+     *
+     * @return the url MediaPlayer reads: an HLS session or the disk cache of the proxy, or the source itself
+     */
+    public String open(String source) {
+        close();
+        if (proxy == null)
+            return source;
+        if (prefetcher != null)
+            prefetcher.onPlaybackRequested(source);
+
+        if (adaptiveStreaming && HlsSession.isHlsUrl(source)) {
+            session = proxy.openHlsSession(source);
+            if (session != null) {
+                session.setListener(sessionListener);
+                return session.getPlaylistUrl();
+            }
+        }
+        return proxy.getProxyUrl(source);
+    }
+
+    /**
+     * For decoders that read a single progressive source: a prepared next player or MediaCodecEngine
+     *
+     * @return the proxy url of cacheable sources, the source itself otherwise
+     */
+    public String getCacheUrl(String source) {
+        if (proxy != null && HttpCacheProxy.isCacheable(source))
+            return proxy.getProxyUrl(source);
+        return source;
+    }
+
+    /**
+     * Closes the session of the current source, if any
+     */
+    public void close() {
+        if (session == null)
+            return;
+        session.setListener(null);
+        if (proxy != null)
+            proxy.closeHlsSession(session);
+        session = null;
+    }
+
+    /**
+     * Forgets the session without closing it, e.g. when a kept player still reads it
+     */
+    public void forgetSession() {
+        if (session != null)
+            session.setListener(null);
+        session = null;
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.rtoshiro.view.video;
+
+import android.content.Context;
+import android.media.MediaPlayer;
+import android.util.Log;
+import android.view.Surface;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+import android.view.View;
+
+/**
+ * Renders the video into a {@link SurfaceView}.
+ * Cheapest composition, but the surface is destroyed whenever the view is detached or hidden.
+ */
+public class SurfaceViewRenderTarget extends RenderTarget implements SurfaceHolder.Callback {
+
+    private final static String TAG = "SurfaceViewRenderTarget";
+
+    protected final SurfaceView surfaceView;
+    protected final SurfaceHolder surfaceHolder;
+    protected boolean surfaceAvailable;
+
+    public SurfaceViewRenderTarget(Context context) {
+        this.surfaceView = new SurfaceView(context);
+        this.surfaceHolder = this.surfaceView.getHolder();
+        //noinspection deprecation
+        this.surfaceHolder.setType(SurfaceHolder.SURFACE_TYPE_PUSH_BUFFERS);
+        this.surfaceHolder.addCallback(this);
+    }
+
+    @Override
+    public View getView() {
+        return surfaceView;
+    }
+
+    public SurfaceHolder getSurfaceHolder() {
+        return surfaceHolder;
+    }
+
+    @Override
+    public boolean isSurfaceAvailable() {
+        return surfaceAvailable;
+    }
+
+    @Override
+    public void attachPlayer(MediaPlayer mp) {
+        if (surfaceAvailable)
+            mp.setDisplay(surfaceHolder);
+    }
+
+    @Override
+    public void detachPlayer(MediaPlayer mp) {
+        mp.setDisplay(null);
+    }
+
+    @Override
+    public Surface getSurface() {
+        return surfaceAvailable ? surfaceHolder.getSurface() : null;
+    }
+
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+        Log.d(TAG, "surfaceCreated called");
+        surfaceAvailable = true;
+        notifyAvailable();
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        Log.d(TAG, "surfaceChanged called");
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        Log.d(TAG, "surfaceDestroyed called");
+        surfaceAvailable = false;
+        notifyDestroyed();
+    }
+}
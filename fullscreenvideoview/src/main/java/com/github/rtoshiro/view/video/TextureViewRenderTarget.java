@@ -0,0 +1,166 @@
+package com.github.rtoshiro.view.video;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.Matrix;
+import android.graphics.SurfaceTexture;
+import android.media.MediaPlayer;
+import android.os.Build;
+import android.util.Log;
+import android.view.Surface;
+import android.view.TextureView;
+import android.view.View;
+
+/**
+ * Renders the video into a {@link TextureView} (API 14+, hardware accelerated windows only).
+ * It can be transformed and animated like any view and, on API 16+, it keeps its
+ * SurfaceTexture while detached, so reparenting does not interrupt the decoder output.
+ */
+@TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+public class TextureViewRenderTarget extends RenderTarget implements TextureView.SurfaceTextureListener {
+
+    private final static String TAG = "TextureViewRenderTarget";
+
+    protected final TextureView textureView;
+    protected final boolean retainSurface;
+    protected SurfaceTexture surfaceTexture;
+    protected Surface surface;
+    protected final Matrix transform = new Matrix();
+    protected final float[] scale = new float[2];
+    protected int contentWidth = -1, contentHeight = -1;
+
+    public TextureViewRenderTarget(Context context) {
+        // TextureView.setSurfaceTexture() is only available on API 16+
+        this(context, Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN);
+    }
+
+    /**
+     * @param retainSurface keeps the SurfaceTexture while detached, requires API 16+
+     */
+    protected TextureViewRenderTarget(Context context, boolean retainSurface) {
+        this.textureView = new TextureView(context);
+        this.textureView.setSurfaceTextureListener(this);
+        this.retainSurface = retainSurface;
+    }
+
+    @Override
+    public View getView() {
+        return textureView;
+    }
+
+    public TextureView getTextureView() {
+        return textureView;
+    }
+
+    @Override
+    public boolean isSurfaceAvailable() {
+        return surface != null;
+    }
+
+    @Override
+    public void attachPlayer(MediaPlayer mp) {
+        if (surface != null)
+            mp.setSurface(surface);
+    }
+
+    @Override
+    public void detachPlayer(MediaPlayer mp) {
+        mp.setSurface(null);
+    }
+
+    @Override
+    public Surface getSurface() {
+        return surface;
+    }
+
+    /**
+     * Scales the texture with a transform matrix. The view keeps its size, so no layout is needed.
+     */
+    @Override
+    public void applyContentSize(int width, int height) {
+        contentWidth = width;
+        contentHeight = height;
+        updateTransform();
+    }
+
+    protected void updateTransform() {
+        int viewWidth = textureView.getWidth();
+        int viewHeight = textureView.getHeight();
+        if (!VideoScaler.computeTransformScale(contentWidth, contentHeight, viewWidth, viewHeight, scale))
+            return;
+
+        transform.setScale(scale[0], scale[1], viewWidth / 2f, viewHeight / 2f);
+        textureView.setTransform(transform);
+    }
+
+    @Override
+    public boolean keepsSurfaceWhenDetached() {
+        return retainSurface;
+    }
+
+    @Override
+    public void releaseSurface() {
+        if (surface != null) {
+            Log.d(TAG, "releasing retained surface");
+            surface.release();
+            surface = null;
+        }
+        if (surfaceTexture != null) {
+            surfaceTexture.release();
+            surfaceTexture = null;
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    @Override
+    public void onSurfaceTextureAvailable(SurfaceTexture st, int width, int height) {
+        if (surfaceTexture != null && retainSurface) {
+            // Reattached: keeps using the texture the player is already rendering to
+            Log.d(TAG, "restoring retained SurfaceTexture");
+            if (st != surfaceTexture) {
+                textureView.setSurfaceTexture(surfaceTexture);
+                // Created by the TextureView for this attach, replaced before any use
+                st.release();
+            }
+            return;
+        }
+
+        Log.d(TAG, "onSurfaceTextureAvailable called");
+        updateTransform();
+        surfaceTexture = st;
+        surface = new Surface(st);
+        notifyAvailable();
+    }
+
+    @Override
+    public void onSurfaceTextureSizeChanged(SurfaceTexture st, int width, int height) {
+        Log.d(TAG, "onSurfaceTextureSizeChanged called");
+        updateTransform();
+    }
+
+    @Override
+    public boolean onSurfaceTextureDestroyed(SurfaceTexture st) {
+        if (retainSurface && st == surfaceTexture) {
+            // Keeps the texture (and the player output) until reattached or releaseSurface()
+            Log.d(TAG, "retaining SurfaceTexture");
+            return false;
+        }
+
+        Log.d(TAG, "onSurfaceTextureDestroyed called");
+        if (st == surfaceTexture) {
+            notifyDestroyed();
+            if (surface != null) {
+                surface.release();
+                surface = null;
+            }
+            surfaceTexture = null;
+        }
+        // Not retained (or already released by releaseSurface()): the TextureView releases it
+        return true;
+    }
+
+    @Override
+    public void onSurfaceTextureUpdated(SurfaceTexture st) {
+        notifyFrameRendered();
+    }
+}
@@ -0,0 +1,76 @@
+package com.github.rtoshiro.view.video;
+
+/**
+ * Formats playback times as "mm:ss" or "h:mm:ss" into a preallocated char buffer.
+ * It keeps the last formatted second, so callers can skip TextView.setText()
+ * when the displayed value did not change.
+ * No objects are allocated after construction.
+ */
+public class TimeFormatter {
+
+    private final char[] buffer = new char[16];
+    private int length;
+    private long lastSeconds = Long.MIN_VALUE;
+
+    /**
+     * Formats the given time if its displayed second differs from the last one.
+     *
+     * @param msec time in milliseconds
+     * @return true if the buffer content changed
+     */
+    public boolean update(long msec) {
+        long seconds = msec < 0 ? 0 : msec / 1000;
+        if (seconds == lastSeconds)
+            return false;
+
+        lastSeconds = seconds;
+
+        long s = seconds % 60;
+        long m = (seconds / 60) % 60;
+        long h = (seconds / (60 * 60)) % 24;
+
+        int pos = 0;
+        if (h > 0) {
+            pos = writeNumber(h, pos);
+            buffer[pos++] = ':';
+        }
+        buffer[pos++] = (char) ('0' + m / 10);
+        buffer[pos++] = (char) ('0' + m % 10);
+        buffer[pos++] = ':';
+        buffer[pos++] = (char) ('0' + s / 10);
+        buffer[pos++] = (char) ('0' + s % 10);
+        length = pos;
+        return true;
+    }
+
+    /**
+     * Forgets the last formatted value, so the next update() always reports a change.
+     */
+    public void invalidate() {
+        lastSeconds = Long.MIN_VALUE;
+    }
+
+    /**
+     * The internal buffer. Only the first {@link #length()} chars are valid.
+     */
+    public char[] chars() {
+        return buffer;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, length);
+    }
+
+    private int writeNumber(long value, int pos) {
+        if (value >= 10) {
+            pos = writeNumber(value / 10, pos);
+        }
+        buffer[pos++] = (char) ('0' + value % 10);
+        return pos;
+    }
+}
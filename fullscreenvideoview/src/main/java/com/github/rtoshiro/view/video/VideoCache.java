@@ -0,0 +1,243 @@
+package com.github.rtoshiro.view.video;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size bounded, least recently used disk cache of byte ranges, keyed by URL.
+ * Used by {@link HttpCacheProxy}. Entries in use are not evicted; they are once closed.
+ * While the entries in use alone fill maxBytes, downloaded bytes are streamed without being
+ * cached (see {@link #getBytesNotCached()}), so the cache never grows past maxBytes by more
+ * than one buffer per connection.
+ */
+public class VideoCache {
+
+    private final File directory;
+    private long maxBytes;
+    // Sum of the cached bytes of the entries
+    private long size;
+
+    // Access ordered: the first entry is the least recently used
+    private final LinkedHashMap<String, VideoCacheEntry> entries = new LinkedHashMap<String, VideoCacheEntry>(16, 0.75f, true);
+
+    private final AtomicLong bytesFromCache = new AtomicLong();
+    private final AtomicLong bytesFromOrigin = new AtomicLong();
+    private final AtomicLong bytesNotCached = new AtomicLong();
+
+    /**
+     * @param directory where cached data is stored. Entries found there are reused.
+     * @param maxBytes  maximum size of cached data
+     */
+    public VideoCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+
+        //noinspection ResultOfMethodCallIgnored
+        directory.mkdirs();
+        loadEntries();
+    }
+
+    private synchronized void loadEntries() {
+        File[] files = directory.listFiles();
+        if (files == null)
+            return;
+
+        for (File f : files) {
+            String name = f.getName();
+            if (!name.endsWith(".idx"))
+                continue;
+
+            String key = name.substring(0, name.length() - 4);
+            VideoCacheEntry entry = new VideoCacheEntry(directory, key);
+            if (entry.loadIndex()) {
+                entries.put(key, entry);
+                size += entry.cachedBytes();
+            } else
+                entry.delete();
+        }
+        trim();
+    }
+
+    /**
+     * Opens (creating if needed) the entry of this url. Must be balanced with {@link #close(VideoCacheEntry)}.
+     */
+    synchronized VideoCacheEntry open(String url) throws IOException {
+        String key = keyFor(url);
+        VideoCacheEntry entry = entries.get(key);
+        if (entry == null) {
+            entry = new VideoCacheEntry(directory, key);
+            entries.put(key, entry);
+        }
+        entry.open();
+        entry.openCount++;
+        return entry;
+    }
+
+    synchronized void close(VideoCacheEntry entry) {
+        entry.openCount--;
+        try {
+            entry.saveIndex();
+        } catch (IOException e) {
+            size -= entry.cachedBytes();
+            entry.clearRanges();
+        }
+        if (entry.openCount == 0)
+            entry.closeFile();
+        trim();
+    }
+
+    /**
+     * Caches downloaded bytes of an open entry, first evicting idle entries to make room
+     *
+     * @return false if the entries in use fill maxBytes: the bytes were not cached
+     */
+    boolean write(VideoCacheEntry entry, long pos, ByteBuffer buffer) throws IOException {
+        int n = buffer.remaining();
+        synchronized (this) {
+            if (!trim(maxBytes - n)) {
+                bytesNotCached.addAndGet(n);
+                return false;
+            }
+        }
+        long added = entry.write(pos, buffer);
+        synchronized (this) {
+            size += added;
+        }
+        return true;
+    }
+
+    /**
+     * @return the entry of this url without opening it, or null
+     */
+    synchronized VideoCacheEntry peek(String url) {
+        return entries.get(keyFor(url));
+    }
+
+    /**
+     * @return number of cached bytes at the beginning of this url
+     */
+    public synchronized long getCachedPrefix(String url) {
+        VideoCacheEntry entry = entries.get(keyFor(url));
+        return entry != null ? entry.cachedLengthAt(0) : 0;
+    }
+
+    /**
+     * Evicts least recently used entries until the cache fits in maxBytes
+     */
+    synchronized void trim() {
+        trim(maxBytes);
+    }
+
+    /**
+     * Evicts least recently used entries not in use until the cache fits in limit
+     *
+     * @return false if the entries in use alone do not fit
+     */
+    private boolean trim(long limit) {
+        Iterator<VideoCacheEntry> it = entries.values().iterator();
+        while (size > limit && it.hasNext()) {
+            VideoCacheEntry entry = it.next();
+            if (entry.openCount > 0)
+                continue;
+            size -= entry.cachedBytes();
+            it.remove();
+            entry.delete();
+        }
+        return size <= limit;
+    }
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        trim();
+    }
+
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return number of cached bytes
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Deletes every entry not in use
+     */
+    public synchronized void clear() {
+        ArrayList<String> removed = new ArrayList<String>();
+        for (VideoCacheEntry entry : entries.values()) {
+            if (entry.openCount == 0) {
+                size -= entry.cachedBytes();
+                entry.delete();
+                removed.add(entry.key);
+            }
+        }
+        for (String key : removed)
+            entries.remove(key);
+    }
+
+    void addBytesFromCache(long n) {
+        bytesFromCache.addAndGet(n);
+    }
+
+    void addBytesFromOrigin(long n) {
+        bytesFromOrigin.addAndGet(n);
+    }
+
+    /**
+     * @return bytes served from disk, that did not have to be downloaded again
+     */
+    public long getBytesSaved() {
+        return bytesFromCache.get();
+    }
+
+    /**
+     * @return bytes downloaded from the origin servers
+     */
+    public long getBytesDownloaded() {
+        return bytesFromOrigin.get();
+    }
+
+    /**
+     * @return bytes downloaded but not cached, as the entries in use filled the cache
+     */
+    public long getBytesNotCached() {
+        return bytesNotCached.get();
+    }
+
+    /**
+     * @return ratio of served bytes that came from the cache, between 0 and 1
+     */
+    public float getHitRatio() {
+        long hit = bytesFromCache.get();
+        long total = hit + bytesFromOrigin.get();
+        return total > 0 ? (float) hit / total : 0;
+    }
+
+    static String keyFor(String url) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(url.getBytes("UTF-8"));
+            StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+                sb.append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.github.rtoshiro.view.video;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+
+/**
+ * One cached resource of a {@link VideoCache}: a sparse data file plus the list
+ * of byte ranges already downloaded, saved in a small index file.
+ * Reads and writes use positional {@link FileChannel} I/O, so several
+ * connections can use the same entry at the same time.
+ */
+class VideoCacheEntry {
+
+    private final static int INDEX_VERSION = 1;
+
+    final String key;
+    final File dataFile;
+    final File indexFile;
+
+    private long contentLength = -1;
+    private String contentType;
+
+    // Sorted, non overlapping and non adjacent [start, end) ranges
+    private final ArrayList<long[]> ranges = new ArrayList<long[]>();
+
+    private RandomAccessFile file;
+    private FileChannel channel;
+    int openCount;
+
+    VideoCacheEntry(File directory, String key) {
+        this.key = key;
+        this.dataFile = new File(directory, key + ".data");
+        this.indexFile = new File(directory, key + ".idx");
+    }
+
+    synchronized void open() throws IOException {
+        if (channel == null) {
+            file = new RandomAccessFile(dataFile, "rw");
+            channel = file.getChannel();
+        }
+    }
+
+    synchronized void closeFile() {
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException ignored) {
+            }
+            file = null;
+            channel = null;
+        }
+    }
+
+    synchronized long getContentLength() {
+        return contentLength;
+    }
+
+    synchronized void setContentLength(long contentLength) {
+        this.contentLength = contentLength;
+    }
+
+    synchronized String getContentType() {
+        return contentType;
+    }
+
+    synchronized void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    /**
+     * @return number of cached bytes starting exactly at pos, 0 if pos is not cached
+     */
+    synchronized long cachedLengthAt(long pos) {
+        for (int i = 0; i < ranges.size(); i++) {
+            long[] r = ranges.get(i);
+            if (pos < r[0])
+                return 0;
+            if (pos < r[1])
+                return r[1] - pos;
+        }
+        return 0;
+    }
+
+    /**
+     * @return start of the first cached range after pos, or Long.MAX_VALUE
+     */
+    synchronized long nextCachedStart(long pos) {
+        for (int i = 0; i < ranges.size(); i++) {
+            long[] r = ranges.get(i);
+            if (r[0] > pos)
+                return r[0];
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * @return total number of cached bytes
+     */
+    synchronized long cachedBytes() {
+        long total = 0;
+        for (int i = 0; i < ranges.size(); i++) {
+            long[] r = ranges.get(i);
+            total += r[1] - r[0];
+        }
+        return total;
+    }
+
+    /**
+     * @return true if every byte of the resource is cached
+     */
+    synchronized boolean isComplete() {
+        return contentLength > 0 && ranges.size() == 1 &&
+                ranges.get(0)[0] == 0 && ranges.get(0)[1] >= contentLength;
+    }
+
+    /**
+     * Writes downloaded bytes at the given position and marks them as cached
+     *
+     * @return number of bytes that were not cached before
+     */
+    long write(long pos, ByteBuffer buffer) throws IOException {
+        FileChannel ch;
+        synchronized (this) {
+            ch = channel;
+        }
+        if (ch == null)
+            throw new IOException("Cache entry is closed");
+
+        long start = pos;
+        while (buffer.hasRemaining())
+            pos += ch.write(buffer, pos);
+        return addRange(start, pos);
+    }
+
+    /**
+     * Copies cached bytes to target without going through the Java heap
+     *
+     * @return number of bytes transferred
+     */
+    long transferTo(long pos, long count, WritableByteChannel target) throws IOException {
+        FileChannel ch;
+        synchronized (this) {
+            ch = channel;
+        }
+        if (ch == null)
+            throw new IOException("Cache entry is closed");
+
+        long transferred = 0;
+        while (transferred < count) {
+            long n = ch.transferTo(pos + transferred, count - transferred, target);
+            if (n <= 0)
+                break;
+            transferred += n;
+        }
+        return transferred;
+    }
+
+    /**
+     * @return number of bytes of [start, end) that were not cached before
+     */
+    synchronized long addRange(long start, long end) {
+        if (end <= start)
+            return 0;
+
+        long added = end - start;
+        int i = 0;
+        while (i < ranges.size() && ranges.get(i)[1] < start)
+            i++;
+
+        // Merges every range touching [start, end)
+        while (i < ranges.size() && ranges.get(i)[0] <= end) {
+            long[] r = ranges.remove(i);
+            added -= Math.max(0, Math.min(end, r[1]) - Math.max(start, r[0]));
+            start = Math.min(start, r[0]);
+            end = Math.max(end, r[1]);
+        }
+        ranges.add(i, new long[]{start, end});
+        return added;
+    }
+
+    synchronized void clearRanges() {
+        ranges.clear();
+        contentLength = -1;
+    }
+
+    synchronized void saveIndex() throws IOException {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(indexFile));
+        try {
+            out.writeInt(INDEX_VERSION);
+            out.writeLong(contentLength);
+            out.writeUTF(contentType != null ? contentType : "");
+            out.writeInt(ranges.size());
+            for (int i = 0; i < ranges.size(); i++) {
+                long[] r = ranges.get(i);
+                out.writeLong(r[0]);
+                out.writeLong(r[1]);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    synchronized boolean loadIndex() {
+        if (!indexFile.exists() || !dataFile.exists())
+            return false;
+
+        try {
+            DataInputStream in = new DataInputStream(new FileInputStream(indexFile));
+            try {
+                if (in.readInt() != INDEX_VERSION)
+                    return false;
+                contentLength = in.readLong();
+                String type = in.readUTF();
+                contentType = type.length() > 0 ? type : null;
+                int count = in.readInt();
+                long dataLength = dataFile.length();
+                ranges.clear();
+                for (int i = 0; i < count; i++) {
+                    long start = in.readLong();
+                    long end = Math.min(in.readLong(), dataLength);
+                    addRange(start, end);
+                }
+                return true;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            ranges.clear();
+            contentLength = -1;
+            return false;
+        }
+    }
+
+    void delete() {
+        closeFile();
+        //noinspection ResultOfMethodCallIgnored
+        dataFile.delete();
+        //noinspection ResultOfMethodCallIgnored
+        indexFile.delete();
+    }
+}
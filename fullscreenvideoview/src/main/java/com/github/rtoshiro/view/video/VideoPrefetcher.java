@@ -0,0 +1,415 @@
+package com.github.rtoshiro.view.video;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Downloads the beginning of upcoming videos into the {@link VideoCache} of a
+ * {@link HttpCacheProxy}, so they start from disk when played through the proxy.
+ * Progressive videos get their first {@link #setPrefetchBytes(long) bytes}; HLS streams
+ * (VOD) get their first {@link #setPrefetchSeconds(int) seconds} of segments, of the variant
+ * the current bandwidth estimate would start with.
+ *
+ * Urls are downloaded by priority (lower first, e.g. the distance to the visible item),
+ * by at most maxConcurrent threads, and under a shared bytes per second budget.
+ * {@link FullscreenVideoView} reports played urls with {@link #onPlaybackRequested(String)},
+ * which cancels their prefetch and counts hits, misses and wasted bytes.
+ *
+ * Has no Android dependencies. Thread safe.
+ */
+public class VideoPrefetcher {
+
+    private final static int BUFFER_SIZE = 16 * 1024;
+    // Prefetched urls remembered for hit and waste accounting
+    private final static int MAX_TRACKED = 256;
+
+    /**
+     * A queued or running prefetch
+     */
+    protected static class Task implements Comparable<Task> {
+        protected final String url;
+        protected final int priority;
+        protected final long sequence;
+        protected volatile boolean running;
+        protected volatile boolean cancelled;
+        protected volatile boolean played;
+        protected volatile long downloaded;
+
+        protected Task(String url, int priority, long sequence) {
+            this.url = url;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (priority != other.priority)
+                return priority < other.priority ? -1 : 1;
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+
+    protected final HttpCacheProxy proxy;
+    protected final VideoCache cache;
+    protected final int maxConcurrent;
+    protected volatile long maxBytesPerSecond;
+    protected volatile long prefetchBytes = 1024 * 1024;
+    protected volatile int prefetchSeconds = 6;
+
+    private final PriorityBlockingQueue<Task> queue = new PriorityBlockingQueue<Task>();
+    // Guarded by this
+    private final HashMap<String, Task> tasks = new HashMap<String, Task>();
+    private final LinkedHashMap<String, Long> prefetched = new LinkedHashMap<String, Long>();
+    private Thread[] workers;
+    private long lastSequence;
+    private int hitCount, missCount;
+
+    private final Object paceLock = new Object();
+    private long nextFreeNanos;
+
+    private final AtomicLong prefetchedBytes = new AtomicLong();
+    private final AtomicLong wastedBytes = new AtomicLong();
+
+    /**
+     * Two downloads at a time, no bandwidth limit
+     */
+    public VideoPrefetcher(HttpCacheProxy proxy) {
+        this(proxy, 2, 0);
+    }
+
+    /**
+     * @param proxy             the proxy playback goes through; its cache receives the data
+     * @param maxConcurrent     number of downloads at a time
+     * @param maxBytesPerSecond total download rate of the prefetcher, 0 for no limit
+     */
+    public VideoPrefetcher(HttpCacheProxy proxy, int maxConcurrent, long maxBytesPerSecond) {
+        if (maxConcurrent < 1)
+            throw new IllegalArgumentException("maxConcurrent must be >= 1");
+        this.proxy = proxy;
+        this.cache = proxy.getCache();
+        this.maxConcurrent = maxConcurrent;
+        this.maxBytesPerSecond = maxBytesPerSecond;
+    }
+
+    /**
+     * @param maxBytesPerSecond total download rate of the prefetcher, 0 for no limit
+     */
+    public void setMaxBytesPerSecond(long maxBytesPerSecond) {
+        this.maxBytesPerSecond = maxBytesPerSecond;
+    }
+
+    /**
+     * @param bytes bytes downloaded from the start of progressive videos (default 1MB)
+     */
+    public void setPrefetchBytes(long bytes) {
+        this.prefetchBytes = bytes;
+    }
+
+    /**
+     * @param seconds duration of HLS segments downloaded from the start (default 6)
+     */
+    public void setPrefetchSeconds(int seconds) {
+        this.prefetchSeconds = seconds;
+    }
+
+    /**
+     * Queues the url, or changes its priority if it is still queued.
+     * Does nothing for urls already prefetched, or that the proxy can not serve.
+     *
+     * @param priority lower is downloaded first
+     */
+    public synchronized void prefetch(String url, int priority) {
+        if (!HttpCacheProxy.isHttp(url) || prefetched.containsKey(url))
+            return;
+
+        Task task = tasks.get(url);
+        if (task != null) {
+            if (task.running || task.priority == priority || !queue.remove(task))
+                return;
+        }
+
+        task = new Task(url, priority, ++lastSequence);
+        tasks.put(url, task);
+        queue.add(task);
+        startWorkers();
+    }
+
+    /**
+     * Removes the url from the queue, or stops its download. Bytes already downloaded stay in the cache.
+     */
+    public synchronized void cancel(String url) {
+        Task task = tasks.remove(url);
+        if (task != null) {
+            task.cancelled = true;
+            queue.remove(task);
+        }
+    }
+
+    public synchronized void cancelAll() {
+        for (Task task : tasks.values())
+            task.cancelled = true;
+        tasks.clear();
+        queue.clear();
+    }
+
+    /**
+     * Called when a url is opened for playback: stops its prefetch, which playback takes over,
+     * and counts a hit if some of it was prefetched, a miss otherwise.
+     */
+    public synchronized void onPlaybackRequested(String url) {
+        Long bytes = prefetched.remove(url);
+        if (bytes != null) {
+            // Evicted from the cache before being played (HLS segments are cached under their own urls)
+            if (!HlsSession.isHlsUrl(url) && cache.getCachedPrefix(url) == 0) {
+                wastedBytes.addAndGet(bytes);
+                missCount++;
+            } else
+                hitCount++;
+            return;
+        }
+
+        Task task = tasks.remove(url);
+        if (task != null) {
+            task.cancelled = true;
+            task.played = true;
+            queue.remove(task);
+            if (task.downloaded > 0) {
+                hitCount++;
+                return;
+            }
+        }
+        missCount++;
+    }
+
+    /**
+     * Stops the download threads and drops the queue. Prefetch can start again later.
+     */
+    public synchronized void shutdown() {
+        cancelAll();
+        if (workers != null) {
+            for (Thread worker : workers)
+                worker.interrupt();
+            workers = null;
+        }
+    }
+
+    /**
+     * @return number of urls queued or downloading
+     */
+    public synchronized int getPendingCount() {
+        return tasks.size();
+    }
+
+    /**
+     * @return played urls that had prefetched data
+     */
+    public synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return played urls that had no prefetched data
+     */
+    public synchronized int getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return hits over played urls, between 0 and 1
+     */
+    public synchronized float getHitRatio() {
+        int total = hitCount + missCount;
+        return total > 0 ? (float) hitCount / total : 0;
+    }
+
+    /**
+     * @return bytes downloaded by the prefetcher
+     */
+    public long getPrefetchedBytes() {
+        return prefetchedBytes.get();
+    }
+
+    /**
+     * @return prefetched bytes of urls forgotten without being played
+     */
+    public long getWastedBytes() {
+        return wastedBytes.get();
+    }
+
+    private void startWorkers() {
+        if (workers != null)
+            return;
+
+        final Thread[] threads = new Thread[maxConcurrent];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    workLoop(threads);
+                }
+            }, "VideoPrefetcher-" + i);
+            threads[i].setDaemon(true);
+            threads[i].setPriority(Thread.MIN_PRIORITY);
+        }
+        workers = threads;
+        for (Thread t : threads)
+            t.start();
+    }
+
+    private void workLoop(Thread[] generation) {
+        while (true) {
+            Task task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            synchronized (this) {
+                if (workers != generation)
+                    return;
+                if (task.cancelled)
+                    continue;
+                task.running = true;
+            }
+
+            try {
+                if (HlsSession.isHlsUrl(task.url))
+                    prefetchHls(task);
+                else
+                    download(task, task.url, prefetchBytes);
+            } catch (IOException ignored) {
+                // Origin failed: playback will try again
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                finish(task);
+            }
+        }
+    }
+
+    private synchronized void finish(Task task) {
+        if (tasks.get(task.url) == task)
+            tasks.remove(task.url);
+        // Played while downloading: already counted as a hit. Cancelled by cancel(): the bytes
+        // stay in the cache and may still be played.
+        if (task.downloaded == 0 || task.played)
+            return;
+
+        Long previous = prefetched.put(task.url, task.downloaded);
+        if (previous != null)
+            prefetched.put(task.url, previous + task.downloaded);
+        if (prefetched.size() > MAX_TRACKED) {
+            Iterator<Map.Entry<String, Long>> eldest = prefetched.entrySet().iterator();
+            wastedBytes.addAndGet(eldest.next().getValue());
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Downloads the first segments of the variant the proxy would start with
+     */
+    private void prefetchHls(Task task) throws IOException, InterruptedException {
+        String text = proxy.playlistLoader.load(task.url);
+        String mediaUrl = task.url;
+        if (HlsMasterPlaylist.isMaster(text)) {
+            HlsMasterPlaylist master = HlsMasterPlaylist.parse(text, task.url);
+            if (master.hasAlternateMedia())
+                return;
+            List<HlsMasterPlaylist.Variant> variants = master.getVariants();
+            int[] bandwidths = new int[variants.size()];
+            for (int i = 0; i < bandwidths.length; i++)
+                bandwidths[i] = variants.get(i).getBandwidth();
+            int index = new BitrateSelector().select(bandwidths, bandwidths.length, proxy.getBandwidthEstimator().getEstimate(), -1);
+            mediaUrl = variants.get(index).getUrl();
+            text = proxy.playlistLoader.load(mediaUrl);
+        }
+
+        HlsMediaPlaylist playlist = HlsMediaPlaylist.parse(text, mediaUrl);
+        // Live segments are gone before they are played
+        if (!playlist.isEnded() || !playlist.isSupported())
+            return;
+
+        double seconds = 0;
+        for (HlsMediaPlaylist.Segment segment : playlist.getSegments()) {
+            if (seconds >= prefetchSeconds || task.cancelled)
+                break;
+            download(task, segment.getUrl(), -1);
+            seconds += segment.getDuration();
+        }
+    }
+
+    /**
+     * Downloads the missing part of [0, limit) of the url into the cache
+     *
+     * @param limit bytes from the start, or -1 for the whole resource
+     */
+    private void download(Task task, String url, long limit) throws IOException, InterruptedException {
+        VideoCacheEntry entry = cache.open(url);
+        HttpURLConnection origin = null;
+        try {
+            long pos = entry.cachedLengthAt(0);
+            long length = entry.getContentLength();
+            if (length >= 0 && (limit < 0 || limit > length))
+                limit = length;
+            if (limit >= 0 && pos >= limit)
+                return;
+
+            origin = proxy.openOrigin(url, pos, limit >= 0 ? limit - 1 : -1);
+            if (origin == null)
+                return;
+
+            InputStream in = origin.getInputStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while ((limit < 0 || pos < limit) && !task.cancelled) {
+                int max = limit < 0 ? buffer.length : (int) Math.min(buffer.length, limit - pos);
+                int n = in.read(buffer, 0, max);
+                if (n < 0) {
+                    if (entry.getContentLength() < 0)
+                        entry.setContentLength(pos);
+                    break;
+                }
+                // The entries in use fill the cache: prefetching would keep nothing
+                if (!cache.write(entry, pos, ByteBuffer.wrap(buffer, 0, n)))
+                    break;
+                pos += n;
+                task.downloaded += n;
+                prefetchedBytes.addAndGet(n);
+                pace(n);
+            }
+        } finally {
+            if (origin != null)
+                origin.disconnect();
+            cache.close(entry);
+        }
+    }
+
+    /**
+     * Waits so the downloads of all threads stay under maxBytesPerSecond
+     */
+    private void pace(int bytes) throws InterruptedException {
+        long rate = maxBytesPerSecond;
+        if (rate <= 0)
+            return;
+
+        long wait;
+        synchronized (paceLock) {
+            long now = System.nanoTime();
+            if (nextFreeNanos < now)
+                nextFreeNanos = now;
+            wait = nextFreeNanos - now;
+            nextFreeNanos += bytes * 1000000000L / rate;
+        }
+        if (wait > 0)
+            Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+    }
+}
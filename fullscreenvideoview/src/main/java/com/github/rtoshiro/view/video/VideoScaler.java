@@ -0,0 +1,104 @@
+package com.github.rtoshiro.view.video;
+
+/**
+ * Computes the size of the rendered video inside a container, for each {@link ScaleMode}.
+ * Pure sizing math, without Android dependencies.
+ */
+public final class VideoScaler {
+
+    /**
+     * How the video fills the container
+     */
+    public enum ScaleMode {
+        /**
+         * Whole video visible, keeping its proportion (letterbox)
+         */
+        FIT,
+        /**
+         * Container filled, keeping the video proportion. Exceeding parts are cropped (center crop).
+         */
+        FILL,
+        /**
+         * Video stretched to the container size
+         */
+        STRETCH,
+        /**
+         * Like FIT, but using a fixed aspect ratio instead of the video proportion
+         */
+        FIXED_RATIO
+    }
+
+    private VideoScaler() {
+    }
+
+    /**
+     * Computes the rendered video size.
+     *
+     * @param mode            the scale mode
+     * @param fixedRatio      width / height, only used by FIXED_RATIO
+     * @param videoWidth      video width, > 0
+     * @param videoHeight     video height, > 0
+     * @param containerWidth  container width
+     * @param containerHeight container height
+     * @param out             receives the width at out[0] and the height at out[1]
+     * @return false (out untouched) if the sizes are not valid
+     */
+    public static boolean compute(ScaleMode mode, float fixedRatio,
+                                  int videoWidth, int videoHeight,
+                                  int containerWidth, int containerHeight,
+                                  int[] out) {
+        if (videoWidth <= 0 || videoHeight <= 0 || containerWidth <= 0 || containerHeight <= 0)
+            return false;
+
+        if (mode == ScaleMode.STRETCH) {
+            out[0] = containerWidth;
+            out[1] = containerHeight;
+            return true;
+        }
+
+        if (mode == ScaleMode.FIXED_RATIO && fixedRatio > 0) {
+            float containerProportion = (float) containerWidth / (float) containerHeight;
+            if (fixedRatio > containerProportion) {
+                out[0] = containerWidth;
+                out[1] = (int) ((float) containerWidth / fixedRatio);
+            } else {
+                out[0] = (int) (fixedRatio * (float) containerHeight);
+                out[1] = containerHeight;
+            }
+            return true;
+        }
+
+        // FIT matches the dimension where the video is proportionally bigger, FILL the other one.
+        // Integer math, so a video of the container proportion gets exactly its size.
+        boolean matchWidth = (long) videoWidth * containerHeight > (long) containerWidth * videoHeight;
+        if (mode == ScaleMode.FILL)
+            matchWidth = !matchWidth;
+
+        if (matchWidth) {
+            out[0] = containerWidth;
+            out[1] = (int) ((long) containerWidth * videoHeight / videoWidth);
+        } else {
+            out[0] = (int) ((long) containerHeight * videoWidth / videoHeight);
+            out[1] = containerHeight;
+        }
+        return true;
+    }
+
+    /**
+     * Scale factors that show content of the computed size in a view of another size, for
+     * renderers that transform a full view instead of resizing it (TextureView). Above 1 on
+     * an axis, FILL crops the content there.
+     *
+     * @param out receives the horizontal scale at out[0] and the vertical one at out[1]
+     * @return false (out untouched) if the sizes are not valid
+     */
+    public static boolean computeTransformScale(int contentWidth, int contentHeight,
+                                                int viewWidth, int viewHeight, float[] out) {
+        if (contentWidth <= 0 || contentHeight <= 0 || viewWidth <= 0 || viewHeight <= 0)
+            return false;
+
+        out[0] = (float) contentWidth / viewWidth;
+        out[1] = (float) contentHeight / viewHeight;
+        return true;
+    }
+}
@@ -0,0 +1,84 @@
+package com.github.rtoshiro.view.video;
+
+/**
+ * Chooses which videos of a list should play, from the visible fraction of each one.
+ * The most visible ones win, up to maxActive, ignoring those below minFraction.
+ * Videos already playing get a bonus of switchMargin, so two videos about as visible
+ * do not take turns on every scroll frame.
+ *
+ * Has no Android dependencies. Used by {@link ListPlaybackCoordinator}.
+ */
+public class VisibilitySelector {
+
+    private final int maxActive;
+    private final float minFraction;
+    private final float switchMargin;
+
+    /**
+     * @param maxActive    maximum number of videos playing at once
+     * @param minFraction  minimum visible fraction (0 to 1) to play
+     * @param switchMargin bonus of a playing video over the others (0 to 1)
+     */
+    public VisibilitySelector(int maxActive, float minFraction, float switchMargin) {
+        if (maxActive < 1)
+            throw new IllegalArgumentException("maxActive must be >= 1");
+        this.maxActive = maxActive;
+        this.minFraction = minFraction;
+        this.switchMargin = switchMargin;
+    }
+
+    public int getMaxActive() {
+        return maxActive;
+    }
+
+    public float getMinFraction() {
+        return minFraction;
+    }
+
+    public float getSwitchMargin() {
+        return switchMargin;
+    }
+
+    /**
+     * @param fractions visible fraction of each video, from 0 to 1
+     * @param active    true for the videos playing now. Replaced by the new selection.
+     * @param count     number of videos, from the start of both arrays
+     * @return number of selected videos
+     */
+    public int select(float[] fractions, boolean[] active, int count) {
+        // Selected videos are kept in a bit mask, so nothing is allocated while scrolling
+        // (an array is used past 64 videos). Ties go to the first video.
+        int selected = 0;
+        long chosen = 0;
+        boolean small = count <= 64;
+        boolean[] taken = small ? null : new boolean[count];
+
+        while (selected < maxActive) {
+            int best = -1;
+            float bestScore = 0;
+            for (int i = 0; i < count; i++) {
+                if (small ? (chosen & (1L << i)) != 0 : taken[i])
+                    continue;
+                float f = fractions[i];
+                if (f < minFraction || f <= 0)
+                    continue;
+                float score = active[i] ? f + switchMargin : f;
+                if (best < 0 || score > bestScore) {
+                    best = i;
+                    bestScore = score;
+                }
+            }
+            if (best < 0)
+                break;
+            if (small)
+                chosen |= 1L << best;
+            else
+                taken[best] = true;
+            selected++;
+        }
+
+        for (int i = 0; i < count; i++)
+            active[i] = small ? (chosen & (1L << i)) != 0 : taken[i];
+        return selected;
+    }
+}
@@ -0,0 +1,44 @@
+package com.github.rtoshiro.view.video;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class BandwidthEstimatorTest {
+
+    private static final long SECOND = 1000000000L;
+
+    @Test
+    public void weighsSamplesByTransferTime() {
+        BandwidthEstimator estimator = new BandwidthEstimator(8, 1000);
+        assertEquals(-1, estimator.getEstimate());
+
+        // 1MB in 1s and 1MB in 3s: 2MB in 4s, not the average of both rates
+        estimator.addSample(1000000, SECOND);
+        estimator.addSample(1000000, 3 * SECOND);
+        assertEquals(4000000, estimator.getEstimate());
+        assertEquals(2, estimator.getSampleCount());
+    }
+
+    @Test
+    public void ignoresSmallAndInstantTransfers() {
+        BandwidthEstimator estimator = new BandwidthEstimator(8, 1000);
+        estimator.addSample(999, 1);
+        estimator.addSample(100000, 0);
+        assertEquals(0, estimator.getSampleCount());
+        assertEquals(-1, estimator.getEstimate());
+    }
+
+    @Test
+    public void keepsOnlyTheLastSamples() {
+        BandwidthEstimator estimator = new BandwidthEstimator(2, 1);
+        estimator.addSample(1000000, SECOND);
+        estimator.addSample(2000000, SECOND);
+        estimator.addSample(2000000, SECOND);
+        assertEquals(2, estimator.getSampleCount());
+        assertEquals(16000000, estimator.getEstimate());
+
+        estimator.clear();
+        assertEquals(-1, estimator.getEstimate());
+    }
+}
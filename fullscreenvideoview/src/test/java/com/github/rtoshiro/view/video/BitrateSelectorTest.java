@@ -0,0 +1,60 @@
+package com.github.rtoshiro.view.video;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class BitrateSelectorTest {
+
+    private static final int[] BANDWIDTHS = {400000, 800000, 1600000, 3200000};
+
+    private final BitrateSelector selector = new BitrateSelector(0.75f, 0.9f);
+
+    @Test
+    public void startsWithTheHighestVariantThatFits() {
+        assertEquals(0, selector.select(BANDWIDTHS, 4, 500000, -1));
+        assertEquals(1, selector.select(BANDWIDTHS, 4, 1100000, -1));
+        assertEquals(2, selector.select(BANDWIDTHS, 4, 2200000, -1));
+        assertEquals(3, selector.select(BANDWIDTHS, 4, 100000000, -1));
+    }
+
+    @Test
+    public void unknownBandwidthKeepsTheCurrentVariant() {
+        assertEquals(0, selector.select(BANDWIDTHS, 4, -1, -1));
+        assertEquals(2, selector.select(BANDWIDTHS, 4, -1, 2));
+    }
+
+    @Test
+    public void switchesUpAsSoonAsAHigherVariantFits() {
+        // 1600000 <= 0.75 * 2200000
+        assertEquals(2, selector.select(BANDWIDTHS, 4, 2200000, 1));
+        assertEquals(3, selector.select(BANDWIDTHS, 4, 5000000, 0));
+    }
+
+    @Test
+    public void keepsTheCurrentVariantBetweenTheThresholds() {
+        // 1600000 does not fit in 75% of 2000000, but uses less than 90% of it
+        assertEquals(2, selector.select(BANDWIDTHS, 4, 2000000, 2));
+        assertEquals(2, selector.select(BANDWIDTHS, 4, 1800000, 2));
+    }
+
+    @Test
+    public void switchesDownWhenTheCurrentVariantNeedsTooMuch() {
+        // 1600000 > 0.9 * 1700000
+        assertEquals(1, selector.select(BANDWIDTHS, 4, 1700000, 2));
+        assertEquals(0, selector.select(BANDWIDTHS, 4, 300000, 3));
+    }
+
+    @Test
+    public void respectsTheVariantCap() {
+        assertEquals(1, selector.select(BANDWIDTHS, 2, 100000000, -1));
+        // The current variant is above the cap
+        assertEquals(1, selector.select(BANDWIDTHS, 2, 100000000, 3));
+        assertEquals(-1, selector.select(BANDWIDTHS, 0, 100000000, -1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsDownBelowUp() {
+        new BitrateSelector(0.9f, 0.75f);
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.rtoshiro.view.video;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BufferingPolicyTest {
+
+    // Starts after 1s, stalls under 100ms, resumes after 2s, reads up to 30s ahead
+    private final BufferingPolicy policy = BufferingPolicy.DEFAULT;
+
+    @Test
+    public void startsOnceTheStartBufferIsReached() {
+        assertFalse(policy.canStart(0, false));
+        assertFalse(policy.canStart(999, false));
+        assertTrue(policy.canStart(1000, false));
+    }
+
+    @Test
+    public void startsWhenTheBufferIsUnknownOrComplete() {
+        // Local files
+        assertTrue(policy.canStart(-1, false));
+        // Shorter than the start buffer
+        assertTrue(policy.canStart(200, true));
+    }
+
+    @Test
+    public void stallsUnderTheThreshold() {
+        assertTrue(policy.shouldStall(0, false));
+        assertTrue(policy.shouldStall(99, false));
+        assertFalse(policy.shouldStall(100, false));
+    }
+
+    @Test
+    public void neverStallsWhenTheBufferIsUnknownOrComplete() {
+        assertFalse(policy.shouldStall(-1, false));
+        assertFalse(policy.shouldStall(0, true));
+    }
+
+    @Test
+    public void resumesOnceTheRebufferIsReached() {
+        // Above the stall threshold is not enough
+        assertFalse(policy.canResume(1000, false));
+        assertFalse(policy.canResume(1999, false));
+        assertTrue(policy.canResume(2000, false));
+        assertTrue(policy.canResume(-1, false));
+        assertTrue(policy.canResume(0, true));
+    }
+
+    @Test
+    public void readsUpToTheMaxBuffer() {
+        assertTrue(policy.shouldRead(0));
+        assertTrue(policy.shouldRead(29999));
+        assertFalse(policy.shouldRead(30000));
+    }
+
+    @Test
+    public void lowLatencyStartsSooner() {
+        assertFalse(policy.canStart(250, false));
+        assertTrue(BufferingPolicy.LOW_LATENCY.canStart(250, false));
+        assertTrue(BufferingPolicy.LOW_LATENCY.canResume(1000, false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rebufferUnderTheStallThresholdIsRejected() {
+        new BufferingPolicy(1000, 500, 400, 30000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxBufferUnderTheStartBufferIsRejected() {
+        new BufferingPolicy(5000, 100, 2000, 4000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeThresholdsAreRejected() {
+        new BufferingPolicy(-1, 100, 2000, 30000);
+    }
+}
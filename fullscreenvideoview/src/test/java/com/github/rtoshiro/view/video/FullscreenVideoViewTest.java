@@ -0,0 +1,195 @@
+package com.github.rtoshiro.view.video;
+
+import android.content.Context;
+import android.media.MediaPlayer;
+import android.view.Surface;
+import android.view.View;
+
+import com.github.rtoshiro.view.video.FullscreenVideoView.State;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives the view through {@link RecordingPlayerEngine}s returned by
+ * {@link FullscreenVideoView#createPlayerEngine()}: every player call goes through the engine.
+ */
+public class FullscreenVideoViewTest {
+
+    static class StubTarget extends RenderTarget {
+        final View view = new View(null);
+
+        @Override
+        public View getView() {
+            return view;
+        }
+
+        @Override
+        public boolean isSurfaceAvailable() {
+            return true;
+        }
+
+        @Override
+        public void attachPlayer(MediaPlayer mp) {
+        }
+
+        @Override
+        public void detachPlayer(MediaPlayer mp) {
+        }
+
+        @Override
+        public Surface getSurface() {
+            return null;
+        }
+    }
+
+    static class TestView extends FullscreenVideoView {
+        // Assigned while the super constructor runs: no initializers
+        List<RecordingPlayerEngine> engines;
+        StubTarget target;
+
+        TestView(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected RenderTarget createRenderTarget() {
+            target = new StubTarget();
+            return target;
+        }
+
+        @Override
+        protected PlayerEngine createPlayerEngine() {
+            if (engines == null)
+                engines = new ArrayList<RecordingPlayerEngine>();
+            RecordingPlayerEngine engine = new RecordingPlayerEngine();
+            engine.videoWidth = 1280;
+            engine.videoHeight = 720;
+            engines.add(engine);
+            return engine;
+        }
+
+        RecordingPlayerEngine engine() {
+            return engines.get(engines.size() - 1);
+        }
+    }
+
+    private TestView view;
+    private RecordingPlayerEngine engine;
+
+    @Before
+    public void setUp() {
+        view = new TestView(null);
+        engine = view.engine();
+    }
+
+    private void prepare() throws IOException {
+        view.setVideoPath("/sdcard/a.mp4");
+        engine.listener.onPrepared(engine);
+        view.onRenderSurfaceAvailable(view.target);
+    }
+
+    @Test
+    public void engineIsSetUpWithTheViewSettings() {
+        view.setLooping(true);
+        view.setVolume(0.5f, 0.5f);
+        assertTrue(engine.looping);
+        assertTrue(engine.listener == view);
+        assertEquals(1, view.engines.size());
+    }
+
+    @Test
+    public void sourceIsOpenedAndPreparedThroughTheEngine() throws IOException {
+        view.setVideoPath("/sdcard/a.mp4");
+        assertEquals(Arrays.asList("setDataSource /sdcard/a.mp4", "prepareAsync"), engine.commands);
+        assertEquals(State.PREPARING, view.getCurrentState());
+
+        // Prepared, then the surface: attached to the engine, then PREPARED
+        engine.listener.onPrepared(engine);
+        assertEquals(State.PREPARING, view.getCurrentState());
+        view.onRenderSurfaceAvailable(view.target);
+        assertEquals("setDisplay", engine.commands.get(2));
+        assertEquals(State.PREPARED, view.getCurrentState());
+        assertEquals(1280, view.initialMovieWidth);
+        assertEquals(720, view.initialMovieHeight);
+    }
+
+    @Test
+    public void playbackCommandsAndEventsGoThroughTheEngine() throws IOException {
+        prepare();
+        engine.commands.clear();
+
+        view.start();
+        view.seekTo(1000);
+        assertEquals(1000, view.getCurrentPosition());
+        engine.listener.onSeekComplete(engine);
+        view.pause();
+        assertEquals(Arrays.asList("start", "pause", "seekTo 1000", "start", "pause"), engine.commands);
+        assertEquals(State.PAUSED, view.getCurrentState());
+        assertEquals(60000, view.getDuration());
+
+        engine.listener.onError(engine, PlayerEngine.ERROR_UNKNOWN, PlayerEngine.ERROR_IO);
+        assertEquals(State.ERROR, view.getCurrentState());
+    }
+
+    @Test
+    public void releasedEngineIsReplacedOnTheNextSource() throws IOException {
+        prepare();
+        view.releasePlayer();
+        assertEquals(State.IDLE, view.getCurrentState());
+        List<String> last = engine.commands.subList(engine.commands.size() - 2, engine.commands.size());
+        assertEquals(Arrays.asList("setDisplay null", "release"), last);
+        assertTrue(engine.listener == null);
+
+        view.setVideoPath("/sdcard/b.mp4");
+        RecordingPlayerEngine next = view.engine();
+        assertNotSame(engine, next);
+        assertEquals(Arrays.asList("setDisplay", "setDataSource /sdcard/b.mp4", "prepareAsync"), next.commands);
+    }
+
+    @Test
+    public void mediaPlayerListenersAreSkippedWithoutAMediaPlayer() throws IOException {
+        final List<MediaPlayer> prepared = new ArrayList<MediaPlayer>();
+        view.addOnPreparedListener(new MediaPlayer.OnPreparedListener() {
+            @Override
+            public void onPrepared(MediaPlayer mp) {
+                prepared.add(mp);
+            }
+        });
+        final List<State> states = new ArrayList<State>();
+        view.addOnStateChangedListener(new PlaybackStateMachine.Listener() {
+            @Override
+            public void onStateChanged(State from, State to) {
+                states.add(to);
+            }
+        });
+
+        // Not a MediaPlayerEngine: no MediaPlayer to pass
+        prepare();
+        assertTrue(prepared.isEmpty());
+        assertEquals(State.PREPARED, states.get(states.size() - 1));
+    }
+
+    @Test
+    public void resetKeepsTheEngine() throws IOException {
+        prepare();
+        view.setLooping(true);
+        view.reset();
+        assertEquals("reset", engine.commands.get(engine.commands.size() - 1));
+        assertEquals(State.IDLE, view.getCurrentState());
+        // Settings applied again after MediaPlayer.reset() cleared them
+        assertTrue(engine.looping);
+        assertEquals(1, view.engines.size());
+        assertFalse(view.isPlaying());
+    }
+}
@@ -0,0 +1,90 @@
+package com.github.rtoshiro.view.video;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HlsMasterPlaylistTest {
+
+    private static final String BASE = "http://cdn.example.com/show/master.m3u8";
+
+    @Test
+    public void parsesVariantsSortedByBandwidth() throws IOException {
+        HlsMasterPlaylist playlist = HlsMasterPlaylist.parse("#EXTM3U\n"
+                + "#EXT-X-STREAM-INF:BANDWIDTH=2500000,RESOLUTION=1280x720,CODECS=\"avc1.4d401f,mp4a.40.2\"\n"
+                + "720p/index.m3u8\n"
+                + "\n"
+                + "#EXT-X-STREAM-INF:BANDWIDTH=800000,RESOLUTION=640x360\r\n"
+                + "/360p/index.m3u8\r\n"
+                + "#EXT-X-STREAM-INF:BANDWIDTH=5000000\n"
+                + "https://other.example.com/1080p.m3u8\n", BASE);
+
+        List<HlsMasterPlaylist.Variant> variants = playlist.getVariants();
+        assertEquals(3, variants.size());
+
+        assertEquals(800000, variants.get(0).getBandwidth());
+        assertEquals("http://cdn.example.com/360p/index.m3u8", variants.get(0).getUrl());
+        assertEquals(640, variants.get(0).getWidth());
+        assertEquals(360, variants.get(0).getHeight());
+
+        assertEquals(2500000, variants.get(1).getBandwidth());
+        assertEquals("http://cdn.example.com/show/720p/index.m3u8", variants.get(1).getUrl());
+        assertEquals("avc1.4d401f,mp4a.40.2", variants.get(1).getCodecs());
+
+        assertEquals("https://other.example.com/1080p.m3u8", variants.get(2).getUrl());
+        assertEquals(0, variants.get(2).getWidth());
+        assertNull(variants.get(2).getCodecs());
+        assertFalse(playlist.hasAlternateMedia());
+    }
+
+    @Test
+    public void detectsAlternateMediaWithUri() throws IOException {
+        String variant = "#EXT-X-STREAM-INF:BANDWIDTH=800000\nlow.m3u8\n";
+        assertTrue(HlsMasterPlaylist.parse("#EXTM3U\n"
+                + "#EXT-X-MEDIA:TYPE=AUDIO,GROUP-ID=\"aac\",NAME=\"en\",URI=\"audio/en.m3u8\"\n" + variant, BASE)
+                .hasAlternateMedia());
+        // Muxed audio: the rendition has no playlist of its own
+        assertFalse(HlsMasterPlaylist.parse("#EXTM3U\n"
+                + "#EXT-X-MEDIA:TYPE=AUDIO,GROUP-ID=\"aac\",NAME=\"en\"\n" + variant, BASE)
+                .hasAlternateMedia());
+    }
+
+    @Test
+    public void tellsMasterFromMediaPlaylists() {
+        assertTrue(HlsMasterPlaylist.isMaster("#EXTM3U\n#EXT-X-STREAM-INF:BANDWIDTH=1\na.m3u8\n"));
+        assertFalse(HlsMasterPlaylist.isMaster("#EXTM3U\n#EXT-X-TARGETDURATION:10\n#EXTINF:10,\na.ts\n"));
+    }
+
+    @Test
+    public void parsesQuotedAttributes() {
+        Map<String, String> attributes = HlsMasterPlaylist.parseAttributes(
+                "BANDWIDTH=1000, CODECS=\"avc1,mp4a\",NAME=\"a=b\",LAST=x");
+        assertEquals("1000", attributes.get("BANDWIDTH"));
+        assertEquals("avc1,mp4a", attributes.get("CODECS"));
+        assertEquals("a=b", attributes.get("NAME"));
+        assertEquals("x", attributes.get("LAST"));
+        assertEquals(4, attributes.size());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTextWithoutHeader() throws IOException {
+        HlsMasterPlaylist.parse("#EXT-X-STREAM-INF:BANDWIDTH=1\na.m3u8\n", BASE);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsVariantsWithoutBandwidth() throws IOException {
+        HlsMasterPlaylist.parse("#EXTM3U\n#EXT-X-STREAM-INF:RESOLUTION=640x360\na.m3u8\n", BASE);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsPlaylistsWithoutVariants() throws IOException {
+        HlsMasterPlaylist.parse("#EXTM3U\n#EXT-X-STREAM-INF:BANDWIDTH=1000\n", BASE);
+    }
+}
@@ -0,0 +1,85 @@
+package com.github.rtoshiro.view.video;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HlsMediaPlaylistTest {
+
+    private static final String BASE = "http://cdn.example.com/show/720p/index.m3u8";
+
+    @Test
+    public void parsesSegmentsNumberedByMediaSequence() throws IOException {
+        HlsMediaPlaylist playlist = HlsMediaPlaylist.parse("#EXTM3U\n"
+                + "#EXT-X-VERSION:3\n"
+                + "#EXT-X-TARGETDURATION:6\n"
+                + "#EXT-X-MEDIA-SEQUENCE:120\n"
+                + "#EXTINF:6.006,\n"
+                + "seg120.ts\n"
+                + "#EXTINF:5.5,title\n"
+                + "/abs/seg121.ts\n"
+                + "#EXT-X-DISCONTINUITY\n"
+                + "#EXTINF:4,\n"
+                + "seg122.ts\n"
+                + "#EXT-X-ENDLIST\n", BASE);
+
+        assertEquals(6, playlist.getTargetDuration());
+        assertEquals(120, playlist.getMediaSequence());
+        assertEquals(123, playlist.getEndSequence());
+        assertTrue(playlist.isEnded());
+        assertTrue(playlist.isSupported());
+        assertEquals(3, playlist.getSegments().size());
+
+        HlsMediaPlaylist.Segment first = playlist.getSegment(120);
+        assertEquals(6.006, first.getDuration(), 1e-9);
+        assertEquals("http://cdn.example.com/show/720p/seg120.ts", first.getUrl());
+        assertFalse(first.isDiscontinuity());
+        assertEquals("http://cdn.example.com/abs/seg121.ts", playlist.getSegment(121).getUrl());
+        assertTrue(playlist.getSegment(122).isDiscontinuity());
+        assertEquals(122, playlist.getSegment(122).getSequence());
+
+        assertNull(playlist.getSegment(119));
+        assertNull(playlist.getSegment(123));
+    }
+
+    @Test
+    public void liveStreamIsNotEnded() throws IOException {
+        HlsMediaPlaylist playlist = HlsMediaPlaylist.parse("#EXTM3U\n#EXT-X-TARGETDURATION:10\n"
+                + "#EXTINF:10,\na.ts\n", BASE);
+        assertFalse(playlist.isEnded());
+        assertEquals(0, playlist.getMediaSequence());
+    }
+
+    @Test
+    public void flagsWhatSegmentSwitchingDoesNotHandle() throws IOException {
+        String head = "#EXTM3U\n#EXT-X-TARGETDURATION:10\n";
+        String segment = "#EXTINF:10,\na.ts\n";
+        assertFalse(HlsMediaPlaylist.parse(head + "#EXT-X-KEY:METHOD=AES-128,URI=\"k\"\n" + segment, BASE).isSupported());
+        assertTrue(HlsMediaPlaylist.parse(head + "#EXT-X-KEY:METHOD=NONE\n" + segment, BASE).isSupported());
+        assertFalse(HlsMediaPlaylist.parse(head + "#EXTINF:10,\n#EXT-X-BYTERANGE:1000@0\na.ts\n", BASE).isSupported());
+        assertFalse(HlsMediaPlaylist.parse(head + "#EXT-X-MAP:URI=\"init.mp4\"\n" + segment, BASE).isSupported());
+        // Not a discontinuity
+        assertFalse(HlsMediaPlaylist.parse(head + "#EXT-X-DISCONTINUITY-SEQUENCE:3\n" + segment, BASE)
+                .getSegment(0).isDiscontinuity());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsSegmentsWithoutDuration() throws IOException {
+        HlsMediaPlaylist.parse("#EXTM3U\n#EXT-X-TARGETDURATION:10\na.ts\n", BASE);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsPlaylistsWithoutTargetDuration() throws IOException {
+        HlsMediaPlaylist.parse("#EXTM3U\n#EXTINF:10,\na.ts\n", BASE);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsInvalidNumbers() throws IOException {
+        HlsMediaPlaylist.parse("#EXTM3U\n#EXT-X-TARGETDURATION:ten\n", BASE);
+    }
+}
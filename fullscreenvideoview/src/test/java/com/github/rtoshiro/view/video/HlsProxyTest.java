@@ -0,0 +1,248 @@
+package com.github.rtoshiro.view.video;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Adaptive HLS through {@link HttpCacheProxy}, against a loopback origin serving a master
+ * playlist, media playlists and segments. The bandwidth estimate is set by the test: the
+ * segments are smaller than the minimum sample, so loopback transfers do not count.
+ */
+public class HlsProxyTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer origin;
+    private HttpCacheProxy proxy;
+    private final List<String> variantChanges = Collections.synchronizedList(new ArrayList<String>());
+    private final HlsSession.Listener listener = new HlsSession.Listener() {
+        @Override
+        public void onVariantChanged(HlsSession session, HlsMasterPlaylist.Variant variant) {
+            variantChanges.add(variant.getUrl().substring(variant.getUrl().lastIndexOf('/') + 1));
+        }
+    };
+    // First media sequence number of the live window
+    private volatile int liveStart;
+
+    @Before
+    public void setUp() throws IOException {
+        origin = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        origin.createContext("/master.m3u8", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange, "#EXTM3U\n" +
+                        "#EXT-X-STREAM-INF:BANDWIDTH=200000,RESOLUTION=640x360\n" +
+                        "low.m3u8\n" +
+                        "#EXT-X-STREAM-INF:BANDWIDTH=2000000,RESOLUTION=1280x720\n" +
+                        "high.m3u8\n");
+            }
+        });
+        origin.createContext("/low.m3u8", new MediaPlaylist("low", 0, 4, true));
+        origin.createContext("/high.m3u8", new MediaPlaylist("high", 0, 4, true));
+        origin.createContext("/live.m3u8", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                new MediaPlaylist("live", liveStart, 3, false).handle(exchange);
+            }
+        });
+        // Segments: their body names them
+        origin.createContext("/seg/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+                respond(exchange, path.substring("/seg/".length()));
+            }
+        });
+        origin.start();
+
+        proxy = new HttpCacheProxy(new VideoCache(folder.newFolder("cache"), 10 * 1024 * 1024));
+        proxy.start();
+    }
+
+    @After
+    public void tearDown() {
+        proxy.stop();
+        origin.stop(0);
+    }
+
+    private static class MediaPlaylist implements HttpHandler {
+        final String name;
+        final int first, count;
+        final boolean ended;
+
+        MediaPlaylist(String name, int first, int count, boolean ended) {
+            this.name = name;
+            this.first = first;
+            this.count = count;
+            this.ended = ended;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            StringBuilder sb = new StringBuilder("#EXTM3U\n#EXT-X-VERSION:3\n#EXT-X-TARGETDURATION:2\n");
+            sb.append("#EXT-X-MEDIA-SEQUENCE:").append(first).append('\n');
+            for (int i = first; i < first + count; i++)
+                sb.append("#EXTINF:2.0,\nseg/").append(name).append('-').append(i).append(".ts\n");
+            if (ended)
+                sb.append("#EXT-X-ENDLIST\n");
+            respond(exchange, sb.toString());
+        }
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    private String originUrl(String path) {
+        return "http://127.0.0.1:" + origin.getAddress().getPort() + path;
+    }
+
+    /**
+     * @return the body, or null if the status is not 200
+     */
+    private static String get(String url) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            if (conn.getResponseCode() != 200)
+                return null;
+            InputStream in = conn.getInputStream();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1)
+                out.write(buffer, 0, n);
+            in.close();
+            return out.toString("UTF-8");
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    private static String segment(HlsSession session, int sequence) throws IOException {
+        String playlist = session.getPlaylistUrl();
+        return get(playlist.substring(0, playlist.lastIndexOf('/') + 1) + sequence + ".ts");
+    }
+
+    private void setBandwidth(long bitsPerSecond) {
+        BandwidthEstimator estimator = proxy.getBandwidthEstimator();
+        estimator.clear();
+        estimator.addSample(bitsPerSecond / 8, 1000000000L);
+    }
+
+    @Test
+    public void switchesVariantBetweenSegments() throws IOException {
+        HlsSession session = proxy.openHlsSession(originUrl("/master.m3u8"));
+        assertNotNull(session);
+        session.setListener(listener);
+
+        String playlist = get(session.getPlaylistUrl());
+        assertNotNull(playlist);
+        assertTrue(playlist.contains("#EXT-X-MEDIA-SEQUENCE:0\n"));
+        assertTrue(playlist.contains("\n0.ts\n") && playlist.contains("\n3.ts\n"));
+        assertTrue(playlist.contains("#EXT-X-ENDLIST"));
+        assertFalse(session.isLive());
+
+        // No estimate yet: the lowest variant
+        assertEquals("low-0.ts", segment(session, 0));
+
+        setBandwidth(8000000);
+        assertEquals("high-1.ts", segment(session, 1));
+
+        // Between upFraction and downFraction of the bandwidth: stays up
+        setBandwidth(2400000);
+        assertEquals("high-2.ts", segment(session, 2));
+
+        setBandwidth(300000);
+        assertEquals("low-3.ts", segment(session, 3));
+
+        assertEquals(3, variantChanges.size());
+        assertEquals("low.m3u8", variantChanges.get(0));
+        assertEquals("high.m3u8", variantChanges.get(1));
+        assertEquals("low.m3u8", variantChanges.get(2));
+        assertEquals(200000, session.getCurrentVariant().getBandwidth());
+    }
+
+    @Test
+    public void fixedVariantAndBandwidthCapOverrideTheEstimate() throws IOException {
+        HlsSession session = proxy.openHlsSession(originUrl("/master.m3u8"));
+        get(session.getPlaylistUrl());
+        setBandwidth(8000000);
+
+        session.setMaxBandwidth(1000000);
+        assertEquals("low-0.ts", segment(session, 0));
+
+        session.setMaxBandwidth(Integer.MAX_VALUE);
+        session.setFixedVariant(0);
+        assertEquals("low-1.ts", segment(session, 1));
+
+        session.setFixedVariant(-1);
+        assertEquals("high-2.ts", segment(session, 2));
+    }
+
+    @Test
+    public void unknownSegmentIsNotFound() throws IOException {
+        HlsSession session = proxy.openHlsSession(originUrl("/master.m3u8"));
+        get(session.getPlaylistUrl());
+        assertEquals(null, segment(session, 4));
+    }
+
+    @Test
+    public void liveSegmentsFollowTheMovingWindow() throws IOException {
+        HlsSession session = proxy.openHlsSession(originUrl("/live.m3u8"));
+
+        String playlist = get(session.getPlaylistUrl());
+        assertNotNull(playlist);
+        assertFalse(playlist.contains("#EXT-X-ENDLIST"));
+        assertTrue(session.isLive());
+        assertEquals("live-2.ts", segment(session, 2));
+
+        // The origin publishes a segment: the one after the live edge is fetched at once
+        liveStart = 1;
+        assertEquals("live-3.ts", segment(session, 3));
+
+        // The window the player reloads starts at the new edge; the old segment slid out
+        playlist = get(session.getPlaylistUrl());
+        assertTrue(playlist.contains("#EXT-X-MEDIA-SEQUENCE:1\n"));
+        assertTrue(playlist.contains("\n3.ts\n"));
+        assertFalse(playlist.contains("\n0.ts\n"));
+        assertEquals(null, segment(session, 0));
+
+        // Nothing published past the edge yet
+        assertEquals(null, segment(session, 4));
+    }
+
+    @Test
+    public void closedSessionIsNotServed() throws IOException {
+        HlsSession session = proxy.openHlsSession(originUrl("/master.m3u8"));
+        proxy.closeHlsSession(session);
+        assertEquals(null, get(session.getPlaylistUrl()));
+    }
+}
@@ -0,0 +1,211 @@
+package com.github.rtoshiro.view.video;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HttpCacheProxyTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final byte[] content = new byte[100000];
+    private HttpServer origin;
+    private HttpCacheProxy proxy;
+
+    @Before
+    public void setUp() throws IOException {
+        for (int i = 0; i < content.length; i++)
+            content[i] = (byte) (i * 31);
+
+        origin = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        // Known length, honors "bytes=start-end" and "bytes=start-"
+        origin.createContext("/video.mp4", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                serveRange(exchange, true);
+            }
+        });
+        // Chunked: the length is never given
+        origin.createContext("/live.mp4", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                serveRange(exchange, false);
+            }
+        });
+        origin.start();
+
+        proxy = new HttpCacheProxy(new VideoCache(folder.newFolder("cache"), 10 * 1024 * 1024));
+        proxy.start();
+    }
+
+    @After
+    public void tearDown() {
+        proxy.stop();
+        origin.stop(0);
+    }
+
+    private void serveRange(HttpExchange exchange, boolean knownLength) throws IOException {
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        int start = 0, end = content.length - 1;
+        if (range != null) {
+            String[] bounds = range.substring(6).split("-", -1);
+            start = Integer.parseInt(bounds[0]);
+            if (bounds[1].length() > 0)
+                end = Math.min(end, Integer.parseInt(bounds[1]));
+        }
+        if (range != null && knownLength) {
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+            exchange.sendResponseHeaders(206, end - start + 1);
+        } else if (range != null) {
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/*");
+            exchange.sendResponseHeaders(206, 0);
+        } else
+            exchange.sendResponseHeaders(200, knownLength ? content.length : 0);
+        OutputStream out = exchange.getResponseBody();
+        out.write(content, start, end - start + 1);
+        out.close();
+    }
+
+    private String originUrl(String path) {
+        return "http://127.0.0.1:" + origin.getAddress().getPort() + path;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) != -1)
+            out.write(buffer, 0, n);
+        in.close();
+        return out.toByteArray();
+    }
+
+    private byte[] slice(int from, int to) {
+        byte[] bytes = new byte[to - from];
+        System.arraycopy(content, from, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    private static HttpURLConnection open(String url, String range) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        if (range != null)
+            conn.setRequestProperty("Range", range);
+        return conn;
+    }
+
+    @Test
+    public void servesTheWholeContentAndRanges() throws IOException {
+        String url = proxy.getProxyUrl(originUrl("/video.mp4"));
+
+        HttpURLConnection conn = open(url, null);
+        assertEquals(200, conn.getResponseCode());
+        assertArrayEquals(content, readAll(conn.getInputStream()));
+
+        conn = open(url, "bytes=1000-1999");
+        assertEquals(206, conn.getResponseCode());
+        assertEquals("bytes 1000-1999/100000", conn.getHeaderField("Content-Range"));
+        assertArrayEquals(slice(1000, 2000), readAll(conn.getInputStream()));
+    }
+
+    @Test
+    public void rejectsRequestsWithoutTheToken() throws IOException {
+        String url = proxy.getProxyUrl(originUrl("/video.mp4"));
+        String path = new URL(url).getFile();
+        String withoutToken = "http://127.0.0.1:" + new URL(url).getPort() + path.substring(path.indexOf("/video"));
+
+        assertEquals(403, open(withoutToken, null).getResponseCode());
+        assertEquals(403, open("http://127.0.0.1:" + new URL(url).getPort() + "/0123456789abcdef0123456789abcdef/video?url=x", null).getResponseCode());
+    }
+
+    @Test
+    public void servesSuffixRanges() throws IOException {
+        String url = proxy.getProxyUrl(originUrl("/video.mp4"));
+
+        HttpURLConnection conn = open(url, "bytes=-500");
+        assertEquals(206, conn.getResponseCode());
+        assertEquals("bytes 99500-99999/100000", conn.getHeaderField("Content-Range"));
+        assertArrayEquals(slice(99500, 100000), readAll(conn.getInputStream()));
+
+        // Longer than the content: all of it
+        conn = open(url, "bytes=-200000");
+        assertEquals(206, conn.getResponseCode());
+        assertArrayEquals(content, readAll(conn.getInputStream()));
+    }
+
+    @Test
+    public void suffixRangeOfUnknownLengthIsNotSatisfiable() throws IOException {
+        String url = proxy.getProxyUrl(originUrl("/live.mp4"));
+        assertEquals(416, open(url, "bytes=-500").getResponseCode());
+    }
+
+    @Test
+    public void unknownLengthFromAnOffsetIsPartial() throws IOException {
+        String url = proxy.getProxyUrl(originUrl("/live.mp4"));
+
+        HttpURLConnection conn = open(url, "bytes=60000-");
+        assertEquals(206, conn.getResponseCode());
+        assertEquals("bytes 60000-*/*", conn.getHeaderField("Content-Range"));
+        assertArrayEquals(slice(60000, 100000), readAll(conn.getInputStream()));
+    }
+
+    @Test
+    public void malformedUrlIsABadRequest() throws IOException {
+        String url = proxy.getProxyUrl(originUrl("/video.mp4"));
+        String bad = url.substring(0, url.indexOf("?url=") + 5) + "%zz";
+        assertEquals(400, open(bad, null).getResponseCode());
+    }
+
+    @Test
+    public void parsesRanges() throws IOException {
+        HttpCacheProxy.Request request = HttpCacheProxy.readRequest(new ByteArrayInputStream(
+                "GET /t/video?url=http%3A%2F%2Fa%2Fb HTTP/1.1\r\nRange: bytes=10-20\r\n\r\n".getBytes("US-ASCII")), "t");
+        assertNotNull(request);
+        assertTrue(request.authorized);
+        assertEquals("http://a/b", request.url);
+        assertTrue(request.hasRange);
+        assertEquals(10, request.rangeStart);
+        assertEquals(20, request.rangeEnd);
+
+        request = new HttpCacheProxy.Request();
+        HttpCacheProxy.parseRange(request, "-300");
+        assertTrue(request.hasRange);
+        assertEquals(300, request.suffixLength);
+
+        request = new HttpCacheProxy.Request();
+        HttpCacheProxy.parseRange(request, "0-1,5-6");
+        assertFalse(request.hasRange);
+
+        request = new HttpCacheProxy.Request();
+        HttpCacheProxy.parseRange(request, "20-10");
+        assertFalse(request.hasRange);
+
+        request = HttpCacheProxy.readRequest(new ByteArrayInputStream(
+                "GET /video?url=http%3A%2F%2Fa%2Fb HTTP/1.1\r\n\r\n".getBytes("US-ASCII")), "t");
+        assertNotNull(request);
+        assertFalse(request.authorized);
+        assertNull(request.url);
+    }
+}
@@ -0,0 +1,358 @@
+package com.github.rtoshiro.view.video;
+
+import android.media.MediaPlayer;
+import android.view.Surface;
+import android.view.SurfaceHolder;
+import android.view.View;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives a {@link MediaPlayerEngine} with a player thread, the test thread being the main
+ * thread: no MediaPlayer method may run on it.
+ */
+public class MediaPlayerEngineTest {
+
+    /**
+     * Records the MediaPlayer calls made on the main thread
+     */
+    static class ThreadCheckingPlayer extends MediaPlayer {
+        final Thread mainThread = Thread.currentThread();
+        final List<String> mainThreadCalls = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> calls = Collections.synchronizedList(new ArrayList<String>());
+        volatile int position;
+        volatile boolean playing;
+
+        private void called(String name) {
+            calls.add(name);
+            if (Thread.currentThread() == mainThread)
+                mainThreadCalls.add(name);
+        }
+
+        @Override
+        public void setDataSource(String path) throws IOException {
+            called("setDataSource");
+        }
+
+        @Override
+        public void setAudioStreamType(int streamType) {
+            called("setAudioStreamType");
+        }
+
+        @Override
+        public void prepareAsync() {
+            called("prepareAsync");
+        }
+
+        @Override
+        public void start() {
+            called("start");
+            playing = true;
+        }
+
+        @Override
+        public void pause() {
+            called("pause");
+            playing = false;
+        }
+
+        @Override
+        public void stop() {
+            called("stop");
+            playing = false;
+        }
+
+        @Override
+        public void seekTo(int msec) {
+            called("seekTo");
+            position = msec;
+        }
+
+        @Override
+        public void reset() {
+            called("reset");
+        }
+
+        @Override
+        public void release() {
+            called("release");
+        }
+
+        @Override
+        public void setLooping(boolean looping) {
+            called("setLooping");
+        }
+
+        @Override
+        public void setVolume(float leftVolume, float rightVolume) {
+            called("setVolume");
+        }
+
+        @Override
+        public void setDisplay(SurfaceHolder holder) {
+            called("setDisplay");
+        }
+
+        @Override
+        public void setSurface(Surface surface) {
+            called("setSurface");
+        }
+
+        @Override
+        public void setNextMediaPlayer(MediaPlayer next) {
+            called("setNextMediaPlayer");
+        }
+
+        @Override
+        public boolean isPlaying() {
+            called("isPlaying");
+            return playing;
+        }
+
+        @Override
+        public int getCurrentPosition() {
+            called("getCurrentPosition");
+            return position;
+        }
+
+        @Override
+        public int getDuration() {
+            called("getDuration");
+            return 60000;
+        }
+
+        @Override
+        public int getVideoWidth() {
+            called("getVideoWidth");
+            return 1280;
+        }
+
+        @Override
+        public int getVideoHeight() {
+            called("getVideoHeight");
+            return 720;
+        }
+    }
+
+    /**
+     * Events for the main thread are run by the test
+     */
+    static class TestEngine extends MediaPlayerEngine {
+        final List<Runnable> mainQueue = Collections.synchronizedList(new ArrayList<Runnable>());
+
+        TestEngine(MediaPlayer mediaPlayer) {
+            super(mediaPlayer);
+        }
+
+        @Override
+        protected void runOnMainThread(Runnable r) {
+            mainQueue.add(r);
+        }
+
+        void runMainQueue() {
+            while (!mainQueue.isEmpty())
+                mainQueue.remove(0).run();
+        }
+    }
+
+    static class CountingListener implements PlayerEngine.Listener {
+        int prepared;
+
+        @Override
+        public void onPrepared(PlayerEngine engine) {
+            prepared++;
+        }
+
+        @Override
+        public void onSeekComplete(PlayerEngine engine) {
+        }
+
+        @Override
+        public void onCompletion(PlayerEngine engine) {
+        }
+
+        @Override
+        public void onBufferingUpdate(PlayerEngine engine, int percent) {
+        }
+
+        @Override
+        public void onInfo(PlayerEngine engine, int what, int extra) {
+        }
+
+        @Override
+        public void onError(PlayerEngine engine, int what, int extra) {
+        }
+
+        @Override
+        public void onVideoSizeChanged(PlayerEngine engine, int width, int height) {
+        }
+    }
+
+    static class AttachingTarget extends RenderTarget {
+        @Override
+        public View getView() {
+            return null;
+        }
+
+        @Override
+        public boolean isSurfaceAvailable() {
+            return true;
+        }
+
+        @Override
+        public void attachPlayer(MediaPlayer mp) {
+            mp.setDisplay(null);
+        }
+
+        @Override
+        public void detachPlayer(MediaPlayer mp) {
+            mp.setDisplay(null);
+        }
+
+        @Override
+        public Surface getSurface() {
+            return null;
+        }
+    }
+
+    private ExecutorService playerThread;
+    private ThreadCheckingPlayer player;
+    private TestEngine engine;
+    private CountingListener listener;
+
+    @Before
+    public void setUp() {
+        playerThread = Executors.newSingleThreadExecutor();
+        player = new ThreadCheckingPlayer();
+        engine = new TestEngine(player);
+        engine.setPlayerThread(playerThread);
+        listener = new CountingListener();
+        engine.setListener(listener);
+    }
+
+    @After
+    public void tearDown() {
+        playerThread.shutdownNow();
+    }
+
+    /**
+     * Waits for the commands queued so far, then runs the events they posted
+     */
+    private void sync() throws Exception {
+        playerThread.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                return null;
+            }
+        }).get(5, TimeUnit.SECONDS);
+        engine.runMainQueue();
+    }
+
+    private void prepare() throws Exception {
+        engine.setDataSource("/sdcard/a.mp4");
+        engine.prepareAsync();
+        sync();
+        // The platform calls back on the main thread
+        engine.onPrepared(player);
+        engine.onVideoSizeChanged(player, 1280, 720);
+        sync();
+    }
+
+    @Test
+    public void noPlayerCallRunsOnTheMainThread() throws Exception {
+        engine.setLooping(true);
+        engine.setVolume(0.5f, 0.5f);
+        engine.setDisplay(new AttachingTarget());
+        prepare();
+
+        engine.start();
+        engine.isPlaying();
+        engine.getCurrentPosition();
+        engine.getDuration();
+        engine.getVideoWidth();
+        engine.getVideoHeight();
+        engine.seekTo(5000, true);
+        engine.onSeekComplete(player);
+        engine.getCurrentPosition();
+        engine.pause();
+        engine.stop();
+        engine.setDisplay(null);
+        engine.reset();
+        engine.release();
+        sync();
+
+        assertTrue(player.calls.contains("getCurrentPosition"));
+        assertTrue(player.calls.contains("release"));
+        assertEquals(new ArrayList<String>(), player.mainThreadCalls);
+    }
+
+    @Test
+    public void preparedIsReportedWithTheValuesRead() throws Exception {
+        prepare();
+        assertEquals(1, listener.prepared);
+        assertEquals(60000, engine.getDuration());
+        assertEquals(1280, engine.getVideoWidth());
+        assertEquals(720, engine.getVideoHeight());
+        assertFalse(engine.isPlaying());
+    }
+
+    @Test
+    public void commandsUpdateTheValuesRightAway() throws Exception {
+        prepare();
+
+        engine.start();
+        assertTrue(engine.isPlaying());
+        engine.seekTo(5000, true);
+        assertEquals(5000, engine.getCurrentPosition());
+        engine.pause();
+        assertFalse(engine.isPlaying());
+        sync();
+
+        // Read again on the player thread
+        player.position = 5200;
+        engine.getCurrentPosition();
+        sync();
+        assertEquals(5200, engine.getCurrentPosition());
+    }
+
+    @Test
+    public void readQueuedBeforeACommandIsDropped() throws Exception {
+        prepare();
+        player.position = 1000;
+
+        // The read runs before the seek and must not bring the position back
+        engine.getCurrentPosition();
+        engine.seekTo(5000, true);
+        assertEquals(5000, engine.getCurrentPosition());
+        sync();
+        assertEquals(5000, engine.getCurrentPosition());
+    }
+
+    @Test
+    public void preparedIsDroppedAfterReset() throws Exception {
+        engine.setDataSource("/sdcard/a.mp4");
+        engine.prepareAsync();
+        sync();
+
+        engine.onPrepared(player);
+        engine.reset();
+        sync();
+        assertEquals(0, listener.prepared);
+        assertEquals(-1, engine.getDuration());
+    }
+}
@@ -0,0 +1,74 @@
+package com.github.rtoshiro.view.video;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PlaybackClockTest {
+
+    private static final long MS = 1000000L;
+
+    private final PlaybackClock clock = new PlaybackClock();
+
+    @Test
+    public void holdsStillUntilStarted() {
+        assertFalse(clock.isRunning());
+        assertEquals(0, clock.getPositionUs(0));
+        assertEquals(0, clock.getPositionUs(500 * MS));
+    }
+
+    @Test
+    public void advancesWhileRunning() {
+        clock.start(100 * MS);
+        assertTrue(clock.isRunning());
+        assertEquals(0, clock.getPositionUs(100 * MS));
+        assertEquals(250000, clock.getPositionUs(350 * MS));
+    }
+
+    @Test
+    public void startTwiceKeepsTheFirstStart() {
+        clock.start(0);
+        clock.start(100 * MS);
+        assertEquals(200000, clock.getPositionUs(200 * MS));
+    }
+
+    @Test
+    public void pauseHoldsThePosition() {
+        clock.start(0);
+        clock.pause(300 * MS);
+        assertFalse(clock.isRunning());
+        assertEquals(300000, clock.getPositionUs(1000 * MS));
+
+        // Resumes from there
+        clock.start(2000 * MS);
+        assertEquals(400000, clock.getPositionUs(2100 * MS));
+    }
+
+    @Test
+    public void setPositionJumpsAndKeepsRunning() {
+        clock.start(0);
+        clock.setPositionUs(5000000, 100 * MS);
+        assertTrue(clock.isRunning());
+        assertEquals(5000000, clock.getPositionUs(100 * MS));
+        assertEquals(5050000, clock.getPositionUs(150 * MS));
+    }
+
+    @Test
+    public void setPositionWhilePausedHolds() {
+        clock.setPositionUs(5000000, 0);
+        assertEquals(5000000, clock.getPositionUs(1000 * MS));
+        clock.start(1000 * MS);
+        assertEquals(5010000, clock.getPositionUs(1010 * MS));
+    }
+
+    @Test
+    public void latenessIsPositionMinusPresentationTime() {
+        clock.start(0);
+        // Position 100ms
+        assertEquals(60000, clock.getLatenessUs(40000, 100 * MS));
+        assertEquals(-20000, clock.getLatenessUs(120000, 100 * MS));
+        assertEquals(0, clock.getLatenessUs(100000, 100 * MS));
+    }
+}
@@ -0,0 +1,102 @@
+package com.github.rtoshiro.view.video;
+
+import com.github.rtoshiro.view.video.FullscreenVideoView.State;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PlaybackControllerTest {
+
+    private final PlaybackStateMachine stateMachine = new PlaybackStateMachine(State.PREPARED);
+    private final RecordingPlayerEngine engine = new RecordingPlayerEngine();
+    private final PlaybackController controller = new PlaybackController(stateMachine, new PlaybackMetrics(),
+            new PlaybackController.Clock() {
+                @Override
+                public long now() {
+                    return 0;
+                }
+            });
+
+    @Before
+    public void setUp() {
+        controller.setEngine(engine);
+    }
+
+    @Test
+    public void seekHoldsPlaybackAndResumesIt() {
+        controller.start();
+        assertTrue(controller.isPlaybackRequested());
+
+        controller.seekTo(1000, true);
+        assertSame(State.PAUSED, stateMachine.getState());
+        // Paused by the seek only: a play/pause toggle still shows playback
+        assertTrue(controller.isPlaybackRequested());
+
+        controller.onSeekComplete();
+        assertSame(State.STARTED, stateMachine.getState());
+        assertEquals(Arrays.asList("start", "pause", "seekTo 1000", "start"), engine.commands);
+    }
+
+    @Test
+    public void pauseDuringSeekWins() {
+        controller.start();
+        controller.seekTo(1000, true);
+
+        assertTrue(controller.pause());
+        assertFalse(controller.isPlaybackRequested());
+
+        controller.onSeekComplete();
+        assertSame(State.PAUSED, stateMachine.getState());
+    }
+
+    @Test
+    public void startDuringSeekResumesOnceItCompletes() {
+        controller.start();
+        controller.pause();
+        controller.seekTo(1000, true);
+        assertFalse(controller.isPlaybackRequested());
+
+        assertTrue(controller.start());
+        assertTrue(controller.isPlaybackRequested());
+        // Not started while the seek runs
+        assertEquals(Arrays.asList("start", "pause", "seekTo 1000"), engine.commands);
+
+        controller.onSeekComplete();
+        assertSame(State.STARTED, stateMachine.getState());
+        assertEquals("start", engine.commands.get(engine.commands.size() - 1));
+    }
+
+    @Test
+    public void togglingDuringSeekEndsInTheLastChoice() {
+        controller.start();
+        controller.seekTo(1000, true);
+
+        controller.pause();
+        controller.start();
+        controller.pause();
+        controller.onSeekComplete();
+
+        assertSame(State.PAUSED, stateMachine.getState());
+        assertFalse(controller.isPlaybackRequested());
+    }
+
+    @Test
+    public void scrubbingHoldsTheStateToResume() {
+        controller.start();
+        controller.beginScrubbing();
+        assertTrue(controller.isPlaybackRequested());
+        controller.seekTo(2000, false);
+        controller.onSeekComplete();
+        assertSame(State.PAUSED, stateMachine.getState());
+
+        controller.endScrubbing();
+        assertSame(State.STARTED, stateMachine.getState());
+    }
+}
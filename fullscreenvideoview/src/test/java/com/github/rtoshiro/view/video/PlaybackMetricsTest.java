@@ -0,0 +1,125 @@
+package com.github.rtoshiro.view.video;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PlaybackMetricsTest {
+
+    private final PlaybackMetrics metrics = new PlaybackMetrics();
+    private final List<long[]> events = new ArrayList<long[]>();
+
+    {
+        metrics.setListener(new PlaybackMetrics.Listener() {
+            @Override
+            public void onPlaybackEvent(PlaybackMetrics m, int event, long value) {
+                events.add(new long[]{event, value});
+            }
+        });
+    }
+
+    @Test
+    public void measuresStartupFromPrepareStart() {
+        metrics.onPrepareStarted(1000, false);
+        metrics.onPrepared(1200);
+        metrics.onReady(1250);
+        metrics.onFirstFrame(1300);
+
+        PlaybackMetrics.Snapshot s = metrics.snapshot();
+        assertEquals(200, s.timeToPrepared);
+        assertEquals(250, s.timeToReady);
+        assertFalse(s.startPreloaded);
+        assertEquals(300, s.timeToFirstFrame);
+        assertEquals(3, events.size());
+        assertEquals(PlaybackMetrics.EVENT_READY, events.get(1)[0]);
+        assertEquals(250, events.get(1)[1]);
+    }
+
+    @Test
+    public void startupIsMeasuredOncePerSource() {
+        metrics.onPrepareStarted(0, true);
+        metrics.onReady(10);
+        metrics.onReady(500);
+        metrics.onFirstFrame(30);
+        // MEDIA_INFO_VIDEO_RENDERING_START after the render target reported the frame
+        metrics.onFirstFrame(40);
+        assertEquals(10, metrics.snapshot().timeToReady);
+        assertEquals(30, metrics.snapshot().timeToFirstFrame);
+        assertTrue(metrics.snapshot().startPreloaded);
+
+        metrics.onPrepareStarted(1000, false);
+        assertEquals(-1, metrics.snapshot().timeToReady);
+        assertEquals(-1, metrics.snapshot().timeToFirstFrame);
+        assertFalse(metrics.snapshot().startPreloaded);
+        metrics.onReady(1400);
+        assertEquals(400, metrics.snapshot().timeToReady);
+    }
+
+    @Test
+    public void coldAndPreloadedStartsAreAveragedSeparately() {
+        metrics.onPrepareStarted(0, false);
+        metrics.onFirstFrame(800);
+        metrics.onPrepareStarted(1000, true);
+        metrics.onFirstFrame(1040);
+        metrics.onPrepareStarted(2000, false);
+        metrics.onFirstFrame(2600);
+        metrics.onPrepareStarted(3000, true);
+        metrics.onFirstFrame(3020);
+        // Opened but never rendered: not counted
+        metrics.onPrepareStarted(4000, true);
+
+        PlaybackMetrics.Snapshot s = metrics.snapshot();
+        assertEquals(2, s.coldStartCount);
+        assertEquals(700, s.getAverageColdStartTime());
+        assertEquals(2, s.preloadedStartCount);
+        assertEquals(30, s.getAveragePreloadedStartTime());
+
+        metrics.reset();
+        assertEquals(-1, metrics.snapshot().getAverageColdStartTime());
+        assertEquals(-1, metrics.snapshot().getAveragePreloadedStartTime());
+    }
+
+    @Test
+    public void measuresFullscreenLayoutAndSurface() {
+        metrics.onFullscreenToggleStarted(1000, true);
+        // The surface may be ready before the layout pass is reported
+        metrics.onFullscreenSurfaceReady(1080);
+        metrics.onFullscreenLaidOut(1100);
+
+        metrics.onFullscreenToggleStarted(2000, false);
+        metrics.onFullscreenLaidOut(2020);
+        metrics.onFullscreenSurfaceReady(2500);
+
+        PlaybackMetrics.Snapshot s = metrics.snapshot();
+        assertEquals(2, s.fullscreenToggleCount);
+        assertEquals(60, s.getAverageFullscreenLayoutTime());
+        assertEquals(1, s.fullscreenSurfaceCount);
+        assertEquals(80, s.getAverageFullscreenSurfaceTime());
+        assertEquals(PlaybackMetrics.EVENT_FULLSCREEN_SURFACE, events.get(0)[0]);
+        assertEquals(PlaybackMetrics.EVENT_FULLSCREEN_LAYOUT, events.get(1)[0]);
+        assertEquals(3, events.size());
+    }
+
+    @Test
+    public void surfaceWithoutToggleIsIgnored() {
+        metrics.onFullscreenSurfaceReady(100);
+        metrics.onFullscreenLaidOut(100);
+        assertEquals(0, metrics.snapshot().fullscreenToggleCount);
+        assertEquals(-1, metrics.snapshot().getAverageFullscreenSurfaceTime());
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void readyWithoutPrepareIsIgnored() {
+        metrics.onReady(100);
+        metrics.onFirstFrame(100);
+        assertEquals(-1, metrics.snapshot().timeToReady);
+        assertEquals(0, metrics.snapshot().coldStartCount);
+        assertTrue(events.isEmpty());
+    }
+}
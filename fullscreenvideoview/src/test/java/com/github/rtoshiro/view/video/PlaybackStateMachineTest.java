@@ -0,0 +1,176 @@
+package com.github.rtoshiro.view.video;
+
+import com.github.rtoshiro.view.video.FullscreenVideoView.State;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.github.rtoshiro.view.video.FullscreenVideoView.State.END;
+import static com.github.rtoshiro.view.video.FullscreenVideoView.State.ERROR;
+import static com.github.rtoshiro.view.video.FullscreenVideoView.State.IDLE;
+import static com.github.rtoshiro.view.video.FullscreenVideoView.State.INITIALIZED;
+import static com.github.rtoshiro.view.video.FullscreenVideoView.State.PAUSED;
+import static com.github.rtoshiro.view.video.FullscreenVideoView.State.PLAYBACKCOMPLETED;
+import static com.github.rtoshiro.view.video.FullscreenVideoView.State.PREPARED;
+import static com.github.rtoshiro.view.video.FullscreenVideoView.State.PREPARING;
+import static com.github.rtoshiro.view.video.FullscreenVideoView.State.STARTED;
+import static com.github.rtoshiro.view.video.FullscreenVideoView.State.STOPPED;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PlaybackStateMachineTest {
+
+    /**
+     * The MediaPlayer state diagram, written out per state
+     */
+    private static EnumSet<State> expectedTargets(State from) {
+        // reset(), errors and release()
+        EnumSet<State> targets = EnumSet.of(IDLE, ERROR, END);
+        switch (from) {
+            case IDLE:
+                targets.add(INITIALIZED);
+                break;
+            case INITIALIZED:
+                targets.addAll(EnumSet.of(PREPARING, PREPARED));
+                break;
+            case PREPARING:
+                targets.add(PREPARED);
+                break;
+            case PREPARED:
+                targets.addAll(EnumSet.of(PREPARED, STARTED, STOPPED));
+                break;
+            case STARTED:
+                targets.addAll(EnumSet.of(STARTED, PAUSED, STOPPED, PLAYBACKCOMPLETED));
+                break;
+            case PAUSED:
+                targets.addAll(EnumSet.of(PAUSED, STARTED, STOPPED));
+                break;
+            case PLAYBACKCOMPLETED:
+                targets.addAll(EnumSet.of(PLAYBACKCOMPLETED, STARTED, PAUSED, STOPPED));
+                break;
+            case STOPPED:
+                targets.addAll(EnumSet.of(STOPPED, PREPARING, PREPARED));
+                break;
+            default:
+                break;
+        }
+        return targets;
+    }
+
+    @Test
+    public void transitionTableMatchesTheMediaPlayerDiagram() {
+        for (State from : State.values()) {
+            EnumSet<State> expected = expectedTargets(from);
+            for (State to : State.values()) {
+                assertEquals(from + " -> " + to, expected.contains(to), PlaybackStateMachine.isValid(from, to));
+
+                PlaybackStateMachine machine = new PlaybackStateMachine(from);
+                assertEquals(from + " -> " + to, expected.contains(to), machine.moveTo(to));
+                assertSame(expected.contains(to) ? to : from, machine.getState());
+            }
+        }
+    }
+
+    @Test
+    public void followsANormalPlayback() {
+        final List<String> changes = new ArrayList<String>();
+        PlaybackStateMachine machine = new PlaybackStateMachine();
+        machine.setListener(new PlaybackStateMachine.Listener() {
+            @Override
+            public void onStateChanged(State from, State to) {
+                changes.add(from + ">" + to);
+            }
+        });
+
+        assertTrue(machine.moveTo(INITIALIZED));
+        assertTrue(machine.moveTo(PREPARING));
+        assertFalse(machine.moveTo(STARTED));
+        assertTrue(machine.moveTo(PREPARED));
+        assertTrue(machine.moveTo(STARTED));
+        // Accepted, but not a change
+        assertTrue(machine.moveTo(STARTED));
+        assertTrue(machine.moveTo(PLAYBACKCOMPLETED));
+        assertTrue(machine.moveTo(END));
+        assertFalse(machine.moveTo(INITIALIZED));
+
+        assertEquals("[IDLE>INITIALIZED, INITIALIZED>PREPARING, PREPARING>PREPARED, PREPARED>STARTED, "
+                + "STARTED>PLAYBACKCOMPLETED, PLAYBACKCOMPLETED>END]", changes.toString());
+    }
+
+    @Test
+    public void expectedStateMustMatch() {
+        PlaybackStateMachine machine = new PlaybackStateMachine(PAUSED);
+        assertFalse(machine.moveTo(STARTED, PAUSED));
+        assertSame(PAUSED, machine.getState());
+        assertFalse(machine.moveTo(PAUSED, PLAYBACKCOMPLETED));
+        assertTrue(machine.moveTo(PAUSED, STARTED));
+        assertSame(STARTED, machine.getState());
+    }
+
+    @Test
+    public void onlyOneRacingThreadWinsATransition() throws InterruptedException {
+        for (int round = 0; round < 100; round++) {
+            final PlaybackStateMachine machine = new PlaybackStateMachine(PREPARING);
+            final AtomicInteger winners = new AtomicInteger();
+            final CountDownLatch start = new CountDownLatch(1);
+            Thread[] threads = new Thread[4];
+            for (int i = 0; i < threads.length; i++) {
+                threads[i] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        if (machine.moveTo(PREPARING, PREPARED))
+                            winners.incrementAndGet();
+                    }
+                };
+                threads[i].start();
+            }
+            start.countDown();
+            for (Thread t : threads)
+                t.join();
+
+            assertEquals(1, winners.get());
+            assertSame(PREPARED, machine.getState());
+        }
+    }
+
+    @Test
+    public void restoresTheStateOfTheFirstPendingSeek() {
+        PlaybackStateMachine machine = new PlaybackStateMachine(STARTED);
+        machine.beginSeek();
+        machine.moveTo(PAUSED);
+        machine.beginSeek();
+
+        assertTrue(machine.isSeeking());
+        assertNull(machine.endSeek());
+        assertSame(STARTED, machine.endSeek());
+        assertFalse(machine.isSeeking());
+        assertNull(machine.endSeek());
+    }
+
+    @Test
+    public void seekResumeStateCanBeReplacedWhileSeeking() {
+        PlaybackStateMachine machine = new PlaybackStateMachine(STARTED);
+        machine.setSeekResumeState(PAUSED);
+        machine.beginSeek();
+        machine.setSeekResumeState(PAUSED);
+        assertSame(PAUSED, machine.endSeek());
+
+        machine.beginSeek();
+        machine.cancelSeeks();
+        assertFalse(machine.isSeeking());
+        assertNull(machine.endSeek());
+    }
+}
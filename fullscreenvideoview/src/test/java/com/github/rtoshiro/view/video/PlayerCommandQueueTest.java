@@ -0,0 +1,186 @@
+package com.github.rtoshiro.view.video;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PlayerCommandQueueTest {
+
+    /**
+     * Runs queued commands only when asked, like a HandlerThread that is busy
+     */
+    private static class ManualExecutor implements Executor {
+        final List<Runnable> queued = new ArrayList<Runnable>();
+
+        @Override
+        public void execute(Runnable command) {
+            queued.add(command);
+        }
+
+        void runAll() {
+            while (!queued.isEmpty())
+                queued.remove(0).run();
+        }
+    }
+
+    private final Object player = new Object();
+    private final Object otherPlayer = new Object();
+    private final List<String> calls = new ArrayList<String>();
+    private final List<Object> failedPlayers = new ArrayList<Object>();
+    private ManualExecutor executor;
+    private PlayerCommandQueue<Object> queue;
+
+    @Before
+    public void setUp() {
+        executor = new ManualExecutor();
+        queue = new PlayerCommandQueue<Object>(executor, new PlayerCommandQueue.Listener<Object>() {
+            @Override
+            public void onCommandFailed(Object p, RuntimeException e) {
+                failedPlayers.add(p);
+            }
+        });
+    }
+
+    private Runnable call(final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                calls.add(name);
+            }
+        };
+    }
+
+    private Runnable fail(final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                calls.add(name);
+                throw new IllegalStateException(name);
+            }
+        };
+    }
+
+    @Test
+    public void runsCommandsInOrderOnTheExecutor() {
+        queue.execute(player, call("setDataSource"));
+        queue.execute(player, call("prepareAsync"));
+        queue.execute(player, call("start"));
+        assertTrue(calls.isEmpty());
+
+        executor.runAll();
+        assertEquals(3, calls.size());
+        assertEquals("setDataSource", calls.get(0));
+        assertEquals("prepareAsync", calls.get(1));
+        assertEquals("start", calls.get(2));
+        assertTrue(failedPlayers.isEmpty());
+    }
+
+    @Test
+    public void skipsCommandsQueuedAfterAFailure() {
+        queue.execute(player, fail("setDataSource"));
+        queue.execute(player, call("prepareAsync"));
+        queue.execute(player, call("start"));
+        executor.runAll();
+
+        assertEquals(1, calls.size());
+        assertEquals("setDataSource", calls.get(0));
+        assertEquals(1, failedPlayers.size());
+        assertSame(player, failedPlayers.get(0));
+        assertTrue(queue.isFailed(player));
+    }
+
+    @Test
+    public void markFailedSkipsTheFollowingCommands() {
+        queue.execute(player, new Runnable() {
+            @Override
+            public void run() {
+                calls.add("setDataSource");
+                // What a command does when it catches an IOException
+                queue.markFailed(player);
+            }
+        });
+        queue.execute(player, call("prepareAsync"));
+        executor.runAll();
+
+        assertEquals(1, calls.size());
+        assertTrue(failedPlayers.isEmpty());
+    }
+
+    @Test
+    public void resetRunsAfterAFailureAndClearsIt() {
+        queue.execute(player, fail("setDataSource"));
+        queue.execute(player, call("prepareAsync"));
+        queue.executeReset(player, call("reset"));
+        queue.execute(player, call("setDataSource2"));
+        executor.runAll();
+
+        assertEquals(3, calls.size());
+        assertEquals("reset", calls.get(1));
+        assertEquals("setDataSource2", calls.get(2));
+        assertFalse(queue.isFailed(player));
+    }
+
+    @Test
+    public void failureDoesNotSkipOtherPlayers() {
+        queue.execute(player, fail("prepareAsync"));
+        queue.execute(otherPlayer, call("nextPrepareAsync"));
+        queue.execute(player, call("start"));
+        executor.runAll();
+
+        assertEquals(2, calls.size());
+        assertEquals("nextPrepareAsync", calls.get(1));
+        assertFalse(queue.isFailed(otherPlayer));
+    }
+
+    @Test
+    public void failingResetIsReported() {
+        queue.executeReset(player, fail("reset"));
+        executor.runAll();
+
+        assertEquals(1, failedPlayers.size());
+        assertTrue(queue.isFailed(player));
+    }
+
+    @Test
+    public void commandsRunOffTheCallingThread() throws InterruptedException {
+        ExecutorService thread = Executors.newSingleThreadExecutor();
+        try {
+            final Thread caller = Thread.currentThread();
+            final Thread[] ranOn = new Thread[2];
+            final CountDownLatch done = new CountDownLatch(1);
+            PlayerCommandQueue<Object> threaded = new PlayerCommandQueue<Object>(thread, new PlayerCommandQueue.Listener<Object>() {
+                @Override
+                public void onCommandFailed(Object p, RuntimeException e) {
+                    ranOn[1] = Thread.currentThread();
+                    done.countDown();
+                }
+            });
+
+            threaded.execute(player, new Runnable() {
+                @Override
+                public void run() {
+                    ranOn[0] = Thread.currentThread();
+                    throw new IllegalStateException("prepareAsync");
+                }
+            });
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertNotSame(caller, ranOn[0]);
+            assertSame(ranOn[0], ranOn[1]);
+        } finally {
+            thread.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.github.rtoshiro.view.video;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PlayerPoolTest {
+
+    static class Player {
+        boolean released;
+        int resets;
+        boolean failReset;
+    }
+
+    static class CountingPool extends PlayerPool<Player> {
+        final List<Player> createdPlayers = new ArrayList<Player>();
+
+        CountingPool(int maxIdle) {
+            super(maxIdle);
+        }
+
+        @Override
+        protected Player createPlayer() {
+            Player player = new Player();
+            createdPlayers.add(player);
+            return player;
+        }
+
+        @Override
+        protected boolean resetPlayer(Player player) {
+            player.resets++;
+            return !player.failReset;
+        }
+
+        @Override
+        protected void releasePlayer(Player player) {
+            assertFalse("released twice", player.released);
+            player.released = true;
+        }
+    }
+
+    @Test
+    public void reusesRecycledPlayers() {
+        CountingPool pool = new CountingPool(2);
+        Player a = pool.acquire();
+        pool.recycle(a);
+
+        assertEquals(1, a.resets);
+        assertEquals(1, pool.getIdleCount());
+        assertSame(a, pool.acquire());
+        assertEquals(0, pool.getIdleCount());
+        assertEquals(1, pool.getCreatedCount());
+        assertEquals(1, pool.getReusedCount());
+        assertFalse(a.released);
+    }
+
+    @Test
+    public void keepsAtMostMaxIdlePlayers() {
+        CountingPool pool = new CountingPool(2);
+        Player a = pool.acquire(), b = pool.acquire(), c = pool.acquire();
+        assertEquals(3, pool.getCreatedCount());
+
+        pool.recycle(a);
+        pool.recycle(b);
+        pool.recycle(c);
+
+        assertEquals(2, pool.getIdleCount());
+        assertEquals(1, pool.getEvictedCount());
+        assertFalse(a.released);
+        assertFalse(b.released);
+        assertTrue(c.released);
+    }
+
+    @Test
+    public void emptyPoolCreatesEveryTime() {
+        CountingPool pool = new CountingPool(0);
+        Player a = pool.acquire();
+        pool.recycle(a);
+        assertTrue(a.released);
+        assertNotSame(a, pool.acquire());
+        assertEquals(2, pool.getCreatedCount());
+        assertEquals(0, pool.getReusedCount());
+    }
+
+    @Test
+    public void playersThatFailToResetAreReleased() {
+        CountingPool pool = new CountingPool(2);
+        Player a = pool.acquire();
+        a.failReset = true;
+        pool.recycle(a);
+
+        assertTrue(a.released);
+        assertEquals(0, pool.getIdleCount());
+        // Not full: it is not counted as evicted
+        assertEquals(0, pool.getEvictedCount());
+    }
+
+    @Test
+    public void loweringMaxIdleReleasesTheExceedingPlayers() {
+        CountingPool pool = new CountingPool(3);
+        Player a = pool.acquire(), b = pool.acquire(), c = pool.acquire();
+        pool.recycle(a);
+        pool.recycle(b);
+        pool.recycle(c);
+
+        pool.setMaxIdle(1);
+        assertEquals(1, pool.getIdleCount());
+        assertEquals(2, pool.getEvictedCount());
+        assertFalse(a.released);
+        assertTrue(b.released);
+        assertTrue(c.released);
+
+        pool.clear();
+        assertEquals(0, pool.getIdleCount());
+        assertTrue(a.released);
+    }
+
+    @Test
+    public void recycleIgnoresNull() {
+        CountingPool pool = new CountingPool(1);
+        pool.recycle(null);
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeMaxIdle() {
+        new CountingPool(-1);
+    }
+
+    @Test
+    public void scrollingListCreatesOnlyTheVisiblePlayers() {
+        // 3 visible views at a time scrolling through 50 items, as ListPlaybackCoordinator sizes the pool
+        CountingPool pool = new CountingPool(3);
+        Player[] visible = new Player[3];
+        for (int i = 0; i < visible.length; i++)
+            visible[i] = pool.acquire();
+
+        for (int item = 3; item < 50; item++) {
+            int slot = item % visible.length;
+            pool.recycle(visible[slot]);
+            visible[slot] = pool.acquire();
+        }
+
+        assertEquals(3, pool.getCreatedCount());
+        assertEquals(47, pool.getReusedCount());
+        assertEquals(0, pool.getEvictedCount());
+    }
+}
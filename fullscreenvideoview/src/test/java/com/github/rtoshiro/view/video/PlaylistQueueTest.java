@@ -0,0 +1,167 @@
+package com.github.rtoshiro.view.video;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PlaylistQueueTest {
+
+    private final PlaylistQueue queue = new PlaylistQueue();
+    private final List<Integer> changes = new ArrayList<Integer>();
+    private final PlaylistQueue.Item a = PlaylistQueue.Item.fromPath("/sdcard/a.mp4");
+    private final PlaylistQueue.Item b = PlaylistQueue.Item.fromUri("http://example.com/b.mp4");
+    private final PlaylistQueue.Item c = PlaylistQueue.Item.fromPath("/sdcard/c.mp4");
+
+    @Before
+    public void setUp() {
+        queue.setListener(new PlaylistQueue.Listener() {
+            @Override
+            public void onCurrentItemChanged(PlaylistQueue queue, int index) {
+                changes.add(index);
+            }
+        });
+    }
+
+    @Test
+    public void firstItemAddedBecomesCurrent() {
+        assertNull(queue.getCurrent());
+        assertFalse(queue.hasNext());
+
+        queue.add(a);
+        queue.add(b);
+        assertSame(a, queue.getCurrent());
+        assertEquals(Arrays.asList(0), changes);
+    }
+
+    @Test
+    public void advancesThroughTheQueue() {
+        queue.add(a);
+        queue.add(b);
+        queue.add(c);
+
+        // The item prepared ahead is the one moved to
+        assertSame(b, queue.peekNext());
+        assertTrue(queue.moveToNext());
+        assertSame(b, queue.getCurrent());
+        assertSame(c, queue.peekNext());
+        assertTrue(queue.moveToNext());
+        assertSame(c, queue.getCurrent());
+        assertEquals(Arrays.asList(0, 1, 2), changes);
+    }
+
+    @Test
+    public void endOfTheQueue() {
+        queue.add(a);
+        queue.add(b);
+        queue.moveToNext();
+
+        assertFalse(queue.hasNext());
+        assertNull(queue.peekNext());
+        assertFalse(queue.moveToNext());
+        assertSame(b, queue.getCurrent());
+        assertEquals(1, queue.getCurrentIndex());
+    }
+
+    @Test
+    public void repeatAllWrapsBothWays() {
+        queue.setRepeatMode(PlaylistQueue.RepeatMode.ALL);
+        queue.add(a);
+        queue.add(b);
+
+        assertSame(b, queue.get(queue.getPreviousIndex()));
+        queue.moveToNext();
+        assertSame(a, queue.peekNext());
+        assertTrue(queue.moveToNext());
+        assertSame(a, queue.getCurrent());
+    }
+
+    @Test
+    public void singleItemRepeatsItself() {
+        queue.setRepeatMode(PlaylistQueue.RepeatMode.ALL);
+        queue.add(a);
+        assertSame(a, queue.peekNext());
+    }
+
+    @Test
+    public void previousStopsAtTheStart() {
+        queue.add(a);
+        queue.add(b);
+        assertFalse(queue.moveToPrevious());
+        queue.moveToNext();
+        assertTrue(queue.moveToPrevious());
+        assertSame(a, queue.getCurrent());
+    }
+
+    @Test
+    public void removingTheCurrentItemMakesTheFollowingOneCurrent() {
+        queue.add(a);
+        queue.add(b);
+        queue.add(c);
+        changes.clear();
+
+        assertSame(a, queue.remove(0));
+        assertSame(b, queue.getCurrent());
+        assertSame(c, queue.peekNext());
+        assertEquals(Arrays.asList(0), changes);
+    }
+
+    @Test
+    public void removingTheLastCurrentItemFallsBackToThePreviousOne() {
+        queue.add(a);
+        queue.add(b);
+        queue.moveToNext();
+
+        queue.remove(1);
+        assertSame(a, queue.getCurrent());
+        assertFalse(queue.hasNext());
+
+        queue.remove(0);
+        assertNull(queue.getCurrent());
+        assertEquals(-1, queue.getCurrentIndex());
+        assertEquals(-1, (int) changes.get(changes.size() - 1));
+    }
+
+    @Test
+    public void editsAroundTheCurrentItemKeepItAndChangeTheNextOne() {
+        queue.add(a);
+        queue.add(c);
+        queue.moveToNext();
+        changes.clear();
+
+        queue.add(0, b);
+        assertSame(c, queue.getCurrent());
+        assertEquals(2, queue.getCurrentIndex());
+
+        queue.add(b);
+        assertSame(b, queue.peekNext());
+        queue.remove(0);
+        assertSame(c, queue.getCurrent());
+        assertEquals(1, queue.getCurrentIndex());
+        // Only index shifts: the current item never changed
+        assertTrue(changes.isEmpty());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rejectsCurrentIndexOutOfRange() {
+        queue.add(a);
+        queue.setCurrentIndex(1);
+    }
+
+    @Test
+    public void clearEmptiesTheQueue() {
+        queue.add(a);
+        queue.clear();
+        assertTrue(queue.isEmpty());
+        assertNull(queue.getCurrent());
+        assertFalse(queue.hasNext());
+    }
+}
@@ -0,0 +1,121 @@
+package com.github.rtoshiro.view.video;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ProgressSchedulerTest {
+
+    private final ProgressScheduler scheduler = new ProgressScheduler(false);
+
+    private static class CountingClient implements ProgressScheduler.Client {
+        int ticks;
+        long delay = 100;
+        Runnable action;
+
+        @Override
+        public long onProgressTick() {
+            ticks++;
+            if (action != null)
+                action.run();
+            return delay;
+        }
+    }
+
+    @Test
+    public void dueClientsTickOnce() {
+        CountingClient a = new CountingClient(), b = new CountingClient();
+        scheduler.schedule(a, 0);
+        scheduler.schedule(b, 0);
+
+        scheduler.tick();
+        assertEquals(1, a.ticks);
+        assertEquals(1, b.ticks);
+
+        // Deadlines moved 100ms ahead; the clock of the tests does not move
+        scheduler.tick();
+        assertEquals(1, a.ticks);
+        assertEquals(1, b.ticks);
+    }
+
+    @Test
+    public void clientCancelledByAnotherOneDoesNotTick() {
+        final CountingClient a = new CountingClient(), b = new CountingClient(), c = new CountingClient();
+        scheduler.schedule(a, 0);
+        scheduler.schedule(b, 0);
+        scheduler.schedule(c, 0);
+        a.action = new Runnable() {
+            @Override
+            public void run() {
+                scheduler.cancel(b);
+            }
+        };
+
+        scheduler.tick();
+        assertEquals(1, a.ticks);
+        assertEquals(0, b.ticks);
+        assertEquals(1, c.ticks);
+        assertFalse(scheduler.isScheduled(b));
+    }
+
+    @Test
+    public void removingAnEarlierClientKeepsTheDeadlineOfTheCurrentOne() {
+        final CountingClient a = new CountingClient(), b = new CountingClient(), c = new CountingClient();
+        scheduler.schedule(a, 200);
+        scheduler.schedule(b, 0);
+        scheduler.schedule(c, 0);
+        b.action = new Runnable() {
+            @Override
+            public void run() {
+                scheduler.cancel(a);
+            }
+        };
+        c.delay = -1;
+
+        scheduler.tick();
+        assertEquals(1, b.ticks);
+        assertEquals(1, c.ticks);
+        assertFalse(scheduler.isScheduled(c));
+
+        // b is not due again, though its index moved during the tick
+        scheduler.tick();
+        assertEquals(1, b.ticks);
+        assertTrue(scheduler.isScheduled(b));
+    }
+
+    @Test
+    public void clientCancellingItselfIsRemoved() {
+        final CountingClient a = new CountingClient(), b = new CountingClient();
+        scheduler.schedule(a, 0);
+        scheduler.schedule(b, 0);
+        a.action = new Runnable() {
+            @Override
+            public void run() {
+                scheduler.cancel(a);
+            }
+        };
+
+        scheduler.tick();
+        assertFalse(scheduler.isScheduled(a));
+        assertEquals(1, b.ticks);
+    }
+
+    @Test
+    public void clientRescheduledByAnotherOneWaits() {
+        final CountingClient a = new CountingClient(), b = new CountingClient();
+        scheduler.schedule(a, 0);
+        scheduler.schedule(b, 0);
+        a.action = new Runnable() {
+            @Override
+            public void run() {
+                scheduler.schedule(b, 500);
+            }
+        };
+
+        scheduler.tick();
+        assertEquals(0, b.ticks);
+        assertTrue(scheduler.isScheduled(b));
+    }
+}
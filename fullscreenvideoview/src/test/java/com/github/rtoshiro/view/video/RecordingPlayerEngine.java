@@ -0,0 +1,108 @@
+package com.github.rtoshiro.view.video;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link PlayerEngine} recording the commands it receives. Events are delivered by the test.
+ */
+class RecordingPlayerEngine implements PlayerEngine {
+
+    final List<String> commands = new ArrayList<String>();
+    Listener listener;
+    int duration = 60000;
+    int position;
+    int videoWidth, videoHeight;
+    boolean playing;
+    boolean looping;
+
+    @Override
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void setDataSource(String source) {
+        commands.add("setDataSource " + source);
+    }
+
+    @Override
+    public void prepareAsync() {
+        commands.add("prepareAsync");
+    }
+
+    @Override
+    public void start() {
+        commands.add("start");
+        playing = true;
+    }
+
+    @Override
+    public void pause() {
+        commands.add("pause");
+        playing = false;
+    }
+
+    @Override
+    public void stop() {
+        commands.add("stop");
+        playing = false;
+    }
+
+    @Override
+    public void seekTo(int msec, boolean exact) {
+        commands.add("seekTo " + msec);
+        position = msec;
+    }
+
+    @Override
+    public void reset() {
+        commands.add("reset");
+        playing = false;
+    }
+
+    @Override
+    public void release() {
+        commands.add("release");
+        playing = false;
+    }
+
+    @Override
+    public void setLooping(boolean looping) {
+        this.looping = looping;
+    }
+
+    @Override
+    public void setVolume(float leftVolume, float rightVolume) {
+    }
+
+    @Override
+    public void setDisplay(RenderTarget target) {
+        commands.add(target != null ? "setDisplay" : "setDisplay null");
+    }
+
+    @Override
+    public int getVideoWidth() {
+        return videoWidth;
+    }
+
+    @Override
+    public int getVideoHeight() {
+        return videoHeight;
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        return position;
+    }
+
+    @Override
+    public int getDuration() {
+        return duration;
+    }
+
+    @Override
+    public boolean isPlaying() {
+        return playing;
+    }
+}
@@ -0,0 +1,244 @@
+package com.github.rtoshiro.view.video;
+
+import android.content.Context;
+import android.media.MediaPlayer;
+import android.view.Surface;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+import android.widget.RelativeLayout;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives {@link FullscreenVideoView#requestResize()} the way layout changes and
+ * {@link FullscreenVideoView#onVideoSizeChanged} do, and counts the layout passes that reach
+ * the render target. Frames are run by the test.
+ */
+public class ResizeLayoutPassTest {
+
+    static class Container extends RelativeLayout {
+        int width = 1000, height = 1000;
+
+        Container() {
+            super(null);
+        }
+
+        @Override
+        public int getWidth() {
+            return width;
+        }
+
+        @Override
+        public int getHeight() {
+            return height;
+        }
+    }
+
+    static class ContentView extends View {
+        ViewGroup.LayoutParams params;
+        ViewParent parent;
+        int setLayoutParamsCalls;
+
+        ContentView() {
+            super(null);
+        }
+
+        @Override
+        public ViewGroup.LayoutParams getLayoutParams() {
+            return params;
+        }
+
+        @Override
+        public void setLayoutParams(ViewGroup.LayoutParams params) {
+            this.params = params;
+            setLayoutParamsCalls++;
+        }
+
+        @Override
+        public ViewParent getParent() {
+            return parent;
+        }
+    }
+
+    static class CountingTarget extends RenderTarget {
+        final ContentView view = new ContentView();
+
+        @Override
+        public View getView() {
+            return view;
+        }
+
+        @Override
+        public boolean isSurfaceAvailable() {
+            return false;
+        }
+
+        @Override
+        public void attachPlayer(MediaPlayer mp) {
+        }
+
+        @Override
+        public void detachPlayer(MediaPlayer mp) {
+        }
+
+        @Override
+        public Surface getSurface() {
+            return null;
+        }
+    }
+
+    static class TestView extends FullscreenVideoView {
+        // Assigned while the super constructor runs: no initializers
+        CountingTarget target;
+        List<Runnable> frame;
+        Container container;
+
+        TestView(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected RenderTarget createRenderTarget() {
+            target = new CountingTarget();
+            return target;
+        }
+
+        @Override
+        public ViewParent getParent() {
+            return container;
+        }
+
+        @Override
+        public int getWidth() {
+            return container.getWidth();
+        }
+
+        @Override
+        public int getHeight() {
+            return container.getHeight();
+        }
+
+        @Override
+        public boolean post(Runnable r) {
+            frame.add(r);
+            return true;
+        }
+
+        @Override
+        public void postOnAnimation(Runnable r) {
+            frame.add(r);
+        }
+    }
+
+    private TestView view;
+    private ContentView content;
+
+    @Before
+    public void setUp() {
+        view = new TestView(null);
+        view.frame = new ArrayList<Runnable>();
+        view.container = new Container();
+        content = view.target.view;
+        content.parent = view;
+        content.setLayoutParams(new RelativeLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+        content.setLayoutParamsCalls = 0;
+
+        // Prepared with a 1920x1080 video
+        view.videoIsReady = true;
+        view.initialMovieWidth = 1920;
+        view.initialMovieHeight = 1080;
+    }
+
+    /**
+     * Runs the callbacks posted for the next frame
+     */
+    private void runFrame() {
+        List<Runnable> due = new ArrayList<Runnable>(view.frame);
+        view.frame.clear();
+        for (Runnable r : due)
+            r.run();
+    }
+
+    @Test
+    public void layoutChangesBeforeTheFrameResizeOnce() {
+        for (int i = 0; i < 5; i++)
+            view.requestResize();
+        assertEquals(1, view.frame.size());
+
+        runFrame();
+        assertEquals(1, content.setLayoutParamsCalls);
+        assertEquals(1000, content.params.width);
+        assertEquals(562, content.params.height);
+    }
+
+    @Test
+    public void unchangedSizesDoNotLayOutAgain() {
+        view.requestResize();
+        runFrame();
+
+        // e.g. the layout pass caused by the first resize
+        view.requestResize();
+        runFrame();
+        view.resize();
+        assertEquals(1, content.setLayoutParamsCalls);
+    }
+
+    @Test
+    public void containerResizeLaysOutOnce() {
+        view.requestResize();
+        runFrame();
+
+        // Rotation: several layout changes in one frame
+        view.container.width = 1920;
+        view.container.height = 1080;
+        view.requestResize();
+        view.requestResize();
+        view.requestResize();
+        runFrame();
+
+        assertEquals(2, content.setLayoutParamsCalls);
+        assertEquals(1920, content.params.width);
+        assertEquals(1080, content.params.height);
+    }
+
+    @Test
+    public void videoSizeChangeLaysOutOnce() {
+        view.requestResize();
+        runFrame();
+
+        // Adaptive stream switching to 4:3, reported together with a layout change
+        view.onVideoSizeChanged(null, 640, 480);
+        view.onVideoSizeChanged(null, 640, 480);
+        view.requestResize();
+        assertEquals(1, view.frame.size());
+        runFrame();
+
+        assertEquals(2, content.setLayoutParamsCalls);
+        assertEquals(1000, content.params.width);
+        assertEquals(750, content.params.height);
+    }
+
+    @Test
+    public void sameSizeOrProportionIsNotLaidOutAgain() {
+        view.requestResize();
+        runFrame();
+
+        view.onVideoSizeChanged(null, 1920, 1080);
+        assertFalse(view.resizeTracker.isPending());
+
+        // Lower rendition, same proportion: same content size
+        view.onVideoSizeChanged(null, 1280, 720);
+        assertTrue(view.resizeTracker.isPending());
+        runFrame();
+        assertEquals(1, content.setLayoutParamsCalls);
+    }
+}
@@ -0,0 +1,99 @@
+package com.github.rtoshiro.view.video;
+
+import com.github.rtoshiro.view.video.VideoScaler.ScaleMode;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class ResizeTrackerTest {
+
+    private final ResizeTracker tracker = new ResizeTracker();
+
+    @Test
+    public void requestsBeforeTheFrameAreMerged() {
+        assertTrue(tracker.request());
+        for (int i = 0; i < 10; i++)
+            assertFalse(tracker.request());
+        assertTrue(tracker.isPending());
+
+        tracker.onScheduledResize();
+        assertFalse(tracker.isPending());
+        assertTrue(tracker.request());
+    }
+
+    @Test
+    public void skipsUnchangedSizes() {
+        assertTrue(tracker.update(ScaleMode.FIT, 0, 1920, 1080, 1000, 1000, 1000, 1000));
+        assertEquals(1000, tracker.getWidth());
+        assertEquals(562, tracker.getHeight());
+
+        assertFalse(tracker.update(ScaleMode.FIT, 0, 1920, 1080, 1000, 1000, 1000, 1000));
+        // Still the last applied size
+        assertEquals(1000, tracker.getWidth());
+        assertEquals(562, tracker.getHeight());
+    }
+
+    @Test
+    public void anyChangedSizeIsComputedAgain() {
+        tracker.update(ScaleMode.FIT, 0, 1920, 1080, 1000, 1000, 1000, 1000);
+
+        assertTrue(tracker.update(ScaleMode.FIT, 0, 1920, 1080, 500, 1000, 1000, 1000));
+        assertEquals(500, tracker.getWidth());
+        assertTrue(tracker.update(ScaleMode.FIT, 0, 1920, 1080, 500, 1000, 500, 1000));
+        // Mid-stream resolution change
+        assertTrue(tracker.update(ScaleMode.FIT, 0, 1080, 1920, 500, 1000, 500, 1000));
+        assertEquals(500, tracker.getWidth());
+        assertEquals(888, tracker.getHeight());
+    }
+
+    @Test
+    public void invalidateComputesTheSameSizesAgain() {
+        tracker.update(ScaleMode.FIT, 0, 1920, 1080, 1000, 1000, 1000, 1000);
+        tracker.invalidate();
+
+        assertTrue(tracker.update(ScaleMode.STRETCH, 0, 1920, 1080, 1000, 1000, 1000, 1000));
+        assertEquals(1000, tracker.getHeight());
+    }
+
+    @Test
+    public void invalidSizesAreNotRemembered() {
+        // Parent not laid out yet
+        assertFalse(tracker.update(ScaleMode.FIT, 0, 1920, 1080, 0, 0, 0, 0));
+        assertFalse(tracker.update(ScaleMode.FIT, 0, 1920, 1080, 0, 0, 0, 0));
+        assertTrue(tracker.update(ScaleMode.FIT, 0, 1920, 1080, 1000, 1000, 1000, 1000));
+    }
+
+    @Test
+    public void doesNotAllocate() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        long thread = Thread.currentThread().getId();
+
+        // Warms up, so the measured loop runs compiled code
+        for (int i = 0; i < 100000; i++)
+            layoutPass(i);
+
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 100000; i++)
+            layoutPass(i);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    private void layoutPass(int i) {
+        if (tracker.request()) {
+            tracker.onScheduledResize();
+            tracker.update(ScaleMode.FILL, 0, 1920, 1080, 1000 + i % 3, 1000, 1000, 1000);
+        }
+    }
+}
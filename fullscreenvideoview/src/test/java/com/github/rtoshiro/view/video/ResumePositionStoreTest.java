@@ -0,0 +1,82 @@
+package com.github.rtoshiro.view.video;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ResumePositionStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void putDoesNotWriteRightAway() throws Exception {
+        File file = new File(folder.getRoot(), "positions");
+        ResumePositionStore store = new ResumePositionStore(file, 10);
+        store.setSaveDelay(60000);
+
+        store.put("a", 1000);
+        store.put("b", 2000);
+        assertFalse(file.exists());
+
+        store.flush().get(5, TimeUnit.SECONDS);
+        assertTrue(file.exists());
+    }
+
+    @Test
+    public void changesAreWrittenTogetherAfterTheDelay() throws Exception {
+        File file = new File(folder.getRoot(), "positions");
+        ResumePositionStore store = new ResumePositionStore(file, 10);
+        store.setSaveDelay(50);
+
+        for (int i = 1; i <= 100; i++)
+            store.put("a", i * 100);
+        store.put("b", 500);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!file.exists() && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        // Waits for the write in progress, if any
+        store.flush().get(5, TimeUnit.SECONDS);
+
+        ResumePositionStore reloaded = new ResumePositionStore(file, 10);
+        assertEquals(10000, reloaded.get("a"));
+        assertEquals(500, reloaded.get("b"));
+    }
+
+    @Test
+    public void flushKeepsTheMostRecentlyUsedEntries() throws Exception {
+        File file = new File(folder.getRoot(), "positions");
+        ResumePositionStore store = new ResumePositionStore(file, 2);
+        store.put("a", 1);
+        store.put("b", 2);
+        store.get("a");
+        store.put("c", 3);
+        store.flush().get(5, TimeUnit.SECONDS);
+
+        ResumePositionStore reloaded = new ResumePositionStore(file, 2);
+        assertEquals(2, reloaded.size());
+        assertEquals(1, reloaded.get("a"));
+        assertEquals(-1, reloaded.get("b"));
+        assertEquals(3, reloaded.get("c"));
+    }
+
+    @Test
+    public void removeIsWritten() throws Exception {
+        File file = new File(folder.getRoot(), "positions");
+        ResumePositionStore store = new ResumePositionStore(file, 10);
+        store.put("a", 1000);
+        store.flush().get(5, TimeUnit.SECONDS);
+        store.remove("a");
+        store.flush().get(5, TimeUnit.SECONDS);
+
+        assertEquals(-1, new ResumePositionStore(file, 10).get("a"));
+    }
+}
@@ -0,0 +1,161 @@
+package com.github.rtoshiro.view.video;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class SeekSchedulerTest {
+
+    private final List<Integer> seeks = new ArrayList<Integer>();
+    private SeekScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = new SeekScheduler(new SeekScheduler.Seeker() {
+            @Override
+            public void performSeek(int msec, boolean exact) {
+                seeks.add(msec);
+            }
+        });
+    }
+
+    @Test
+    public void rapidSeeksReachThePlayerAsAtMostTwo() {
+        for (int i = 1; i <= 100; i++)
+            scheduler.seekTo(i * 100, false);
+
+        assertEquals(1, seeks.size());
+        assertSame(SeekScheduler.Completion.PENDING_SENT, scheduler.onSeekComplete());
+        assertSame(SeekScheduler.Completion.IDLE, scheduler.onSeekComplete());
+
+        assertEquals(2, seeks.size());
+        assertEquals(100, (int) seeks.get(0));
+        assertEquals(10000, (int) seeks.get(1));
+        assertEquals(100, scheduler.getRequestedCount());
+        assertEquals(2, scheduler.getPerformedCount());
+        assertFalse(scheduler.isSeeking());
+    }
+
+    @Test
+    public void seekWhileIdleIsSentRightAway() {
+        scheduler.seekTo(1000, true);
+        assertSame(SeekScheduler.Completion.IDLE, scheduler.onSeekComplete());
+        scheduler.seekTo(2000, true);
+
+        assertEquals(2, seeks.size());
+        assertTrue(scheduler.isSeeking());
+    }
+
+    @Test
+    public void lateCompletionAfterCancelDoesNotEndTheNextSeek() {
+        scheduler.seekTo(1000, false);
+        scheduler.cancel();
+        scheduler.seekTo(2000, false);
+        scheduler.seekTo(3000, false);
+
+        // Completion of the cancelled seek to 1000
+        assertTrue(scheduler.isNextCompletionStale());
+        assertSame(SeekScheduler.Completion.STALE, scheduler.onSeekComplete());
+        assertTrue(scheduler.isSeeking());
+        assertEquals(2, seeks.size());
+
+        // Completion of the seek to 2000 sends the pending 3000
+        assertFalse(scheduler.isNextCompletionStale());
+        assertSame(SeekScheduler.Completion.PENDING_SENT, scheduler.onSeekComplete());
+        assertEquals(3000, (int) seeks.get(2));
+        assertSame(SeekScheduler.Completion.IDLE, scheduler.onSeekComplete());
+        assertEquals(1, scheduler.getStaleCount());
+    }
+
+    @Test
+    public void cancelDropsThePendingTarget() {
+        scheduler.seekTo(1000, false);
+        scheduler.seekTo(2000, false);
+        scheduler.cancel();
+
+        assertSame(SeekScheduler.Completion.STALE, scheduler.onSeekComplete());
+        assertEquals(1, seeks.size());
+        assertFalse(scheduler.isSeeking());
+    }
+
+    @Test
+    public void resetForgetsSeeksThePlayerDropped() {
+        scheduler.seekTo(1000, false);
+        // e.g. MediaPlayer.reset(): the seek to 1000 never completes
+        scheduler.reset();
+        scheduler.seekTo(2000, false);
+
+        assertSame(SeekScheduler.Completion.IDLE, scheduler.onSeekComplete());
+        assertFalse(scheduler.isSeeking());
+    }
+
+    @Test
+    public void completionWithoutSeekIsIgnored() {
+        assertSame(SeekScheduler.Completion.STALE, scheduler.onSeekComplete());
+        assertTrue(seeks.isEmpty());
+        assertFalse(scheduler.isSeeking());
+    }
+
+    @Test
+    public void manyCancelledSeeksAreMatchedInOrder() {
+        // More seeks left uncompleted than the initial ring holds
+        for (int i = 0; i < 10; i++) {
+            scheduler.seekTo(i * 1000, false);
+            scheduler.cancel();
+        }
+        scheduler.seekTo(20000, false);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(scheduler.isNextCompletionStale());
+            assertSame(SeekScheduler.Completion.STALE, scheduler.onSeekComplete());
+            assertTrue(scheduler.isSeeking());
+        }
+        assertFalse(scheduler.isNextCompletionStale());
+        assertSame(SeekScheduler.Completion.IDLE, scheduler.onSeekComplete());
+        assertEquals(10, scheduler.getStaleCount());
+    }
+
+    @Test
+    public void scrubbingDoesNotAllocate() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        long thread = Thread.currentThread().getId();
+        SeekScheduler scrub = new SeekScheduler(new SeekScheduler.Seeker() {
+            @Override
+            public void performSeek(int msec, boolean exact) {
+            }
+        });
+
+        // Warms up, so the measured loop runs compiled code
+        for (int i = 0; i < 100000; i++)
+            scrub(scrub, i);
+
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 100000; i++)
+            scrub(scrub, i);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    private static void scrub(SeekScheduler scheduler, int i) {
+        scheduler.seekTo(i, false);
+        scheduler.seekTo(i + 1, false);
+        scheduler.onSeekComplete();
+        if (i % 7 == 0)
+            scheduler.cancel();
+        scheduler.onSeekComplete();
+    }
+}
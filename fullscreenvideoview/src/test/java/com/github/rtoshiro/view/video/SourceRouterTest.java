@@ -0,0 +1,103 @@
+package com.github.rtoshiro.view.video;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SourceRouterTest {
+
+    private static final String VIDEO = "http://example.com/video.mp4";
+    private static final String HLS = "http://example.com/master.m3u8";
+    private static final String FILE = "/sdcard/video.mp4";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final HlsSession.Listener listener = new HlsSession.Listener() {
+        @Override
+        public void onVariantChanged(HlsSession session, HlsMasterPlaylist.Variant variant) {
+        }
+    };
+    private final SourceRouter router = new SourceRouter(listener);
+    private HttpCacheProxy proxy;
+
+    @Before
+    public void setUp() throws IOException {
+        proxy = new HttpCacheProxy(new VideoCache(folder.newFolder("cache"), 1024 * 1024));
+        proxy.start();
+    }
+
+    @After
+    public void tearDown() {
+        proxy.stop();
+    }
+
+    @Test
+    public void withoutProxySourcesAreReadDirectly() {
+        assertEquals(VIDEO, router.open(VIDEO));
+        assertEquals(VIDEO, router.getCacheUrl(VIDEO));
+        assertNull(router.getSession());
+    }
+
+    @Test
+    public void httpSourcesGoThroughTheProxy() {
+        router.setProxy(proxy);
+        assertEquals(proxy.getProxyUrl(VIDEO), router.open(VIDEO));
+        assertTrue(router.getCacheUrl(VIDEO).startsWith("http://127.0.0.1:"));
+        assertEquals(FILE, router.getCacheUrl(FILE));
+        // Single source decoders can not follow a variant switch
+        assertEquals(HLS, router.getCacheUrl(HLS));
+    }
+
+    @Test
+    public void adaptiveHlsOpensASessionClosedWithTheNextSource() {
+        router.setProxy(proxy);
+        router.setAdaptiveStreaming(true);
+
+        String url = router.open(HLS);
+        HlsSession session = router.getSession();
+        assertNotNull(session);
+        assertEquals(session.getPlaylistUrl(), url);
+        assertSame(listener, session.listener);
+
+        router.open(VIDEO);
+        assertNull(router.getSession());
+        assertNull(session.listener);
+    }
+
+    @Test
+    public void forgottenSessionIsNotCurrent() {
+        router.setProxy(proxy);
+        router.setAdaptiveStreaming(true);
+        router.open(HLS);
+        HlsSession session = router.getSession();
+
+        router.forgetSession();
+        assertNull(router.getSession());
+        assertNull(session.listener);
+        router.close();
+    }
+
+    @Test
+    public void playedSourcesAreReportedToThePrefetcher() {
+        VideoPrefetcher prefetcher = new VideoPrefetcher(proxy);
+        router.setProxy(proxy);
+        router.setPrefetcher(prefetcher);
+
+        router.open(VIDEO);
+        assertEquals(1, prefetcher.getMissCount());
+        // Opened for a next player or MediaCodecEngine: not played yet
+        router.getCacheUrl(VIDEO);
+        assertEquals(1, prefetcher.getMissCount());
+    }
+}
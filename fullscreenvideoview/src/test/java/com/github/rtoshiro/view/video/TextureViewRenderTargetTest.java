@@ -0,0 +1,150 @@
+package com.github.rtoshiro.view.video;
+
+import android.graphics.SurfaceTexture;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TextureViewRenderTargetTest {
+
+    static class Texture extends SurfaceTexture {
+        int releases;
+
+        Texture() {
+            super(0);
+        }
+
+        @Override
+        public void release() {
+            releases++;
+        }
+    }
+
+    private final List<String> events = new ArrayList<String>();
+
+    private TextureViewRenderTarget newTarget(boolean retainSurface) {
+        TextureViewRenderTarget target = new TextureViewRenderTarget(null, retainSurface);
+        target.setCallback(new RenderTarget.Callback() {
+            @Override
+            public void onRenderSurfaceAvailable(RenderTarget target) {
+                events.add("available");
+            }
+
+            @Override
+            public void onRenderSurfaceDestroyed(RenderTarget target) {
+                events.add("destroyed");
+            }
+
+            @Override
+            public void onRenderFirstFrame(RenderTarget target) {
+                events.add("frame");
+            }
+        });
+        return target;
+    }
+
+    @Test
+    public void withoutRetainTheSurfaceFollowsTheView() {
+        TextureViewRenderTarget target = newTarget(false);
+        Texture first = new Texture();
+        target.onSurfaceTextureAvailable(first, 100, 100);
+        assertTrue(target.isSurfaceAvailable());
+
+        assertTrue(target.onSurfaceTextureDestroyed(first));
+        assertFalse(target.isSurfaceAvailable());
+
+        Texture second = new Texture();
+        target.onSurfaceTextureAvailable(second, 100, 100);
+        assertTrue(target.isSurfaceAvailable());
+        assertEquals("[available, destroyed, available]", events.toString());
+        // The TextureView releases the textures the listener gives back
+        assertEquals(0, first.releases + second.releases);
+    }
+
+    @Test
+    public void retainedTextureSurvivesReattach() {
+        TextureViewRenderTarget target = newTarget(true);
+        Texture retained = new Texture();
+        target.onSurfaceTextureAvailable(retained, 100, 100);
+
+        // Detached: kept, and the player is not told
+        assertFalse(target.onSurfaceTextureDestroyed(retained));
+        assertTrue(target.isSurfaceAvailable());
+
+        // Reattached with a new texture, replaced by the retained one
+        Texture replaced = new Texture();
+        target.onSurfaceTextureAvailable(replaced, 100, 100);
+        assertEquals(1, replaced.releases);
+        assertEquals(0, retained.releases);
+        assertSame(retained, target.surfaceTexture);
+
+        assertFalse(target.onSurfaceTextureDestroyed(retained));
+        assertEquals("[available]", events.toString());
+    }
+
+    @Test
+    public void reattachWithTheRetainedTextureReleasesNothing() {
+        TextureViewRenderTarget target = newTarget(true);
+        Texture retained = new Texture();
+        target.onSurfaceTextureAvailable(retained, 100, 100);
+        target.onSurfaceTextureDestroyed(retained);
+        target.onSurfaceTextureAvailable(retained, 100, 100);
+
+        assertEquals(0, retained.releases);
+        assertTrue(target.isSurfaceAvailable());
+    }
+
+    @Test
+    public void texturesOtherThanTheRetainedOneAreGivenBack() {
+        TextureViewRenderTarget target = newTarget(true);
+        Texture retained = new Texture();
+        target.onSurfaceTextureAvailable(retained, 100, 100);
+
+        assertTrue(target.onSurfaceTextureDestroyed(new Texture()));
+        assertTrue(target.isSurfaceAvailable());
+        assertEquals("[available]", events.toString());
+    }
+
+    @Test
+    public void reportsTheFirstFrameOnceWhenExpected() {
+        TextureViewRenderTarget target = newTarget(false);
+        Texture texture = new Texture();
+        target.onSurfaceTextureAvailable(texture, 100, 100);
+        target.onSurfaceTextureUpdated(texture);
+
+        target.expectFirstFrame();
+        target.onSurfaceTextureUpdated(texture);
+        target.onSurfaceTextureUpdated(texture);
+        assertEquals("[available, frame]", events.toString());
+    }
+
+    @Test
+    public void releaseSurfaceReleasesTheRetainedTexture() {
+        TextureViewRenderTarget target = newTarget(true);
+        Texture retained = new Texture();
+        target.onSurfaceTextureAvailable(retained, 100, 100);
+        assertNotNull(target.getSurface());
+        target.onSurfaceTextureDestroyed(retained);
+
+        target.releaseSurface();
+        assertEquals(1, retained.releases);
+        assertFalse(target.isSurfaceAvailable());
+        assertNull(target.getSurface());
+
+        // Attached again later: a fresh texture
+        Texture next = new Texture();
+        target.onSurfaceTextureAvailable(next, 100, 100);
+        assertEquals(0, next.releases);
+        assertTrue(target.isSurfaceAvailable());
+        assertEquals("[available, available]", events.toString());
+    }
+}
@@ -0,0 +1,84 @@
+package com.github.rtoshiro.view.video;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class TimeFormatterTest {
+
+    private final TimeFormatter formatter = new TimeFormatter();
+
+    private String format(long msec) {
+        formatter.invalidate();
+        formatter.update(msec);
+        return formatter.toString();
+    }
+
+    @Test
+    public void formatsMinutesAndSeconds() {
+        assertEquals("00:00", format(0));
+        assertEquals("00:00", format(999));
+        assertEquals("00:01", format(1000));
+        assertEquals("00:59", format(59999));
+        assertEquals("01:00", format(60000));
+        assertEquals("59:59", format(3599999));
+        assertEquals("00:00", format(-500));
+    }
+
+    @Test
+    public void addsHoursFromOneHour() {
+        assertEquals("1:00:00", format(3600000));
+        assertEquals("1:00:01", format(3601000));
+        assertEquals("10:05:09", format((10 * 3600 + 5 * 60 + 9) * 1000L));
+        assertEquals("23:59:59", format(86399999));
+    }
+
+    @Test
+    public void reportsOnlySecondChanges() {
+        assertTrue(formatter.update(1000));
+        assertFalse(formatter.update(1500));
+        assertFalse(formatter.update(1999));
+        assertTrue(formatter.update(2000));
+        assertEquals("00:02", formatter.toString());
+
+        formatter.invalidate();
+        assertTrue(formatter.update(2000));
+    }
+
+    @Test
+    public void keepsItsBuffer() {
+        char[] chars = formatter.chars();
+        formatter.update(5000);
+        formatter.update(3600000);
+        assertSame(chars, formatter.chars());
+        assertEquals("1:00:00", new String(formatter.chars(), 0, formatter.length()));
+    }
+
+    @Test
+    public void doesNotAllocateOnUpdate() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        long thread = Thread.currentThread().getId();
+
+        // Warms up, so the measured loop runs compiled code
+        for (int i = 0; i < 100000; i++)
+            formatter.update(i * 500L);
+
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 100000; i++)
+            formatter.update(i * 500L);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        // A String per tick would be megabytes
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+}
@@ -0,0 +1,85 @@
+package com.github.rtoshiro.view.video;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class VideoCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private VideoCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = folder.newFolder("cache");
+        cache = new VideoCache(directory, 100);
+    }
+
+    private static ByteBuffer bytes(int n) {
+        return ByteBuffer.wrap(new byte[n]);
+    }
+
+    @Test
+    public void entriesInUseDoNotGrowPastTheLimit() throws IOException {
+        VideoCacheEntry a = cache.open("http://example.com/a");
+        VideoCacheEntry b = cache.open("http://example.com/b");
+
+        assertTrue(cache.write(a, 0, bytes(60)));
+        // Only an entry in use could make room
+        assertFalse(cache.write(b, 0, bytes(60)));
+        assertEquals(60, cache.getSize());
+        assertEquals(60, cache.getBytesNotCached());
+        assertEquals(0, b.cachedBytes());
+
+        cache.close(a);
+        cache.close(b);
+    }
+
+    @Test
+    public void closedEntriesAreEvictedToMakeRoom() throws IOException {
+        VideoCacheEntry a = cache.open("http://example.com/a");
+        cache.write(a, 0, bytes(60));
+        cache.close(a);
+
+        VideoCacheEntry b = cache.open("http://example.com/b");
+        assertTrue(cache.write(b, 0, bytes(60)));
+        assertNull(cache.peek("http://example.com/a"));
+        assertEquals(60, cache.getSize());
+        cache.close(b);
+    }
+
+    @Test
+    public void rewrittenBytesAreCountedOnce() throws IOException {
+        VideoCacheEntry a = cache.open("http://example.com/a");
+        cache.write(a, 0, bytes(40));
+        cache.write(a, 20, bytes(40));
+        assertEquals(60, cache.getSize());
+        assertEquals(60, a.cachedBytes());
+        cache.close(a);
+    }
+
+    @Test
+    public void sizeIsReloadedAndKeptUnderTheLimit() throws IOException {
+        VideoCacheEntry a = cache.open("http://example.com/a");
+        cache.write(a, 0, bytes(60));
+        cache.close(a);
+
+        VideoCache reopened = new VideoCache(directory, 100);
+        assertEquals(60, reopened.getSize());
+        reopened.setMaxBytes(50);
+        assertEquals(0, reopened.getSize());
+    }
+}
@@ -0,0 +1,178 @@
+package com.github.rtoshiro.view.video;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class VideoPrefetcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final byte[] content = new byte[100000];
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+    private final CountDownLatch blockedRequested = new CountDownLatch(1);
+    private final CountDownLatch unblock = new CountDownLatch(1);
+    private HttpServer origin;
+    private HttpCacheProxy proxy;
+    private VideoPrefetcher prefetcher;
+
+    @Before
+    public void setUp() throws IOException {
+        origin = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        origin.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+                requests.add(path);
+                if (path.equals("/blocked.mp4")) {
+                    blockedRequested.countDown();
+                    try {
+                        unblock.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+                serveRange(exchange);
+            }
+        });
+        origin.start();
+
+        proxy = new HttpCacheProxy(new VideoCache(folder.newFolder("cache"), 10 * 1024 * 1024));
+    }
+
+    @After
+    public void tearDown() {
+        unblock.countDown();
+        if (prefetcher != null)
+            prefetcher.shutdown();
+        origin.stop(0);
+    }
+
+    private void serveRange(HttpExchange exchange) throws IOException {
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        int start = 0, end = content.length - 1;
+        if (range != null) {
+            String[] bounds = range.substring(6).split("-", -1);
+            start = Integer.parseInt(bounds[0]);
+            if (bounds[1].length() > 0)
+                end = Math.min(end, Integer.parseInt(bounds[1]));
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+            exchange.sendResponseHeaders(206, end - start + 1);
+        } else
+            exchange.sendResponseHeaders(200, content.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(content, start, end - start + 1);
+        out.close();
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + origin.getAddress().getPort() + path;
+    }
+
+    private void awaitIdle() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (prefetcher.getPendingCount() > 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+        assertEquals(0, prefetcher.getPendingCount());
+    }
+
+    @Test
+    public void downloadsByPriority() throws InterruptedException {
+        prefetcher = new VideoPrefetcher(proxy, 1, 0);
+        prefetcher.setPrefetchBytes(1000);
+
+        // Keeps the only worker busy while the queue is filled
+        prefetcher.prefetch(url("/blocked.mp4"), 0);
+        assertTrue(blockedRequested.await(5, TimeUnit.SECONDS));
+
+        prefetcher.prefetch(url("/c.mp4"), 5);
+        prefetcher.prefetch(url("/a.mp4"), 1);
+        prefetcher.prefetch(url("/b.mp4"), 3);
+        prefetcher.prefetch(url("/d.mp4"), 3);
+        // Moved ahead of everything while still queued
+        prefetcher.prefetch(url("/c.mp4"), 0);
+        unblock.countDown();
+        awaitIdle();
+
+        assertEquals("[/blocked.mp4, /c.mp4, /a.mp4, /b.mp4, /d.mp4]", requests.toString());
+        assertEquals(5 * 1000, prefetcher.getPrefetchedBytes());
+    }
+
+    @Test
+    public void prefetchedUrlsAreNotDownloadedAgain() throws InterruptedException {
+        prefetcher = new VideoPrefetcher(proxy, 1, 0);
+        prefetcher.setPrefetchBytes(1000);
+        prefetcher.prefetch(url("/a.mp4"), 0);
+        awaitIdle();
+        prefetcher.prefetch(url("/a.mp4"), 0);
+        awaitIdle();
+
+        assertEquals(1, requests.size());
+        assertEquals(1000, proxy.getCache().getCachedPrefix(url("/a.mp4")));
+    }
+
+    @Test
+    public void sharesTheBandwidthBudgetBetweenWorkers() throws InterruptedException {
+        // 2 x 100KB at 400KB/s: at least 0.5s minus the first chunk, whatever the number of workers
+        prefetcher = new VideoPrefetcher(proxy, 2, 400 * 1000);
+        prefetcher.setPrefetchBytes(100000);
+
+        long start = System.nanoTime();
+        prefetcher.prefetch(url("/a.mp4"), 0);
+        prefetcher.prefetch(url("/b.mp4"), 0);
+        awaitIdle();
+        long elapsedMs = (System.nanoTime() - start) / 1000000;
+
+        assertEquals(200000, prefetcher.getPrefetchedBytes());
+        assertTrue("took " + elapsedMs + "ms", elapsedMs >= 400);
+    }
+
+    @Test
+    public void countsHitsMissesAndPlayedUrls() throws InterruptedException {
+        prefetcher = new VideoPrefetcher(proxy, 1, 0);
+        prefetcher.setPrefetchBytes(1000);
+        prefetcher.prefetch(url("/a.mp4"), 0);
+        awaitIdle();
+
+        prefetcher.onPlaybackRequested(url("/a.mp4"));
+        prefetcher.onPlaybackRequested(url("/b.mp4"));
+        assertEquals(1, prefetcher.getHitCount());
+        assertEquals(1, prefetcher.getMissCount());
+        assertEquals(0.5f, prefetcher.getHitRatio(), 0.001f);
+        assertEquals(0, prefetcher.getWastedBytes());
+    }
+
+    @Test
+    public void cancelledUrlsAreNotDownloaded() throws InterruptedException {
+        prefetcher = new VideoPrefetcher(proxy, 1, 0);
+        prefetcher.setPrefetchBytes(1000);
+        prefetcher.prefetch(url("/blocked.mp4"), 0);
+        assertTrue(blockedRequested.await(5, TimeUnit.SECONDS));
+
+        prefetcher.prefetch(url("/a.mp4"), 1);
+        prefetcher.prefetch(url("/b.mp4"), 2);
+        prefetcher.cancel(url("/a.mp4"));
+        unblock.countDown();
+        awaitIdle();
+
+        assertEquals("[/blocked.mp4, /b.mp4]", requests.toString());
+    }
+}
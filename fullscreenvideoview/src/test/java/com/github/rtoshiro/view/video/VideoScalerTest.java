@@ -0,0 +1,104 @@
+package com.github.rtoshiro.view.video;
+
+import com.github.rtoshiro.view.video.VideoScaler.ScaleMode;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VideoScalerTest {
+
+    private final int[] size = new int[2];
+
+    private int[] compute(ScaleMode mode, float ratio, int videoW, int videoH, int containerW, int containerH) {
+        assertTrue(VideoScaler.compute(mode, ratio, videoW, videoH, containerW, containerH, size));
+        return size;
+    }
+
+    @Test
+    public void fitLetterboxes() {
+        assertArrayEquals(new int[]{1000, 562}, compute(ScaleMode.FIT, 0, 1920, 1080, 1000, 1000));
+        // Pillarbox
+        assertArrayEquals(new int[]{562, 1000}, compute(ScaleMode.FIT, 0, 1080, 1920, 1000, 1000));
+        // Cinemascope (2.39:1) on a portrait screen
+        assertArrayEquals(new int[]{1080, 451}, compute(ScaleMode.FIT, 0, 1912, 800, 1080, 1920));
+    }
+
+    @Test
+    public void fillCoversTheContainer() {
+        assertArrayEquals(new int[]{1777, 1000}, compute(ScaleMode.FILL, 0, 1920, 1080, 1000, 1000));
+        assertArrayEquals(new int[]{1000, 1777}, compute(ScaleMode.FILL, 0, 1080, 1920, 1000, 1000));
+        assertArrayEquals(new int[]{4588, 1920}, compute(ScaleMode.FILL, 0, 1912, 800, 1080, 1920));
+    }
+
+    @Test
+    public void sameProportionGetsTheContainerSize() {
+        for (ScaleMode mode : new ScaleMode[]{ScaleMode.FIT, ScaleMode.FILL}) {
+            assertArrayEquals(new int[]{640, 360}, compute(mode, 0, 1280, 720, 640, 360));
+            assertArrayEquals(new int[]{1001, 563}, compute(mode, 0, 1001, 563, 1001, 563));
+        }
+    }
+
+    @Test
+    public void stretchIgnoresTheProportion() {
+        assertArrayEquals(new int[]{1000, 1000}, compute(ScaleMode.STRETCH, 0, 1920, 1080, 1000, 1000));
+        assertArrayEquals(new int[]{3, 7}, compute(ScaleMode.STRETCH, 0, 1, 1000, 3, 7));
+    }
+
+    @Test
+    public void fixedRatioReplacesTheVideoProportion() {
+        assertArrayEquals(new int[]{1000, 750}, compute(ScaleMode.FIXED_RATIO, 4f / 3f, 1920, 1080, 1000, 1000));
+        assertArrayEquals(new int[]{1000, 1000}, compute(ScaleMode.FIXED_RATIO, 1f, 1920, 1080, 1000, 2000));
+        assertArrayEquals(new int[]{1500, 1000}, compute(ScaleMode.FIXED_RATIO, 1.5f, 640, 480, 4000, 1000));
+        // Without a ratio, like FIT
+        assertArrayEquals(new int[]{1000, 562}, compute(ScaleMode.FIXED_RATIO, 0, 1920, 1080, 1000, 1000));
+    }
+
+    @Test
+    public void extremeProportions() {
+        assertArrayEquals(new int[]{1, 1000}, compute(ScaleMode.FIT, 0, 1, 1000, 1000, 1000));
+        assertArrayEquals(new int[]{1000, 1000000}, compute(ScaleMode.FILL, 0, 1, 1000, 1000, 1000));
+        // Rounds down to an empty size rather than overflowing
+        assertArrayEquals(new int[]{1000, 0}, compute(ScaleMode.FIT, 0, 100000, 1, 1000, 1000));
+    }
+
+    @Test
+    public void zeroOrNegativeSizesAreRejected() {
+        int[][] invalid = {
+                {0, 1080, 1000, 1000}, {1920, 0, 1000, 1000},
+                {1920, 1080, 0, 1000}, {1920, 1080, 1000, 0}, {-1, 1080, 1000, 1000}};
+        for (ScaleMode mode : ScaleMode.values()) {
+            for (int[] sizes : invalid) {
+                size[0] = 7;
+                size[1] = 7;
+                assertFalse(VideoScaler.compute(mode, 1f, sizes[0], sizes[1], sizes[2], sizes[3], size));
+                assertArrayEquals(new int[]{7, 7}, size);
+            }
+        }
+    }
+
+    @Test
+    public void transformScaleOfFillCropsOneAxis() {
+        float[] scale = new float[2];
+        compute(ScaleMode.FILL, 0, 1920, 1080, 1000, 1000);
+        assertTrue(VideoScaler.computeTransformScale(size[0], size[1], 1000, 1000, scale));
+        assertEquals(1.777f, scale[0], 0.001f);
+        assertEquals(1f, scale[1], 0f);
+
+        compute(ScaleMode.FIT, 0, 1920, 1080, 1000, 1000);
+        assertTrue(VideoScaler.computeTransformScale(size[0], size[1], 1000, 1000, scale));
+        assertEquals(1f, scale[0], 0f);
+        assertEquals(0.562f, scale[1], 0.001f);
+    }
+
+    @Test
+    public void transformScaleNeedsALaidOutView() {
+        float[] scale = {7, 7};
+        assertFalse(VideoScaler.computeTransformScale(1000, 562, 0, 0, scale));
+        assertFalse(VideoScaler.computeTransformScale(0, 562, 1000, 1000, scale));
+        assertArrayEquals(new float[]{7, 7}, scale, 0f);
+    }
+}
@@ -0,0 +1,114 @@
+package com.github.rtoshiro.view.video;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class VisibilitySelectorTest {
+
+    @Test
+    public void mostVisibleVideosWinUpToMaxActive() {
+        VisibilitySelector selector = new VisibilitySelector(2, 0.5f, 0);
+        boolean[] active = new boolean[4];
+
+        assertEquals(2, selector.select(new float[]{0.6f, 1f, 0.9f, 0.7f}, active, 4));
+        assertArrayEquals(new boolean[]{false, true, true, false}, active);
+    }
+
+    @Test
+    public void videosBelowMinFractionNeverPlay() {
+        VisibilitySelector selector = new VisibilitySelector(3, 0.5f, 0);
+        boolean[] active = {true, true, false};
+
+        assertEquals(1, selector.select(new float[]{0.49f, 0.5f, 0f}, active, 3));
+        assertArrayEquals(new boolean[]{false, true, false}, active);
+    }
+
+    @Test
+    public void invisibleVideosNeverPlayEvenWithoutMinFraction() {
+        VisibilitySelector selector = new VisibilitySelector(2, 0, 0);
+        boolean[] active = {true, false};
+
+        assertEquals(0, selector.select(new float[]{0f, 0f}, active, 2));
+        assertArrayEquals(new boolean[]{false, false}, active);
+    }
+
+    @Test
+    public void playingVideoKeepsItsPlaceWithinSwitchMargin() {
+        VisibilitySelector selector = new VisibilitySelector(1, 0.1f, 0.2f);
+        boolean[] active = {true, false};
+
+        // Scrolling: the other video becomes a bit more visible
+        selector.select(new float[]{0.7f, 0.8f}, active, 2);
+        assertArrayEquals(new boolean[]{true, false}, active);
+
+        // Past the margin, it takes over
+        selector.select(new float[]{0.5f, 0.8f}, active, 2);
+        assertArrayEquals(new boolean[]{false, true}, active);
+
+        // And keeps its place on the way back
+        selector.select(new float[]{0.7f, 0.6f}, active, 2);
+        assertArrayEquals(new boolean[]{false, true}, active);
+    }
+
+    @Test
+    public void marginDoesNotKeepAVideoBelowMinFraction() {
+        VisibilitySelector selector = new VisibilitySelector(1, 0.5f, 0.5f);
+        boolean[] active = {true, false};
+
+        selector.select(new float[]{0.4f, 0.6f}, active, 2);
+        assertArrayEquals(new boolean[]{false, true}, active);
+    }
+
+    @Test
+    public void tiesGoToTheFirstVideo() {
+        VisibilitySelector selector = new VisibilitySelector(2, 0, 0);
+        boolean[] active = new boolean[4];
+
+        selector.select(new float[]{0.5f, 1f, 0.5f, 0.5f}, active, 4);
+        assertArrayEquals(new boolean[]{true, true, false, false}, active);
+    }
+
+    @Test
+    public void onlyTheFirstCountEntriesAreUsed() {
+        VisibilitySelector selector = new VisibilitySelector(1, 0, 0);
+        boolean[] active = {false, false, true};
+
+        selector.select(new float[]{0.5f, 0.6f, 1f}, active, 2);
+        assertArrayEquals(new boolean[]{false, true, true}, active);
+    }
+
+    @Test
+    public void moreThan64Videos() {
+        VisibilitySelector selector = new VisibilitySelector(3, 0.5f, 0.1f);
+        int count = 100;
+        float[] fractions = new float[count];
+        boolean[] active = new boolean[count];
+        fractions[3] = 0.9f;
+        fractions[64] = 1f;
+        fractions[70] = 0.6f;
+        fractions[99] = 0.95f;
+        active[70] = true;
+
+        assertEquals(3, selector.select(fractions, active, count));
+        boolean[] expected = new boolean[count];
+        expected[64] = true;
+        expected[99] = true;
+        // 0.6 + 0.1 margin does not beat 0.9
+        expected[3] = true;
+        assertArrayEquals(expected, active);
+
+        // Same selection as the bit mask path for the first 64 videos
+        boolean[] small = Arrays.copyOf(active, 64);
+        selector.select(Arrays.copyOf(fractions, 64), small, 64);
+        assertArrayEquals(Arrays.copyOf(expected, 64), small);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNoActiveVideo() {
+        new VisibilitySelector(0, 0, 0);
+    }
+}